@@ -17,15 +17,23 @@ package com.github.mgeiss.norn;
 
 import com.github.mgeiss.norn.util.NornConditions;
 import com.github.mgeiss.norn.util.NornConfiguration;
+import com.github.mgeiss.norn.util.NornLoadSampler;
 import com.github.mgeiss.norn.util.NornProperties;
-import com.github.mgeiss.norn.util.NornUtility;
 
 import java.io.IOException;
 import java.net.*;
+import java.rmi.Remote;
 import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
 
 /**
  * <code>LocateNorn</code> is used to obtain a reference to a <code>NornNode</code> on a specific multicast address,
@@ -34,13 +42,16 @@ import java.util.ArrayList;
  * <p>Note that also a reference to a remote object registry will be obtained.
  *
  * @author Markus Geiss
- * @version 2.0.0
+ * @version 2.2.0
  * @see com.github.mgeiss.norn.NornNode
  * @see com.github.mgeiss.norn.util.NornConfiguration
  */
 public final class LocateNorn {
 
+    private static final ResourceBundle messages = ResourceBundle.getBundle("norn-messages");
     private static NornProperties nornProperties = NornProperties.load();
+    private static final ConcurrentMap<NornConfiguration, NornMembership> memberships = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, NornStubCache> stubCaches = new ConcurrentHashMap<>();
 
     /**
      * Private constructor to disable public construction.
@@ -151,20 +162,77 @@ public final class LocateNorn {
      * <code>NornConfiguration</code>.
      * <p/>
      * <p>Note that also a <code>Registry</code> instance will be created and exported on the local
-     * host.
+     * host. The bindings of the node are kept by a <code>NornRegistry</code>, bound within the registry and
+     * mirroring all bindings into it.
      *
      * @param nornConfiguration configuration to use
      * @return the norn node
      * @throws java.rmi.RemoteException
+     * @throws java.lang.IllegalArgumentException if an argument is not valid, or if the multicast group is already
+     *                                            served by a local node with other settings.
      * @see java.rmi.registry.Registry
      * @see com.github.mgeiss.norn.util.NornConfiguration
      */
     public static NornNode createNode(final NornConfiguration nornConfiguration)
             throws RemoteException {
-        return LocateNorn.createNode(nornConfiguration.getMulticastAddress(),
-                nornConfiguration.getMulticastPort(),
-                nornConfiguration.getRmiRegistryPort(),
-                nornConfiguration.isMaster());
+        NornConditions.checkNotNull(nornConfiguration, "nornConfiguration");
+
+        NornNode node = null;
+
+        if (System.getSecurityManager() == null) {
+            System.setSecurityManager(new SecurityManager());
+        }
+
+        final NornNodeInfo nornNodeInfo = new NornNodeInfo();
+        nornNodeInfo.setMulticastAddress(nornConfiguration.getMulticastAddress());
+        nornNodeInfo.setMulticastPort(nornConfiguration.getMulticastPort());
+
+        try {
+            final String registryAddress = InetAddress.getLocalHost().getHostAddress();
+            nornNodeInfo.setRegistryAddress(registryAddress);
+        } catch (UnknownHostException ex) {
+            throw new RemoteException(ex.getMessage(), ex);
+        }
+
+        nornNodeInfo.setRegistryPort(nornConfiguration.getRmiRegistryPort());
+        nornNodeInfo.setMaster(nornConfiguration.isMaster());
+        nornNodeInfo.setTags(nornConfiguration.getTags());
+
+        final NornLoadSampler loadSampler = new NornLoadSampler(nornConfiguration.getLoadSampleInterval(),
+                nornConfiguration.createLoadProvider(), nornConfiguration.getLoadSmoothing());
+
+        Registry registry = null;
+        NornRegistryImpl nornRegistry = null;
+        Remote nornRegistryStub = null;
+        boolean started = false;
+        try {
+            registry = LocateRegistry.createRegistry(nornConfiguration.getRmiRegistryPort());
+            nornRegistry = new NornRegistryImpl(registry);
+            nornRegistryStub = UnicastRemoteObject.exportObject(nornRegistry, nornConfiguration.getRmiRegistryPort());
+            registry.rebind(NornRegistry.NAME, nornRegistryStub);
+
+            node = new NornNode(nornNodeInfo, nornRegistry, loadSampler, nornConfiguration);
+            node.start();
+            started = true;
+        } catch (RemoteException rex) {
+            throw rex;
+        } catch (IOException ioex) {
+            throw new RemoteException(ioex.getMessage(), ioex);
+        } finally {
+            if (!started) {
+                if (node != null) {
+                    node.stop();
+                }
+                if (nornRegistryStub != null) {
+                    UnicastRemoteObject.unexportObject(nornRegistry, true);
+                }
+                if (registry != null) {
+                    UnicastRemoteObject.unexportObject(registry, true);
+                }
+            }
+        }
+
+        return node;
     }
 
     /**
@@ -188,39 +256,15 @@ public final class LocateNorn {
     public static NornNode createNode(final String multicastAddress, final int multicastPort, final int registryPort,
                                       final boolean master)
             throws RemoteException {
-        NornConditions.checkMulticastAddress(multicastAddress);
-        NornConditions.checkMulticastPort(multicastPort);
-        NornConditions.checkRMIRegistryPort(registryPort);
-
-        NornNode node;
-
-        if (System.getSecurityManager() == null) {
-            System.setSecurityManager(new SecurityManager());
+        final NornConfiguration.Builder builder = new NornConfiguration.Builder()
+                .multicastAddress(multicastAddress)
+                .multicastPort(multicastPort)
+                .rmiRegistryPort(registryPort);
+        if (master) {
+            builder.master();
         }
 
-        final NornNodeInfo nornNodeInfo = new NornNodeInfo();
-        nornNodeInfo.setMulticastAddress(multicastAddress);
-        nornNodeInfo.setMulticastPort(multicastPort);
-
-        try {
-            final String registryAddress = InetAddress.getLocalHost().getHostAddress();
-            nornNodeInfo.setRegistryAddress(registryAddress);
-        } catch (UnknownHostException ex) {
-            throw new RemoteException(ex.getMessage(), ex);
-        }
-
-        nornNodeInfo.setRegistryPort(registryPort);
-        nornNodeInfo.setLoad(NornUtility.calculateJVMLoad());
-        nornNodeInfo.setMaster(master);
-
-        final Registry registry = LocateRegistry.createRegistry(registryPort);
-
-        final NornNodeThread nodeThread = new NornNodeThread(nornNodeInfo);
-
-        node = new NornNode(nornNodeInfo, registry, nodeThread);
-        node.start();
-
-        return node;
+        return LocateNorn.createNode(builder.build());
     }
 
     /**
@@ -315,29 +359,138 @@ public final class LocateNorn {
     }
 
     /**
-     * Returns a reference to the <code>NornNode</code> based on the given <code>NornConfiguration</code>
+     * Returns a reference to the <code>NornNode</code> based on the given <code>NornConfiguration</code>.
+     * <code>getNode</code> will block until the configured <code>NornDiscoveryPolicy</code> is satisfied, at most for
+     * the configured socket timeout.
      * <p/>
      * <p>Note that also a reference for the remote object <code>Registry</code> will be created.
      *
      * @param nornConfiguration configuration to use
      * @return reference to the norn node
-     * @throws java.rmi.RemoteException
+     * @throws java.rmi.RemoteException if no node replied or the discovery failed
      * @throws java.lang.IllegalArgumentException if an argument is not valid.
      * @see java.rmi.registry.Registry
+     * @see com.github.mgeiss.norn.NornDiscoveryPolicy
      * @see com.github.mgeiss.norn.util.NornConditions
      * @see com.github.mgeiss.norn.util.NornConfiguration
      */
     public static NornNode getNode(NornConfiguration nornConfiguration)
             throws RemoteException {
-        return LocateNorn.getNode(nornConfiguration.getMulticastAddress(),
-                nornConfiguration.getMulticastPort(),
-                nornConfiguration.getSocketTimeout());
+        return LocateNorn.getNodes(nornConfiguration, 1).get(0);
+    }
+
+    /**
+     * Returns a reference to a <code>NornNode</code> hosting the given <code>name</code>, based on the given
+     * <code>NornConfiguration</code>. Only nodes whose advertised bound names contain <code>name</code> are chosen,
+     * so a following <code>lookup</code> does not fail for a node never bound the name. Rarely a node may be chosen
+     * that does not host the name, the advertised names are a Bloom filter.
+     *
+     * @param nornConfiguration configuration to use
+     * @param name              the name the node must host, null for any node
+     * @return reference to the norn node
+     * @throws java.rmi.RemoteException if no node hosting the name replied or the discovery failed
+     * @throws java.lang.IllegalArgumentException if an argument is not valid.
+     * @see com.github.mgeiss.norn.NornNodeInfo#mayHost(String)
+     */
+    public static NornNode getNode(final NornConfiguration nornConfiguration, final String name)
+            throws RemoteException {
+        return LocateNorn.getNodes(nornConfiguration, name, 1).get(0);
+    }
+
+    /**
+     * Returns a reference to the <code>NornNode</code> the given session key is bound to, based on the given
+     * <code>NornConfiguration</code>. All calls with the same key return the same node as long as it is a member of
+     * the group and not loaded above the configured affinity load, so per session state kept in memory is found
+     * again. Affinities are kept by the membership of the configuration, which is used regardless of
+     * <code>cacheMembership</code>.
+     *
+     * @param nornConfiguration configuration to use
+     * @param sessionKey        the session key
+     * @return reference to the norn node
+     * @throws java.rmi.RemoteException if no node replied or the discovery failed
+     * @throws java.lang.IllegalArgumentException if an argument is not valid.
+     * @see com.github.mgeiss.norn.NornMembership#getAffinityNode(String)
+     */
+    public static NornNode getAffinityNode(final NornConfiguration nornConfiguration, final String sessionKey)
+            throws RemoteException {
+        return LocateNorn.getMembership(nornConfiguration).getAffinityNode(sessionKey);
+    }
+
+    /**
+     * Returns references to up to <code>count</code> <code>NornNode</code>s chosen by the configured
+     * <code>NornNodeSelectionStrategy</code>, the preferred node first. Callers may fall back to the next node if a
+     * call to the preferred node fails.
+     * <p/>
+     * <p>Note that also a reference for the remote object <code>Registry</code> of every node will be created.
+     *
+     * @param nornConfiguration configuration to use
+     * @param count             maximum number of nodes
+     * @return a new list of references to norn nodes, never empty
+     * @throws java.rmi.RemoteException if no node replied or the discovery failed
+     * @throws java.lang.IllegalArgumentException if an argument is not valid.
+     * @see com.github.mgeiss.norn.NornNodeSelectionStrategy
+     * @see com.github.mgeiss.norn.util.NornConditions#checkNodeCount(int)
+     */
+    public static List<NornNode> getNodes(final NornConfiguration nornConfiguration, final int count)
+            throws RemoteException {
+        NornConditions.checkNotNull(nornConfiguration, "nornConfiguration");
+        NornConditions.checkNodeCount(count);
+
+        return LocateNorn.getNodes(nornConfiguration, null, count);
+    }
+
+    /**
+     * Returns references to up to <code>count</code> <code>NornNode</code>s hosting the given <code>name</code>,
+     * chosen by the configured <code>NornNodeSelectionStrategy</code>, the preferred node first.
+     *
+     * @param nornConfiguration configuration to use
+     * @param name              the name the nodes must host, null for any node
+     * @param count             maximum number of nodes
+     * @return a new list of references to norn nodes, never empty
+     * @throws java.rmi.RemoteException if no node hosting the name replied or the discovery failed
+     * @throws java.lang.IllegalArgumentException if an argument is not valid.
+     * @see #getNode(com.github.mgeiss.norn.util.NornConfiguration, String)
+     */
+    public static List<NornNode> getNodes(final NornConfiguration nornConfiguration, final String name,
+                                          final int count)
+            throws RemoteException {
+        NornConditions.checkNotNull(nornConfiguration, "nornConfiguration");
+        NornConditions.checkNodeCount(count);
+
+        if (nornConfiguration.isCacheMembership()) {
+            return LocateNorn.getMembership(nornConfiguration).getNodes(name, count);
+        }
+
+        final List<NornNode> nodes = new ArrayList<>();
+
+        try {
+            final List<NornNodeInfo> nodeInfos = NornDiscovery.discover(nornConfiguration, null, name);
+
+            final List<NornNodeInfo> ranked = nornConfiguration.getNodeSelectionStrategy().select(nodeInfos,
+                    Math.max(count, nodeInfos.size()));
+            if (ranked.isEmpty()) {
+                throw new RemoteException(MessageFormat.format(LocateNorn.messages.getString("message.remote.no.node"),
+                        nornConfiguration.getMulticastAddress(), String.valueOf(nornConfiguration.getMulticastPort())));
+            }
+
+            final NornStubCache stubCache = LocateNorn.getStubCache(nornConfiguration);
+            for (final NornNodeInfo nodeInfo : ranked.subList(0, Math.min(count, ranked.size()))) {
+                final Registry registry = stubCache != null ? stubCache.getRegistry(nodeInfo)
+                        : LocateRegistry.getRegistry(nodeInfo.getRegistryAddress(), nodeInfo.getRegistryPort());
+                nodes.add(new NornNode(nodeInfo, registry, ranked, stubCache));
+            }
+        } catch (IOException ex) {
+            throw new RemoteException(ex.getMessage(), ex);
+        }
+
+        return nodes;
     }
 
     /**
      * Returns a reference to the <code>NornNode</code> for the specified <code>multicastAddress</code> on the specified
-     * <code>multicastPort</code>. <code>getNode</code> will block for the specified <code>socketTimeout</code>
-     * to receive node information.
+     * <code>multicastPort</code>. <code>getNode</code> will block until the default
+     * <code>NornDiscoveryPolicy</code> is satisfied, at most for the specified <code>socketTimeout</code>, to
+     * receive node information.
      * <p/>
      * <p>Note that also a reference for the remote object <code>Registry</code> will be created on the host and port
      * specified by the <code>NornNode</code>.
@@ -346,49 +499,140 @@ public final class LocateNorn {
      * @param multicastPort    port on which the multicast accepts requests
      * @param socketTimeout    the specified timeout in milliseconds
      * @return reference to the norn node
-     * @throws java.rmi.RemoteException
+     * @throws java.rmi.RemoteException if no node replied or the discovery failed
      * @throws java.lang.IllegalArgumentException if an argument is not valid.
      * @see com.github.mgeiss.norn.util.NornConditions
      */
     public static NornNode getNode(final String multicastAddress, final int multicastPort, final int socketTimeout)
             throws RemoteException {
-        NornConditions.checkMulticastAddress(multicastAddress);
-        NornConditions.checkMulticastPort(multicastPort);
-        NornConditions.checkSocketTimeout(socketTimeout);
-
-        NornNode node;
+        return LocateNorn.getNode(new NornConfiguration.Builder()
+                .multicastAddress(multicastAddress)
+                .multicastPort(multicastPort)
+                .socketTimeout(socketTimeout)
+                .build());
+    }
 
-        try (final MulticastSocket multicastSocket = new MulticastSocket()) {
-            final InetAddress address = InetAddress.getByName(multicastAddress);
+    /**
+     * Discovers all nodes of the multicast group of the given <code>NornConfiguration</code> without blocking the
+     * caller thread. Every node is reported to <code>listener</code> as soon as its reply arrived, so a caller may
+     * start using the first node while further replies are still arriving. The returned future completes once the
+     * configured discovery policy is satisfied or the socket timeout elapsed. Cancelling it ends the discovery, the
+     * listener is completed with the nodes discovered until then.
+     * <p/>
+     * <p>All asynchronous discoveries are driven by a single daemon selector thread, a running discovery does not
+     * occupy a thread of its own.
+     *
+     * @param nornConfiguration configuration to use
+     * @param listener          the listener to report nodes to, <code>null</code> to use the future only
+     * @return a future of the information of all discovered nodes in the order of arrival, may be empty
+     * @throws java.lang.IllegalArgumentException if an argument is not valid.
+     * @see #getNode(NornNodeInfo)
+     */
+    public static Future<List<NornNodeInfo>> discoverAsync(final NornConfiguration nornConfiguration,
+                                                           final NornDiscoveryListener listener) {
+        NornConditions.checkNotNull(nornConfiguration, "nornConfiguration");
 
-            final DatagramPacket ping = new DatagramPacket(new byte[0], 0, address, multicastPort);
+        return NornAsyncDiscovery.getInstance().submit(nornConfiguration, listener);
+    }
 
-            multicastSocket.send(ping);
+    /**
+     * Returns a reference to the <code>NornNode</code> described by the given node information, e.g. as reported by
+     * an asynchronous discovery. No remote call takes place.
+     *
+     * @param nodeInfo the information of a discovered node
+     * @return reference to the norn node
+     * @throws java.rmi.RemoteException if the registry reference could not be created
+     * @throws java.lang.IllegalArgumentException if an argument is not valid.
+     * @see #discoverAsync(com.github.mgeiss.norn.util.NornConfiguration, NornDiscoveryListener)
+     */
+    public static NornNode getNode(final NornNodeInfo nodeInfo)
+            throws RemoteException {
+        NornConditions.checkNotNull(nodeInfo, "nodeInfo");
 
-            final byte[] messageBuffer = new byte[1024];
-            DatagramPacket message = new DatagramPacket(messageBuffer, messageBuffer.length);
+        return new NornNode(nodeInfo, LocateRegistry.getRegistry(nodeInfo.getRegistryAddress(),
+                nodeInfo.getRegistryPort()));
+    }
 
-            final ArrayList<NornNodeInfo> nodeInfos = new ArrayList<>();
+    /**
+     * Returns the statistics of the reply times observed for the multicast group of the given
+     * <code>NornConfiguration</code>, including the discovery window learned from them. All configurations of the
+     * same multicast group share the same statistics.
+     *
+     * @param nornConfiguration configuration to use
+     * @return the reply statistics of the configured multicast group
+     * @throws java.lang.IllegalArgumentException if an argument is not valid.
+     * @see com.github.mgeiss.norn.util.NornConfiguration.Builder#adaptiveDiscoveryWindow(int, int)
+     */
+    public static NornReplyStatistics getReplyStatistics(final NornConfiguration nornConfiguration) {
+        NornConditions.checkNotNull(nornConfiguration, "nornConfiguration");
 
-            multicastSocket.setSoTimeout(socketTimeout);
-            while (true) {
-                try {
-                    multicastSocket.receive(message);
-                } catch (SocketTimeoutException stex) {
-                    break;
-                }
-                nodeInfos.add(NornUtility.byteArray2NodeInfo(messageBuffer));
-            }
+        return NornReplyStatistics.of(nornConfiguration.getMulticastAddress(), nornConfiguration.getMulticastPort());
+    }
 
-            final NornNodeInfo nodeInfo = NornUtility.getRecentNodeInfo(nodeInfos);
+    /**
+     * Returns the cache of registry stubs and looked up remote stubs for the given <code>NornConfiguration</code>,
+     * if a stub cache time to live has been configured. All callers using the same multicast group and time to live
+     * share the same cache.
+     *
+     * @param nornConfiguration configuration to use
+     * @return the stub cache, null if stubs are not cached
+     * @throws java.lang.IllegalArgumentException if an argument is not valid.
+     * @see com.github.mgeiss.norn.util.NornConfiguration.Builder#stubCacheTtl(int)
+     */
+    public static NornStubCache getStubCache(final NornConfiguration nornConfiguration) {
+        NornConditions.checkNotNull(nornConfiguration, "nornConfiguration");
 
-            final Registry registry = LocateRegistry.getRegistry(nodeInfo.getRegistryAddress(), nodeInfo.getRegistryPort());
+        if (nornConfiguration.getStubCacheTtl() == 0) {
+            return null;
+        }
 
-            node = new NornNode(nodeInfo, registry);
-        } catch (IOException | ClassNotFoundException ex) {
-            throw new RemoteException(ex.getMessage(), ex);
+        final String key = nornConfiguration.getMulticastAddress() + ':' + nornConfiguration.getMulticastPort()
+                + '/' + nornConfiguration.getStubCacheTtl();
+        NornStubCache stubCache = LocateNorn.stubCaches.get(key);
+        if (stubCache == null) {
+            final NornStubCache newStubCache = new NornStubCache(nornConfiguration.getStubCacheTtl());
+            stubCache = LocateNorn.stubCaches.putIfAbsent(key, newStubCache);
+            if (stubCache == null) {
+                stubCache = newStubCache;
+            }
         }
+        return stubCache;
+    }
 
-        return node;
+    /**
+     * Returns the <code>NornMembership</code> for the given <code>NornConfiguration</code>. All callers using an equal
+     * configuration share the same membership, which is refreshed in the background. A stopped or idle membership is
+     * replaced by a new one.
+     *
+     * @param nornConfiguration configuration to use
+     * @return the membership of the configured multicast group
+     * @throws java.lang.IllegalArgumentException if an argument is not valid.
+     * @see com.github.mgeiss.norn.NornMembership
+     */
+    public static NornMembership getMembership(final NornConfiguration nornConfiguration) {
+        NornConditions.checkNotNull(nornConfiguration, "nornConfiguration");
+
+        NornMembership membership;
+        do {
+            membership = LocateNorn.memberships.get(nornConfiguration);
+            if (membership == null) {
+                final NornMembership newMembership = new NornMembership(nornConfiguration);
+                membership = LocateNorn.memberships.putIfAbsent(nornConfiguration, newMembership);
+                if (membership == null) {
+                    membership = newMembership;
+                }
+            }
+        } while (!membership.start());
+
+        return membership;
+    }
+
+    /**
+     * Removes a stopped membership, so it is no longer returned by <code>getMembership</code>.
+     *
+     * @param membership the stopped membership
+     */
+    static void release(final NornMembership membership) {
+        LocateNorn.memberships.remove(membership.getConfiguration(), membership);
     }
 }
@@ -0,0 +1,420 @@
+/**
+ * Copyright 2012 - 2013 Markus Geiss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.mgeiss.norn;
+
+import com.github.mgeiss.norn.util.NornConfiguration;
+import com.github.mgeiss.norn.util.NornThreadFactory;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * <code>NornAsyncDiscovery</code> runs all asynchronous discoveries of this JVM on a single selector thread. Every
+ * discovery owns a non-blocking <code>DatagramChannel</code>, so a running discovery costs a channel instead of a
+ * thread parked in a blocking receive.
+ * <p/>
+ * The thread is started with the first discovery. If its selector fails, all running discoveries fail and the next
+ * discovery starts a new thread.
+ *
+ * @author Markus Geiss
+ * @version 2.2.0
+ * @see com.github.mgeiss.norn.LocateNorn#discoverAsync(com.github.mgeiss.norn.util.NornConfiguration,
+ * NornDiscoveryListener)
+ */
+final class NornAsyncDiscovery
+        implements Runnable {
+
+    private static final NornAsyncDiscovery INSTANCE = new NornAsyncDiscovery();
+
+    private final NornThreadFactory threadFactory = new NornThreadFactory("norn-discovery");
+    private final Queue<Discovery> submitted = new ConcurrentLinkedQueue<>();
+    private final List<Discovery> running = new ArrayList<>();
+    private final ByteBuffer message = ByteBuffer.allocate(NornNodeInfoCodec.MAX_PACKET_SIZE);
+    private Selector selector;
+    private Thread thread;
+
+    /**
+     * Package private constructor.
+     */
+    NornAsyncDiscovery() {
+        super();
+    }
+
+    /**
+     * Returns the asynchronous discovery shared by all clients of this JVM.
+     *
+     * @return the shared asynchronous discovery
+     */
+    static NornAsyncDiscovery getInstance() {
+        return NornAsyncDiscovery.INSTANCE;
+    }
+
+    /**
+     * Starts a discovery of the multicast group of the given <code>NornConfiguration</code>.
+     *
+     * @param nornConfiguration configuration to use
+     * @param listener          the listener to report nodes to, <code>null</code> for none
+     * @return a future of the information of all discovered nodes in the order of arrival
+     */
+    Future<List<NornNodeInfo>> submit(final NornConfiguration nornConfiguration,
+                                      final NornDiscoveryListener listener) {
+        final Discovery discovery = new Discovery(new NornDiscovery(nornConfiguration, null, null, listener), listener);
+
+        synchronized (this) {
+            if (this.thread == null) {
+                try {
+                    this.selector = Selector.open();
+                } catch (IOException ioex) {
+                    discovery.fail(ioex);
+                    return discovery;
+                }
+                this.thread = this.threadFactory.newThread(this);
+                this.thread.start();
+            }
+            this.submitted.add(discovery);
+            this.selector.wakeup();
+        }
+
+        return discovery;
+    }
+
+    /**
+     * Stops the selector thread, failing all running discoveries. The next discovery starts a new thread.
+     */
+    synchronized void stop() {
+        if (this.thread != null) {
+            this.thread.interrupt();
+        }
+    }
+
+    private synchronized void wakeup() {
+        if (this.selector != null) {
+            this.selector.wakeup();
+        }
+    }
+
+    @Override
+    public void run() {
+        final Selector currentSelector;
+        synchronized (this) {
+            currentSelector = this.selector;
+        }
+
+        IOException failure = new IOException("The discovery has been stopped");
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                Discovery discovery;
+                while ((discovery = this.submitted.poll()) != null) {
+                    this.open(discovery, currentSelector);
+                }
+
+                final long now = System.nanoTime();
+                long wait = Long.MAX_VALUE;
+                for (int i = this.running.size() - 1; i >= 0; i--) {
+                    final long remainingWait = this.advance(this.running.get(i), now);
+                    if (remainingWait <= 0L) {
+                        this.running.remove(i);
+                    } else {
+                        wait = Math.min(wait, remainingWait);
+                    }
+                }
+
+                if (wait != Long.MAX_VALUE) {
+                    currentSelector.select(Math.max(1L, TimeUnit.NANOSECONDS.toMillis(wait)));
+                } else {
+                    currentSelector.select();
+                }
+
+                for (final SelectionKey selectionKey : currentSelector.selectedKeys()) {
+                    this.read((Discovery) selectionKey.attachment());
+                }
+                currentSelector.selectedKeys().clear();
+            }
+        } catch (IOException ioex) {
+            failure = ioex;
+        } finally {
+            synchronized (this) {
+                Discovery discovery;
+                while ((discovery = this.submitted.poll()) != null) {
+                    this.running.add(discovery);
+                }
+                this.thread = null;
+                this.selector = null;
+            }
+
+            for (final Discovery discovery : this.running) {
+                NornAsyncDiscovery.close(discovery);
+                discovery.fail(failure);
+            }
+            this.running.clear();
+
+            try {
+                currentSelector.close();
+            } catch (IOException ioex) {
+                // intentionally left blank, just ignore only closing failed
+            }
+        }
+    }
+
+    /**
+     * Opens and registers the channel of the given discovery. A client accepting group replies joins the multicast
+     * group.
+     *
+     * @param discovery       the submitted discovery
+     * @param currentSelector the selector to register the channel with
+     */
+    private void open(final Discovery discovery, final Selector currentSelector) {
+        final NornConfiguration nornConfiguration = discovery.discovery.getConfiguration();
+        try {
+            if (nornConfiguration.isGroupReplies()) {
+                discovery.channel = NornResponder.openChannel(nornConfiguration.getMulticastAddress(),
+                        nornConfiguration.getMulticastPort());
+            } else {
+                discovery.channel = DatagramChannel.open(StandardProtocolFamily.INET);
+                discovery.channel.bind(null);
+                discovery.channel.configureBlocking(false);
+            }
+            discovery.channel.register(currentSelector, SelectionKey.OP_READ, discovery);
+            discovery.groupAddress = new InetSocketAddress(InetAddress.getByName(
+                    nornConfiguration.getMulticastAddress()), nornConfiguration.getMulticastPort());
+        } catch (IOException ioex) {
+            NornAsyncDiscovery.close(discovery);
+            discovery.fail(ioex);
+            return;
+        }
+
+        discovery.discovery.start(System.nanoTime());
+        this.running.add(discovery);
+    }
+
+    /**
+     * Sends the ping of the given discovery if due and returns the time to wait for further replies. A cancelled,
+     * failed or finished discovery is closed and completed.
+     *
+     * @param discovery a running discovery
+     * @param now       the current value of <code>System.nanoTime()</code>
+     * @return the time to wait in nanoseconds, 0 if the discovery has ended
+     */
+    private long advance(final Discovery discovery, final long now) {
+        long wait = 0L;
+        try {
+            if (!discovery.isDone()) {
+                if (discovery.discovery.isPingDue(now)) {
+                    discovery.channel.send(discovery.discovery.getPing(), discovery.groupAddress);
+                    discovery.discovery.pingSent(System.nanoTime());
+                }
+                wait = discovery.discovery.remainingWait(now);
+            }
+        } catch (IOException ioex) {
+            NornAsyncDiscovery.close(discovery);
+            discovery.fail(ioex);
+            return 0L;
+        } catch (RuntimeException rex) {
+            NornAsyncDiscovery.close(discovery);
+            discovery.finish(null, rex);
+            return 0L;
+        }
+
+        if (wait <= 0L) {
+            NornAsyncDiscovery.close(discovery);
+            discovery.complete();
+        }
+        return wait;
+    }
+
+    /**
+     * Hands all packets pending on the channel of the given discovery to it.
+     *
+     * @param discovery a running discovery
+     */
+    private void read(final Discovery discovery) {
+        try {
+            while (!discovery.isDone()) {
+                this.message.clear();
+                if (discovery.channel.receive(this.message) == null) {
+                    break;
+                }
+                discovery.discovery.receive(this.message.array(), 0, this.message.position(), System.nanoTime());
+            }
+        } catch (IOException ioex) {
+            NornAsyncDiscovery.close(discovery);
+            discovery.fail(ioex);
+        } catch (RuntimeException rex) {
+            NornAsyncDiscovery.close(discovery);
+            discovery.finish(null, rex);
+        }
+    }
+
+    private static void close(final Discovery discovery) {
+        if (discovery.channel != null) {
+            try {
+                discovery.channel.close();
+            } catch (IOException ioex) {
+                // intentionally left blank, just ignore only closing failed
+            }
+        }
+    }
+
+    /**
+     * <code>Discovery</code> is a running discovery and the future of its result. The channel is only touched by the
+     * selector thread.
+     */
+    private final class Discovery
+            implements Future<List<NornNodeInfo>> {
+
+        private final NornDiscovery discovery;
+        private final NornDiscoveryListener listener;
+        private DatagramChannel channel;
+        private InetSocketAddress groupAddress;
+        private boolean done;
+        private boolean cancelled;
+        private List<NornNodeInfo> result;
+        private Throwable failure;
+
+        private Discovery(final NornDiscovery discovery, final NornDiscoveryListener listener) {
+            super();
+            this.discovery = discovery;
+            this.listener = listener;
+        }
+
+        /**
+         * Reports the nodes received so far to the listener and completes this future, unless it failed. A cancelled
+         * discovery reports the nodes received until it has been cancelled.
+         */
+        private void complete() {
+            final List<NornNodeInfo> nodeInfos = this.discovery.getReceived();
+            synchronized (this) {
+                if (this.done && !this.cancelled) {
+                    return;
+                }
+            }
+
+            if (this.listener != null) {
+                try {
+                    this.listener.discoveryCompleted(nodeInfos);
+                } catch (RuntimeException rex) {
+                    this.finish(null, rex);
+                    return;
+                }
+            }
+            this.finish(nodeInfos, null);
+        }
+
+        /**
+         * Reports the failure to the listener and fails this future.
+         *
+         * @param cause the exception that caused the discovery to fail
+         */
+        private void fail(final IOException cause) {
+            synchronized (this) {
+                if (this.done) {
+                    return;
+                }
+            }
+
+            if (this.listener != null) {
+                try {
+                    this.listener.discoveryFailed(cause);
+                } catch (RuntimeException rex) {
+                    // intentionally left blank, the discovery fails anyway
+                }
+            }
+            this.finish(null, cause);
+        }
+
+        private synchronized void finish(final List<NornNodeInfo> nodeInfos, final Throwable cause) {
+            if (!this.done) {
+                this.result = nodeInfos;
+                this.failure = cause;
+                this.done = true;
+                this.notifyAll();
+            }
+        }
+
+        @Override
+        public boolean cancel(final boolean mayInterruptIfRunning) {
+            synchronized (this) {
+                if (this.done) {
+                    return false;
+                }
+                this.cancelled = true;
+                this.done = true;
+                this.notifyAll();
+            }
+            NornAsyncDiscovery.this.wakeup();
+            return true;
+        }
+
+        @Override
+        public synchronized boolean isCancelled() {
+            return this.cancelled;
+        }
+
+        @Override
+        public synchronized boolean isDone() {
+            return this.done;
+        }
+
+        @Override
+        public synchronized List<NornNodeInfo> get()
+                throws InterruptedException, ExecutionException {
+            while (!this.done) {
+                this.wait();
+            }
+            return this.report();
+        }
+
+        @Override
+        public synchronized List<NornNodeInfo> get(final long timeout, final TimeUnit unit)
+                throws InterruptedException, ExecutionException, TimeoutException {
+            final long deadline = System.nanoTime() + unit.toNanos(timeout);
+            while (!this.done) {
+                final long remaining = deadline - System.nanoTime();
+                if (remaining <= 0L) {
+                    throw new TimeoutException();
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+            return this.report();
+        }
+
+        private List<NornNodeInfo> report()
+                throws ExecutionException {
+            if (this.cancelled) {
+                throw new CancellationException();
+            }
+            if (this.failure != null) {
+                throw new ExecutionException(this.failure);
+            }
+            return this.result;
+        }
+    }
+}
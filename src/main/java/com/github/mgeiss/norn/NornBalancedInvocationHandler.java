@@ -0,0 +1,300 @@
+/**
+ * Copyright 2012 - 2013 Markus Geiss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.mgeiss.norn;
+
+import com.github.mgeiss.norn.util.NornUtility;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.rmi.NoSuchObjectException;
+import java.rmi.NotBoundException;
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <code>NornBalancedInvocationHandler</code> spreads the invocations of a proxy over all nodes a name is bound on.
+ * Every invocation picks two random nodes and uses the one with the lower score, the score being the number of
+ * invocations in flight on a node weighted by the load it advertises. The known nodes are refreshed once per second.
+ * <p/>
+ * A node whose stub could not be looked up or which turned out to be unreachable is skipped for a while. If the
+ * remote object of a node has been unexported or rebound, the name is looked up again on that node and the
+ * invocation is retried once, it has not been executed.
+ *
+ * @author Markus Geiss
+ * @version 2.2.0
+ * @see com.github.mgeiss.norn.NornNode#lookupBalanced(String, Class)
+ */
+final class NornBalancedInvocationHandler
+        implements InvocationHandler {
+
+    private static final long REFRESH_INTERVAL = TimeUnit.SECONDS.toNanos(1L);
+    private static final long RETRY_INTERVAL = TimeUnit.SECONDS.toNanos(5L);
+    private static final double MIN_LOAD = 0.01D;
+
+    private final NornNode node;
+    private final String name;
+    private volatile Target[] targets;
+    private volatile long refreshAt;
+
+    /**
+     * Package private constructor.
+     *
+     * @param node the node the name has been looked up on
+     * @param name the name of the remote object
+     * @param stub the stub looked up on <code>node</code>
+     */
+    NornBalancedInvocationHandler(final NornNode node, final String name, final Remote stub) {
+        super();
+        this.node = node;
+        this.name = name;
+        this.targets = new Target[]{new Target(node.getNodeInfo(), stub)};
+        this.refresh(System.nanoTime());
+    }
+
+    @Override
+    public Object invoke(final Object proxy, final Method method, final Object[] args)
+            throws Throwable {
+        if (method.getDeclaringClass() == Object.class) {
+            return this.invokeObjectMethod(proxy, method, args);
+        }
+
+        final long now = System.nanoTime();
+        if (now - this.refreshAt >= 0L) {
+            this.refresh(now);
+        }
+
+        final Random random = ThreadLocalRandom.current();
+        final Target[] current = this.targets;
+
+        Exception lookupException = null;
+        for (int attempt = 0; attempt < current.length; attempt++) {
+            final Target target = NornBalancedInvocationHandler.choose(current, random, now);
+            if (target == null) {
+                break;
+            }
+
+            final Remote stub;
+            try {
+                stub = target.resolve(this.node, this.name);
+            } catch (RemoteException | NotBoundException ex) {
+                target.fail(now);
+                lookupException = ex;
+                continue;
+            }
+            try {
+                return this.call(target, stub, method, args);
+            } catch (NoSuchObjectException nsoex) {
+                return this.callRenewed(target, stub, nsoex, method, args);
+            }
+        }
+
+        throw new RemoteException("No node available for " + this.name, lookupException);
+    }
+
+    /**
+     * Invokes the given stub of the given target. The stub is passed by the caller, a concurrent failure of the target
+     * only affects later calls.
+     *
+     * @param target the target the stub belongs to
+     * @param stub   the resolved stub of the target
+     * @param method the method to invoke
+     * @param args   the arguments of the call
+     * @return the result of the call
+     * @throws java.lang.Throwable the exception thrown by the remote object
+     */
+    private Object call(final Target target, final Remote stub, final Method method, final Object[] args)
+            throws Throwable {
+        final NornNodeInfo nodeInfo = target.nodeInfo;
+        target.inFlight.incrementAndGet();
+        final long start = System.nanoTime();
+        try {
+            final Object result = method.invoke(stub, args);
+            NornLatencies.getInstance().recordCall(nodeInfo.getNodeId(), System.nanoTime() - start);
+            return result;
+        } catch (InvocationTargetException itex) {
+            final Throwable cause = itex.getCause();
+            if (cause instanceof RemoteException && NornUtility.isUnreachable((RemoteException) cause)) {
+                target.fail(System.nanoTime());
+                this.node.evict(nodeInfo);
+            }
+            throw cause;
+        } finally {
+            target.inFlight.decrementAndGet();
+        }
+    }
+
+    /**
+     * Looks the name up again on the given target after its stub threw a <code>NoSuchObjectException</code> and
+     * invokes the new stub.
+     *
+     * @param target the target the stub belongs to
+     * @param stub   the stub that does not exist anymore
+     * @param nsoex  the exception thrown by <code>stub</code>
+     * @param method the method to invoke
+     * @param args   the arguments of the call
+     * @return the result of the call
+     * @throws java.lang.Throwable the exception thrown by the remote object, or <code>nsoex</code> if the name could
+     *                             not be looked up again
+     */
+    private Object callRenewed(final Target target, final Remote stub, final NoSuchObjectException nsoex,
+                               final Method method, final Object[] args)
+            throws Throwable {
+        target.invalidate(stub);
+        this.node.invalidate(target.nodeInfo, this.name);
+
+        final Remote renewed;
+        try {
+            renewed = target.resolve(this.node, this.name);
+        } catch (RemoteException | NotBoundException ex) {
+            target.fail(System.nanoTime());
+            throw nsoex;
+        }
+        return this.call(target, renewed, method, args);
+    }
+
+    /**
+     * Returns the node with the lower score of two randomly picked, available nodes, or the available node with the
+     * lowest score if both picks are unavailable.
+     *
+     * @param targets all targets
+     * @param random  the random to pick with
+     * @param now     the current value of <code>System.nanoTime()</code>
+     * @return the target to invoke, null if no target is available
+     */
+    private static Target choose(final Target[] targets, final Random random, final long now) {
+        Target target = null;
+        for (int i = 0; i < 2; i++) {
+            final Target candidate = targets[random.nextInt(targets.length)];
+            if (candidate.isAvailable(now) && (target == null || candidate.score() < target.score())) {
+                target = candidate;
+            }
+        }
+        if (target == null) {
+            for (final Target candidate : targets) {
+                if (candidate.isAvailable(now) && (target == null || candidate.score() < target.score())) {
+                    target = candidate;
+                }
+            }
+        }
+        return target;
+    }
+
+    /**
+     * Merges all nodes currently known to the node the name has been looked up on, keeping stubs and counters of
+     * known nodes.
+     *
+     * @param now the current value of <code>System.nanoTime()</code>
+     */
+    private synchronized void refresh(final long now) {
+        if (now - this.refreshAt < 0L) {
+            return;
+        }
+
+        final Map<String, Target> known = new HashMap<>();
+        for (final Target target : this.targets) {
+            known.put(target.nodeInfo.getNodeId(), target);
+        }
+
+        final List<Target> refreshed = new ArrayList<>();
+        for (final NornNodeInfo candidate : this.node.getCandidates()) {
+            Target target = known.get(candidate.getNodeId());
+            if (target == null) {
+                if (!candidate.mayHost(this.name)) {
+                    continue;
+                }
+                target = new Target(candidate, null);
+            } else {
+                target.nodeInfo = candidate;
+            }
+            refreshed.add(target);
+        }
+
+        if (!refreshed.isEmpty()) {
+            this.targets = refreshed.toArray(new Target[refreshed.size()]);
+        }
+        this.refreshAt = now + NornBalancedInvocationHandler.REFRESH_INTERVAL;
+    }
+
+    private Object invokeObjectMethod(final Object proxy, final Method method, final Object[] args) {
+        switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            default:
+                return "NornBalancedProxy{name=" + this.name + ", nodes=" + this.targets.length + '}';
+        }
+    }
+
+    /**
+     * <code>Target</code> is a node the name may be bound on.
+     */
+    private static final class Target {
+
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private volatile NornNodeInfo nodeInfo;
+        private volatile Remote stub;
+        private volatile long retryAt;
+        private volatile boolean failed;
+
+        private Target(final NornNodeInfo nodeInfo, final Remote stub) {
+            super();
+            this.nodeInfo = nodeInfo;
+            this.stub = stub;
+        }
+
+        private boolean isAvailable(final long now) {
+            return !this.failed || now - this.retryAt >= 0L;
+        }
+
+        private double score() {
+            return (this.inFlight.get() + 1)
+                    * Math.max(NornBalancedInvocationHandler.MIN_LOAD, this.nodeInfo.getLoad());
+        }
+
+        private Remote resolve(final NornNode node, final String name)
+                throws RemoteException, NotBoundException {
+            Remote resolved = this.stub;
+            if (resolved == null) {
+                resolved = node.lookup(this.nodeInfo, name);
+                this.stub = resolved;
+            }
+            this.failed = false;
+            return resolved;
+        }
+
+        private void invalidate(final Remote stale) {
+            if (this.stub == stale) {
+                this.stub = null;
+            }
+        }
+
+        private void fail(final long now) {
+            this.stub = null;
+            this.retryAt = now + NornBalancedInvocationHandler.RETRY_INTERVAL;
+            this.failed = true;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/**
+ * Copyright 2012 - 2013 Markus Geiss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.mgeiss.norn;
+
+import java.io.Serializable;
+import java.rmi.Remote;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <code>NornBinding</code> is a remote reference bound in a <code>NornRegistry</code> together with its metadata.
+ * The version is the version of the registry the binding has been made at, a rebind always yields a higher version.
+ * Instances are immutable.
+ *
+ * @author Markus Geiss
+ * @version 2.2.0
+ * @see com.github.mgeiss.norn.NornRegistry
+ */
+public final class NornBinding
+        implements Serializable {
+
+    /**
+     * Default weight of a binding.
+     */
+    public static final double DEFAULT_WEIGHT = 1.0D;
+
+    private static final long serialVersionUID = -3820815671208533463L;
+    private final String name;
+    private final Remote stub;
+    private final long version;
+    private final double weight;
+    private final Map<String, String> tags;
+
+    /**
+     * Package private constructor.
+     *
+     * @param name    the name of the binding
+     * @param stub    the bound remote reference
+     * @param version the version of the registry the binding has been made at
+     * @param weight  the weight of the binding
+     * @param tags    the tags of the binding
+     */
+    NornBinding(final String name, final Remote stub, final long version, final double weight,
+                final Map<String, String> tags) {
+        super();
+        this.name = name;
+        this.stub = stub;
+        this.version = version;
+        this.weight = weight;
+        this.tags = tags.isEmpty() ? Collections.<String, String>emptyMap()
+                : Collections.unmodifiableMap(new LinkedHashMap<>(tags));
+    }
+
+    /**
+     * Returns the name of this binding.
+     *
+     * @return the name
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Returns the bound remote reference.
+     *
+     * @return a reference to a remote object
+     */
+    public Remote getStub() {
+        return this.stub;
+    }
+
+    /**
+     * Returns the version of the registry this binding has been made at.
+     *
+     * @return the version
+     */
+    public long getVersion() {
+        return this.version;
+    }
+
+    /**
+     * Returns the weight of this binding.
+     *
+     * @return the weight
+     */
+    public double getWeight() {
+        return this.weight;
+    }
+
+    /**
+     * Returns the tags of this binding.
+     *
+     * @return an unmodifiable map, empty if the binding has no tags
+     */
+    public Map<String, String> getTags() {
+        return this.tags;
+    }
+
+    @Override
+    public String toString() {
+        return "NornBinding{name=" + this.name
+                + ", version=" + this.version
+                + ", weight=" + this.weight
+                + ", tags=" + this.tags
+                + '}';
+    }
+}
@@ -0,0 +1,134 @@
+/**
+ * Copyright 2012 - 2013 Markus Geiss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.mgeiss.norn;
+
+import java.util.Arrays;
+
+/**
+ * <code>NornBoundNames</code> is a Bloom filter of all names bound in the registry of a node, small enough to be sent
+ * within every reply. A name that is not contained is surely not bound, a name that is contained is bound with a
+ * false positive rate of about 1 percent for 50 names.
+ * <p/>
+ * The bit positions are derived from <code>String.hashCode()</code>, which is specified, so all JVMs agree on them.
+ *
+ * @author Markus Geiss
+ * @version 2.2.0
+ * @see com.github.mgeiss.norn.NornNodeInfo#mayHost(String)
+ */
+final class NornBoundNames {
+
+    /**
+     * Size of the filter in bytes.
+     */
+    static final int SIZE = 64;
+
+    private static final int BITS = NornBoundNames.SIZE * 8;
+    private static final int HASHES = 4;
+
+    private final byte[] bits;
+
+    /**
+     * Private constructor to restrict creation.
+     *
+     * @param bits the bits of the filter
+     */
+    private NornBoundNames(final byte[] bits) {
+        super();
+        this.bits = bits;
+    }
+
+    /**
+     * Creates a filter containing the given names.
+     *
+     * @param names the bound names
+     * @return a new filter
+     */
+    static NornBoundNames of(final String[] names) {
+        final byte[] bits = new byte[NornBoundNames.SIZE];
+        for (final String name : names) {
+            final int hash1 = name.hashCode();
+            final int hash2 = NornBoundNames.mix(hash1);
+            for (int i = 0; i < NornBoundNames.HASHES; i++) {
+                final int bit = NornBoundNames.bit(hash1, hash2, i);
+                bits[bit >>> 3] |= 1 << (bit & 7);
+            }
+        }
+        return new NornBoundNames(bits);
+    }
+
+    /**
+     * Creates a filter from its encoded bits.
+     *
+     * @param bits the encoded bits, <code>SIZE</code> bytes
+     * @return a new filter
+     */
+    static NornBoundNames fromBytes(final byte[] bits) {
+        return new NornBoundNames(bits);
+    }
+
+    /**
+     * Returns true if the given name may be bound.
+     *
+     * @param name a name
+     * @return false if the name is surely not bound
+     */
+    boolean mightContain(final String name) {
+        final int hash1 = name.hashCode();
+        final int hash2 = NornBoundNames.mix(hash1);
+        for (int i = 0; i < NornBoundNames.HASHES; i++) {
+            final int bit = NornBoundNames.bit(hash1, hash2, i);
+            if ((this.bits[bit >>> 3] & (1 << (bit & 7))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the bits of this filter, which must not be modified.
+     *
+     * @return the bits, <code>SIZE</code> bytes
+     */
+    byte[] toBytes() {
+        return this.bits;
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (other == null || this.getClass() != other.getClass()) {
+            return false;
+        }
+        return Arrays.equals(this.bits, ((NornBoundNames) other).bits);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(this.bits);
+    }
+
+    private static int bit(final int hash1, final int hash2, final int i) {
+        return ((hash1 + i * hash2) & Integer.MAX_VALUE) % NornBoundNames.BITS;
+    }
+
+    private static int mix(final int hash) {
+        int mixed = hash * 0x9E3779B9;
+        mixed ^= mixed >>> 16;
+        return mixed | 1;
+    }
+}
@@ -0,0 +1,120 @@
+/**
+ * Copyright 2012 - 2013 Markus Geiss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.mgeiss.norn;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <code>NornDelta</code> collects the changes a master node reports since a given epoch. A delta is either
+ * incremental, holding changed and removed nodes only, or full, holding all nodes the master knows. A full delta is
+ * sent if the master does not know the requested epoch anymore, e.g. because it has been restarted.
+ * <p/>
+ * A delta may arrive split into several packets, all of them carry the same epoch.
+ *
+ * @author Markus Geiss
+ * @version 2.2.0
+ * @see com.github.mgeiss.norn.NornNodeInfoCodec#decodeDelta(byte[], int, int, NornDelta)
+ */
+final class NornDelta {
+
+    private final long since;
+    private final List<NornNodeInfo> changed = new ArrayList<>();
+    private final List<NornNodeInfo> removed = new ArrayList<>();
+    private long epoch;
+    private boolean full;
+
+    /**
+     * Package private constructor.
+     *
+     * @param since the epoch the changes are requested for, 0 requests all nodes
+     */
+    NornDelta(final long since) {
+        super();
+        this.since = since;
+    }
+
+    /**
+     * Returns the epoch the changes are requested for.
+     *
+     * @return the requested epoch
+     */
+    long getSince() {
+        return this.since;
+    }
+
+    /**
+     * Returns the epoch of the master after all changes, 0 if no master answered.
+     *
+     * @return the current epoch
+     */
+    long getEpoch() {
+        return this.epoch;
+    }
+
+    /**
+     * Returns true if a master answered.
+     *
+     * @return true if answered
+     */
+    boolean isAnswered() {
+        return this.epoch != 0L;
+    }
+
+    /**
+     * Returns true if this delta holds all nodes the master knows, replacing all known nodes.
+     *
+     * @return true if full
+     */
+    boolean isFull() {
+        return this.full;
+    }
+
+    /**
+     * Returns all nodes added or changed since the requested epoch.
+     *
+     * @return the changed nodes
+     */
+    List<NornNodeInfo> getChanged() {
+        return this.changed;
+    }
+
+    /**
+     * Returns all nodes removed since the requested epoch.
+     *
+     * @return the removed nodes
+     */
+    List<NornNodeInfo> getRemoved() {
+        return this.removed;
+    }
+
+    /**
+     * Starts collecting the packets of the given epoch. Packets of another epoch, e.g. of a second master, are
+     * ignored afterwards.
+     *
+     * @param epoch the epoch of a received packet
+     * @param full  true if the packet belongs to a full delta
+     * @return true if the packet belongs to this delta
+     */
+    boolean accept(final long epoch, final boolean full) {
+        if (this.epoch == 0L) {
+            this.epoch = epoch;
+            this.full = full;
+            return true;
+        }
+        return this.epoch == epoch;
+    }
+}
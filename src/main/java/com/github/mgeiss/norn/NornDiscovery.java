@@ -0,0 +1,390 @@
+/**
+ * Copyright 2012 - 2013 Markus Geiss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.mgeiss.norn;
+
+import com.github.mgeiss.norn.util.NornConfiguration;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.MulticastSocket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <code>NornDiscovery</code> sends pings to a multicast group and collects the node information of all nodes that
+ * reply, until either the socket timeout elapsed or the configured <code>NornDiscoveryPolicy</code> is satisfied.
+ * <p/>
+ * The ping is retransmitted in equal intervals within the socket timeout, replies of the same node are only
+ * collected once. A client accepting group replies listens on the multicast group, receiving the replies sent to
+ * the group as well.
+ * <p/>
+ * Every ping accepts table packets, a master node may answer on behalf of all nodes it knows. A ping may request a
+ * delta instead, a master node answers with the changes since the epoch the client knows only.
+ * <p/>
+ * The configured node filter is sent within the ping, so only matching nodes reply. Replies not matching the filter,
+ * e.g. of nodes prior to filters, are dropped.
+ * <p/>
+ * The round trip time of every node replying on its own before the first retransmit is recorded, later replies may
+ * answer either ping and are dropped. The arrival time of all replies since the first ping is recorded per multicast
+ * group, a discovery with an adaptive window collects replies for the window learned from them instead of the socket
+ * timeout. A learned window that collected no reply is reported as a miss, so the next discovery waits for the
+ * maximum window again.
+ * <p/>
+ * An instance holds the state of one discovery, so it may be driven by a caller owning the channel, e.g. the
+ * selector thread of all asynchronous discoveries.
+ *
+ * @author Markus Geiss
+ * @version 2.2.0
+ * @see com.github.mgeiss.norn.NornDiscoveryPolicy
+ */
+final class NornDiscovery {
+
+    private static final long DELTA_QUIET_PERIOD = 20L;
+    private static final long MAX_RECEIVE_WAIT = 100L;
+
+    private final NornConfiguration nornConfiguration;
+    private final NornDelta delta;
+    private final String name;
+    private final NornDiscoveryListener listener;
+    private final NornReplyStatistics replyStatistics;
+    private final ByteBuffer ping;
+    private final long timeout;
+    private final long retransmitInterval;
+    private final boolean learnedWindow;
+    private final Set<String> nodeIds = new HashSet<>();
+    private final List<NornNodeInfo> received = new ArrayList<>();
+    private long deadline;
+    private int pingsLeft;
+    private long nextPing;
+    private long firstPing;
+    private boolean retransmitted;
+    private long lastReply;
+    private boolean replied;
+
+    /**
+     * Package private constructor, prepares a discovery that is driven by the caller. The ping is encoded and the
+     * window is chosen, the discovery starts with <code>start</code>.
+     *
+     * @param nornConfiguration configuration to use
+     * @param delta             the delta to collect the changes into, <code>null</code> to request no delta
+     * @param name              the name the nodes must host, <code>null</code> for any node
+     * @param listener          the listener to report nodes to, <code>null</code> for none
+     */
+    NornDiscovery(final NornConfiguration nornConfiguration, final NornDelta delta, final String name,
+                  final NornDiscoveryListener listener) {
+        super();
+        this.nornConfiguration = nornConfiguration;
+        this.delta = delta;
+        this.name = name;
+        this.listener = listener;
+        this.replyStatistics = NornReplyStatistics.of(nornConfiguration.getMulticastAddress(),
+                nornConfiguration.getMulticastPort());
+
+        this.ping = ByteBuffer.allocate(NornNodeInfoCodec.MAX_PACKET_SIZE);
+        byte flags = NornNodeInfoCodec.PING_FLAG_TABLE;
+        if (nornConfiguration.isGroupReplies()) {
+            flags |= NornNodeInfoCodec.PING_FLAG_GROUP_REPLY;
+        }
+        if (delta != null) {
+            flags |= NornNodeInfoCodec.PING_FLAG_DELTA;
+        }
+        NornNodeInfoCodec.encodePing(this.ping, flags, delta != null ? delta.getSince() : 0L,
+                nornConfiguration.getNodeFilter());
+        this.ping.flip();
+
+        long window = nornConfiguration.getSocketTimeout();
+        if (nornConfiguration.getMaxDiscoveryWindow() > 0) {
+            window = Math.min(window, this.replyStatistics.getWindow(nornConfiguration.getMinDiscoveryWindow(),
+                    nornConfiguration.getMaxDiscoveryWindow()));
+        }
+        this.learnedWindow = window < Math.min(nornConfiguration.getSocketTimeout(),
+                nornConfiguration.getMaxDiscoveryWindow());
+        this.timeout = TimeUnit.MILLISECONDS.toNanos(window);
+        this.retransmitInterval = this.timeout / (nornConfiguration.getPingRetransmits() + 1);
+    }
+
+    /**
+     * Pings the multicast group of the given <code>NornConfiguration</code> and returns the information of all nodes
+     * that replied in the order of their arrival.
+     *
+     * @param nornConfiguration configuration to use
+     * @return a list of node information, may be empty
+     * @throws java.io.IOException
+     */
+    static List<NornNodeInfo> discover(final NornConfiguration nornConfiguration)
+            throws IOException {
+        return NornDiscovery.discover(nornConfiguration, null);
+    }
+
+    /**
+     * Pings the multicast group of the given <code>NornConfiguration</code> requesting the changes since the epoch of
+     * the given delta, and returns the information of all nodes that replied on their own in the order of their
+     * arrival. The delta packets of a master node are collected into <code>delta</code>, the discovery ends shortly
+     * after the last of them arrived.
+     *
+     * @param nornConfiguration configuration to use
+     * @param delta             the delta to collect the changes into, <code>null</code> to request no delta
+     * @return a list of node information, may be empty
+     * @throws java.io.IOException
+     */
+    static List<NornNodeInfo> discover(final NornConfiguration nornConfiguration, final NornDelta delta)
+            throws IOException {
+        return NornDiscovery.discover(nornConfiguration, delta, null);
+    }
+
+    /**
+     * Pings the multicast group of the given <code>NornConfiguration</code> and returns the information of all nodes
+     * that replied and may host the given name, in the order of their arrival.
+     *
+     * @param nornConfiguration configuration to use
+     * @param delta             the delta to collect the changes into, <code>null</code> to request no delta
+     * @param name              the name the nodes must host, <code>null</code> for any node
+     * @return a list of node information, may be empty
+     * @throws java.io.IOException
+     * @see com.github.mgeiss.norn.NornNodeInfo#mayHost(String)
+     */
+    static List<NornNodeInfo> discover(final NornConfiguration nornConfiguration, final NornDelta delta,
+                                       final String name)
+            throws IOException {
+        return NornDiscovery.discover(nornConfiguration, delta, name, null);
+    }
+
+    /**
+     * Pings the multicast group of the given <code>NornConfiguration</code> and returns the information of all nodes
+     * that replied and may host the given name, in the order of their arrival. Every node is reported to the given
+     * listener as soon as it arrived. The discovery ends early, within 100 ms, if the calling thread is interrupted.
+     *
+     * @param nornConfiguration configuration to use
+     * @param delta             the delta to collect the changes into, <code>null</code> to request no delta
+     * @param name              the name the nodes must host, <code>null</code> for any node
+     * @param listener          the listener to report nodes to, <code>null</code> for none
+     * @return a list of node information, may be empty
+     * @throws java.io.IOException
+     */
+    static List<NornNodeInfo> discover(final NornConfiguration nornConfiguration, final NornDelta delta,
+                                       final String name, final NornDiscoveryListener listener)
+            throws IOException {
+        final NornDiscovery discovery = new NornDiscovery(nornConfiguration, delta, name, listener);
+        final InetAddress address = InetAddress.getByName(nornConfiguration.getMulticastAddress());
+        try (final MulticastSocket multicastSocket = nornConfiguration.isGroupReplies()
+                ? new MulticastSocket(nornConfiguration.getMulticastPort()) : new MulticastSocket()) {
+            if (nornConfiguration.isGroupReplies()) {
+                multicastSocket.joinGroup(address);
+            }
+            final DatagramPacket ping = new DatagramPacket(discovery.ping.array(), discovery.ping.limit(), address,
+                    nornConfiguration.getMulticastPort());
+
+            final byte[] messageBuffer = new byte[NornNodeInfoCodec.MAX_PACKET_SIZE];
+            final DatagramPacket message = new DatagramPacket(messageBuffer, messageBuffer.length);
+
+            discovery.start(System.nanoTime());
+            while (true) {
+                final long now = System.nanoTime();
+                if (discovery.isPingDue(now)) {
+                    multicastSocket.send(ping);
+                    discovery.pingSent(System.nanoTime());
+                }
+
+                final long wait = discovery.remainingWait(now);
+                if (wait <= 0L || Thread.currentThread().isInterrupted()) {
+                    break;
+                }
+
+                multicastSocket.setSoTimeout((int) Math.max(1L, Math.min(NornDiscovery.MAX_RECEIVE_WAIT,
+                        TimeUnit.NANOSECONDS.toMillis(wait))));
+                message.setLength(messageBuffer.length);
+                try {
+                    multicastSocket.receive(message);
+                } catch (SocketTimeoutException stex) {
+                    continue;
+                }
+                discovery.receive(messageBuffer, message.getOffset(), message.getLength(), System.nanoTime());
+            }
+        }
+
+        return discovery.received;
+    }
+
+    /**
+     * Returns the configuration of this discovery.
+     *
+     * @return the configuration
+     */
+    NornConfiguration getConfiguration() {
+        return this.nornConfiguration;
+    }
+
+    /**
+     * Returns the encoded ping, positioned at its start.
+     *
+     * @return a read-only view of the ping
+     */
+    ByteBuffer getPing() {
+        return this.ping.asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns the information of all nodes received so far, in the order of their arrival.
+     *
+     * @return the received node information, not a copy
+     */
+    List<NornNodeInfo> getReceived() {
+        return this.received;
+    }
+
+    /**
+     * Starts the window of this discovery, the first ping is due immediately.
+     *
+     * @param now the current value of <code>System.nanoTime()</code>
+     */
+    void start(final long now) {
+        this.deadline = now + this.timeout;
+        this.pingsLeft = this.nornConfiguration.getPingRetransmits() + 1;
+        this.nextPing = now;
+        this.firstPing = now;
+        this.lastReply = now;
+    }
+
+    /**
+     * Returns whether the ping or a retransmit should be sent now.
+     *
+     * @param now the current value of <code>System.nanoTime()</code>
+     * @return true if a ping is due
+     */
+    boolean isPingDue(final long now) {
+        return this.pingsLeft > 0 && now - this.nextPing >= 0L;
+    }
+
+    /**
+     * Records that the ping has been sent.
+     *
+     * @param sentAt the value of <code>System.nanoTime()</code> the ping has been sent at
+     */
+    void pingSent(final long sentAt) {
+        if (this.pingsLeft > this.nornConfiguration.getPingRetransmits()) {
+            this.firstPing = sentAt;
+        } else {
+            this.retransmitted = true;
+        }
+        this.pingsLeft--;
+        this.nextPing += this.retransmitInterval;
+    }
+
+    /**
+     * Returns the time to wait for further replies, bounded by the next retransmit. A learned window that collected
+     * no reply is reported as a miss once it ends.
+     *
+     * @param now the current value of <code>System.nanoTime()</code>
+     * @return the time to wait in nanoseconds, 0 or less if the discovery is finished
+     */
+    long remainingWait(final long now) {
+        if (now - this.deadline >= 0L) {
+            if (this.learnedWindow && !this.replied) {
+                this.replyStatistics.recordMiss();
+            }
+            return 0L;
+        }
+
+        long policyWait = this.nornConfiguration.getDiscoveryPolicy().remainingWait(this.received,
+                TimeUnit.NANOSECONDS.toMillis(now - this.lastReply));
+        if (this.delta != null && this.delta.isAnswered()) {
+            final long deltaWait = NornDiscovery.DELTA_QUIET_PERIOD
+                    - TimeUnit.NANOSECONDS.toMillis(now - this.lastReply);
+            policyWait = policyWait == NornDiscoveryPolicy.UNBOUNDED ? deltaWait : Math.min(policyWait, deltaWait);
+        }
+        if (policyWait <= 0L) {
+            return 0L;
+        }
+
+        long wait = this.deadline - now;
+        if (policyWait != NornDiscoveryPolicy.UNBOUNDED) {
+            wait = Math.min(wait, TimeUnit.MILLISECONDS.toNanos(policyWait));
+        }
+        if (this.pingsLeft > 0) {
+            wait = Math.min(wait, this.nextPing - now);
+        }
+        return Math.max(1L, wait);
+    }
+
+    /**
+     * Handles a received packet. Replies are collected, announcements of matching nodes are collected as well, delta
+     * packets are merged into the delta. All other packets are ignored.
+     *
+     * @param data    the buffer holding the packet
+     * @param offset  the offset of the packet
+     * @param length  the length of the packet
+     * @param arrival the value of <code>System.nanoTime()</code> the packet arrived at
+     */
+    void receive(final byte[] data, final int offset, final int length, final long arrival) {
+        final int type = NornNodeInfoCodec.packetType(data, offset, length);
+        if (type == NornNodeInfoCodec.TYPE_LEAVE) {
+            return;
+        }
+
+        if (type == NornNodeInfoCodec.TYPE_DELTA) {
+            if (this.delta != null) {
+                try {
+                    NornNodeInfoCodec.decodeDelta(data, offset, length, this.delta);
+                    this.lastReply = arrival;
+                    this.replied = true;
+                    if (!this.nornConfiguration.isGroupReplies()) {
+                        this.replyStatistics.record(arrival - this.firstPing);
+                    }
+                } catch (IOException ioex) {
+                    // intentionally left blank, ignore broken deltas
+                }
+            }
+            return;
+        }
+
+        final List<NornNodeInfo> nodeInfos;
+        try {
+            nodeInfos = type == NornNodeInfoCodec.TYPE_TABLE
+                    ? NornNodeInfoCodec.decodeTable(data, offset, length)
+                    : Collections.singletonList(NornNodeInfoCodec.decode(data, offset, length));
+        } catch (IOException ioex) {
+            // intentionally left blank, ignore packets that are no node information
+            return;
+        }
+
+        this.replied |= type != NornNodeInfoCodec.TYPE_ANNOUNCE;
+        if (!this.nornConfiguration.isGroupReplies() && type != NornNodeInfoCodec.TYPE_ANNOUNCE) {
+            this.replyStatistics.record(arrival - this.firstPing);
+            if (type == NornNodeInfoCodec.TYPE_NODE_INFO && !this.retransmitted) {
+                NornLatencies.getInstance().recordRoundTrip(nodeInfos.get(0).getNodeId(), arrival - this.firstPing);
+            }
+        }
+
+        final NornNodeFilter nodeFilter = this.nornConfiguration.getNodeFilter();
+        for (final NornNodeInfo nodeInfo : nodeInfos) {
+            if (nodeFilter.matches(nodeInfo) && (this.name == null || nodeInfo.mayHost(this.name))
+                    && this.nodeIds.add(nodeInfo.getNodeId())) {
+                this.received.add(nodeInfo);
+                this.lastReply = arrival;
+                if (this.listener != null) {
+                    this.listener.nodeDiscovered(nodeInfo);
+                }
+            }
+        }
+    }
+}
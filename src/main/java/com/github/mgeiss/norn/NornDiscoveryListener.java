@@ -0,0 +1,53 @@
+/**
+ * Copyright 2012 - 2013 Markus Geiss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.mgeiss.norn;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * <code>NornDiscoveryListener</code> receives the results of an asynchronous discovery as they arrive. All methods
+ * are called by the selector thread shared by all asynchronous discoveries, they should return quickly and must not
+ * block.
+ *
+ * @author Markus Geiss
+ * @version 2.2.0
+ * @see com.github.mgeiss.norn.LocateNorn#discoverAsync(com.github.mgeiss.norn.util.NornConfiguration,
+ * NornDiscoveryListener)
+ */
+public interface NornDiscoveryListener {
+
+    /**
+     * Called for every node as soon as its reply arrived, in the order of arrival. Every node is reported once.
+     *
+     * @param nodeInfo the information of the discovered node
+     */
+    void nodeDiscovered(NornNodeInfo nodeInfo);
+
+    /**
+     * Called once the discovery policy is satisfied, the socket timeout elapsed or the discovery has been cancelled.
+     *
+     * @param nodeInfos the information of all discovered nodes in the order of arrival, may be empty
+     */
+    void discoveryCompleted(List<NornNodeInfo> nodeInfos);
+
+    /**
+     * Called if the discovery failed, no further method is called afterwards.
+     *
+     * @param cause the exception that caused the discovery to fail
+     */
+    void discoveryFailed(IOException cause);
+}
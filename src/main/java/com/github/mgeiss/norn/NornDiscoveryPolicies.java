@@ -0,0 +1,208 @@
+/**
+ * Copyright 2012 - 2013 Markus Geiss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.mgeiss.norn;
+
+import com.github.mgeiss.norn.util.NornConditions;
+
+import java.util.List;
+
+/**
+ * <code>NornDiscoveryPolicies</code> provides the built-in <code>NornDiscoveryPolicy</code> implementations.
+ *
+ * @author Markus Geiss
+ * @version 2.2.0
+ * @see com.github.mgeiss.norn.NornDiscoveryPolicy
+ */
+public final class NornDiscoveryPolicies {
+
+    /**
+     * Default quiet period used by <code>quietPeriod()</code>.
+     */
+    public static final int DEFAULT_QUIET_PERIOD = 50;
+
+    private static final NornDiscoveryPolicy ALL = new NornDiscoveryPolicy() {
+
+        @Override
+        public long remainingWait(final List<NornNodeInfo> nodeInfos, final long millisSinceLastReply) {
+            return NornDiscoveryPolicy.UNBOUNDED;
+        }
+    };
+
+    private static final NornDiscoveryPolicy FIRST_REPLY = NornDiscoveryPolicies.firstReplies(1);
+
+    private static final NornDiscoveryPolicy QUIET_PERIOD =
+            NornDiscoveryPolicies.quietPeriod(NornDiscoveryPolicies.DEFAULT_QUIET_PERIOD);
+
+    private static final NornDiscoveryPolicy MASTER = new NornDiscoveryPolicy() {
+
+        @Override
+        public long remainingWait(final List<NornNodeInfo> nodeInfos, final long millisSinceLastReply) {
+            for (final NornNodeInfo nodeInfo : nodeInfos) {
+                if (nodeInfo.isMaster()) {
+                    return 0L;
+                }
+            }
+            return NornDiscoveryPolicy.UNBOUNDED;
+        }
+    };
+
+    /**
+     * Private constructor to disable public construction.
+     */
+    private NornDiscoveryPolicies() {
+        super();
+    }
+
+    /**
+     * Returns a policy that waits for the whole socket timeout, collecting every reply.
+     *
+     * @return a policy waiting for the socket timeout
+     */
+    public static NornDiscoveryPolicy all() {
+        return NornDiscoveryPolicies.ALL;
+    }
+
+    /**
+     * Returns a policy that stops as soon as the first reply has been received.
+     *
+     * @return a policy stopping on the first reply
+     */
+    public static NornDiscoveryPolicy firstReply() {
+        return NornDiscoveryPolicies.FIRST_REPLY;
+    }
+
+    /**
+     * Returns a policy that stops as soon as <code>count</code> replies have been received.
+     *
+     * @param count number of replies to wait for
+     * @return a policy stopping after <code>count</code> replies
+     * @throws java.lang.IllegalArgumentException if <code>count</code> is not valid
+     * @see com.github.mgeiss.norn.util.NornConditions#checkReplyCount(int)
+     */
+    public static NornDiscoveryPolicy firstReplies(final int count) {
+        NornConditions.checkReplyCount(count);
+
+        return new FirstRepliesPolicy(count);
+    }
+
+    /**
+     * Returns a policy that stops <tt>50 ms</tt> after the last reply has been received.
+     *
+     * @return a policy stopping after a quiet period
+     */
+    public static NornDiscoveryPolicy quietPeriod() {
+        return NornDiscoveryPolicies.QUIET_PERIOD;
+    }
+
+    /**
+     * Returns a policy that stops if no further reply has been received for <code>quietPeriod</code> milliseconds
+     * after at least one reply has been received.
+     *
+     * @param quietPeriod the quiet period in milliseconds
+     * @return a policy stopping after a quiet period
+     * @throws java.lang.IllegalArgumentException if <code>quietPeriod</code> is not valid
+     * @see com.github.mgeiss.norn.util.NornConditions#checkQuietPeriod(int)
+     */
+    public static NornDiscoveryPolicy quietPeriod(final int quietPeriod) {
+        NornConditions.checkQuietPeriod(quietPeriod);
+
+        return new QuietPeriodPolicy(quietPeriod);
+    }
+
+    /**
+     * Returns a policy that stops as soon as a master node has replied. If no master exists the socket timeout
+     * applies.
+     *
+     * @return a policy stopping on the first master reply
+     */
+    public static NornDiscoveryPolicy master() {
+        return NornDiscoveryPolicies.MASTER;
+    }
+
+    /**
+     * <code>FirstRepliesPolicy</code> stops after a number of replies. Policies waiting for the same number of replies
+     * are equal, so configurations using them share one membership.
+     */
+    private static final class FirstRepliesPolicy
+            implements NornDiscoveryPolicy {
+
+        private final int count;
+
+        private FirstRepliesPolicy(final int count) {
+            super();
+            this.count = count;
+        }
+
+        @Override
+        public long remainingWait(final List<NornNodeInfo> nodeInfos, final long millisSinceLastReply) {
+            return nodeInfos.size() < this.count ? NornDiscoveryPolicy.UNBOUNDED : 0L;
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (other == null || this.getClass() != other.getClass()) {
+                return false;
+            }
+            return this.count == ((FirstRepliesPolicy) other).count;
+        }
+
+        @Override
+        public int hashCode() {
+            return this.count;
+        }
+    }
+
+    /**
+     * <code>QuietPeriodPolicy</code> stops after a quiet period. Policies using the same quiet period are equal.
+     */
+    private static final class QuietPeriodPolicy
+            implements NornDiscoveryPolicy {
+
+        private final int quietPeriod;
+
+        private QuietPeriodPolicy(final int quietPeriod) {
+            super();
+            this.quietPeriod = quietPeriod;
+        }
+
+        @Override
+        public long remainingWait(final List<NornNodeInfo> nodeInfos, final long millisSinceLastReply) {
+            if (nodeInfos.isEmpty()) {
+                return NornDiscoveryPolicy.UNBOUNDED;
+            }
+            return this.quietPeriod - millisSinceLastReply;
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (other == null || this.getClass() != other.getClass()) {
+                return false;
+            }
+            return this.quietPeriod == ((QuietPeriodPolicy) other).quietPeriod;
+        }
+
+        @Override
+        public int hashCode() {
+            return this.quietPeriod;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+/**
+ * Copyright 2012 - 2013 Markus Geiss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.mgeiss.norn;
+
+import java.util.List;
+
+/**
+ * <code>NornDiscoveryPolicy</code> decides how long a client keeps collecting node information after it has sent a
+ * ping to the multicast group. The socket timeout is always an upper bound, a policy may only shorten the wait.
+ * <p/>
+ * Common policies are provided by <code>NornDiscoveryPolicies</code>.
+ *
+ * @author Markus Geiss
+ * @version 2.2.0
+ * @see com.github.mgeiss.norn.NornDiscoveryPolicies
+ */
+public interface NornDiscoveryPolicy {
+
+    /**
+     * Wait time signaling that the policy does not limit the wait, only the socket timeout does.
+     */
+    long UNBOUNDED = Long.MAX_VALUE;
+
+    /**
+     * Returns the number of milliseconds the client should keep waiting for further replies.
+     *
+     * @param nodeInfos            all node information received so far, never null
+     * @param millisSinceLastReply milliseconds elapsed since the last reply, or since the first ping if no reply has
+     *                             been received yet
+     * @return milliseconds to keep waiting, <code>UNBOUNDED</code> to wait for the socket timeout or 0 or less to
+     * stop immediately
+     */
+    long remainingWait(List<NornNodeInfo> nodeInfos, long millisSinceLastReply);
+}
@@ -0,0 +1,213 @@
+/**
+ * Copyright 2012 - 2013 Markus Geiss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.mgeiss.norn;
+
+import com.github.mgeiss.norn.util.NornUtility;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.rmi.NoSuchObjectException;
+import java.rmi.NotBoundException;
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.rmi.ServerError;
+import java.rmi.ServerException;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * <code>NornFailoverInvocationHandler</code> invokes all methods of a proxy on a single node and fails over to the
+ * next candidate node, in order of preference, once that node fails. The binding is looked up again on the new node
+ * and the invocation is retried there.
+ * <p/>
+ * An invocation is retried if the node could not be reached, so the invocation never got executed. Methods marked
+ * with <code>NornIdempotent</code> are also retried after any other communication failure. Exceptions thrown by the
+ * remote object itself are never retried. If the remote object of the node has been unexported or rebound, the name
+ * is looked up again on the same node first.
+ *
+ * @author Markus Geiss
+ * @version 2.2.0
+ * @see com.github.mgeiss.norn.NornNode#lookupFailover(String, Class)
+ * @see com.github.mgeiss.norn.NornIdempotent
+ */
+final class NornFailoverInvocationHandler
+        implements InvocationHandler {
+
+    private final NornNode node;
+    private final String name;
+    private volatile Target target;
+
+    /**
+     * Package private constructor.
+     *
+     * @param node the node the name has been looked up on
+     * @param name the name of the remote object
+     * @param stub the stub looked up on <code>node</code>
+     */
+    NornFailoverInvocationHandler(final NornNode node, final String name, final Remote stub) {
+        super();
+        this.node = node;
+        this.name = name;
+        this.target = new Target(node.getNodeInfo(), stub);
+    }
+
+    @Override
+    public Object invoke(final Object proxy, final Method method, final Object[] args)
+            throws Throwable {
+        if (method.getDeclaringClass() == Object.class) {
+            return this.invokeObjectMethod(proxy, method, args);
+        }
+
+        Set<String> failedNodeIds = null;
+        Target current = this.target;
+        Target renewed = null;
+        while (true) {
+            final long start = System.nanoTime();
+            try {
+                final Object result = method.invoke(current.stub, args);
+                NornLatencies.getInstance().recordCall(current.nodeInfo.getNodeId(), System.nanoTime() - start);
+                return result;
+            } catch (InvocationTargetException itex) {
+                final Throwable cause = itex.getCause();
+                if (cause instanceof NoSuchObjectException && current != renewed) {
+                    renewed = this.renew(current);
+                    if (renewed != null) {
+                        current = renewed;
+                        continue;
+                    }
+                }
+                if (!(cause instanceof RemoteException)
+                        || !NornFailoverInvocationHandler.isRetryable(method, (RemoteException) cause)) {
+                    throw cause;
+                }
+
+                if (failedNodeIds == null) {
+                    failedNodeIds = new HashSet<>();
+                }
+                failedNodeIds.add(current.nodeInfo.getNodeId());
+                if (NornUtility.isUnreachable((RemoteException) cause)) {
+                    this.node.evict(current.nodeInfo);
+                } else {
+                    this.node.invalidate(current.nodeInfo, this.name);
+                }
+
+                final Target next = this.failover(current, failedNodeIds);
+                if (next == null) {
+                    throw cause;
+                }
+                current = next;
+            }
+        }
+    }
+
+    /**
+     * Looks the name up again on the node of the given target after its stub threw a
+     * <code>NoSuchObjectException</code>. If another invocation already did so, its target is used.
+     *
+     * @param stale the target whose stub does not exist anymore
+     * @return the new target on the same node, or <code>null</code> if the name could not be looked up again
+     */
+    private synchronized Target renew(final Target stale) {
+        if (this.target != stale && this.target.nodeInfo.getNodeId().equals(stale.nodeInfo.getNodeId())) {
+            return this.target;
+        }
+
+        this.node.invalidate(stale.nodeInfo, this.name);
+        try {
+            final Target renewed = new Target(stale.nodeInfo, this.node.lookup(stale.nodeInfo, this.name));
+            if (this.target == stale) {
+                this.target = renewed;
+            }
+            return renewed;
+        } catch (RemoteException | NotBoundException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Replaces the failed target with the most preferred candidate that did not fail yet. If another invocation
+     * already failed over, its target is used.
+     *
+     * @param failed        the target that failed
+     * @param failedNodeIds the identifiers of all nodes that failed for the current invocation
+     * @return the new target, or <code>null</code> if no candidate is left
+     */
+    private synchronized Target failover(final Target failed, final Set<String> failedNodeIds) {
+        if (this.target != failed && !failedNodeIds.contains(this.target.nodeInfo.getNodeId())) {
+            return this.target;
+        }
+
+        for (final NornNodeInfo candidate : this.node.getCandidates()) {
+            if (failedNodeIds.contains(candidate.getNodeId()) || !candidate.mayHost(this.name)) {
+                continue;
+            }
+
+            try {
+                this.target = new Target(candidate, this.node.lookup(candidate, this.name));
+                return this.target;
+            } catch (RemoteException | NotBoundException ex) {
+                failedNodeIds.add(candidate.getNodeId());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns <code>true</code> if the invocation may be retried on another node. Invocations of a remote object that
+     * does not exist anymore have not been executed.
+     *
+     * @param method          the invoked method
+     * @param remoteException the exception the invocation failed with
+     * @return <code>true</code> if the invocation may be retried
+     */
+    private static boolean isRetryable(final Method method, final RemoteException remoteException) {
+        if (NornUtility.isUnreachable(remoteException) || remoteException instanceof NoSuchObjectException) {
+            return true;
+        }
+        if (remoteException instanceof ServerException || remoteException instanceof ServerError) {
+            return false;
+        }
+        return method.isAnnotationPresent(NornIdempotent.class)
+                || method.getDeclaringClass().isAnnotationPresent(NornIdempotent.class);
+    }
+
+    private Object invokeObjectMethod(final Object proxy, final Method method, final Object[] args) {
+        switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            default:
+                return "NornFailoverProxy{name=" + this.name + ", node=" + this.target.nodeInfo.getNodeId() + '}';
+        }
+    }
+
+    /**
+     * <code>Target</code> is the node invocations are sent to, together with the stub looked up on it.
+     */
+    private static final class Target {
+
+        private final NornNodeInfo nodeInfo;
+        private final Remote stub;
+
+        private Target(final NornNodeInfo nodeInfo, final Remote stub) {
+            super();
+            this.nodeInfo = nodeInfo;
+            this.stub = stub;
+        }
+    }
+}
@@ -0,0 +1,260 @@
+/**
+ * Copyright 2012 - 2013 Markus Geiss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.mgeiss.norn;
+
+import com.github.mgeiss.norn.util.NornConditions;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * <code>NornHashRing</code> maps keys to nodes by consistent hashing. Every node is placed on the ring at a number of
+ * virtual points, a key belongs to the first node found walking clockwise from the hash of the key. Adding or removing
+ * one of N nodes only moves about 1/N of all keys, so per key state stays on its node.
+ * <p/>
+ * Placement is bounded by load. A node advertising more than <code>loadBound</code> times the average load of all
+ * nodes sheds a share of its virtual points proportional to the excess, e.g. a node at twice the bound keeps half of
+ * its points. Keys of shed points move to the next node on the ring. The shed points of a node only grow with its
+ * load, so a load oscillating around the bound only moves the keys of the points shed at the peak, not all keys of
+ * the node. All clients seeing the same loads agree on the placement.
+ * <p/>
+ * The hash is computed from the characters of the node identifier and the key only, so all JVMs build the same ring.
+ * Instances are immutable.
+ *
+ * @author Markus Geiss
+ * @version 2.2.0
+ * @see com.github.mgeiss.norn.NornNode#lookup(String, String)
+ */
+public final class NornHashRing {
+
+    /**
+     * Default number of virtual points per node.
+     */
+    public static final int DEFAULT_VIRTUAL_NODES = 128;
+
+    /**
+     * Default factor of the average load a node may advertise before its keys move on.
+     */
+    public static final double DEFAULT_LOAD_BOUND = 1.25D;
+
+    private final List<NornNodeInfo> nodeInfos;
+    private final long[] points;
+    private final int[] owners;
+    private final boolean[] shed;
+    private final Set<String> nodeIds = new HashSet<>();
+    private final long createdAt = System.nanoTime();
+
+    /**
+     * Private constructor to restrict creation.
+     *
+     * @param nodeInfos    the nodes of the ring
+     * @param virtualNodes number of virtual points per node
+     * @param loadBound    factor of the average load a node may advertise
+     */
+    private NornHashRing(final List<NornNodeInfo> nodeInfos, final int virtualNodes, final double loadBound) {
+        super();
+        this.nodeInfos = Collections.unmodifiableList(new ArrayList<>(nodeInfos));
+
+        final Point[] ring = new Point[this.nodeInfos.size() * virtualNodes];
+        for (int i = 0; i < this.nodeInfos.size(); i++) {
+            final String nodeId = this.nodeInfos.get(i).getNodeId();
+            this.nodeIds.add(nodeId);
+            for (int j = 0; j < virtualNodes; j++) {
+                ring[i * virtualNodes + j] = new Point(NornHashRing.hash(nodeId + '#' + j), i, j);
+            }
+        }
+        Arrays.sort(ring);
+
+        double totalLoad = 0.0D;
+        int loaded = 0;
+        for (final NornNodeInfo nodeInfo : this.nodeInfos) {
+            if (nodeInfo.getLoad() >= 0.0D) {
+                totalLoad += nodeInfo.getLoad();
+                loaded++;
+            }
+        }
+        final double limit = loaded > 0 ? totalLoad / loaded * loadBound : 0.0D;
+
+        final int[] kept = new int[this.nodeInfos.size()];
+        for (int i = 0; i < kept.length; i++) {
+            final double load = this.nodeInfos.get(i).getLoad();
+            kept[i] = limit > 0.0D && load > limit
+                    ? Math.max(1, (int) Math.ceil(virtualNodes * limit / load)) : virtualNodes;
+        }
+
+        this.points = new long[ring.length];
+        this.owners = new int[ring.length];
+        this.shed = new boolean[ring.length];
+        for (int i = 0; i < ring.length; i++) {
+            this.points[i] = ring[i].hash;
+            this.owners[i] = ring[i].owner;
+            this.shed[i] = ring[i].index >= kept[ring[i].owner];
+        }
+    }
+
+    /**
+     * Creates a ring of the given nodes, using the default number of virtual points and load bound.
+     *
+     * @param nodeInfos the nodes of the ring
+     * @return a new ring
+     * @throws java.lang.IllegalArgumentException if <code>nodeInfos</code> is null
+     */
+    public static NornHashRing create(final List<NornNodeInfo> nodeInfos) {
+        return NornHashRing.create(nodeInfos, NornHashRing.DEFAULT_VIRTUAL_NODES, NornHashRing.DEFAULT_LOAD_BOUND);
+    }
+
+    /**
+     * Creates a ring of the given nodes.
+     *
+     * @param nodeInfos    the nodes of the ring
+     * @param virtualNodes number of virtual points per node, more points spread the keys more evenly
+     * @param loadBound    factor of the average load a node may advertise before its keys move on
+     * @return a new ring
+     * @throws java.lang.IllegalArgumentException if an argument is not valid
+     * @see com.github.mgeiss.norn.util.NornConditions#checkVirtualNodes(int)
+     * @see com.github.mgeiss.norn.util.NornConditions#checkLoadBound(double)
+     */
+    public static NornHashRing create(final List<NornNodeInfo> nodeInfos, final int virtualNodes,
+                                      final double loadBound) {
+        NornConditions.checkNotNull(nodeInfos, "nodeInfos");
+        NornConditions.checkVirtualNodes(virtualNodes);
+        NornConditions.checkLoadBound(loadBound);
+
+        return new NornHashRing(nodeInfos, virtualNodes, loadBound);
+    }
+
+    /**
+     * Returns the node the given key belongs to.
+     *
+     * @param key the key
+     * @return the node information, null if the ring is empty
+     */
+    public NornNodeInfo getNode(final String key) {
+        final List<NornNodeInfo> nodes = this.getNodes(key, 1);
+        return nodes.isEmpty() ? null : nodes.get(0);
+    }
+
+    /**
+     * Returns up to <code>count</code> distinct nodes in the order the given key moves to them, e.g. if the
+     * preferred node fails. Points shed by overloaded nodes are passed over, every node keeps at least one point.
+     *
+     * @param key   the key
+     * @param count maximum number of nodes
+     * @return a new list of node information, empty if the ring is empty
+     * @throws java.lang.IllegalArgumentException if an argument is not valid
+     * @see com.github.mgeiss.norn.util.NornConditions#checkNodeCount(int)
+     */
+    public List<NornNodeInfo> getNodes(final String key, final int count) {
+        NornConditions.checkNotNull(key, "key");
+        NornConditions.checkNodeCount(count);
+
+        final List<NornNodeInfo> nodes = new ArrayList<>(Math.min(count, this.nodeInfos.size()));
+        if (this.points.length == 0) {
+            return nodes;
+        }
+
+        final boolean[] seen = new boolean[this.nodeInfos.size()];
+        int index = Arrays.binarySearch(this.points, NornHashRing.hash(key));
+        if (index < 0) {
+            index = -index - 1;
+        }
+        for (int i = 0; i < this.points.length && nodes.size() < count; i++) {
+            final int point = (index + i) % this.points.length;
+            final int owner = this.owners[point];
+            if (!this.shed[point] && !seen[owner]) {
+                seen[owner] = true;
+                nodes.add(this.nodeInfos.get(owner));
+            }
+        }
+        return nodes;
+    }
+
+    /**
+     * Returns all nodes of this ring.
+     *
+     * @return an unmodifiable list of node information
+     */
+    public List<NornNodeInfo> getNodeInfos() {
+        return this.nodeInfos;
+    }
+
+    /**
+     * Returns true if this ring has been built from the same nodes as given and is younger than <code>maxAge</code>,
+     * so it may be used instead of building a new one.
+     *
+     * @param nodeInfos the current nodes
+     * @param maxAge    maximum age in nanoseconds
+     * @return true if this ring is current
+     */
+    boolean isCurrent(final List<NornNodeInfo> nodeInfos, final long maxAge) {
+        if (System.nanoTime() - this.createdAt >= maxAge || nodeInfos.size() != this.nodeIds.size()) {
+            return false;
+        }
+        for (final NornNodeInfo nodeInfo : nodeInfos) {
+            if (!this.nodeIds.contains(nodeInfo.getNodeId())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns a 64 bit hash of the given value, FNV-1a over its characters finished by the MurmurHash3 finalizer.
+     *
+     * @param value the value to hash
+     * @return the hash
+     */
+    private static long hash(final String value) {
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001B3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * <code>Point</code> is a virtual point of a node on the ring, points of higher index are shed first.
+     */
+    private static final class Point
+            implements Comparable<Point> {
+
+        private final long hash;
+        private final int owner;
+        private final int index;
+
+        private Point(final long hash, final int owner, final int index) {
+            super();
+            this.hash = hash;
+            this.owner = owner;
+            this.index = index;
+        }
+
+        @Override
+        public int compareTo(final Point other) {
+            return Long.compare(this.hash, other.hash);
+        }
+    }
+}
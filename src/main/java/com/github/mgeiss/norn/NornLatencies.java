@@ -0,0 +1,125 @@
+/**
+ * Copyright 2012 - 2013 Markus Geiss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.mgeiss.norn;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <code>NornLatencies</code> keeps the latencies this client observed per node, as exponentially weighted moving
+ * averages. The round trip time of discovery replies is recorded for every node replying on its own, the latency of
+ * calls for every invocation of a proxy. Calls are the better measure once known, they include the work of the node.
+ *
+ * @author Markus Geiss
+ * @version 2.2.0
+ * @see com.github.mgeiss.norn.NornNodeSelectionStrategies#latencyAware(double, double)
+ */
+final class NornLatencies {
+
+    private static final NornLatencies INSTANCE = new NornLatencies();
+    private static final double ALPHA = 0.2D;
+    private static final int MAX_NODES = 1024;
+
+    private final ConcurrentMap<String, Latency> latencies = new ConcurrentHashMap<>();
+
+    /**
+     * Private constructor to restrict creation.
+     */
+    private NornLatencies() {
+        super();
+    }
+
+    /**
+     * Returns the shared instance.
+     *
+     * @return the latencies of this client
+     */
+    static NornLatencies getInstance() {
+        return NornLatencies.INSTANCE;
+    }
+
+    /**
+     * Records the round trip time of a discovery reply.
+     *
+     * @param nodeId the identifier of the replying node
+     * @param nanos  the time between the ping and the reply in nanoseconds
+     */
+    void recordRoundTrip(final String nodeId, final long nanos) {
+        final Latency latency = this.getLatency(nodeId);
+        latency.roundTrip = NornLatencies.average(latency.roundTrip, nanos);
+    }
+
+    /**
+     * Records the latency of a call.
+     *
+     * @param nodeId the identifier of the called node
+     * @param nanos  the duration of the call in nanoseconds
+     */
+    void recordCall(final String nodeId, final long nanos) {
+        final Latency latency = this.getLatency(nodeId);
+        latency.call = NornLatencies.average(latency.call, nanos);
+    }
+
+    /**
+     * Returns the average latency of the given node in milliseconds, the call latency if calls have been recorded,
+     * else the round trip time of discovery replies.
+     *
+     * @param nodeId the identifier of a node
+     * @return the latency in milliseconds, -1 if unknown
+     */
+    double getMillis(final String nodeId) {
+        final Latency latency = this.latencies.get(nodeId);
+        if (latency == null) {
+            return -1.0D;
+        }
+        final double nanos = latency.call >= 0.0D ? latency.call : latency.roundTrip;
+        return nanos >= 0.0D ? nanos / TimeUnit.MILLISECONDS.toNanos(1L) : -1.0D;
+    }
+
+    private Latency getLatency(final String nodeId) {
+        Latency latency = this.latencies.get(nodeId);
+        if (latency == null) {
+            if (this.latencies.size() >= NornLatencies.MAX_NODES) {
+                this.latencies.clear();
+            }
+            final Latency newLatency = new Latency();
+            latency = this.latencies.putIfAbsent(nodeId, newLatency);
+            if (latency == null) {
+                latency = newLatency;
+            }
+        }
+        return latency;
+    }
+
+    private static double average(final double average, final long sample) {
+        return average < 0.0D ? sample : average + NornLatencies.ALPHA * (sample - average);
+    }
+
+    /**
+     * <code>Latency</code> holds the averages of a node. Concurrent updates may get lost, which only delays the
+     * averages a little.
+     */
+    private static final class Latency {
+
+        private volatile double roundTrip = -1.0D;
+        private volatile double call = -1.0D;
+
+        private Latency() {
+            super();
+        }
+    }
+}
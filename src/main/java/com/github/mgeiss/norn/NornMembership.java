@@ -0,0 +1,627 @@
+/**
+ * Copyright 2012 - 2013 Markus Geiss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.mgeiss.norn;
+
+import com.github.mgeiss.norn.util.NornConditions;
+import com.github.mgeiss.norn.util.NornConfiguration;
+import com.github.mgeiss.norn.util.NornThreadFactory;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.MulticastSocket;
+import java.net.SocketTimeoutException;
+import java.rmi.RemoteException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ResourceBundle;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <code>NornMembership</code> is a long-lived client side view of all nodes of a multicast group. Node information
+ * is kept with a time to live and refreshed by a background thread, so <code>getNode</code> is answered from memory.
+ * <p/>
+ * Entries are evicted when they expire or when a call to the node failed.
+ * <p/>
+ * A passive membership does not ping, it listens on the multicast group for the announcements of the nodes instead.
+ * Nodes leaving the group are evicted as soon as their leave packet arrives. Announcements of nodes not matching the
+ * configured node filter are ignored.
+ * <p/>
+ * A refresh requests the changes since the last epoch a master node reported, so in a steady cluster a master
+ * answers with an empty delta instead of the whole table.
+ * <p/>
+ * Session keys may be bound to a node by <code>getAffinityNode</code>, the membership remembers the node of the
+ * recently used keys.
+ * <p/>
+ * If stubs are cached, the cached stubs of a node are invalidated as soon as the node leaves the membership.
+ * <p/>
+ * A membership that has not been used for ten times its time to live stops itself and is dropped by
+ * <code>LocateNorn</code>, so memberships nobody refers to anymore do not keep a thread running.
+ *
+ * @author Markus Geiss
+ * @version 2.2.0
+ * @see com.github.mgeiss.norn.LocateNorn#getMembership(com.github.mgeiss.norn.util.NornConfiguration)
+ */
+public final class NornMembership {
+
+    private static final ResourceBundle messages = ResourceBundle.getBundle("norn-messages");
+    private static final int LISTEN_TIMEOUT = 1000;
+    private static final int MAX_AFFINITIES = 65536;
+    private static final long RING_MAX_AGE = TimeUnit.SECONDS.toNanos(1L);
+    private static final int MAX_IDLE_TTLS = 10;
+
+    private final NornConfiguration nornConfiguration;
+    private final NornStubCache stubCache;
+    private final ConcurrentMap<String, Member> members = new ConcurrentHashMap<>();
+    private ScheduledExecutorService refresher;
+    private boolean stopped;
+    private volatile long lastAccess = System.nanoTime();
+    private volatile MulticastSocket listenerSocket;
+    private final Map<String, String> affinities = new LinkedHashMap<String, String>(16, 0.75F, true) {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, String> eldest) {
+            return this.size() > NornMembership.MAX_AFFINITIES;
+        }
+    };
+    private volatile long epoch;
+    private volatile NornHashRing ring;
+
+    /**
+     * Package private constructor.
+     *
+     * @param nornConfiguration configuration of the multicast group
+     */
+    NornMembership(final NornConfiguration nornConfiguration) {
+        super();
+        this.nornConfiguration = nornConfiguration;
+        this.stubCache = LocateNorn.getStubCache(nornConfiguration);
+    }
+
+    /**
+     * Returns a reference to the <code>NornNode</code> chosen by the configured
+     * <code>NornNodeSelectionStrategy</code>. If no node is known yet a discovery is done in the caller thread.
+     *
+     * @return reference to the norn node
+     * @throws java.rmi.RemoteException if no node is known
+     */
+    public NornNode getNode()
+            throws RemoteException {
+        return this.getNodes(1).get(0);
+    }
+
+    /**
+     * Returns references to up to <code>count</code> nodes chosen by the configured
+     * <code>NornNodeSelectionStrategy</code>, the preferred node first. If no node is known yet a discovery is done in
+     * the caller thread.
+     *
+     * @param count maximum number of nodes
+     * @return a new list of references to norn nodes, never empty
+     * @throws java.rmi.RemoteException if no node is known
+     * @throws java.lang.IllegalArgumentException if <code>count</code> is not valid
+     * @see com.github.mgeiss.norn.util.NornConditions#checkNodeCount(int)
+     */
+    public List<NornNode> getNodes(final int count)
+            throws RemoteException {
+        return this.getNodes(null, count);
+    }
+
+    /**
+     * Returns a reference to a <code>NornNode</code> hosting the given <code>name</code>, chosen by the configured
+     * <code>NornNodeSelectionStrategy</code>. If no node hosting the name is known a discovery is done in the caller
+     * thread.
+     *
+     * @param name the name the node must host
+     * @return reference to the norn node
+     * @throws java.rmi.RemoteException if no node hosting the name is known
+     * @see com.github.mgeiss.norn.NornNodeInfo#mayHost(String)
+     */
+    public NornNode getNode(final String name)
+            throws RemoteException {
+        return this.getNodes(name, 1).get(0);
+    }
+
+    /**
+     * Returns references to up to <code>count</code> nodes hosting the given <code>name</code>, chosen by the
+     * configured <code>NornNodeSelectionStrategy</code>, the preferred node first. If no node hosting the name is
+     * known a discovery is done in the caller thread.
+     *
+     * @param name  the name the nodes must host, null for any node
+     * @param count maximum number of nodes
+     * @return a new list of references to norn nodes, never empty
+     * @throws java.rmi.RemoteException if no node hosting the name is known
+     * @throws java.lang.IllegalArgumentException if <code>count</code> is not valid
+     * @see com.github.mgeiss.norn.util.NornConditions#checkNodeCount(int)
+     */
+    public List<NornNode> getNodes(final String name, final int count)
+            throws RemoteException {
+        NornConditions.checkNodeCount(count);
+
+        List<NornNodeInfo> nodeInfos = this.getNodeInfos(name);
+        if (nodeInfos.isEmpty()) {
+            this.refresh();
+            nodeInfos = this.getNodeInfos(name);
+        }
+
+        final List<NornNodeInfo> selected =
+                this.nornConfiguration.getNodeSelectionStrategy().select(nodeInfos, count);
+        if (selected.isEmpty()) {
+            throw new RemoteException(MessageFormat.format(NornMembership.messages.getString("message.remote.no.node"),
+                    this.nornConfiguration.getMulticastAddress(),
+                    String.valueOf(this.nornConfiguration.getMulticastPort())));
+        }
+
+        final List<NornNode> nodes = new ArrayList<>(selected.size());
+        for (final NornNodeInfo nodeInfo : selected) {
+            nodes.add(new NornNode(nodeInfo, this.getRegistry(nodeInfo), this));
+        }
+        return nodes;
+    }
+
+    /**
+     * Returns a reference to the <code>NornNode</code> the given session key is bound to. The key stays bound to its
+     * node as long as the node is a member and its load does not exceed the configured affinity load, so in-memory
+     * session state is found again. Otherwise the key is bound to the next node of a consistent hash ring below the
+     * affinity load, spreading the sessions of an overloaded or departed node over the remaining nodes. If no node is
+     * known yet a discovery is done in the caller thread.
+     *
+     * @param sessionKey the session key
+     * @return reference to the norn node
+     * @throws java.rmi.RemoteException if no node is known
+     * @throws java.lang.IllegalArgumentException if <code>sessionKey</code> is null
+     * @see com.github.mgeiss.norn.util.NornConfiguration.Builder#affinityLoad(double)
+     */
+    public NornNode getAffinityNode(final String sessionKey)
+            throws RemoteException {
+        NornConditions.checkNotNull(sessionKey, "sessionKey");
+
+        List<NornNodeInfo> nodeInfos = this.getNodeInfos();
+        if (nodeInfos.isEmpty()) {
+            this.refresh();
+            nodeInfos = this.getNodeInfos();
+        }
+        if (nodeInfos.isEmpty()) {
+            throw new RemoteException(MessageFormat.format(NornMembership.messages.getString("message.remote.no.node"),
+                    this.nornConfiguration.getMulticastAddress(),
+                    String.valueOf(this.nornConfiguration.getMulticastPort())));
+        }
+
+        final double affinityLoad = this.nornConfiguration.getAffinityLoad();
+        NornNodeInfo affinityNode = null;
+        synchronized (this.affinities) {
+            final String nodeId = this.affinities.get(sessionKey);
+            if (nodeId != null) {
+                for (final NornNodeInfo nodeInfo : nodeInfos) {
+                    if (nodeInfo.getNodeId().equals(nodeId) && nodeInfo.getLoad() <= affinityLoad) {
+                        affinityNode = nodeInfo;
+                        break;
+                    }
+                }
+            }
+            if (affinityNode == null) {
+                affinityNode = this.rebalance(sessionKey, nodeInfos, affinityLoad);
+                this.affinities.put(sessionKey, affinityNode.getNodeId());
+            }
+        }
+
+        return new NornNode(affinityNode, this.getRegistry(affinityNode), this);
+    }
+
+    /**
+     * Releases the node the given session key is bound to, e.g. because the session ended.
+     *
+     * @param sessionKey the session key
+     */
+    public void releaseAffinity(final String sessionKey) {
+        synchronized (this.affinities) {
+            this.affinities.remove(sessionKey);
+        }
+    }
+
+    /**
+     * Returns a snapshot of all node information that did not expire yet.
+     *
+     * @return a new list of node information, may be empty
+     */
+    public List<NornNodeInfo> getNodeInfos() {
+        return this.getNodeInfos(null);
+    }
+
+    /**
+     * Returns a snapshot of all node information that did not expire yet and may host the given name.
+     *
+     * @param name the name the nodes must host, null for any node
+     * @return a new list of node information, may be empty
+     */
+    public List<NornNodeInfo> getNodeInfos(final String name) {
+        final long now = System.nanoTime();
+        this.lastAccess = now;
+
+        final ArrayList<NornNodeInfo> nodeInfos = new ArrayList<>(this.members.size());
+        for (final Member member : this.members.values()) {
+            final NornNodeInfo nodeInfo = member.nodeInfo;
+            if (now - member.expiresAt < 0L && (name == null || nodeInfo.mayHost(name))) {
+                nodeInfos.add(nodeInfo);
+            }
+        }
+        return nodeInfos;
+    }
+
+    /**
+     * Removes the given node from this membership, e.g. because a call to it failed. The node will be added again if
+     * it replies to a later refresh.
+     *
+     * @param nodeInfo the node to evict
+     */
+    public void evict(final NornNodeInfo nodeInfo) {
+        this.remove(nodeInfo.getNodeId());
+        this.epoch = 0L;
+    }
+
+    /**
+     * Pings the multicast group and merges all replies into this membership. The delta of a master node is applied,
+     * renewing all entries it did not remove. Expired entries are evicted.
+     *
+     * @throws java.rmi.RemoteException if the discovery failed
+     */
+    public void refresh()
+            throws RemoteException {
+        final NornDelta delta = new NornDelta(this.epoch);
+        final List<NornNodeInfo> nodeInfos;
+        try {
+            nodeInfos = NornDiscovery.discover(this.nornConfiguration, delta);
+        } catch (IOException ex) {
+            throw new RemoteException(ex.getMessage(), ex);
+        }
+
+        final long now = System.nanoTime();
+        final long expiresAt = now + TimeUnit.MILLISECONDS.toNanos(this.nornConfiguration.getMembershipTtl());
+        if (delta.isAnswered()) {
+            this.apply(delta, expiresAt);
+        }
+        for (final NornNodeInfo nodeInfo : nodeInfos) {
+            this.merge(nodeInfo, expiresAt);
+        }
+        this.expire(now);
+    }
+
+    /**
+     * Chooses a new node for the given session key, the first node of the hash ring not exceeding the affinity load,
+     * or the first node at all if every node exceeds it. The ring may be up to a second old, so the loads are taken
+     * from the current members.
+     *
+     * @param sessionKey   the session key
+     * @param nodeInfos    all current members, not empty
+     * @param affinityLoad the load a node may carry
+     * @return the chosen node
+     */
+    private NornNodeInfo rebalance(final String sessionKey, final List<NornNodeInfo> nodeInfos,
+                                   final double affinityLoad) {
+        NornHashRing currentRing = this.ring;
+        if (currentRing == null || !currentRing.isCurrent(nodeInfos, NornMembership.RING_MAX_AGE)) {
+            currentRing = NornHashRing.create(nodeInfos);
+            this.ring = currentRing;
+        }
+
+        final Map<String, NornNodeInfo> members = new HashMap<>();
+        for (final NornNodeInfo nodeInfo : nodeInfos) {
+            members.put(nodeInfo.getNodeId(), nodeInfo);
+        }
+
+        final List<NornNodeInfo> ranked = currentRing.getNodes(sessionKey, nodeInfos.size());
+        for (final NornNodeInfo rankedInfo : ranked) {
+            final NornNodeInfo nodeInfo = members.get(rankedInfo.getNodeId());
+            if (nodeInfo.getLoad() <= affinityLoad) {
+                return nodeInfo;
+            }
+        }
+        return members.get(ranked.get(0).getNodeId());
+    }
+
+    /**
+     * Returns the configuration of this membership.
+     *
+     * @return the configuration
+     */
+    public NornConfiguration getConfiguration() {
+        return this.nornConfiguration;
+    }
+
+    /**
+     * Starts the background refresh, or listening for announcements if this membership is passive, and marks this
+     * membership as used.
+     *
+     * @return false if this membership has been stopped and must not be used anymore
+     */
+    synchronized boolean start() {
+        if (this.stopped) {
+            return false;
+        }
+        this.lastAccess = System.nanoTime();
+
+        if (this.refresher == null) {
+            this.refresher = Executors.newSingleThreadScheduledExecutor(new NornThreadFactory("norn-membership"));
+
+            if (this.nornConfiguration.isPassiveMembership()) {
+                this.refresher.execute(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        NornMembership.this.listen();
+                    }
+                });
+                return true;
+            }
+
+            final int refreshInterval = this.nornConfiguration.getMembershipRefreshInterval();
+            this.refresher.scheduleWithFixedDelay(new Runnable() {
+
+                @Override
+                public void run() {
+                    if (NornMembership.this.stopIfIdle(System.nanoTime())) {
+                        return;
+                    }
+                    try {
+                        NornMembership.this.refresh();
+                    } catch (RemoteException rex) {
+                        // intentionally left blank, entries expire if the group stays unreachable
+                    }
+                }
+            }, refreshInterval, refreshInterval, TimeUnit.MILLISECONDS);
+        }
+        return true;
+    }
+
+    /**
+     * Stops the background refresh or listening for announcements and removes this membership from
+     * <code>LocateNorn</code>, the next <code>getMembership</code> creates a new one. All known entries are kept until
+     * they expire.
+     */
+    public synchronized void stop() {
+        this.stopped = true;
+        LocateNorn.release(this);
+
+        if (this.refresher != null) {
+            this.refresher.shutdownNow();
+            this.refresher = null;
+        }
+
+        final MulticastSocket socket = this.listenerSocket;
+        if (socket != null) {
+            this.listenerSocket = null;
+            socket.close();
+        }
+    }
+
+    /**
+     * Stops this membership if it has not been used for ten times its time to live.
+     *
+     * @param now the current value of <code>System.nanoTime()</code>
+     * @return true if this membership is stopped
+     */
+    synchronized boolean stopIfIdle(final long now) {
+        final long maxIdle = TimeUnit.MILLISECONDS.toNanos(this.nornConfiguration.getMembershipTtl())
+                * NornMembership.MAX_IDLE_TTLS;
+        if (!this.stopped && now - this.lastAccess - maxIdle >= 0L) {
+            this.stop();
+        }
+        return this.stopped;
+    }
+
+    /**
+     * Listens on the multicast group and merges all announcements and replies into this membership, until the
+     * membership is stopped.
+     */
+    private void listen() {
+        try (final MulticastSocket socket = new MulticastSocket(this.nornConfiguration.getMulticastPort())) {
+            this.listenerSocket = socket;
+            socket.joinGroup(InetAddress.getByName(this.nornConfiguration.getMulticastAddress()));
+            socket.setSoTimeout(NornMembership.LISTEN_TIMEOUT);
+
+            final byte[] messageBuffer = new byte[NornNodeInfoCodec.MAX_PACKET_SIZE];
+            final DatagramPacket message = new DatagramPacket(messageBuffer, messageBuffer.length);
+            final long ttl = TimeUnit.MILLISECONDS.toNanos(this.nornConfiguration.getMembershipTtl());
+            final long expireInterval = TimeUnit.MILLISECONDS.toNanos(NornMembership.LISTEN_TIMEOUT);
+            long nextExpiry = System.nanoTime() + expireInterval;
+
+            while (!Thread.currentThread().isInterrupted() && this.listenerSocket == socket) {
+                message.setLength(messageBuffer.length);
+                try {
+                    socket.receive(message);
+                    this.receive(messageBuffer, message.getOffset(), message.getLength(), ttl);
+                } catch (SocketTimeoutException stex) {
+                    // intentionally left blank, expired entries are evicted below
+                }
+
+                final long now = System.nanoTime();
+                if (now - nextExpiry >= 0L) {
+                    if (this.stopIfIdle(now)) {
+                        break;
+                    }
+                    this.expire(now);
+                    nextExpiry = now + expireInterval;
+                }
+            }
+        } catch (IOException ioex) {
+            // intentionally left blank, the membership has been stopped or the group could not be joined
+        }
+    }
+
+    /**
+     * Merges a received announcement, reply or table, or evicts the node of a received leave packet. Pings and unknown
+     * packets are ignored.
+     *
+     * @param data   the received data
+     * @param offset the offset of the packet within <code>data</code>
+     * @param length the length of the packet
+     * @param ttl    the time to live of an entry in nanoseconds
+     */
+    private void receive(final byte[] data, final int offset, final int length, final long ttl) {
+        final int type = NornNodeInfoCodec.packetType(data, offset, length);
+        if (type == NornNodeInfoCodec.TYPE_TABLE) {
+            try {
+                final long expiresAt = System.nanoTime() + ttl;
+                for (final NornNodeInfo nodeInfo : NornNodeInfoCodec.decodeTable(data, offset, length)) {
+                    if (this.nornConfiguration.getNodeFilter().matches(nodeInfo)) {
+                        this.merge(nodeInfo, expiresAt);
+                    }
+                }
+            } catch (IOException ioex) {
+                // intentionally left blank, ignore broken tables
+            }
+            return;
+        }
+        if (type != NornNodeInfoCodec.TYPE_NODE_INFO && type != NornNodeInfoCodec.TYPE_ANNOUNCE
+                && type != NornNodeInfoCodec.TYPE_LEAVE) {
+            return;
+        }
+
+        final NornNodeInfo nodeInfo;
+        try {
+            nodeInfo = NornNodeInfoCodec.decode(data, offset, length);
+        } catch (IOException ioex) {
+            // intentionally left blank, ignore packets that are no node information
+            return;
+        }
+
+        if (type == NornNodeInfoCodec.TYPE_LEAVE) {
+            this.evict(nodeInfo);
+        } else if (this.nornConfiguration.getNodeFilter().matches(nodeInfo)) {
+            this.merge(nodeInfo, System.nanoTime() + ttl);
+        }
+    }
+
+    /**
+     * Applies the delta of a master node. A full delta replaces all entries, otherwise removed nodes are evicted and
+     * changed nodes merged. All remaining entries are renewed, the master vouches for them.
+     *
+     * @param delta     the answered delta
+     * @param expiresAt the value of <code>System.nanoTime()</code> the entries expire at
+     */
+    private void apply(final NornDelta delta, final long expiresAt) {
+        if (delta.isFull()) {
+            final Set<String> nodeIds = new HashSet<>();
+            for (final NornNodeInfo nodeInfo : delta.getChanged()) {
+                nodeIds.add(nodeInfo.getNodeId());
+            }
+            for (final String nodeId : this.members.keySet()) {
+                if (!nodeIds.contains(nodeId)) {
+                    this.remove(nodeId);
+                }
+            }
+        }
+        for (final NornNodeInfo nodeInfo : delta.getRemoved()) {
+            this.remove(nodeInfo.getNodeId());
+        }
+        for (final NornNodeInfo nodeInfo : delta.getChanged()) {
+            this.merge(nodeInfo, expiresAt);
+        }
+        for (final Member member : this.members.values()) {
+            member.expiresAt = expiresAt;
+        }
+        this.epoch = delta.getEpoch();
+    }
+
+    private void merge(final NornNodeInfo nodeInfo, final long expiresAt) {
+        final Member member = this.members.get(nodeInfo.getNodeId());
+        if (member != null) {
+            member.nodeInfo = nodeInfo;
+            member.expiresAt = expiresAt;
+        } else {
+            this.members.put(nodeInfo.getNodeId(), new Member(nodeInfo, expiresAt));
+        }
+    }
+
+    private void expire(final long now) {
+        for (final Member member : this.members.values()) {
+            if (now - member.expiresAt >= 0L && this.members.remove(member.nodeInfo.getNodeId(), member)) {
+                this.invalidate(member.nodeInfo.getNodeId());
+            }
+        }
+    }
+
+    private void remove(final String nodeId) {
+        this.members.remove(nodeId);
+        this.invalidate(nodeId);
+    }
+
+    private void invalidate(final String nodeId) {
+        if (this.stubCache != null) {
+            this.stubCache.invalidate(nodeId);
+        }
+    }
+
+    /**
+     * Returns the cache of looked up stubs shared with all clients using the configuration of this membership.
+     *
+     * @return the stub cache, null if stubs are not cached
+     */
+    NornStubCache getStubCache() {
+        return this.stubCache;
+    }
+
+    /**
+     * Returns the cached registry stub of the given node.
+     *
+     * @param nodeInfo the node
+     * @return a registry stub
+     * @throws java.rmi.RemoteException
+     */
+    Registry getRegistry(final NornNodeInfo nodeInfo)
+            throws RemoteException {
+        final Member member = this.members.get(nodeInfo.getNodeId());
+        if (member == null) {
+            return LocateRegistry.getRegistry(nodeInfo.getRegistryAddress(), nodeInfo.getRegistryPort());
+        }
+
+        Registry registry = member.registry;
+        if (registry == null) {
+            registry = LocateRegistry.getRegistry(nodeInfo.getRegistryAddress(), nodeInfo.getRegistryPort());
+            member.registry = registry;
+        }
+        return registry;
+    }
+
+    /**
+     * <code>Member</code> is a single entry of the membership.
+     */
+    private static final class Member {
+
+        private volatile NornNodeInfo nodeInfo;
+        private volatile long expiresAt;
+        private volatile Registry registry;
+
+        private Member(final NornNodeInfo nodeInfo, final long expiresAt) {
+            super();
+            this.nodeInfo = nodeInfo;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
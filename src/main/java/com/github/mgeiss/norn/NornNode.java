@@ -15,8 +15,29 @@
  */
 package com.github.mgeiss.norn;
 
+import com.github.mgeiss.norn.util.NornConditions;
+import com.github.mgeiss.norn.util.NornConfiguration;
+import com.github.mgeiss.norn.util.NornLoadSampler;
+import com.github.mgeiss.norn.util.NornThreadFactory;
+import com.github.mgeiss.norn.util.NornUtility;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
 import java.rmi.*;
+import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * <code>NornNode</code> is a reference to a node that provides methods for storing and retrieving remote object
@@ -24,7 +45,7 @@ import java.rmi.registry.Registry;
  * methods are used to alter the name bindings in the registry, and the <code>lookup</code> and <code>list</code>
  * methods are used to query the current name bindings.
  * <p/>
- * <code>start</code> is used to start the multicast listener thread and <code>stop</code> will stop it.
+ * <code>start</code> is used to start answering pings on the multicast group and <code>stop</code> will stop it.
  * <p/>
  * <p>The names used for bindings in a <code>Registry</code> are pure strings, not parsed. A service which stores
  * its remote reference in a <code>NornNode</code> may wish to use a package name as a prefix in the name
@@ -33,14 +54,27 @@ import java.rmi.registry.Registry;
  * <p>Note that <code>NornNode</code> uses a remote object registry to delegate all remote object handling.
  *
  * @author Markus Geiss
- * @version 1.0.0
+ * @version 2.2.0
  * @see java.rmi.registry.Registry
  */
 public final class NornNode {
 
+    private static final ResourceBundle messages = ResourceBundle.getBundle("norn-messages");
+    private static final long RING_MAX_AGE = TimeUnit.SECONDS.toNanos(1L);
+    private static final long RECONCILE_INTERVAL = 1000L;
+
     private final Registry registry;
     private final NornNodeInfo nodeInfo;
-    private final NornNodeThread nodeThread;
+    private final NornLoadSampler loadSampler;
+    private final NornConfiguration nornConfiguration;
+    private final NornMembership membership;
+    private final List<NornNodeInfo> candidates;
+    private final NornStubCache stubCache;
+    private final ConcurrentMap<String, NornHashRing> rings = new ConcurrentHashMap<>();
+    private ScheduledExecutorService scheduler;
+    private volatile NornResponderStatistics responderStatistics;
+    private volatile NornRegistry nornRegistry;
+    private volatile boolean plainRegistry;
 
     /**
      * Trusted package private constructor.
@@ -49,7 +83,31 @@ public final class NornNode {
      * @param registry the remote object registry to be used.
      */
     NornNode(final NornNodeInfo nodeInfo, final Registry registry) {
-        this(nodeInfo, registry, null);
+        this(nodeInfo, registry, null, null, null, null, null);
+    }
+
+    /**
+     * Trusted package private constructor.
+     *
+     * @param nodeInfo   node information for this node.
+     * @param registry   the remote object registry to be used.
+     * @param candidates all nodes discovered together with this node, the preferred node first.
+     */
+    NornNode(final NornNodeInfo nodeInfo, final Registry registry, final List<NornNodeInfo> candidates) {
+        this(nodeInfo, registry, null, null, null, candidates, null);
+    }
+
+    /**
+     * Trusted package private constructor.
+     *
+     * @param nodeInfo   node information for this node.
+     * @param registry   the remote object registry to be used.
+     * @param candidates all nodes discovered together with this node, the preferred node first.
+     * @param stubCache  the cache of looked up stubs, null if stubs are not cached.
+     */
+    NornNode(final NornNodeInfo nodeInfo, final Registry registry, final List<NornNodeInfo> candidates,
+             final NornStubCache stubCache) {
+        this(nodeInfo, registry, null, null, null, candidates, stubCache);
     }
 
     /**
@@ -57,13 +115,49 @@ public final class NornNode {
      *
      * @param nodeInfo   node information for this node.
      * @param registry   the remote object registry to be used.
-     * @param nodeThread the multicast listener thread that accepts all requests.
+     * @param membership the membership this node has been taken from.
      */
-    NornNode(final NornNodeInfo nodeInfo, final Registry registry, final NornNodeThread nodeThread) {
+    NornNode(final NornNodeInfo nodeInfo, final Registry registry, final NornMembership membership) {
+        this(nodeInfo, registry, null, null, membership, null, membership.getStubCache());
+    }
+
+    /**
+     * Trusted package private constructor.
+     *
+     * @param nodeInfo          node information for this node.
+     * @param registry          the remote object registry to be used.
+     * @param loadSampler       the sampler measuring the load of this node.
+     * @param nornConfiguration the configuration this node has been created with.
+     */
+    NornNode(final NornNodeInfo nodeInfo, final Registry registry, final NornLoadSampler loadSampler,
+             final NornConfiguration nornConfiguration) {
+        this(nodeInfo, registry, loadSampler, nornConfiguration, null, null, null);
+    }
+
+    /**
+     * Trusted private constructor.
+     *
+     * @param nodeInfo          node information for this node.
+     * @param registry          the remote object registry to be used.
+     * @param loadSampler       the sampler measuring the load of this node.
+     * @param nornConfiguration the configuration this node has been created with.
+     * @param membership        the membership this node has been taken from.
+     * @param candidates        all nodes discovered together with this node, the preferred node first.
+     * @param stubCache         the cache of looked up stubs, null if stubs are not cached.
+     */
+    private NornNode(final NornNodeInfo nodeInfo, final Registry registry, final NornLoadSampler loadSampler,
+                     final NornConfiguration nornConfiguration, final NornMembership membership,
+                     final List<NornNodeInfo> candidates, final NornStubCache stubCache) {
         super();
         this.nodeInfo = nodeInfo;
         this.registry = registry;
-        this.nodeThread = nodeThread;
+        this.loadSampler = loadSampler;
+        this.nornConfiguration = nornConfiguration;
+        this.membership = membership;
+        this.candidates = candidates != null && !candidates.isEmpty()
+                ? Collections.unmodifiableList(new ArrayList<>(candidates))
+                : Collections.singletonList(nodeInfo);
+        this.stubCache = stubCache;
     }
 
     /**
@@ -77,7 +171,40 @@ public final class NornNode {
      */
     public void bind(final String name, final Remote obj)
             throws RemoteException, AlreadyBoundException, AccessException {
-        this.registry.bind(name, obj);
+        try {
+            this.registry.bind(name, obj);
+            this.invalidate(name);
+            this.publishBoundNames();
+        } catch (RemoteException rex) {
+            this.evictIfUnreachable(rex);
+            throw rex;
+        }
+    }
+
+    /**
+     * Binds a remote reference to the specified <code>name</code> in this node, together with the given metadata.
+     * Only nodes created by <code>LocateNorn.createNode</code> keep metadata.
+     *
+     * @param name   the name to associate with the remote reference
+     * @param obj    a reference to a remote object
+     * @param weight the weight of the binding, e.g. its share of the calls
+     * @param tags   the tags of the binding, e.g. its interface version
+     * @throws java.rmi.RemoteException if this node does not keep metadata or the registry failed
+     * @throws java.rmi.AlreadyBoundException
+     * @throws java.rmi.AccessException
+     * @throws java.lang.IllegalArgumentException if an argument is not valid
+     * @see com.github.mgeiss.norn.NornRegistry
+     */
+    public void bind(final String name, final Remote obj, final double weight, final Map<String, String> tags)
+            throws RemoteException, AlreadyBoundException, AccessException {
+        try {
+            this.getNornRegistry().bind(name, obj, weight, tags);
+            this.invalidate(name);
+            this.publishBoundNames();
+        } catch (RemoteException rex) {
+            this.evictIfUnreachable(rex);
+            throw rex;
+        }
     }
 
     /**
@@ -90,7 +217,14 @@ public final class NornNode {
      */
     public void unbind(final String name)
             throws RemoteException, NotBoundException, AccessException {
-        this.registry.unbind(name);
+        try {
+            this.registry.unbind(name);
+            this.invalidate(name);
+            this.publishBoundNames();
+        } catch (RemoteException rex) {
+            this.evictIfUnreachable(rex);
+            throw rex;
+        }
     }
 
     /**
@@ -104,11 +238,44 @@ public final class NornNode {
      */
     public void rebind(final String name, final Remote obj)
             throws RemoteException, AccessException {
-        this.registry.rebind(name, obj);
+        try {
+            this.registry.rebind(name, obj);
+            this.invalidate(name);
+            this.publishBoundNames();
+        } catch (RemoteException rex) {
+            this.evictIfUnreachable(rex);
+            throw rex;
+        }
+    }
+
+    /**
+     * Replaces the binding for the specified <code>name</code> in this node with the supplied remote reference and
+     * metadata. Only nodes created by <code>LocateNorn.createNode</code> keep metadata.
+     *
+     * @param name   the name to associate with the remote reference
+     * @param obj    a reference to a remote object
+     * @param weight the weight of the binding, e.g. its share of the calls
+     * @param tags   the tags of the binding, e.g. its interface version
+     * @throws java.rmi.RemoteException if this node does not keep metadata or the registry failed
+     * @throws java.rmi.AccessException
+     * @throws java.lang.IllegalArgumentException if an argument is not valid
+     * @see com.github.mgeiss.norn.NornRegistry
+     */
+    public void rebind(final String name, final Remote obj, final double weight, final Map<String, String> tags)
+            throws RemoteException, AccessException {
+        try {
+            this.getNornRegistry().rebind(name, obj, weight, tags);
+            this.invalidate(name);
+            this.publishBoundNames();
+        } catch (RemoteException rex) {
+            this.evictIfUnreachable(rex);
+            throw rex;
+        }
     }
 
     /**
-     * Returns the remote reference bound to the specified <code>name</code> in this node.
+     * Returns the remote reference bound to the specified <code>name</code> in this node. If stubs are cached the
+     * reference may be answered from the cache.
      *
      * @param name the name to associate with the remote reference
      * @return a reference to a remote object
@@ -118,7 +285,279 @@ public final class NornNode {
      */
     public Remote lookup(final String name)
             throws RemoteException, NotBoundException, AccessException {
-        return this.registry.lookup(name);
+        try {
+            return this.lookup(this.nodeInfo, name);
+        } catch (RemoteException rex) {
+            this.evictIfUnreachable(rex);
+            throw rex;
+        }
+    }
+
+    /**
+     * Returns the remote reference bound to the specified <code>name</code> on the node the given <code>key</code>
+     * belongs to, so all lookups of the same key reach the same node as long as it is known and not overloaded. Keys
+     * are spread over all known nodes hosting the name by a consistent hash ring, adding or removing a node only
+     * moves the keys of that node. If the node can not be reached the key moves on to the next node of the ring.
+     *
+     * @param name the name to associate with the remote reference
+     * @param key  the key to route by, e.g. a session or an entity identifier
+     * @return a reference to a remote object
+     * @throws java.rmi.RemoteException
+     * @throws java.rmi.NotBoundException
+     * @throws java.rmi.AccessException
+     * @see com.github.mgeiss.norn.NornHashRing
+     */
+    public Remote lookup(final String name, final String key)
+            throws RemoteException, NotBoundException, AccessException {
+        NornConditions.checkNotNull(name, "name");
+        NornConditions.checkNotNull(key, "key");
+
+        final List<NornNodeInfo> targets = this.getRing(name).getNodes(key, Integer.MAX_VALUE);
+        if (targets.isEmpty()) {
+            return this.lookup(name);
+        }
+
+        RemoteException lastException = null;
+        for (final NornNodeInfo target : targets) {
+            try {
+                return this.lookup(target, name);
+            } catch (RemoteException rex) {
+                if (!NornUtility.isUnreachable(rex)) {
+                    throw rex;
+                }
+                this.evict(target);
+                lastException = rex;
+            }
+        }
+        throw lastException;
+    }
+
+    /**
+     * Returns the remote references bound to all specified <code>names</code> in this node, with a single remote
+     * call if this node provides a <code>NornRegistry</code>, else one call per name. If stubs are cached the returned
+     * references are cached, too.
+     *
+     * @param names the names to look up
+     * @return a new map of the names to their remote references, in the order of <code>names</code>
+     * @throws java.rmi.RemoteException
+     * @throws java.rmi.NotBoundException if one of the names is not bound
+     * @throws java.rmi.AccessException
+     * @see com.github.mgeiss.norn.NornRegistry#lookupAll(String...)
+     */
+    public Map<String, Remote> lookupAll(final String... names)
+            throws RemoteException, NotBoundException, AccessException {
+        NornConditions.checkNotNull(names, "names");
+
+        try {
+            final NornRegistry nornRegistry = this.findNornRegistry();
+            final Map<String, Remote> stubs;
+            if (nornRegistry != null) {
+                stubs = nornRegistry.lookupAll(names);
+            } else {
+                stubs = new LinkedHashMap<>();
+                for (final String name : names) {
+                    stubs.put(name, this.registry.lookup(name));
+                }
+            }
+
+            if (this.stubCache != null) {
+                this.stubCache.putAll(this.nodeInfo, this.registry, stubs);
+            }
+            return stubs;
+        } catch (RemoteException rex) {
+            this.evictIfUnreachable(rex);
+            throw rex;
+        }
+    }
+
+    /**
+     * Binds all given remote references to their names in this node, with a single remote call if this node
+     * provides a <code>NornRegistry</code>. A <code>NornRegistry</code> binds either all or none of the names, a
+     * plain registry binds them one by one and stops at the first name already bound.
+     *
+     * @param bindings the names and the remote references to bind
+     * @throws java.rmi.RemoteException
+     * @throws java.rmi.AlreadyBoundException if one of the names is already bound
+     * @throws java.rmi.AccessException
+     * @throws java.lang.IllegalArgumentException if an argument is not valid
+     * @see com.github.mgeiss.norn.NornRegistry#bindAll(java.util.Map)
+     */
+    public void bindAll(final Map<String, ? extends Remote> bindings)
+            throws RemoteException, AlreadyBoundException, AccessException {
+        NornConditions.checkNotNull(bindings, "bindings");
+
+        try {
+            final NornRegistry nornRegistry = this.findNornRegistry();
+            if (nornRegistry != null) {
+                nornRegistry.bindAll(bindings);
+            } else {
+                for (final Map.Entry<String, ? extends Remote> binding : bindings.entrySet()) {
+                    this.registry.bind(binding.getKey(), binding.getValue());
+                }
+            }
+            for (final String name : bindings.keySet()) {
+                this.invalidate(name);
+            }
+            this.publishBoundNames();
+        } catch (RemoteException rex) {
+            this.evictIfUnreachable(rex);
+            throw rex;
+        }
+    }
+
+    /**
+     * Returns all names bound in this node together with their remote references, with a single remote call if this
+     * node provides a <code>NornRegistry</code>, else one call per name.
+     *
+     * @return a new map of the names to their remote references
+     * @throws java.rmi.RemoteException
+     * @throws java.rmi.AccessException
+     * @see com.github.mgeiss.norn.NornRegistry#snapshot()
+     */
+    public Map<String, Remote> snapshot()
+            throws RemoteException, AccessException {
+        try {
+            final NornRegistry nornRegistry = this.findNornRegistry();
+            if (nornRegistry != null) {
+                return nornRegistry.snapshot();
+            }
+
+            final Map<String, Remote> stubs = new LinkedHashMap<>();
+            for (final String name : this.registry.list()) {
+                try {
+                    stubs.put(name, this.registry.lookup(name));
+                } catch (NotBoundException nbex) {
+                    // intentionally left blank, the name has been unbound meanwhile
+                }
+            }
+            return stubs;
+        } catch (RemoteException rex) {
+            this.evictIfUnreachable(rex);
+            throw rex;
+        }
+    }
+
+    /**
+     * Returns the binding of the specified <code>name</code> in this node, the remote reference together with its
+     * version, weight and tags. Only nodes created by <code>LocateNorn.createNode</code> keep metadata.
+     *
+     * @param name the name to associate with the remote reference
+     * @return the binding
+     * @throws java.rmi.RemoteException if this node does not keep metadata or the registry failed
+     * @throws java.rmi.NotBoundException
+     * @throws java.rmi.AccessException
+     * @see com.github.mgeiss.norn.NornRegistry
+     */
+    public NornBinding getBinding(final String name)
+            throws RemoteException, NotBoundException, AccessException {
+        try {
+            return this.getNornRegistry().getBinding(name);
+        } catch (RemoteException rex) {
+            this.evictIfUnreachable(rex);
+            throw rex;
+        }
+    }
+
+    /**
+     * Returns all changes of the bindings in this node since the given version, waiting up to <code>timeout</code>
+     * milliseconds for a change if there is none yet. Passing the version of the returned changes to the next call
+     * watches the bindings without missing a change. Cached stubs of changed names are invalidated.
+     *
+     * @param version the version of the registry the caller knows, 0 for all bindings
+     * @param timeout the time to wait for a change in milliseconds, 0 to return immediately
+     * @return the changes, empty if none happened within the timeout
+     * @throws java.rmi.RemoteException if this node does not keep metadata or the registry failed
+     * @throws java.rmi.AccessException
+     * @throws java.lang.IllegalArgumentException if <code>timeout</code> is not valid
+     * @see com.github.mgeiss.norn.NornRegistry#watch(long, int)
+     */
+    public NornRegistryChanges watch(final long version, final int timeout)
+            throws RemoteException, AccessException {
+        final NornRegistryChanges changes;
+        try {
+            changes = this.getNornRegistry().watch(version, timeout);
+        } catch (RemoteException rex) {
+            this.evictIfUnreachable(rex);
+            throw rex;
+        }
+
+        if (this.stubCache != null) {
+            if (changes.isFull()) {
+                this.stubCache.invalidate(this.nodeInfo.getNodeId());
+            } else {
+                for (final NornRegistryEvent event : changes.getEvents()) {
+                    this.stubCache.invalidate(this.nodeInfo.getNodeId(), event.getName());
+                }
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * Removes the remote reference bound to the specified <code>name</code> in this node from the stub cache, e.g.
+     * because the name has been rebound bypassing this node. The next lookup of the name calls the registry. A cached
+     * stub throwing a <code>NoSuchObjectException</code> is removed by the cache itself.
+     *
+     * @param name the name to associate with the remote reference
+     * @see com.github.mgeiss.norn.util.NornConfiguration.Builder#stubCacheTtl(int)
+     */
+    public void invalidate(final String name) {
+        this.invalidate(this.nodeInfo, name);
+    }
+
+    /**
+     * Returns a proxy for the remote reference bound to the specified <code>name</code>, spreading all invocations
+     * over every known node the name is bound on. Each invocation is routed by the load the nodes advertise and the
+     * number of invocations this proxy has in flight on them. Nodes taken from a cached membership follow its
+     * changes, all other nodes use the nodes discovered together with this node.
+     * <p/>
+     * The name is looked up on this node immediately, on all other nodes on first use.
+     *
+     * @param name the name to associate with the remote reference
+     * @param type the remote interface of the remote object
+     * @param <T>  the type of the remote interface
+     * @return a proxy implementing <code>type</code>
+     * @throws java.rmi.RemoteException
+     * @throws java.rmi.NotBoundException
+     * @throws java.rmi.AccessException
+     * @throws java.lang.IllegalArgumentException if <code>type</code> is not a remote interface
+     * @see com.github.mgeiss.norn.util.NornConditions#checkRemoteInterface(Class)
+     */
+    public <T extends Remote> T lookupBalanced(final String name, final Class<T> type)
+            throws RemoteException, NotBoundException, AccessException {
+        NornConditions.checkNotNull(name, "name");
+        NornConditions.checkRemoteInterface(type);
+
+        final Remote stub = this.lookup(name);
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                new NornBalancedInvocationHandler(this, name, type.cast(stub))));
+    }
+
+    /**
+     * Returns a proxy for the remote reference bound to the specified <code>name</code>, sending all invocations to
+     * this node until it fails. The binding is then looked up on the next known node, in order of preference, and the
+     * invocation is retried there. Invocations that could not reach the node are always retried, invocations that
+     * may already have been executed only if the method is marked with <code>NornIdempotent</code>.
+     *
+     * @param name the name to associate with the remote reference
+     * @param type the remote interface of the remote object
+     * @param <T>  the type of the remote interface
+     * @return a proxy implementing <code>type</code>
+     * @throws java.rmi.RemoteException
+     * @throws java.rmi.NotBoundException
+     * @throws java.rmi.AccessException
+     * @throws java.lang.IllegalArgumentException if <code>type</code> is not a remote interface
+     * @see com.github.mgeiss.norn.NornIdempotent
+     * @see com.github.mgeiss.norn.util.NornConditions#checkRemoteInterface(Class)
+     */
+    public <T extends Remote> T lookupFailover(final String name, final Class<T> type)
+            throws RemoteException, NotBoundException, AccessException {
+        NornConditions.checkNotNull(name, "name");
+        NornConditions.checkRemoteInterface(type);
+
+        final Remote stub = this.lookup(name);
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                new NornFailoverInvocationHandler(this, name, type.cast(stub))));
     }
 
     /**
@@ -131,7 +570,12 @@ public final class NornNode {
      */
     public String[] list()
             throws RemoteException, AccessException {
-        return this.registry.list();
+        try {
+            return this.registry.list();
+        } catch (RemoteException rex) {
+            this.evictIfUnreachable(rex);
+            throw rex;
+        }
     }
 
     /**
@@ -145,20 +589,278 @@ public final class NornNode {
     }
 
     /**
-     * Start the listening thread to accept requests.
+     * Returns all nodes known together with this node, including this node, the preferred node first. Nodes taken
+     * from a cached membership return all current members ranked by the configured strategy.
+     *
+     * @return a list of node information, never empty
+     */
+    List<NornNodeInfo> getCandidates() {
+        if (this.membership != null) {
+            final List<NornNodeInfo> nodeInfos = this.membership.getNodeInfos();
+            if (!nodeInfos.isEmpty()) {
+                return this.membership.getConfiguration().getNodeSelectionStrategy().select(nodeInfos,
+                        nodeInfos.size());
+            }
+        }
+        return this.candidates;
+    }
+
+    /**
+     * Returns the hash ring over all candidate nodes hosting the given name, rebuilt if the candidates changed or the
+     * advertised loads may have changed.
+     *
+     * @param name the name to associate with the remote reference
+     * @return a hash ring, empty if no candidate hosts the name
+     */
+    private NornHashRing getRing(final String name) {
+        final List<NornNodeInfo> hosts = new ArrayList<>();
+        for (final NornNodeInfo candidate : this.getCandidates()) {
+            if (candidate.mayHost(name)) {
+                hosts.add(candidate);
+            }
+        }
+
+        NornHashRing ring = this.rings.get(name);
+        if (ring == null || !ring.isCurrent(hosts, NornNode.RING_MAX_AGE)) {
+            ring = NornHashRing.create(hosts);
+            this.rings.put(name, ring);
+        }
+        return ring;
+    }
+
+    /**
+     * Returns the registry of the given candidate node.
+     *
+     * @param candidate a node known together with this node
+     * @return a registry stub
+     * @throws java.rmi.RemoteException
+     */
+    Registry getRegistry(final NornNodeInfo candidate)
+            throws RemoteException {
+        if (candidate.getNodeId().equals(this.nodeInfo.getNodeId())) {
+            return this.registry;
+        }
+        if (this.membership != null) {
+            return this.membership.getRegistry(candidate);
+        }
+        if (this.stubCache != null) {
+            return this.stubCache.getRegistry(candidate);
+        }
+        return LocateRegistry.getRegistry(candidate.getRegistryAddress(), candidate.getRegistryPort());
+    }
+
+    /**
+     * Returns the remote reference bound to the specified <code>name</code> on the given candidate node, from the
+     * stub cache if stubs are cached.
+     *
+     * @param candidate a node known together with this node
+     * @param name      the name to associate with the remote reference
+     * @return a reference to a remote object
+     * @throws java.rmi.RemoteException
+     * @throws java.rmi.NotBoundException
      */
-    void start() {
-        if (this.nodeThread != null) {
-            this.nodeThread.start();
+    Remote lookup(final NornNodeInfo candidate, final String name)
+            throws RemoteException, NotBoundException {
+        if (this.stubCache != null) {
+            return this.stubCache.lookup(candidate, this.getRegistry(candidate), name);
         }
+        return this.getRegistry(candidate).lookup(name);
     }
 
     /**
-     * Stop the listening thread.
+     * Returns the <code>NornRegistry</code> of this node.
+     *
+     * @return the norn registry
+     * @throws java.rmi.RemoteException if this node does not provide a norn registry or the lookup failed
+     */
+    private NornRegistry getNornRegistry()
+            throws RemoteException {
+        final NornRegistry nornRegistry = this.findNornRegistry();
+        if (nornRegistry == null) {
+            throw new RemoteException(MessageFormat.format(NornNode.messages.getString("message.remote.no.registry"),
+                    this.nodeInfo.getRegistryAddress(), String.valueOf(this.nodeInfo.getRegistryPort())));
+        }
+        return nornRegistry;
+    }
+
+    /**
+     * Returns the <code>NornRegistry</code> of this node, looked up within its registry on first use. A registry
+     * found to be plain is not asked again until this node is found unreachable.
+     *
+     * @return the norn registry, null if this node does not provide one
+     * @throws java.rmi.RemoteException if the lookup failed
      */
-    public void stop() {
-        if (this.nodeThread != null) {
-            this.nodeThread.interrupt();
+    private NornRegistry findNornRegistry()
+            throws RemoteException {
+        if (this.registry instanceof NornRegistry) {
+            return (NornRegistry) this.registry;
+        }
+
+        NornRegistry nornRegistry = this.nornRegistry;
+        if (nornRegistry == null && !this.plainRegistry) {
+            try {
+                nornRegistry = (NornRegistry) this.registry.lookup(NornRegistry.NAME);
+            } catch (NotBoundException nbex) {
+                // a plain registry does not provide a norn registry
+                this.plainRegistry = true;
+                return null;
+            }
+            this.nornRegistry = nornRegistry;
+        }
+        return nornRegistry;
+    }
+
+    /**
+     * Removes the remote reference bound to the specified <code>name</code> on the given candidate node from the stub
+     * cache.
+     *
+     * @param candidate a node known together with this node
+     * @param name      the name to associate with the remote reference
+     */
+    void invalidate(final NornNodeInfo candidate, final String name) {
+        if (this.stubCache != null) {
+            this.stubCache.invalidate(candidate.getNodeId(), name);
+        }
+    }
+
+    /**
+     * Evicts the given candidate node from the membership this node has been taken from and from the stub cache.
+     *
+     * @param candidate a node known together with this node
+     */
+    void evict(final NornNodeInfo candidate) {
+        if (this.stubCache != null) {
+            this.stubCache.invalidate(candidate.getNodeId());
+        }
+        if (this.membership != null) {
+            this.membership.evict(candidate);
+        }
+    }
+
+    /**
+     * Advertises the names currently bound in the registry of this node after a change made through this node. A
+     * <code>NornRegistry</code> of this node republishes them itself.
+     *
+     * @throws java.rmi.RemoteException if the bound names could not be listed
+     */
+    private void publishBoundNames()
+            throws RemoteException {
+        if (this.responderStatistics != null && !(this.registry instanceof NornRegistryImpl)) {
+            this.publishBoundNames(this.registry.list());
+        }
+    }
+
+    /**
+     * Advertises the given names bound in the registry of this node, if this node answers pings. Clients use them to
+     * choose only among nodes hosting a name. Called by a <code>NornRegistry</code> after every change, whoever made
+     * it.
+     *
+     * @param names the names currently bound
+     */
+    synchronized void publishBoundNames(final String[] names) {
+        if (this.responderStatistics != null) {
+            this.nodeInfo.setBoundNames(NornBoundNames.of(names));
+            NornResponder.getInstance().update(this.nodeInfo);
+        }
+    }
+
+    /**
+     * Evicts this node from the membership it has been taken from and from the stub cache, if <code>rex</code>
+     * signals that the node is not reachable. If only the <code>NornRegistry</code> of this node does not exist
+     * anymore, it is looked up again on next use.
+     *
+     * @param rex the exception thrown by the registry
+     */
+    private void evictIfUnreachable(final RemoteException rex) {
+        if (NornUtility.isUnreachable(rex)) {
+            this.nornRegistry = null;
+            this.plainRegistry = false;
+            this.evict(this.nodeInfo);
+        } else if (rex instanceof NoSuchObjectException) {
+            this.nornRegistry = null;
+        }
+    }
+
+    /**
+     * Returns the sampler measuring the load of this node, only available for nodes created by
+     * <code>LocateNorn.createNode</code>.
+     *
+     * @return the load sampler or null
+     */
+    public NornLoadSampler getLoadSampler() {
+        return this.loadSampler;
+    }
+
+    /**
+     * Returns the ping statistics of the multicast group this node answers, shared by all local nodes of the group.
+     * Only available for started nodes created by <code>LocateNorn.createNode</code>.
+     *
+     * @return the responder statistics or null
+     */
+    public NornResponderStatistics getResponderStatistics() {
+        return this.responderStatistics;
+    }
+
+    /**
+     * Start the load sampler and answer pings on the multicast group using the shared responder. A
+     * <code>NornRegistry</code> of this node republishes the bound names after every change and takes over changes
+     * made directly to its plain registry periodically.
+     *
+     * @throws java.io.IOException if the multicast group could not be joined
+     * @throws java.lang.IllegalArgumentException if the group is served with other settings
+     * @see com.github.mgeiss.norn.NornResponder
+     */
+    synchronized void start()
+            throws IOException {
+        if (this.loadSampler != null) {
+            this.scheduler = Executors.newSingleThreadScheduledExecutor(new NornThreadFactory("norn-node"));
+            this.loadSampler.start(this.scheduler);
+            this.nodeInfo.setLoad(this.loadSampler.getLoad());
+
+            if (this.registry instanceof NornRegistryImpl) {
+                ((NornRegistryImpl) this.registry).attach(this);
+            }
+            this.nodeInfo.setBoundNames(NornBoundNames.of(this.registry.list()));
+            try {
+                this.responderStatistics = NornResponder.getInstance().register(
+                        new NornNodeReply(this.nodeInfo, this.loadSampler), this.nornConfiguration);
+            } catch (IOException | RuntimeException ex) {
+                this.stop();
+                throw ex;
+            }
+
+            if (this.registry instanceof NornRegistryImpl) {
+                final NornRegistryImpl nornRegistryImpl = (NornRegistryImpl) this.registry;
+                this.scheduler.scheduleWithFixedDelay(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        try {
+                            nornRegistryImpl.reconcile();
+                        } catch (RemoteException rex) {
+                            // intentionally left blank, the next run may succeed
+                        }
+                    }
+                }, NornNode.RECONCILE_INTERVAL, NornNode.RECONCILE_INTERVAL, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Stop answering pings and the load sampler. A leave packet is multicast, so listening clients drop this node at
+     * once.
+     */
+    public synchronized void stop() {
+        if (this.registry instanceof NornRegistryImpl) {
+            ((NornRegistryImpl) this.registry).attach(null);
+        }
+        if (this.responderStatistics != null) {
+            NornResponder.getInstance().unregister(this.nodeInfo);
+            this.responderStatistics = null;
+        }
+        if (this.scheduler != null) {
+            this.scheduler.shutdownNow();
+            this.scheduler = null;
         }
     }
 }
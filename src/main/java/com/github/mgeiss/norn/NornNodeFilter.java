@@ -0,0 +1,157 @@
+/**
+ * Copyright 2012 - 2013 Markus Geiss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.mgeiss.norn;
+
+import com.github.mgeiss.norn.util.NornConditions;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <code>NornNodeFilter</code> restricts a discovery to nodes carrying all of a number of tags with the given values.
+ * The filter is sent within the ping, so only matching nodes reply and a master node only sends matching entries of
+ * its table.
+ *
+ * @author Markus Geiss
+ * @version 2.2.0
+ * @see com.github.mgeiss.norn.util.NornConfiguration.Builder#nodeFilter(NornNodeFilter)
+ * @see com.github.mgeiss.norn.util.NornConfiguration.Builder#tag(String, String)
+ */
+public final class NornNodeFilter {
+
+    private static final NornNodeFilter ALL = new NornNodeFilter(Collections.<String, String>emptyMap());
+
+    private final Map<String, String> tags;
+
+    /**
+     * Private constructor to restrict creation.
+     *
+     * @param tags the required tag names and values
+     */
+    private NornNodeFilter(final Map<String, String> tags) {
+        super();
+        this.tags = tags;
+    }
+
+    /**
+     * Returns a filter matching all nodes.
+     *
+     * @return a filter matching all nodes
+     */
+    public static NornNodeFilter all() {
+        return NornNodeFilter.ALL;
+    }
+
+    /**
+     * Returns true if the given node carries all required tags with the required values.
+     *
+     * @param nodeInfo the node information to check
+     * @return true if the node matches
+     */
+    public boolean matches(final NornNodeInfo nodeInfo) {
+        for (final Map.Entry<String, String> tag : this.tags.entrySet()) {
+            if (!tag.getValue().equals(nodeInfo.getTag(tag.getKey()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if this filter matches all nodes.
+     *
+     * @return true if no tag is required
+     */
+    public boolean isAll() {
+        return this.tags.isEmpty();
+    }
+
+    /**
+     * Returns the required tags.
+     *
+     * @return an unmodifiable map of tag names to values, may be empty
+     */
+    public Map<String, String> getTags() {
+        return this.tags;
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (other == null || this.getClass() != other.getClass()) {
+            return false;
+        }
+        return this.tags.equals(((NornNodeFilter) other).tags);
+    }
+
+    @Override
+    public int hashCode() {
+        return this.tags.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "NornNodeFilter{tags=" + this.tags + '}';
+    }
+
+    /**
+     * <code>Builder</code> is used to create a <code>NornNodeFilter</code>.
+     */
+    public static final class Builder {
+
+        private final Map<String, String> tags = new LinkedHashMap<>();
+
+        /**
+         * Sole constructor.
+         */
+        public Builder() {
+            super();
+        }
+
+        /**
+         * Requires a node to carry the given tag with the given value.
+         *
+         * @param name  the name of the tag
+         * @param value the required value
+         * @return this builder instance
+         * @throws java.lang.IllegalArgumentException if the tag is not valid or too many tags are required
+         * @see com.github.mgeiss.norn.util.NornConditions#checkTag(String, String)
+         * @see com.github.mgeiss.norn.util.NornConditions#checkTagCount(int)
+         */
+        public Builder tag(final String name, final String value) {
+            NornConditions.checkTag(name, value);
+            NornConditions.checkTagCount(this.tags.size() + (this.tags.containsKey(name) ? 0 : 1));
+
+            this.tags.put(name, value);
+            return this;
+        }
+
+        /**
+         * Creates a new <code>NornNodeFilter</code> instance, using this builder.
+         *
+         * @return a new created <code>NornNodeFilter</code>
+         */
+        public NornNodeFilter build() {
+            if (this.tags.isEmpty()) {
+                return NornNodeFilter.ALL;
+            }
+            return new NornNodeFilter(Collections.unmodifiableMap(new LinkedHashMap<>(this.tags)));
+        }
+    }
+}
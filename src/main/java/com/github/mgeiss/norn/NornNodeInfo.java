@@ -16,13 +16,18 @@
 package com.github.mgeiss.norn;
 
 import java.io.Serializable;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * <code>NornNodeInfo</code> holds all information from a remote host. This includes information about the registry
- * address, registry port and the load.
+ * address, registry port and the load. A node may carry tags, e.g. its role, zone or application version, clients may
+ * restrict a discovery to nodes carrying certain tags. The names bound in the registry of a node are summarized by a
+ * Bloom filter, so clients may choose only among nodes hosting a name.
  *
  * @author Markus Geiss
- * @version 1.1.0
+ * @version 2.2.0
  */
 public final class NornNodeInfo
         implements Serializable {
@@ -34,6 +39,10 @@ public final class NornNodeInfo
     private int registryPort;
     private double load = -1.0D;
     private boolean master;
+    private transient Map<String, String> tags = Collections.emptyMap();
+    private transient double loadTrend;
+    private transient long version;
+    private transient volatile NornBoundNames boundNames;
 
     /**
      * Trusted package private constructor
@@ -60,6 +69,25 @@ public final class NornNodeInfo
         this.load = load;
     }
 
+    /**
+     * Returns the change of the load of the remote host per second, as a moving average. A positive trend signals a
+     * rising load.
+     *
+     * @return the load trend per second, 0 if unknown
+     */
+    public double getLoadTrend() {
+        return this.loadTrend;
+    }
+
+    /**
+     * Package private setter for the load trend of the remote host.
+     *
+     * @param loadTrend the load trend per second
+     */
+    void setLoadTrend(final double loadTrend) {
+        this.loadTrend = loadTrend;
+    }
+
     /**
      * Returns the multicast address.
      *
@@ -133,6 +161,93 @@ public final class NornNodeInfo
         this.registryPort = registryPort;
     }
 
+    /**
+     * Returns the identifier of the node, build from the registry address and the registry port.
+     *
+     * @return identifier of the node
+     */
+    public String getNodeId() {
+        return this.registryAddress + ':' + this.registryPort;
+    }
+
+    /**
+     * Returns the version of this node information, as assigned by the master node tracking it. A greater version
+     * denotes a later change.
+     *
+     * @return the version, 0 if not tracked by a master node
+     */
+    public long getVersion() {
+        return this.version;
+    }
+
+    /**
+     * Package private setter for the version.
+     *
+     * @param version the epoch the node information has been changed last
+     */
+    void setVersion(final long version) {
+        this.version = version;
+    }
+
+    /**
+     * Returns the tags of the node.
+     *
+     * @return an unmodifiable map of tag names to values, may be empty
+     */
+    public Map<String, String> getTags() {
+        return this.tags != null ? this.tags : Collections.<String, String>emptyMap();
+    }
+
+    /**
+     * Returns the value of the given tag.
+     *
+     * @param name the name of the tag
+     * @return the value of the tag, null if the node does not carry the tag
+     */
+    public String getTag(final String name) {
+        return this.getTags().get(name);
+    }
+
+    /**
+     * Package private setter for the tags.
+     *
+     * @param tags the tag names and values of this node
+     */
+    void setTags(final Map<String, String> tags) {
+        this.tags = tags.isEmpty() ? Collections.<String, String>emptyMap()
+                : Collections.unmodifiableMap(new LinkedHashMap<>(tags));
+    }
+
+    /**
+     * Returns true if the given name may be bound in the registry of the node. A false positive is possible, a
+     * false negative is not. Nodes not advertising their bound names may host any name.
+     *
+     * @param name the name to check
+     * @return false if the name is surely not bound on the node
+     */
+    public boolean mayHost(final String name) {
+        final NornBoundNames names = this.boundNames;
+        return names == null || names.mightContain(name);
+    }
+
+    /**
+     * Package private getter for the bound names.
+     *
+     * @return the filter of the bound names, null if unknown
+     */
+    NornBoundNames getBoundNames() {
+        return this.boundNames;
+    }
+
+    /**
+     * Package private setter for the bound names.
+     *
+     * @param boundNames the filter of the bound names, null if unknown
+     */
+    void setBoundNames(final NornBoundNames boundNames) {
+        this.boundNames = boundNames;
+    }
+
     public boolean isMaster() {
         return master;
     }
@@ -150,6 +265,7 @@ public final class NornNodeInfo
                 + ", registryPort="+ this.registryPort
                 + ", load=" + this.load
                 + ", master="+ this.master
+                + ", tags=" + this.getTags()
                 + '}';
     }
 }
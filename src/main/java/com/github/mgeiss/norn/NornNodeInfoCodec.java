@@ -0,0 +1,764 @@
+/**
+ * Copyright 2012 - 2013 Markus Geiss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.mgeiss.norn;
+
+import com.github.mgeiss.norn.util.NornUtility;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <code>NornNodeInfoCodec</code> converts <code>NornNodeInfo</code>s to and from a compact, fixed layout binary
+ * format. Every packet starts with a header:
+ * <pre>
+ *     magic   : 2 bytes, 0x4E52
+ *     version : 1 byte
+ *     type    : 1 byte
+ * </pre>
+ * A node information packet continues with:
+ * <pre>
+ *     flags            : 1 byte, bit 0 is the master flag
+ *     load             : 8 bytes, IEEE 754 double
+ *     loadTrend        : 8 bytes, IEEE 754 double, the change of the load per second
+ *     registryPort     : 2 bytes, unsigned
+ *     multicastPort    : 2 bytes, unsigned
+ *     registryAddress  : 1 byte length, followed by UTF-8 bytes
+ *     multicastAddress : 1 byte length, followed by UTF-8 bytes
+ *     tags             : 1 byte count, followed by count names and values, each 1 byte length and UTF-8 bytes
+ *     boundNames       : 1 byte length, 0 if unknown, followed by the bits of a Bloom filter of all bound names
+ * </pre>
+ * A ping may continue with:
+ * <pre>
+ *     flags  : 1 byte, bit 0 requests replies sent to the multicast group, bit 1 accepts table packets, bit 2
+ *             requests a delta, bit 3 carries a filter
+ *     since  : 8 bytes, the epoch a delta is requested for, only if bit 2 is set
+ *     filter : 1 byte count, followed by count required tag names and values, only if bit 3 is set
+ * </pre>
+ * Announcements a node multicasts periodically and the packet a node sends when it leaves the group use the layout
+ * of a node information packet with a type of their own. A table packet, sent by a master node on behalf of all
+ * nodes it knows, continues with:
+ * <pre>
+ *     count   : 1 byte
+ *     entries : count times the node information layout following the header
+ * </pre>
+ * A delta packet, sent by a master node in reply to a ping requesting a delta, continues with:
+ * <pre>
+ *     epoch   : 8 bytes, the current epoch of the master
+ *     since   : 8 bytes, the epoch the changes are reported for, 0 if the delta holds all nodes
+ *     count   : 1 byte
+ *     entries : count times an operation byte (0 changed, 1 removed), an 8 byte version and the node information
+ *               layout following the header
+ * </pre>
+ * Tables and deltas larger than <code>MAX_PACKET_SIZE</code> are split into several packets.
+ * <p/>
+ * A client announces the highest version it understands within its ping, a node answers with the lower of both
+ * versions. An empty ping, as sent by clients prior to 2.2.0, is answered using java serialization, which
+ * <code>decode</code> still accepts.
+ *
+ * @author Markus Geiss
+ * @version 2.2.0
+ * @see com.github.mgeiss.norn.NornNodeInfo
+ */
+public final class NornNodeInfoCodec {
+
+    /**
+     * Magic number starting every packet.
+     */
+    public static final short MAGIC = 0x4E52;
+
+    /**
+     * Current version of the format.
+     */
+    public static final byte VERSION = 1;
+
+    /**
+     * Type of a ping sent by a client.
+     */
+    public static final byte TYPE_PING = 1;
+
+    /**
+     * Type of a node information packet.
+     */
+    public static final byte TYPE_NODE_INFO = 2;
+
+    /**
+     * Type of a node information packet a node multicasts periodically.
+     */
+    public static final byte TYPE_ANNOUNCE = 3;
+
+    /**
+     * Type of a node information packet a node multicasts when it leaves the group.
+     */
+    public static final byte TYPE_LEAVE = 4;
+
+    /**
+     * Type of a packet carrying the node information of several nodes.
+     */
+    public static final byte TYPE_TABLE = 5;
+
+    /**
+     * Type of a packet carrying the changes of the nodes since an epoch.
+     */
+    public static final byte TYPE_DELTA = 6;
+
+    /**
+     * Ping flag of a client listening on the multicast group, allowing a node to answer several clients at once.
+     */
+    public static final byte PING_FLAG_GROUP_REPLY = 0x01;
+
+    /**
+     * Ping flag of a client accepting table packets, allowing a master node to answer on behalf of all nodes.
+     */
+    public static final byte PING_FLAG_TABLE = 0x02;
+
+    /**
+     * Ping flag of a client requesting the changes since an epoch from a master node.
+     */
+    public static final byte PING_FLAG_DELTA = 0x04;
+
+    /**
+     * Ping flag of a client sending a filter, only nodes matching the filter reply.
+     */
+    public static final byte PING_FLAG_FILTER = 0x08;
+
+    /**
+     * Size of the header.
+     */
+    public static final int HEADER_SIZE = 4;
+
+    /**
+     * Offset of the type within a packet.
+     */
+    static final int TYPE_OFFSET = 3;
+
+    /**
+     * Offset of the load within a node information packet.
+     */
+    static final int LOAD_OFFSET = NornNodeInfoCodec.HEADER_SIZE + 1;
+
+    /**
+     * Offset of the load trend within a node information packet.
+     */
+    static final int LOAD_TREND_OFFSET = NornNodeInfoCodec.LOAD_OFFSET + 8;
+
+    /**
+     * Maximum size of an encoded packet.
+     */
+    public static final int MAX_PACKET_SIZE = 1024;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final short STREAM_MAGIC = (short) 0xACED;
+    private static final byte FLAG_MASTER = 0x01;
+    private static final byte OPERATION_CHANGED = 0;
+    private static final byte OPERATION_REMOVED = 1;
+
+    /**
+     * Private constructor to disable public construction.
+     */
+    private NornNodeInfoCodec() {
+        super();
+    }
+
+    /**
+     * Encodes a ping announcing the current version.
+     *
+     * @param buffer the buffer to write to
+     * @return number of bytes written
+     */
+    public static int encodePing(final ByteBuffer buffer) {
+        final int start = buffer.position();
+        NornNodeInfoCodec.encodeHeader(buffer, NornNodeInfoCodec.VERSION, NornNodeInfoCodec.TYPE_PING);
+        return buffer.position() - start;
+    }
+
+    /**
+     * Encodes a ping announcing the current version and carrying the given flags.
+     *
+     * @param buffer the buffer to write to
+     * @param flags  the ping flags
+     * @return number of bytes written
+     * @see #PING_FLAG_GROUP_REPLY
+     */
+    public static int encodePing(final ByteBuffer buffer, final byte flags) {
+        final int start = buffer.position();
+        NornNodeInfoCodec.encodeHeader(buffer, NornNodeInfoCodec.VERSION, NornNodeInfoCodec.TYPE_PING);
+        buffer.put(flags);
+        return buffer.position() - start;
+    }
+
+    /**
+     * Encodes a ping requesting the changes since the given epoch, accepting table packets as well.
+     *
+     * @param buffer the buffer to write to
+     * @param flags  additional ping flags
+     * @param since  the epoch changes are requested for, 0 requests all nodes
+     * @return number of bytes written
+     * @see #PING_FLAG_DELTA
+     */
+    public static int encodeDeltaPing(final ByteBuffer buffer, final byte flags, final long since) {
+        return NornNodeInfoCodec.encodePing(buffer,
+                (byte) (flags | NornNodeInfoCodec.PING_FLAG_TABLE | NornNodeInfoCodec.PING_FLAG_DELTA), since,
+                NornNodeFilter.all());
+    }
+
+    /**
+     * Encodes a ping carrying the given flags, the epoch a delta is requested for if <code>PING_FLAG_DELTA</code> is
+     * set and the given filter unless it matches all nodes.
+     *
+     * @param buffer the buffer to write to
+     * @param flags  the ping flags
+     * @param since  the epoch changes are requested for, ignored if no delta is requested
+     * @param filter the filter nodes must match to reply
+     * @return number of bytes written
+     * @see #PING_FLAG_FILTER
+     */
+    public static int encodePing(final ByteBuffer buffer, final byte flags, final long since,
+                                 final NornNodeFilter filter) {
+        final int start = buffer.position();
+        NornNodeInfoCodec.encodeHeader(buffer, NornNodeInfoCodec.VERSION, NornNodeInfoCodec.TYPE_PING);
+        buffer.put((byte) (filter.isAll() ? flags : flags | NornNodeInfoCodec.PING_FLAG_FILTER));
+        if ((flags & NornNodeInfoCodec.PING_FLAG_DELTA) != 0) {
+            buffer.putLong(since);
+        }
+        if (!filter.isAll()) {
+            NornNodeInfoCodec.encodeTags(buffer, filter.getTags());
+        }
+        return buffer.position() - start;
+    }
+
+    /**
+     * Encodes the given node information using the current version.
+     *
+     * @param nodeInfo the node information to encode
+     * @return a new byte array
+     */
+    public static byte[] encode(final NornNodeInfo nodeInfo) {
+        final ByteBuffer buffer = ByteBuffer.allocate(NornNodeInfoCodec.MAX_PACKET_SIZE);
+        NornNodeInfoCodec.encode(nodeInfo, NornNodeInfoCodec.VERSION, buffer);
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    /**
+     * Encodes the given node information using the given version.
+     *
+     * @param nodeInfo the node information to encode
+     * @param version  the version to use, must not be greater than <code>VERSION</code>
+     * @param buffer   the buffer to write to
+     * @return number of bytes written
+     */
+    public static int encode(final NornNodeInfo nodeInfo, final byte version, final ByteBuffer buffer) {
+        return NornNodeInfoCodec.encode(nodeInfo, version, NornNodeInfoCodec.TYPE_NODE_INFO, buffer);
+    }
+
+    /**
+     * Encodes the given node information as a packet of the given type, using the given version.
+     *
+     * @param nodeInfo the node information to encode
+     * @param version  the version to use, must not be greater than <code>VERSION</code>
+     * @param type     one of <code>TYPE_NODE_INFO</code>, <code>TYPE_ANNOUNCE</code> or <code>TYPE_LEAVE</code>
+     * @param buffer   the buffer to write to
+     * @return number of bytes written
+     */
+    public static int encode(final NornNodeInfo nodeInfo, final byte version, final byte type,
+                             final ByteBuffer buffer) {
+        final int start = buffer.position();
+
+        NornNodeInfoCodec.encodeHeader(buffer, version, type);
+        NornNodeInfoCodec.encodeBody(nodeInfo, buffer);
+
+        return buffer.position() - start;
+    }
+
+    /**
+     * Encodes a table packet holding as many node information as fit into the remaining space of
+     * <code>buffer</code>, up to 255, starting with the node information at index <code>from</code>.
+     *
+     * @param nodeInfos the node information to encode
+     * @param from      index of the first node information to encode
+     * @param buffer    the buffer to write to
+     * @return index of the first node information not encoded, the size of <code>nodeInfos</code> if all are
+     */
+    public static int encodeTable(final List<NornNodeInfo> nodeInfos, final int from, final ByteBuffer buffer) {
+        NornNodeInfoCodec.encodeHeader(buffer, NornNodeInfoCodec.VERSION, NornNodeInfoCodec.TYPE_TABLE);
+        final int countPosition = buffer.position();
+        buffer.put((byte) 0);
+
+        int index = from;
+        while (index < nodeInfos.size() && index - from < 255) {
+            final int entryPosition = buffer.position();
+            try {
+                NornNodeInfoCodec.encodeBody(nodeInfos.get(index), buffer);
+            } catch (BufferOverflowException boex) {
+                buffer.position(entryPosition);
+                break;
+            }
+            index++;
+        }
+
+        buffer.put(countPosition, (byte) (index - from));
+        return index;
+    }
+    /**
+     * Encodes a delta packet holding as many entries as fit into the remaining space of <code>buffer</code>, up to
+     * 255, starting with the entry at index <code>from</code>. The entries are all changed nodes followed by all
+     * removed nodes, each carrying its version.
+     *
+     * @param epoch   the current epoch
+     * @param since   the epoch the changes are reported for, 0 if all nodes are reported
+     * @param changed the changed node information
+     * @param removed the removed node information
+     * @param from    index of the first entry to encode
+     * @param buffer  the buffer to write to
+     * @return index of the first entry not encoded, the number of all entries if all are
+     */
+    public static int encodeDelta(final long epoch, final long since, final List<NornNodeInfo> changed,
+                                  final List<NornNodeInfo> removed, final int from, final ByteBuffer buffer) {
+        NornNodeInfoCodec.encodeHeader(buffer, NornNodeInfoCodec.VERSION, NornNodeInfoCodec.TYPE_DELTA);
+        buffer.putLong(epoch);
+        buffer.putLong(since);
+        final int countPosition = buffer.position();
+        buffer.put((byte) 0);
+
+        final int size = changed.size() + removed.size();
+        int index = from;
+        while (index < size && index - from < 255) {
+            final boolean isChanged = index < changed.size();
+            final NornNodeInfo nodeInfo = isChanged ? changed.get(index) : removed.get(index - changed.size());
+
+            final int entryPosition = buffer.position();
+            try {
+                buffer.put(isChanged ? NornNodeInfoCodec.OPERATION_CHANGED : NornNodeInfoCodec.OPERATION_REMOVED);
+                buffer.putLong(nodeInfo.getVersion());
+                NornNodeInfoCodec.encodeBody(nodeInfo, buffer);
+            } catch (BufferOverflowException boex) {
+                buffer.position(entryPosition);
+                break;
+            }
+            index++;
+        }
+
+        buffer.put(countPosition, (byte) (index - from));
+        return index;
+    }
+
+    /**
+     * Returns the version a ping announces, or -1 if <code>data</code> is not a ping. An empty ping announces version
+     * 0, the java serialization used prior to 2.2.0.
+     *
+     * @param data   the received data
+     * @param offset the offset of the packet within <code>data</code>
+     * @param length the length of the packet
+     * @return the announced version, 0 or -1
+     */
+    public static int pingVersion(final byte[] data, final int offset, final int length) {
+        if (length == 0) {
+            return 0;
+        }
+        if (!NornNodeInfoCodec.hasHeader(data, offset, length)
+                || data[offset + 3] != NornNodeInfoCodec.TYPE_PING) {
+            return -1;
+        }
+        return data[offset + 2];
+    }
+
+    /**
+     * Returns the version a ping between position and limit of <code>buffer</code> announces, or -1 if it is not a
+     * ping. The position of <code>buffer</code> is not changed.
+     *
+     * @param buffer the buffer holding the received packet
+     * @return the announced version, 0 or -1
+     * @see #pingVersion(byte[], int, int)
+     */
+    public static int pingVersion(final ByteBuffer buffer) {
+        final int position = buffer.position();
+        final int length = buffer.remaining();
+        if (length == 0) {
+            return 0;
+        }
+        if (length < NornNodeInfoCodec.HEADER_SIZE
+                || buffer.getShort(position) != NornNodeInfoCodec.MAGIC
+                || buffer.get(position + 3) != NornNodeInfoCodec.TYPE_PING) {
+            return -1;
+        }
+        return buffer.get(position + 2);
+    }
+
+    /**
+     * Returns the flags of the ping between position and limit of <code>buffer</code>, 0 if the ping carries none.
+     * The position of <code>buffer</code> is not changed.
+     *
+     * @param buffer the buffer holding a received ping
+     * @return the ping flags
+     */
+    public static byte pingFlags(final ByteBuffer buffer) {
+        if (buffer.remaining() <= NornNodeInfoCodec.HEADER_SIZE) {
+            return 0;
+        }
+        return buffer.get(buffer.position() + NornNodeInfoCodec.HEADER_SIZE);
+    }
+
+    /**
+     * Returns the type of the packet between position and limit of <code>buffer</code>, or -1 if it is no packet of
+     * the binary format. The position of <code>buffer</code> is not changed.
+     *
+     * @param buffer the buffer holding the received packet
+     * @return the packet type or -1
+     */
+    public static int packetType(final ByteBuffer buffer) {
+        final int position = buffer.position();
+        if (buffer.remaining() < NornNodeInfoCodec.HEADER_SIZE
+                || buffer.getShort(position) != NornNodeInfoCodec.MAGIC) {
+            return -1;
+        }
+        return buffer.get(position + NornNodeInfoCodec.TYPE_OFFSET);
+    }
+
+    /**
+     * Returns true if the node information packet, announcement or leave packet between position and limit of
+     * <code>buffer</code> belongs to a master node. The position of <code>buffer</code> is not changed.
+     *
+     * @param buffer the buffer holding the received packet
+     * @return true if the packet has been sent by a master node
+     */
+    static boolean isMaster(final ByteBuffer buffer) {
+        return buffer.remaining() > NornNodeInfoCodec.HEADER_SIZE
+                && (buffer.get(buffer.position() + NornNodeInfoCodec.HEADER_SIZE) & NornNodeInfoCodec.FLAG_MASTER) != 0;
+    }
+
+    /**
+     * Returns the type of a received packet, or -1 if it is of neither format. A packet using java serialization is
+     * a node information packet.
+     *
+     * @param data   the received data
+     * @param offset the offset of the packet within <code>data</code>
+     * @param length the length of the packet
+     * @return the packet type or -1
+     */
+    public static int packetType(final byte[] data, final int offset, final int length) {
+        if (NornNodeInfoCodec.hasHeader(data, offset, length)) {
+            return data[offset + NornNodeInfoCodec.TYPE_OFFSET];
+        }
+        if (length >= 2 && NornNodeInfoCodec.readShort(data, offset) == NornNodeInfoCodec.STREAM_MAGIC) {
+            return NornNodeInfoCodec.TYPE_NODE_INFO;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the epoch the ping between position and limit of <code>buffer</code> requests the changes for, or -1
+     * if it requests no delta. The position of <code>buffer</code> is not changed.
+     *
+     * @param buffer the buffer holding a received ping
+     * @return the requested epoch, 0 for all nodes, or -1
+     */
+    public static long pingSince(final ByteBuffer buffer) {
+        if ((NornNodeInfoCodec.pingFlags(buffer) & NornNodeInfoCodec.PING_FLAG_DELTA) == 0
+                || buffer.remaining() < NornNodeInfoCodec.HEADER_SIZE + 9) {
+            return -1L;
+        }
+        return buffer.getLong(buffer.position() + NornNodeInfoCodec.HEADER_SIZE + 1);
+    }
+
+    /**
+     * Returns the filter the ping between position and limit of <code>buffer</code> carries, or null if it carries
+     * none or the filter could not be decoded. The position of <code>buffer</code> is not changed.
+     *
+     * @param buffer the buffer holding a received ping
+     * @return the filter or null
+     */
+    public static NornNodeFilter pingFilter(final ByteBuffer buffer) {
+        final byte flags = NornNodeInfoCodec.pingFlags(buffer);
+        if ((flags & NornNodeInfoCodec.PING_FLAG_FILTER) == 0) {
+            return null;
+        }
+
+        final ByteBuffer filterBuffer = buffer.duplicate();
+        filterBuffer.position(buffer.position() + NornNodeInfoCodec.HEADER_SIZE + 1
+                + ((flags & NornNodeInfoCodec.PING_FLAG_DELTA) != 0 ? 8 : 0));
+        try {
+            final NornNodeFilter.Builder builder = new NornNodeFilter.Builder();
+            for (final Map.Entry<String, String> tag : NornNodeInfoCodec.decodeTags(filterBuffer).entrySet()) {
+                builder.tag(tag.getKey(), tag.getValue());
+            }
+            return builder.build();
+        } catch (BufferUnderflowException | IllegalArgumentException ex) {
+            // intentionally left blank, a broken filter is ignored
+            return null;
+        }
+    }
+
+    /**
+     * Decodes a node information packet, in either the binary format or java serialization. Announcements and leave
+     * packets are decoded as well, <code>packetType</code> tells them apart.
+     *
+     * @param data   the received data
+     * @param offset the offset of the packet within <code>data</code>
+     * @param length the length of the packet
+     * @return the decoded node information
+     * @throws java.io.IOException if the packet could not be decoded
+     */
+    public static NornNodeInfo decode(final byte[] data, final int offset, final int length)
+            throws IOException {
+        if (length >= 2 && NornNodeInfoCodec.readShort(data, offset) == NornNodeInfoCodec.STREAM_MAGIC) {
+            try {
+                return NornUtility.byteArray2NodeInfo(Arrays.copyOfRange(data, offset, offset + length));
+            } catch (ClassNotFoundException cnfex) {
+                throw new IOException(cnfex.getMessage(), cnfex);
+            }
+        }
+
+        return NornNodeInfoCodec.decode(ByteBuffer.wrap(data, offset, length));
+    }
+
+    /**
+     * Decodes a node information packet in the binary format, an announcement or a leave packet.
+     *
+     * @param buffer the buffer to read from
+     * @return the decoded node information
+     * @throws java.io.IOException if the packet could not be decoded
+     */
+    public static NornNodeInfo decode(final ByteBuffer buffer)
+            throws IOException {
+        try {
+            if (buffer.getShort() != NornNodeInfoCodec.MAGIC) {
+                throw new IOException("Unknown packet");
+            }
+
+            final byte version = buffer.get();
+            if (version < 1 || version > NornNodeInfoCodec.VERSION) {
+                throw new IOException("Unsupported version " + version);
+            }
+
+            final byte type = buffer.get();
+            if (type != NornNodeInfoCodec.TYPE_NODE_INFO && type != NornNodeInfoCodec.TYPE_ANNOUNCE
+                    && type != NornNodeInfoCodec.TYPE_LEAVE) {
+                throw new IOException("Unexpected packet type");
+            }
+
+            return NornNodeInfoCodec.decodeBody(buffer);
+        } catch (BufferUnderflowException buex) {
+            throw new IOException("Truncated packet", buex);
+        }
+    }
+
+    /**
+     * Decodes a table packet.
+     *
+     * @param data   the received data
+     * @param offset the offset of the packet within <code>data</code>
+     * @param length the length of the packet
+     * @return a new list of node information
+     * @throws java.io.IOException if the packet could not be decoded
+     */
+    public static List<NornNodeInfo> decodeTable(final byte[] data, final int offset, final int length)
+            throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap(data, offset, length);
+        try {
+            if (buffer.getShort() != NornNodeInfoCodec.MAGIC) {
+                throw new IOException("Unknown packet");
+            }
+
+            final byte version = buffer.get();
+            if (version < 1 || version > NornNodeInfoCodec.VERSION) {
+                throw new IOException("Unsupported version " + version);
+            }
+
+            if (buffer.get() != NornNodeInfoCodec.TYPE_TABLE) {
+                throw new IOException("Unexpected packet type");
+            }
+
+            final int count = buffer.get() & 0xFF;
+            final List<NornNodeInfo> nodeInfos = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                nodeInfos.add(NornNodeInfoCodec.decodeBody(buffer));
+            }
+            return nodeInfos;
+        } catch (BufferUnderflowException buex) {
+            throw new IOException("Truncated packet", buex);
+        }
+    }
+
+    /**
+     * Returns true if <code>data</code> starts with a header of this format.
+     *
+     * @param data   the received data
+     * @param offset the offset of the packet within <code>data</code>
+     * @param length the length of the packet
+     * @return true if a header is present
+     */
+    static boolean hasHeader(final byte[] data, final int offset, final int length) {
+        return length >= NornNodeInfoCodec.HEADER_SIZE
+                && NornNodeInfoCodec.readShort(data, offset) == NornNodeInfoCodec.MAGIC;
+    }
+
+    private static void encodeHeader(final ByteBuffer buffer, final byte version, final byte type) {
+        buffer.putShort(NornNodeInfoCodec.MAGIC);
+        buffer.put(version);
+        buffer.put(type);
+    }
+
+    /**
+     * Decodes a delta packet into the given delta. Packets of another epoch than the first one decoded are ignored.
+     *
+     * @param data   the received data
+     * @param offset the offset of the packet within <code>data</code>
+     * @param length the length of the packet
+     * @param delta  the delta to decode into
+     * @throws java.io.IOException if the packet could not be decoded
+     */
+    public static void decodeDelta(final byte[] data, final int offset, final int length, final NornDelta delta)
+            throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap(data, offset, length);
+        try {
+            if (buffer.getShort() != NornNodeInfoCodec.MAGIC) {
+                throw new IOException("Unknown packet");
+            }
+
+            final byte version = buffer.get();
+            if (version < 1 || version > NornNodeInfoCodec.VERSION) {
+                throw new IOException("Unsupported version " + version);
+            }
+
+            if (buffer.get() != NornNodeInfoCodec.TYPE_DELTA) {
+                throw new IOException("Unexpected packet type");
+            }
+
+            final long epoch = buffer.getLong();
+            final long since = buffer.getLong();
+            final int count = buffer.get() & 0xFF;
+            final List<NornNodeInfo> changed = new ArrayList<>(count);
+            final List<NornNodeInfo> removed = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                final byte operation = buffer.get();
+                final long nodeVersion = buffer.getLong();
+                final NornNodeInfo nodeInfo = NornNodeInfoCodec.decodeBody(buffer);
+                nodeInfo.setVersion(nodeVersion);
+                (operation == NornNodeInfoCodec.OPERATION_REMOVED ? removed : changed).add(nodeInfo);
+            }
+
+            if (delta.accept(epoch, since == 0L)) {
+                delta.getChanged().addAll(changed);
+                delta.getRemoved().addAll(removed);
+            }
+        } catch (BufferUnderflowException buex) {
+            throw new IOException("Truncated packet", buex);
+        }
+    }
+
+    private static void encodeBody(final NornNodeInfo nodeInfo, final ByteBuffer buffer) {
+        buffer.put(nodeInfo.isMaster() ? NornNodeInfoCodec.FLAG_MASTER : 0);
+        buffer.putDouble(nodeInfo.getLoad());
+        buffer.putDouble(nodeInfo.getLoadTrend());
+        buffer.putShort((short) nodeInfo.getRegistryPort());
+        buffer.putShort((short) nodeInfo.getMulticastPort());
+        NornNodeInfoCodec.encodeString(buffer, nodeInfo.getRegistryAddress());
+        NornNodeInfoCodec.encodeString(buffer, nodeInfo.getMulticastAddress());
+        NornNodeInfoCodec.encodeTags(buffer, nodeInfo.getTags());
+        final NornBoundNames boundNames = nodeInfo.getBoundNames();
+        if (boundNames != null) {
+            buffer.put((byte) NornBoundNames.SIZE);
+            buffer.put(boundNames.toBytes());
+        } else {
+            buffer.put((byte) 0);
+        }
+    }
+
+    private static NornNodeInfo decodeBody(final ByteBuffer buffer) {
+        final NornNodeInfo nodeInfo = new NornNodeInfo();
+        nodeInfo.setMaster((buffer.get() & NornNodeInfoCodec.FLAG_MASTER) != 0);
+        nodeInfo.setLoad(buffer.getDouble());
+        nodeInfo.setLoadTrend(buffer.getDouble());
+        nodeInfo.setRegistryPort(buffer.getShort() & 0xFFFF);
+        nodeInfo.setMulticastPort(buffer.getShort() & 0xFFFF);
+        nodeInfo.setRegistryAddress(NornNodeInfoCodec.decodeString(buffer));
+        nodeInfo.setMulticastAddress(NornNodeInfoCodec.decodeString(buffer));
+        nodeInfo.setTags(NornNodeInfoCodec.decodeTags(buffer));
+        final int boundNamesLength = buffer.get() & 0xFF;
+        if (boundNamesLength == NornBoundNames.SIZE) {
+            final byte[] bits = new byte[NornBoundNames.SIZE];
+            buffer.get(bits);
+            nodeInfo.setBoundNames(NornBoundNames.fromBytes(bits));
+        } else if (boundNamesLength > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        } else {
+            buffer.position(buffer.position() + boundNamesLength);
+        }
+        return nodeInfo;
+    }
+
+    private static void encodeTags(final ByteBuffer buffer, final Map<String, String> tags) {
+        buffer.put((byte) tags.size());
+        for (final Map.Entry<String, String> tag : tags.entrySet()) {
+            NornNodeInfoCodec.encodeString(buffer, tag.getKey());
+            NornNodeInfoCodec.encodeString(buffer, tag.getValue());
+        }
+    }
+
+    private static Map<String, String> decodeTags(final ByteBuffer buffer) {
+        final int count = buffer.get() & 0xFF;
+        if (count == 0) {
+            return Collections.emptyMap();
+        }
+
+        final Map<String, String> tags = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            final String name = NornNodeInfoCodec.decodeString(buffer);
+            tags.put(name, NornNodeInfoCodec.decodeString(buffer));
+        }
+        return tags;
+    }
+
+    private static void encodeString(final ByteBuffer buffer, final String value) {
+        final byte[] bytes = value != null ? value.getBytes(NornNodeInfoCodec.UTF_8) : new byte[0];
+        if (bytes.length > 255) {
+            throw new IllegalArgumentException("String too long to encode: " + value);
+        }
+        buffer.put((byte) bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String decodeString(final ByteBuffer buffer) {
+        final int length = buffer.get() & 0xFF;
+        if (length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+
+        final String value;
+        if (buffer.hasArray()) {
+            value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length,
+                    NornNodeInfoCodec.UTF_8);
+            buffer.position(buffer.position() + length);
+        } else {
+            final byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            value = new String(bytes, NornNodeInfoCodec.UTF_8);
+        }
+        return value;
+    }
+
+    private static short readShort(final byte[] data, final int offset) {
+        return (short) (((data[offset] & 0xFF) << 8) | (data[offset + 1] & 0xFF));
+    }
+}
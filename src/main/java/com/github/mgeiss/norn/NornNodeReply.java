@@ -0,0 +1,151 @@
+/**
+ * Copyright 2012 - 2013 Markus Geiss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.mgeiss.norn;
+
+import com.github.mgeiss.norn.util.NornLoadSampler;
+import com.github.mgeiss.norn.util.NornUtility;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * <code>NornNodeReply</code> holds the pre-encoded replies of a node. The binary reply is encoded once into a direct
+ * buffer, a changed load and load trend are written in place. Announcements and the leave packet share that
+ * buffer, only the packet type differs. The serialized reply for clients prior to 2.2.0 is only rebuilt if the
+ * node information changed since it has been requested last.
+ * <p/>
+ * All methods except the constructor must be called by the responder thread serving the node only.
+ *
+ * @author Markus Geiss
+ * @version 2.2.0
+ * @see com.github.mgeiss.norn.NornNodeInfoCodec
+ * @see com.github.mgeiss.norn.NornResponder
+ */
+final class NornNodeReply {
+
+    private final NornNodeInfo nodeInfo;
+    private final NornLoadSampler loadSampler;
+    private final ByteBuffer binaryReply = ByteBuffer.allocateDirect(NornNodeInfoCodec.MAX_PACKET_SIZE);
+    private int binaryLength;
+    private ByteBuffer serializedReply;
+    private double load;
+    private double loadTrend;
+
+    /**
+     * Package private constructor.
+     *
+     * @param nodeInfo    information of the node
+     * @param loadSampler the sampler measuring the load of the node
+     */
+    NornNodeReply(final NornNodeInfo nodeInfo, final NornLoadSampler loadSampler) {
+        super();
+        this.nodeInfo = nodeInfo;
+        this.loadSampler = loadSampler;
+        this.invalidate();
+    }
+
+    /**
+     * Returns the information of the node this reply belongs to.
+     *
+     * @return the node information
+     */
+    NornNodeInfo getNodeInfo() {
+        return this.nodeInfo;
+    }
+
+    /**
+     * Re-encodes the binary reply, must be called if the node information changed.
+     */
+    void invalidate() {
+        this.load = this.loadSampler.getLoad();
+        this.loadTrend = this.loadSampler.getLoadTrend();
+        this.nodeInfo.setLoad(this.load);
+        this.nodeInfo.setLoadTrend(this.loadTrend);
+
+        this.binaryReply.clear();
+        this.binaryLength = NornNodeInfoCodec.encode(this.nodeInfo, NornNodeInfoCodec.VERSION, this.binaryReply);
+        this.serializedReply = null;
+    }
+
+    /**
+     * Updates all replies with the last sampled load and load trend. No allocation takes place if the binary reply
+     * is used.
+     */
+    void update() {
+        final double sampledLoad = this.loadSampler.getLoad();
+        if (Double.doubleToRawLongBits(sampledLoad) != Double.doubleToRawLongBits(this.load)) {
+            this.load = sampledLoad;
+            this.nodeInfo.setLoad(sampledLoad);
+            this.binaryReply.putDouble(NornNodeInfoCodec.LOAD_OFFSET, sampledLoad);
+            this.serializedReply = null;
+        }
+
+        final double sampledTrend = this.loadSampler.getLoadTrend();
+        if (Double.doubleToRawLongBits(sampledTrend) != Double.doubleToRawLongBits(this.loadTrend)) {
+            this.loadTrend = sampledTrend;
+            this.nodeInfo.setLoadTrend(sampledTrend);
+            this.binaryReply.putDouble(NornNodeInfoCodec.LOAD_TREND_OFFSET, sampledTrend);
+        }
+    }
+
+    /**
+     * Returns the binary reply, ready to be sent.
+     *
+     * @return the binary reply
+     */
+    ByteBuffer getBinaryReply() {
+        return this.getBinaryPacket(NornNodeInfoCodec.TYPE_NODE_INFO);
+    }
+
+    /**
+     * Returns the announcement, ready to be sent.
+     *
+     * @return the announcement
+     */
+    ByteBuffer getAnnouncement() {
+        return this.getBinaryPacket(NornNodeInfoCodec.TYPE_ANNOUNCE);
+    }
+
+    /**
+     * Returns the leave packet, ready to be sent.
+     *
+     * @return the leave packet
+     */
+    ByteBuffer getLeave() {
+        return this.getBinaryPacket(NornNodeInfoCodec.TYPE_LEAVE);
+    }
+
+    /**
+     * Returns the serialized reply, ready to be sent. The node information is serialized if it changed.
+     *
+     * @return the serialized reply
+     * @throws java.io.IOException
+     */
+    ByteBuffer getSerializedReply()
+            throws IOException {
+        if (this.serializedReply == null) {
+            this.serializedReply = ByteBuffer.wrap(NornUtility.nodeInfo2ByteArray(this.nodeInfo));
+        }
+        this.serializedReply.rewind();
+        return this.serializedReply;
+    }
+
+    private ByteBuffer getBinaryPacket(final byte type) {
+        this.binaryReply.put(NornNodeInfoCodec.TYPE_OFFSET, type);
+        this.binaryReply.limit(this.binaryLength).position(0);
+        return this.binaryReply;
+    }
+}
@@ -0,0 +1,462 @@
+/**
+ * Copyright 2012 - 2013 Markus Geiss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.mgeiss.norn;
+
+import com.github.mgeiss.norn.util.NornConditions;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * <code>NornNodeSelectionStrategies</code> provides the built-in <code>NornNodeSelectionStrategy</code>
+ * implementations. None of them sorts the whole list of nodes.
+ *
+ * @author Markus Geiss
+ * @version 2.2.0
+ * @see com.github.mgeiss.norn.NornNodeSelectionStrategy
+ */
+public final class NornNodeSelectionStrategies {
+
+    /**
+     * Smallest load used for weighting, keeps idle nodes from getting an infinite weight.
+     */
+    private static final double MIN_LOAD = 0.01D;
+
+    private static final Comparator<NornNodeInfo> LOAD_ORDER = new Comparator<NornNodeInfo>() {
+
+        @Override
+        public int compare(final NornNodeInfo nodeInfo1, final NornNodeInfo nodeInfo2) {
+            return Double.compare(nodeInfo1.getLoad(), nodeInfo2.getLoad());
+        }
+    };
+
+    private static final Comparator<NornNodeInfo> MASTER_ORDER = new Comparator<NornNodeInfo>() {
+
+        @Override
+        public int compare(final NornNodeInfo nodeInfo1, final NornNodeInfo nodeInfo2) {
+            if (nodeInfo1.isMaster() != nodeInfo2.isMaster()) {
+                return nodeInfo1.isMaster() ? -1 : 1;
+            }
+            return NornNodeSelectionStrategies.LOAD_ORDER.compare(nodeInfo1, nodeInfo2);
+        }
+    };
+
+    private static final NornNodeSelectionStrategy LEAST_LOAD = new NornNodeSelectionStrategy() {
+
+        @Override
+        public List<NornNodeInfo> select(final List<NornNodeInfo> nodeInfos, final int count) {
+            return NornNodeSelectionStrategies.smallest(nodeInfos, count, NornNodeSelectionStrategies.LOAD_ORDER);
+        }
+    };
+
+    private static final NornNodeSelectionStrategy POWER_OF_TWO_CHOICES = new NornNodeSelectionStrategy() {
+
+        @Override
+        public List<NornNodeInfo> select(final List<NornNodeInfo> nodeInfos, final int count) {
+            final Random random = ThreadLocalRandom.current();
+            final List<NornNodeInfo> remaining = new ArrayList<>(nodeInfos);
+            final List<NornNodeInfo> selected = new ArrayList<>(Math.min(count, remaining.size()));
+
+            while (selected.size() < count && !remaining.isEmpty()) {
+                int index = random.nextInt(remaining.size());
+                if (remaining.size() > 1) {
+                    int other = random.nextInt(remaining.size() - 1);
+                    if (other >= index) {
+                        other++;
+                    }
+                    if (remaining.get(other).getLoad() < remaining.get(index).getLoad()) {
+                        index = other;
+                    }
+                }
+                selected.add(NornNodeSelectionStrategies.removeFast(remaining, index));
+            }
+
+            return selected;
+        }
+    };
+
+    private static final NornNodeSelectionStrategy WEIGHTED_RANDOM = new NornNodeSelectionStrategy() {
+
+        @Override
+        public List<NornNodeInfo> select(final List<NornNodeInfo> nodeInfos, final int count) {
+            final Random random = ThreadLocalRandom.current();
+            final List<NornNodeInfo> remaining = new ArrayList<>(nodeInfos);
+            final List<NornNodeInfo> selected = new ArrayList<>(Math.min(count, remaining.size()));
+
+            final double[] weights = new double[remaining.size()];
+            double totalWeight = 0.0D;
+            for (int i = 0; i < weights.length; i++) {
+                weights[i] = 1.0D / Math.max(NornNodeSelectionStrategies.MIN_LOAD, remaining.get(i).getLoad());
+                totalWeight += weights[i];
+            }
+
+            int size = weights.length;
+            while (selected.size() < count && size > 0) {
+                double point = random.nextDouble() * totalWeight;
+                int index = size - 1;
+                for (int i = 0; i < size; i++) {
+                    point -= weights[i];
+                    if (point < 0.0D) {
+                        index = i;
+                        break;
+                    }
+                }
+
+                totalWeight -= weights[index];
+                size--;
+                weights[index] = weights[size];
+                selected.add(NornNodeSelectionStrategies.removeFast(remaining, index));
+            }
+
+            return selected;
+        }
+    };
+
+    private static final NornNodeSelectionStrategy MASTER_PREFERRED =
+            NornNodeSelectionStrategies.masterPreferred(Double.POSITIVE_INFINITY);
+
+    /**
+     * Private constructor to disable public construction.
+     */
+    private NornNodeSelectionStrategies() {
+        super();
+    }
+
+    /**
+     * Returns a strategy choosing the nodes with the lowest load, using a linear scan.
+     *
+     * @return a least load strategy
+     */
+    public static NornNodeSelectionStrategy leastLoad() {
+        return NornNodeSelectionStrategies.LEAST_LOAD;
+    }
+
+    /**
+     * Returns a strategy choosing the nodes with the lowest load, treating all nodes within <code>tolerance</code> of
+     * the lowest load as equal and choosing randomly among them. The load of a node is projected one second ahead by
+     * its advertised trend, so a node whose load is rising ranks behind an equally loaded steady one. Clients
+     * discovering at the same moment spread over all nearly idle nodes instead of piling onto the single least loaded
+     * one.
+     *
+     * @param tolerance the difference of loads considered equal
+     * @return a least load strategy
+     * @throws java.lang.IllegalArgumentException if <code>tolerance</code> is not valid
+     * @see com.github.mgeiss.norn.util.NornConditions#checkWeight(double)
+     */
+    public static NornNodeSelectionStrategy leastLoad(final double tolerance) {
+        NornConditions.checkWeight(tolerance);
+
+        return new LeastLoadStrategy(tolerance);
+    }
+
+    /**
+     * Returns a strategy choosing the node with the lower load of two randomly picked nodes. Clients spread over all
+     * nodes while still avoiding the most loaded ones, even if all of them see the same loads.
+     *
+     * @return a power of two choices strategy
+     */
+    public static NornNodeSelectionStrategy powerOfTwoChoices() {
+        return NornNodeSelectionStrategies.POWER_OF_TWO_CHOICES;
+    }
+
+    /**
+     * Returns a strategy choosing nodes randomly, with a probability proportional to the inverse of their load.
+     *
+     * @return a weighted random strategy
+     */
+    public static NornNodeSelectionStrategy weightedRandom() {
+        return NornNodeSelectionStrategies.WEIGHTED_RANDOM;
+    }
+
+    /**
+     * Returns a strategy choosing master nodes first, ordered by load, followed by all other nodes. This is the
+     * behavior of all versions prior to 2.2.0.
+     *
+     * @return a master preferred strategy
+     */
+    public static NornNodeSelectionStrategy masterPreferred() {
+        return NornNodeSelectionStrategies.MASTER_PREFERRED;
+    }
+
+    /**
+     * Returns a strategy choosing master nodes first, as long as the least loaded master does not exceed
+     * <code>spilloverLoad</code>. Otherwise the nodes with the lowest load are chosen, regardless of being master.
+     *
+     * @param spilloverLoad the load a master may carry before clients spill over to other nodes
+     * @return a master preferred strategy
+     * @throws java.lang.IllegalArgumentException if <code>spilloverLoad</code> is not valid
+     * @see com.github.mgeiss.norn.util.NornConditions#checkWeight(double)
+     */
+    public static NornNodeSelectionStrategy masterPreferred(final double spilloverLoad) {
+        if (spilloverLoad != Double.POSITIVE_INFINITY) {
+            NornConditions.checkWeight(spilloverLoad);
+        }
+
+        return new MasterPreferredStrategy(spilloverLoad);
+    }
+
+    /**
+     * Returns a strategy choosing the nodes with the lowest score, combining the advertised load and the latency this
+     * client observed, <code>loadWeight * load + latencyWeight * latency</code> with the latency in milliseconds.
+     * The latency is the average of recent calls of the proxies, or of the round trip times of discovery replies if
+     * no call has been made yet. Nodes without a known latency are scored with the average latency of all other
+     * nodes.
+     *
+     * @param loadWeight    the weight of the load
+     * @param latencyWeight the weight of a millisecond latency
+     * @return a latency aware strategy
+     * @throws java.lang.IllegalArgumentException if a weight is not valid
+     * @see com.github.mgeiss.norn.util.NornConditions#checkWeight(double)
+     */
+    public static NornNodeSelectionStrategy latencyAware(final double loadWeight, final double latencyWeight) {
+        NornConditions.checkWeight(loadWeight);
+        NornConditions.checkWeight(latencyWeight);
+
+        return new LatencyAwareStrategy(loadWeight, latencyWeight);
+    }
+
+    /**
+     * Returns the <code>count</code> smallest nodes in ascending order without sorting the whole list, keeping the
+     * order of arrival for equal nodes.
+     *
+     * @param nodeInfos  all known nodes
+     * @param count      maximum number of nodes
+     * @param comparator the order to use
+     * @return a new list of nodes
+     */
+    private static List<NornNodeInfo> smallest(final List<NornNodeInfo> nodeInfos, final int count,
+                                               final Comparator<NornNodeInfo> comparator) {
+        if (count == 1) {
+            NornNodeInfo smallest = null;
+            for (final NornNodeInfo nodeInfo : nodeInfos) {
+                if (smallest == null || comparator.compare(nodeInfo, smallest) < 0) {
+                    smallest = nodeInfo;
+                }
+            }
+            return smallest != null ? Collections.singletonList(smallest) : Collections.<NornNodeInfo>emptyList();
+        }
+
+        final List<NornNodeInfo> smallest = new ArrayList<>(Math.min(count, nodeInfos.size()));
+        for (final NornNodeInfo nodeInfo : nodeInfos) {
+            if (smallest.size() == count && comparator.compare(nodeInfo, smallest.get(count - 1)) >= 0) {
+                continue;
+            }
+
+            int index = smallest.size();
+            while (index > 0 && comparator.compare(nodeInfo, smallest.get(index - 1)) < 0) {
+                index--;
+            }
+            if (smallest.size() == count) {
+                smallest.remove(count - 1);
+            }
+            smallest.add(index, nodeInfo);
+        }
+        return smallest;
+    }
+
+    private static double projectedLoad(final NornNodeInfo nodeInfo) {
+        return nodeInfo.getLoad() + Math.max(0.0D, nodeInfo.getLoadTrend());
+    }
+
+    private static NornNodeInfo removeFast(final List<NornNodeInfo> nodeInfos, final int index) {
+        final NornNodeInfo nodeInfo = nodeInfos.get(index);
+        final NornNodeInfo last = nodeInfos.remove(nodeInfos.size() - 1);
+        if (index < nodeInfos.size()) {
+            nodeInfos.set(index, last);
+        }
+        return nodeInfo;
+    }
+
+    private static int hashCode(final double value) {
+        final long bits = Double.doubleToLongBits(value);
+        return (int) (bits ^ (bits >>> 32));
+    }
+
+    /**
+     * <code>LeastLoadStrategy</code> chooses randomly among the nodes within a tolerance of the lowest load. Strategies
+     * using the same tolerance are equal, so configurations using them share one membership.
+     */
+    private static final class LeastLoadStrategy
+            implements NornNodeSelectionStrategy {
+
+        private final double tolerance;
+
+        private LeastLoadStrategy(final double tolerance) {
+            super();
+            this.tolerance = tolerance;
+        }
+
+        @Override
+        public List<NornNodeInfo> select(final List<NornNodeInfo> nodeInfos, final int count) {
+            final Random random = ThreadLocalRandom.current();
+            final List<NornNodeInfo> remaining = new ArrayList<>(nodeInfos);
+            final List<NornNodeInfo> selected = new ArrayList<>(Math.min(count, remaining.size()));
+
+            while (selected.size() < count && !remaining.isEmpty()) {
+                double lowest = Double.POSITIVE_INFINITY;
+                for (final NornNodeInfo nodeInfo : remaining) {
+                    lowest = Math.min(lowest, NornNodeSelectionStrategies.projectedLoad(nodeInfo));
+                }
+
+                int index = -1;
+                int equal = 0;
+                for (int i = 0; i < remaining.size(); i++) {
+                    if (NornNodeSelectionStrategies.projectedLoad(remaining.get(i)) <= lowest + this.tolerance
+                            && random.nextInt(++equal) == 0) {
+                        index = i;
+                    }
+                }
+                selected.add(NornNodeSelectionStrategies.removeFast(remaining, index));
+            }
+
+            return selected;
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (other == null || this.getClass() != other.getClass()) {
+                return false;
+            }
+            return Double.compare(this.tolerance, ((LeastLoadStrategy) other).tolerance) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return NornNodeSelectionStrategies.hashCode(this.tolerance);
+        }
+    }
+
+    /**
+     * <code>MasterPreferredStrategy</code> chooses master nodes first unless all of them exceed the spillover load.
+     * Strategies using the same spillover load are equal.
+     */
+    private static final class MasterPreferredStrategy
+            implements NornNodeSelectionStrategy {
+
+        private final double spilloverLoad;
+
+        private MasterPreferredStrategy(final double spilloverLoad) {
+            super();
+            this.spilloverLoad = spilloverLoad;
+        }
+
+        @Override
+        public List<NornNodeInfo> select(final List<NornNodeInfo> nodeInfos, final int count) {
+            boolean spillover = true;
+            for (final NornNodeInfo nodeInfo : nodeInfos) {
+                if (nodeInfo.isMaster() && nodeInfo.getLoad() <= this.spilloverLoad) {
+                    spillover = false;
+                    break;
+                }
+            }
+
+            return NornNodeSelectionStrategies.smallest(nodeInfos, count, spillover
+                    ? NornNodeSelectionStrategies.LOAD_ORDER : NornNodeSelectionStrategies.MASTER_ORDER);
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (other == null || this.getClass() != other.getClass()) {
+                return false;
+            }
+            return Double.compare(this.spilloverLoad, ((MasterPreferredStrategy) other).spilloverLoad) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return NornNodeSelectionStrategies.hashCode(this.spilloverLoad);
+        }
+    }
+
+    /**
+     * <code>LatencyAwareStrategy</code> chooses the nodes with the lowest weighted sum of load and latency. Strategies
+     * using the same weights are equal.
+     */
+    private static final class LatencyAwareStrategy
+            implements NornNodeSelectionStrategy {
+
+        private final double loadWeight;
+        private final double latencyWeight;
+
+        private LatencyAwareStrategy(final double loadWeight, final double latencyWeight) {
+            super();
+            this.loadWeight = loadWeight;
+            this.latencyWeight = latencyWeight;
+        }
+
+        @Override
+        public List<NornNodeInfo> select(final List<NornNodeInfo> nodeInfos, final int count) {
+            final NornLatencies latencies = NornLatencies.getInstance();
+            final double[] millis = new double[nodeInfos.size()];
+            double knownMillis = 0.0D;
+            int known = 0;
+            for (int i = 0; i < millis.length; i++) {
+                millis[i] = latencies.getMillis(nodeInfos.get(i).getNodeId());
+                if (millis[i] >= 0.0D) {
+                    knownMillis += millis[i];
+                    known++;
+                }
+            }
+            final double averageMillis = known > 0 ? knownMillis / known : 0.0D;
+
+            final Map<NornNodeInfo, Double> scores = new IdentityHashMap<>(millis.length);
+            for (int i = 0; i < millis.length; i++) {
+                final NornNodeInfo nodeInfo = nodeInfos.get(i);
+                scores.put(nodeInfo, this.loadWeight * Math.max(0.0D, nodeInfo.getLoad())
+                        + this.latencyWeight * (millis[i] >= 0.0D ? millis[i] : averageMillis));
+            }
+
+            return NornNodeSelectionStrategies.smallest(nodeInfos, count, new Comparator<NornNodeInfo>() {
+
+                @Override
+                public int compare(final NornNodeInfo nodeInfo1, final NornNodeInfo nodeInfo2) {
+                    return Double.compare(scores.get(nodeInfo1), scores.get(nodeInfo2));
+                }
+            });
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (other == null || this.getClass() != other.getClass()) {
+                return false;
+            }
+            final LatencyAwareStrategy that = (LatencyAwareStrategy) other;
+            return Double.compare(this.loadWeight, that.loadWeight) == 0
+                    && Double.compare(this.latencyWeight, that.latencyWeight) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * NornNodeSelectionStrategies.hashCode(this.loadWeight)
+                    + NornNodeSelectionStrategies.hashCode(this.latencyWeight);
+        }
+    }
+}
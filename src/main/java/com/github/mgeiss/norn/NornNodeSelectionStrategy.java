@@ -0,0 +1,41 @@
+/**
+ * Copyright 2012 - 2013 Markus Geiss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.mgeiss.norn;
+
+import java.util.List;
+
+/**
+ * <code>NornNodeSelectionStrategy</code> decides which of the discovered nodes a client uses. Strategies using
+ * randomness spread clients over several nodes instead of letting all of them choose the same node.
+ * <p/>
+ * Implementations must be thread safe and must not modify the given list.
+ *
+ * @author Markus Geiss
+ * @version 2.2.0
+ * @see com.github.mgeiss.norn.NornNodeSelectionStrategies
+ */
+public interface NornNodeSelectionStrategy {
+
+    /**
+     * Returns up to <code>count</code> distinct candidates taken from <code>nodeInfos</code>, the preferred node
+     * first.
+     *
+     * @param nodeInfos all known nodes, must not be modified
+     * @param count     maximum number of candidates
+     * @return a new list of candidates, empty if <code>nodeInfos</code> is empty
+     */
+    List<NornNodeInfo> select(List<NornNodeInfo> nodeInfos, int count);
+}
@@ -0,0 +1,162 @@
+/**
+ * Copyright 2012 - 2013 Markus Geiss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.mgeiss.norn;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <code>NornPingGuard</code> protects a node against ping storms. Every source host owns a token bucket refilled
+ * with the configured number of pings per second, holding at most one second worth of pings. A ping sent from the
+ * same socket as the previous ping of a host within the duplicate window is suppressed.
+ * <p/>
+ * Known sources are checked without allocation. The number of tracked sources is bounded, idle sources are
+ * forgotten first.
+ * <p/>
+ * All methods must be called by the responder thread serving the group only.
+ *
+ * @author Markus Geiss
+ * @version 2.2.0
+ * @see com.github.mgeiss.norn.NornResponder
+ */
+final class NornPingGuard {
+
+    /**
+     * The ping should be answered.
+     */
+    static final int ACCEPTED = 0;
+
+    /**
+     * The ping exceeded the rate limit of its source.
+     */
+    static final int RATE_LIMITED = 1;
+
+    /**
+     * The ping repeated the previous ping of its source within the duplicate window.
+     */
+    static final int DUPLICATE = 2;
+
+    private static final int MAX_SOURCES = 4096;
+    private static final long ONE_SECOND = TimeUnit.SECONDS.toNanos(1L);
+
+    private final int pingRateLimit;
+    private final long duplicatePingWindow;
+    private final long idleTime;
+    private final Map<InetAddress, Source> sources = new HashMap<>();
+
+    /**
+     * Package private constructor.
+     *
+     * @param pingRateLimit       pings per second accepted from one source host, 0 for no limit
+     * @param duplicatePingWindow window in milliseconds duplicate pings are suppressed, 0 to accept all duplicates
+     */
+    NornPingGuard(final int pingRateLimit, final int duplicatePingWindow) {
+        super();
+        this.pingRateLimit = pingRateLimit;
+        this.duplicatePingWindow = TimeUnit.MILLISECONDS.toNanos(duplicatePingWindow);
+        this.idleTime = Math.max(NornPingGuard.ONE_SECOND, this.duplicatePingWindow);
+    }
+
+    /**
+     * Returns true if this guard checks pings at all.
+     *
+     * @return true if a rate limit or a duplicate window is configured
+     */
+    boolean isEnabled() {
+        return this.pingRateLimit > 0 || this.duplicatePingWindow > 0L;
+    }
+
+    /**
+     * Checks a ping received from <code>source</code>.
+     *
+     * @param source the address of the client
+     * @param now    the current value of <code>System.nanoTime()</code>
+     * @return <code>ACCEPTED</code>, <code>RATE_LIMITED</code> or <code>DUPLICATE</code>
+     */
+    int check(final InetSocketAddress source, final long now) {
+        Source state = this.sources.get(source.getAddress());
+        if (state == null) {
+            if (this.sources.size() >= NornPingGuard.MAX_SOURCES) {
+                this.prune(now);
+            }
+            state = new Source(this.pingRateLimit, now);
+            this.sources.put(source.getAddress(), state);
+        }
+
+        final boolean duplicate = this.duplicatePingWindow > 0L
+                && state.lastPort == source.getPort()
+                && now - state.lastPing < this.duplicatePingWindow;
+        state.lastPort = source.getPort();
+        state.lastPing = now;
+        if (duplicate) {
+            return NornPingGuard.DUPLICATE;
+        }
+
+        if (this.pingRateLimit > 0) {
+            state.tokens = Math.min(this.pingRateLimit,
+                    state.tokens + (double) (now - state.lastRefill) * this.pingRateLimit / NornPingGuard.ONE_SECOND);
+            state.lastRefill = now;
+            if (state.tokens < 1.0D) {
+                return NornPingGuard.RATE_LIMITED;
+            }
+            state.tokens -= 1.0D;
+        }
+
+        return NornPingGuard.ACCEPTED;
+    }
+
+    /**
+     * Returns the number of tracked sources.
+     *
+     * @return number of sources
+     */
+    int getSourceCount() {
+        return this.sources.size();
+    }
+
+    private void prune(final long now) {
+        final Iterator<Source> iterator = this.sources.values().iterator();
+        while (iterator.hasNext()) {
+            if (now - iterator.next().lastPing > this.idleTime) {
+                iterator.remove();
+            }
+        }
+        if (this.sources.size() >= NornPingGuard.MAX_SOURCES) {
+            this.sources.clear();
+        }
+    }
+
+    /**
+     * <code>Source</code> is the state of one source host.
+     */
+    private static final class Source {
+
+        private double tokens;
+        private long lastRefill;
+        private int lastPort = -1;
+        private long lastPing;
+
+        private Source(final int tokens, final long now) {
+            super();
+            this.tokens = tokens;
+            this.lastRefill = now;
+        }
+    }
+}
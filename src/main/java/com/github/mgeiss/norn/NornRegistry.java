@@ -0,0 +1,144 @@
+/**
+ * Copyright 2012 - 2013 Markus Geiss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.mgeiss.norn;
+
+import java.rmi.AccessException;
+import java.rmi.AlreadyBoundException;
+import java.rmi.NotBoundException;
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.rmi.registry.Registry;
+import java.util.Map;
+
+/**
+ * <code>NornRegistry</code> is the remote object registry of a node created by <code>LocateNorn.createNode</code>.
+ * Besides the operations of a <code>Registry</code> it keeps metadata for every binding, a version, a weight and
+ * tags, and lets clients watch the bindings for changes.
+ * <p/>
+ * Every change increments the version of the registry. <code>watch</code> blocks until the registry moved past the
+ * version a client knows and returns all changes since, so a client learns about a changed binding as soon as it
+ * happened instead of polling.
+ * <p/>
+ * Bulk operations look up, bind or list many names with a single remote call, e.g. when a client wires up all its
+ * services at startup.
+ * <p/>
+ * A node binds its <code>NornRegistry</code> within its plain registry under <code>NAME</code>, all bindings are
+ * mirrored into the plain registry, so clients not using norn still find them.
+ *
+ * @author Markus Geiss
+ * @version 2.2.0
+ * @see com.github.mgeiss.norn.NornNode#getBinding(String)
+ * @see com.github.mgeiss.norn.NornNode#watch(long, int)
+ */
+public interface NornRegistry
+        extends Registry {
+
+    /**
+     * The name a node binds its <code>NornRegistry</code> under within its plain registry.
+     */
+    String NAME = "com.github.mgeiss.norn.NornRegistry";
+
+    /**
+     * Binds a remote reference to the specified <code>name</code>, together with the given metadata.
+     *
+     * @param name   the name to associate with the remote reference
+     * @param obj    a reference to a remote object
+     * @param weight the weight of the binding, e.g. its share of the calls
+     * @param tags   the tags of the binding, e.g. its interface version
+     * @throws java.rmi.RemoteException
+     * @throws java.rmi.AlreadyBoundException
+     * @throws java.rmi.AccessException
+     * @throws java.lang.IllegalArgumentException if an argument is not valid
+     */
+    void bind(String name, Remote obj, double weight, Map<String, String> tags)
+            throws RemoteException, AlreadyBoundException, AccessException;
+
+    /**
+     * Replaces the binding for the specified <code>name</code>, together with the given metadata.
+     *
+     * @param name   the name to associate with the remote reference
+     * @param obj    a reference to a remote object
+     * @param weight the weight of the binding, e.g. its share of the calls
+     * @param tags   the tags of the binding, e.g. its interface version
+     * @throws java.rmi.RemoteException
+     * @throws java.rmi.AccessException
+     * @throws java.lang.IllegalArgumentException if an argument is not valid
+     */
+    void rebind(String name, Remote obj, double weight, Map<String, String> tags)
+            throws RemoteException, AccessException;
+
+    /**
+     * Returns the remote references bound to all specified <code>names</code>.
+     *
+     * @param names the names to look up
+     * @return a new map of the names to their remote references, in the order of <code>names</code>
+     * @throws java.rmi.RemoteException
+     * @throws java.rmi.NotBoundException if one of the names is not bound
+     * @throws java.rmi.AccessException
+     */
+    Map<String, Remote> lookupAll(String... names)
+            throws RemoteException, NotBoundException, AccessException;
+
+    /**
+     * Binds all given remote references to their names. Either all or none of the names are bound.
+     *
+     * @param bindings the names and the remote references to bind
+     * @throws java.rmi.RemoteException
+     * @throws java.rmi.AlreadyBoundException if one of the names is already bound, no name has been bound then
+     * @throws java.rmi.AccessException
+     * @throws java.lang.IllegalArgumentException if an argument is not valid
+     */
+    void bindAll(Map<String, ? extends Remote> bindings)
+            throws RemoteException, AlreadyBoundException, AccessException;
+
+    /**
+     * Returns all names bound at the moment of the call together with their remote references.
+     *
+     * @return a new map of the names to their remote references
+     * @throws java.rmi.RemoteException
+     * @throws java.rmi.AccessException
+     */
+    Map<String, Remote> snapshot()
+            throws RemoteException, AccessException;
+
+    /**
+     * Returns the binding of the specified <code>name</code>, the remote reference and its metadata.
+     *
+     * @param name the name to associate with the remote reference
+     * @return the binding
+     * @throws java.rmi.RemoteException
+     * @throws java.rmi.NotBoundException
+     * @throws java.rmi.AccessException
+     */
+    NornBinding getBinding(String name)
+            throws RemoteException, NotBoundException, AccessException;
+
+    /**
+     * Returns all changes of the bindings since the given version, waiting up to <code>timeout</code> milliseconds
+     * for a change if there is none yet. If the changes since the given version are not known anymore, all current
+     * bindings are returned instead.
+     *
+     * @param version the version of the registry the caller knows, 0 for all bindings
+     * @param timeout the time to wait for a change in milliseconds, 0 to return immediately
+     * @return the changes, empty if none happened within the timeout
+     * @throws java.rmi.RemoteException
+     * @throws java.rmi.AccessException
+     * @throws java.lang.IllegalArgumentException if <code>timeout</code> is not valid
+     * @see com.github.mgeiss.norn.util.NornConditions#checkWatchTimeout(int)
+     */
+    NornRegistryChanges watch(long version, int timeout)
+            throws RemoteException, AccessException;
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright 2012 - 2013 Markus Geiss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.mgeiss.norn;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <code>NornRegistryChanges</code> holds the changes of the bindings of a <code>NornRegistry</code> since the version
+ * a client knows. If the registry does not know the changes since that version anymore, e.g. because it has been
+ * restarted, the changes are full, they hold a bind event for every current binding and replace all a client knows.
+ * Instances are immutable.
+ *
+ * @author Markus Geiss
+ * @version 2.2.0
+ * @see com.github.mgeiss.norn.NornRegistry#watch(long, int)
+ */
+public final class NornRegistryChanges
+        implements Serializable {
+
+    private static final long serialVersionUID = -7458061237460964285L;
+    private final long version;
+    private final boolean full;
+    private final List<NornRegistryEvent> events;
+
+    /**
+     * Package private constructor.
+     *
+     * @param version the version of the registry after all changes
+     * @param full    true if the changes replace all a client knows
+     * @param events  the changes in the order they happened
+     */
+    NornRegistryChanges(final long version, final boolean full, final List<NornRegistryEvent> events) {
+        super();
+        this.version = version;
+        this.full = full;
+        this.events = Collections.unmodifiableList(events);
+    }
+
+    /**
+     * Returns the version of the registry after all changes, to be passed to the next watch.
+     *
+     * @return the version
+     */
+    public long getVersion() {
+        return this.version;
+    }
+
+    /**
+     * Returns true if these changes hold all current bindings, replacing all a client knows.
+     *
+     * @return true if full
+     */
+    public boolean isFull() {
+        return this.full;
+    }
+
+    /**
+     * Returns the changes in the order they happened.
+     *
+     * @return an unmodifiable list of events, empty if nothing changed
+     */
+    public List<NornRegistryEvent> getEvents() {
+        return this.events;
+    }
+
+    @Override
+    public String toString() {
+        return "NornRegistryChanges{version=" + this.version
+                + ", full=" + this.full
+                + ", events=" + this.events.size()
+                + '}';
+    }
+}
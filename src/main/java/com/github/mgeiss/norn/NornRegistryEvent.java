@@ -0,0 +1,93 @@
+/**
+ * Copyright 2012 - 2013 Markus Geiss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.mgeiss.norn;
+
+import java.io.Serializable;
+
+/**
+ * <code>NornRegistryEvent</code> is a single change of the bindings of a <code>NornRegistry</code>, a name that has
+ * been bound, rebound or unbound. Instances are immutable.
+ *
+ * @author Markus Geiss
+ * @version 2.2.0
+ * @see com.github.mgeiss.norn.NornRegistryChanges
+ */
+public final class NornRegistryEvent
+        implements Serializable {
+
+    private static final long serialVersionUID = 5190475340287717932L;
+    private final String name;
+    private final long version;
+    private final NornBinding binding;
+
+    /**
+     * Package private constructor.
+     *
+     * @param name    the changed name
+     * @param version the version of the registry after the change
+     * @param binding the new binding, null if the name has been unbound
+     */
+    NornRegistryEvent(final String name, final long version, final NornBinding binding) {
+        super();
+        this.name = name;
+        this.version = version;
+        this.binding = binding;
+    }
+
+    /**
+     * Returns the changed name.
+     *
+     * @return the name
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Returns the version of the registry after this change.
+     *
+     * @return the version
+     */
+    public long getVersion() {
+        return this.version;
+    }
+
+    /**
+     * Returns the new binding of the name.
+     *
+     * @return the binding, null if the name has been unbound
+     */
+    public NornBinding getBinding() {
+        return this.binding;
+    }
+
+    /**
+     * Returns true if the name has been unbound.
+     *
+     * @return true if unbound
+     */
+    public boolean isUnbound() {
+        return this.binding == null;
+    }
+
+    @Override
+    public String toString() {
+        return "NornRegistryEvent{name=" + this.name
+                + ", version=" + this.version
+                + ", unbound=" + this.isUnbound()
+                + '}';
+    }
+}
@@ -0,0 +1,396 @@
+/**
+ * Copyright 2012 - 2013 Markus Geiss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.mgeiss.norn;
+
+import com.github.mgeiss.norn.util.NornConditions;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.rmi.AccessException;
+import java.rmi.AlreadyBoundException;
+import java.rmi.NotBoundException;
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.rmi.registry.Registry;
+import java.rmi.server.RemoteServer;
+import java.rmi.server.ServerNotActiveException;
+import java.text.MessageFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ResourceBundle;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <code>NornRegistryImpl</code> keeps the bindings of a node in a concurrent map, so lookups never wait for a lock.
+ * Changes are serialized, every change gets the next version and is kept in a bounded log, watchers waiting for a
+ * change are woken up as soon as it happened. All bindings are mirrored into the plain registry of the node, changes
+ * made directly to the plain registry are taken over by <code>reconcile</code>. The attached node republishes its
+ * bound names after every change.
+ * <p/>
+ * Like a plain registry only callers on the local host may change bindings.
+ *
+ * @author Markus Geiss
+ * @version 2.2.0
+ * @see com.github.mgeiss.norn.LocateNorn#createNode(com.github.mgeiss.norn.util.NornConfiguration)
+ */
+final class NornRegistryImpl
+        implements NornRegistry {
+
+    private static final ResourceBundle messages = ResourceBundle.getBundle("norn-messages");
+    private static final int MAX_EVENTS = 1024;
+
+    private final Registry mirror;
+    private final ConcurrentMap<String, NornBinding> bindings = new ConcurrentHashMap<>();
+    private final Deque<NornRegistryEvent> events = new ArrayDeque<>();
+    private volatile NornNode node;
+    private long version = System.currentTimeMillis() * 1000L;
+    private long floorVersion = this.version;
+
+    /**
+     * Package private constructor.
+     *
+     * @param mirror the plain registry all bindings are mirrored into
+     */
+    NornRegistryImpl(final Registry mirror) {
+        super();
+        this.mirror = mirror;
+    }
+
+    @Override
+    public Remote lookup(final String name)
+            throws RemoteException, NotBoundException, AccessException {
+        return this.getBinding(name).getStub();
+    }
+
+    @Override
+    public void bind(final String name, final Remote obj)
+            throws RemoteException, AlreadyBoundException, AccessException {
+        this.bind(name, obj, NornBinding.DEFAULT_WEIGHT, Collections.<String, String>emptyMap());
+    }
+
+    @Override
+    public void bind(final String name, final Remote obj, final double weight, final Map<String, String> tags)
+            throws RemoteException, AlreadyBoundException, AccessException {
+        NornRegistryImpl.checkAccess("bind");
+        NornRegistryImpl.checkBinding(name, obj, weight, tags);
+
+        synchronized (this) {
+            if (this.bindings.containsKey(name)) {
+                throw new AlreadyBoundException(name);
+            }
+            this.put(name, obj, weight, tags);
+        }
+        this.publish();
+    }
+
+    @Override
+    public void rebind(final String name, final Remote obj)
+            throws RemoteException, AccessException {
+        this.rebind(name, obj, NornBinding.DEFAULT_WEIGHT, Collections.<String, String>emptyMap());
+    }
+
+    @Override
+    public void rebind(final String name, final Remote obj, final double weight, final Map<String, String> tags)
+            throws RemoteException, AccessException {
+        NornRegistryImpl.checkAccess("rebind");
+        NornRegistryImpl.checkBinding(name, obj, weight, tags);
+
+        synchronized (this) {
+            this.put(name, obj, weight, tags);
+        }
+        this.publish();
+    }
+
+    @Override
+    public void unbind(final String name)
+            throws RemoteException, NotBoundException, AccessException {
+        NornRegistryImpl.checkAccess("unbind");
+        NornConditions.checkNotNull(name, "name");
+
+        synchronized (this) {
+            if (!this.bindings.containsKey(name)) {
+                throw new NotBoundException(name);
+            }
+            try {
+                this.mirror.unbind(name);
+            } catch (NotBoundException nbex) {
+                // intentionally left blank, the mirrored binding has been removed directly
+            }
+            this.remove(name);
+        }
+        this.publish();
+    }
+
+    @Override
+    public String[] list() {
+        return this.bindings.keySet().toArray(new String[0]);
+    }
+
+    @Override
+    public Map<String, Remote> lookupAll(final String... names)
+            throws NotBoundException {
+        NornConditions.checkNotNull(names, "names");
+
+        final Map<String, Remote> stubs = new LinkedHashMap<>();
+        for (final String name : names) {
+            stubs.put(name, this.getBinding(name).getStub());
+        }
+        return stubs;
+    }
+
+    @Override
+    public void bindAll(final Map<String, ? extends Remote> bindings)
+            throws RemoteException, AlreadyBoundException, AccessException {
+        NornRegistryImpl.checkAccess("bind");
+        NornConditions.checkNotNull(bindings, "bindings");
+        for (final Map.Entry<String, ? extends Remote> binding : bindings.entrySet()) {
+            NornRegistryImpl.checkBinding(binding.getKey(), binding.getValue(), NornBinding.DEFAULT_WEIGHT,
+                    Collections.<String, String>emptyMap());
+        }
+
+        synchronized (this) {
+            for (final String name : bindings.keySet()) {
+                if (this.bindings.containsKey(name)) {
+                    throw new AlreadyBoundException(name);
+                }
+            }
+            for (final Map.Entry<String, ? extends Remote> binding : bindings.entrySet()) {
+                this.put(binding.getKey(), binding.getValue(), NornBinding.DEFAULT_WEIGHT,
+                        Collections.<String, String>emptyMap());
+            }
+        }
+        this.publish();
+    }
+
+    @Override
+    public synchronized Map<String, Remote> snapshot() {
+        final Map<String, Remote> stubs = new LinkedHashMap<>();
+        for (final NornBinding binding : this.bindings.values()) {
+            stubs.put(binding.getName(), binding.getStub());
+        }
+        return stubs;
+    }
+
+    @Override
+    public NornBinding getBinding(final String name)
+            throws NotBoundException {
+        NornConditions.checkNotNull(name, "name");
+
+        final NornBinding binding = this.bindings.get(name);
+        if (binding == null) {
+            throw new NotBoundException(name);
+        }
+        return binding;
+    }
+
+    @Override
+    public synchronized NornRegistryChanges watch(final long version, final int timeout) {
+        NornConditions.checkWatchTimeout(timeout);
+
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        long remaining = deadline - System.nanoTime();
+        while (this.version == version && remaining > 0L) {
+            try {
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            } catch (InterruptedException iex) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            remaining = deadline - System.nanoTime();
+        }
+
+        final List<NornRegistryEvent> changes = new ArrayList<>();
+        if (version < this.floorVersion || version > this.version) {
+            for (final NornBinding binding : this.bindings.values()) {
+                changes.add(new NornRegistryEvent(binding.getName(), binding.getVersion(), binding));
+            }
+            return new NornRegistryChanges(this.version, true, changes);
+        }
+
+        for (final NornRegistryEvent event : this.events) {
+            if (event.getVersion() > version) {
+                changes.add(event);
+            }
+        }
+        return new NornRegistryChanges(this.version, false, changes);
+    }
+
+    /**
+     * Attaches the node publishing the names bound in this registry, null to detach it.
+     *
+     * @param node the node
+     */
+    void attach(final NornNode node) {
+        this.node = node;
+    }
+
+    /**
+     * Takes over all changes made directly to the mirrored plain registry, binding names only bound there with the
+     * default metadata and removing names unbound there. The attached node republishes its bound names if anything
+     * changed.
+     *
+     * @throws java.rmi.RemoteException if the plain registry could not be listed
+     */
+    void reconcile()
+            throws RemoteException {
+        boolean changed = false;
+        synchronized (this) {
+            final Set<String> mirrored = new HashSet<>(Arrays.asList(this.mirror.list()));
+            mirrored.remove(NornRegistry.NAME);
+
+            for (final String name : mirrored) {
+                final Remote stub;
+                try {
+                    stub = this.mirror.lookup(name);
+                } catch (NotBoundException nbex) {
+                    // intentionally left blank, the name has been unbound meanwhile
+                    continue;
+                }
+                final NornBinding binding = this.bindings.get(name);
+                if (binding == null || !binding.getStub().equals(stub)) {
+                    this.store(name, stub, NornBinding.DEFAULT_WEIGHT, Collections.<String, String>emptyMap());
+                    changed = true;
+                }
+            }
+
+            for (final String name : this.bindings.keySet()) {
+                if (!mirrored.contains(name)) {
+                    this.remove(name);
+                    changed = true;
+                }
+            }
+        }
+
+        if (changed) {
+            this.publish();
+        }
+    }
+
+    /**
+     * Binds the given remote reference, mirrors it and records the change. Must be called holding the lock of this
+     * registry.
+     *
+     * @param name   the name to associate with the remote reference
+     * @param obj    a reference to a remote object
+     * @param weight the weight of the binding
+     * @param tags   the tags of the binding
+     * @throws java.rmi.RemoteException if the binding could not be mirrored
+     */
+    private void put(final String name, final Remote obj, final double weight, final Map<String, String> tags)
+            throws RemoteException {
+        this.mirror.rebind(name, obj);
+        this.store(name, obj, weight, tags);
+    }
+
+    /**
+     * Binds the given remote reference and records the change. Must be called holding the lock of this registry.
+     *
+     * @param name   the name to associate with the remote reference
+     * @param obj    a reference to a remote object
+     * @param weight the weight of the binding
+     * @param tags   the tags of the binding
+     */
+    private void store(final String name, final Remote obj, final double weight, final Map<String, String> tags) {
+        final NornBinding binding = new NornBinding(name, obj, ++this.version, weight, tags);
+        this.bindings.put(name, binding);
+        this.record(new NornRegistryEvent(name, binding.getVersion(), binding));
+    }
+
+    /**
+     * Removes the binding of the given name and records the change. Must be called holding the lock of this
+     * registry.
+     *
+     * @param name the name to remove
+     */
+    private void remove(final String name) {
+        this.bindings.remove(name);
+        this.record(new NornRegistryEvent(name, ++this.version, null));
+    }
+
+    /**
+     * Lets the attached node republish the names bound in this registry. Must be called after the lock of this
+     * registry has been released.
+     */
+    private void publish() {
+        final NornNode current = this.node;
+        if (current != null) {
+            current.publishBoundNames(this.list());
+        }
+    }
+
+    /**
+     * Appends the given change to the log and wakes up all watchers. The oldest change is dropped if the log is
+     * full, watchers knowing only an older version receive all bindings afterwards.
+     *
+     * @param event the change
+     */
+    private void record(final NornRegistryEvent event) {
+        if (this.events.size() >= NornRegistryImpl.MAX_EVENTS) {
+            this.floorVersion = this.events.removeFirst().getVersion();
+        }
+        this.events.addLast(event);
+        this.notifyAll();
+    }
+
+    private static void checkBinding(final String name, final Remote obj, final double weight,
+                                     final Map<String, String> tags) {
+        NornConditions.checkNotNull(name, "name");
+        NornConditions.checkNotNull(obj, "obj");
+        NornConditions.checkWeight(weight);
+        NornConditions.checkNotNull(tags, "tags");
+    }
+
+    /**
+     * Ensures that the current remote caller runs on the local host, as a plain registry does. Calls not made
+     * remotely are always allowed.
+     *
+     * @param operation the name of the operation
+     * @throws java.rmi.AccessException if the caller runs on another host
+     */
+    private static void checkAccess(final String operation)
+            throws AccessException {
+        final String clientHost;
+        try {
+            clientHost = RemoteServer.getClientHost();
+        } catch (ServerNotActiveException snaex) {
+            // intentionally left blank, local calls are always allowed
+            return;
+        }
+
+        try {
+            final InetAddress address = InetAddress.getByName(clientHost);
+            if (address.isAnyLocalAddress() || address.isLoopbackAddress()
+                    || NetworkInterface.getByInetAddress(address) != null) {
+                return;
+            }
+        } catch (IOException ioex) {
+            // intentionally left blank, unknown hosts are not allowed
+        }
+        throw new AccessException(MessageFormat.format(
+                NornRegistryImpl.messages.getString("message.remote.access.denied"), operation, clientHost));
+    }
+}
@@ -0,0 +1,215 @@
+/**
+ * Copyright 2012 - 2013 Markus Geiss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.mgeiss.norn;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <code>NornReplyStatistics</code> keeps a histogram of the time replies of one multicast group took to arrive after
+ * the first ping of a discovery, shared by all clients of the JVM. The buckets grow exponentially from 100 µs to
+ * about two minutes, so a percentile is accurate to about 12 percent.
+ * <p/>
+ * The histogram ages, all counts are halved once <code>MAX_SAMPLES</code> replies have been recorded, so the learned
+ * discovery window follows a changing network within a few discoveries.
+ * <p/>
+ * Replies arriving after a learned window ends are never recorded, so a window too short for a network that got
+ * slower could not grow from samples alone. A discovery that collected no reply within a learned window therefore
+ * reports a miss, which ages the histogram and makes the next discovery wait for the upper bound again, recording
+ * the slower replies.
+ *
+ * @author Markus Geiss
+ * @version 2.2.0
+ * @see com.github.mgeiss.norn.LocateNorn#getReplyStatistics(com.github.mgeiss.norn.util.NornConfiguration)
+ * @see com.github.mgeiss.norn.util.NornConfiguration.Builder#adaptiveDiscoveryWindow(int, int)
+ */
+public final class NornReplyStatistics {
+
+    /**
+     * Number of recorded replies after which all counts are halved.
+     */
+    public static final int MAX_SAMPLES = 1024;
+
+    /**
+     * Number of recorded replies below which no window is learned yet.
+     */
+    public static final int MIN_SAMPLES = 16;
+
+    private static final ConcurrentMap<String, NornReplyStatistics> groups = new ConcurrentHashMap<>();
+    private static final int BUCKETS = 64;
+    private static final long FIRST_BUCKET_NANOS = TimeUnit.MICROSECONDS.toNanos(100L);
+    private static final double BUCKET_GROWTH = 1.25D;
+    private static final double PERCENTILE = 0.99D;
+    private static final double MARGIN = 0.5D;
+    private static final long MIN_MARGIN_MILLIS = 10L;
+
+    private static final long[] UPPER_BOUNDS = new long[NornReplyStatistics.BUCKETS];
+
+    static {
+        double bound = NornReplyStatistics.FIRST_BUCKET_NANOS;
+        for (int i = 0; i < NornReplyStatistics.BUCKETS; i++) {
+            NornReplyStatistics.UPPER_BOUNDS[i] = (long) bound;
+            bound *= NornReplyStatistics.BUCKET_GROWTH;
+        }
+    }
+
+    private final long[] counts = new long[NornReplyStatistics.BUCKETS];
+    private long total;
+    private volatile long learnedWindow = -1L;
+    private volatile boolean missed;
+
+    /**
+     * Package private constructor.
+     */
+    NornReplyStatistics() {
+        super();
+    }
+
+    /**
+     * Returns the statistics of the given multicast group.
+     *
+     * @param multicastAddress address of the multicast group
+     * @param multicastPort    port of the multicast group
+     * @return the shared statistics of the group
+     */
+    static NornReplyStatistics of(final String multicastAddress, final int multicastPort) {
+        final String group = multicastAddress + ':' + multicastPort;
+        NornReplyStatistics statistics = NornReplyStatistics.groups.get(group);
+        if (statistics == null) {
+            final NornReplyStatistics newStatistics = new NornReplyStatistics();
+            statistics = NornReplyStatistics.groups.putIfAbsent(group, newStatistics);
+            if (statistics == null) {
+                statistics = newStatistics;
+            }
+        }
+        return statistics;
+    }
+
+    /**
+     * Records the arrival of a reply.
+     *
+     * @param nanos the time since the first ping in nanoseconds
+     */
+    synchronized void record(final long nanos) {
+        int bucket = 0;
+        while (bucket < NornReplyStatistics.BUCKETS - 1 && nanos > NornReplyStatistics.UPPER_BOUNDS[bucket]) {
+            bucket++;
+        }
+        this.counts[bucket]++;
+        this.total++;
+
+        if (this.total >= NornReplyStatistics.MAX_SAMPLES) {
+            this.age();
+        }
+
+        if (this.total >= NornReplyStatistics.MIN_SAMPLES) {
+            final long percentile = TimeUnit.NANOSECONDS.toMillis(this.percentileNanos(NornReplyStatistics.PERCENTILE));
+            this.learnedWindow = percentile
+                    + Math.max(NornReplyStatistics.MIN_MARGIN_MILLIS, (long) (percentile * NornReplyStatistics.MARGIN));
+        }
+    }
+
+    /**
+     * Records a discovery that collected no reply within the learned window. The histogram ages, and the next
+     * discovery collects replies for the upper bound of the window.
+     */
+    synchronized void recordMiss() {
+        this.age();
+        this.missed = true;
+    }
+
+    /**
+     * Returns the number of replies the histogram currently holds, which is halved as it ages.
+     *
+     * @return number of replies
+     */
+    public synchronized long getSampleCount() {
+        return this.total;
+    }
+
+    /**
+     * Returns the given percentile of the reply times, as the upper bound of the bucket it falls into.
+     *
+     * @param percentile a percentile between 0 and 1, e.g. 0.99
+     * @return the reply time in milliseconds, -1 if no reply has been recorded
+     */
+    public synchronized double getPercentile(final double percentile) {
+        if (this.total == 0L) {
+            return -1.0D;
+        }
+        return (double) this.percentileNanos(percentile) / TimeUnit.MILLISECONDS.toNanos(1L);
+    }
+
+    /**
+     * Returns the discovery window learned from the reply times, the 99th percentile plus a margin of half of it, at
+     * least 10 ms.
+     *
+     * @return the window in milliseconds, -1 if too few replies have been recorded yet
+     */
+    public long getLearnedWindow() {
+        return this.learnedWindow;
+    }
+
+    /**
+     * Returns the window a discovery should collect replies, the learned window within the given bounds, or the
+     * upper bound as long as no window has been learned or if the previous discovery missed all replies.
+     *
+     * @param minWindow the lower bound in milliseconds
+     * @param maxWindow the upper bound in milliseconds
+     * @return the window in milliseconds
+     */
+    long getWindow(final int minWindow, final int maxWindow) {
+        final long window = this.learnedWindow;
+        if (window < 0L) {
+            return maxWindow;
+        }
+        if (this.missed) {
+            this.missed = false;
+            return maxWindow;
+        }
+        return Math.max(minWindow, Math.min(maxWindow, window));
+    }
+
+    @Override
+    public String toString() {
+        return "NornReplyStatistics{samples=" + this.getSampleCount()
+                + ", p50=" + this.getPercentile(0.5D)
+                + ", p99=" + this.getPercentile(NornReplyStatistics.PERCENTILE)
+                + ", learnedWindow=" + this.learnedWindow
+                + '}';
+    }
+
+    private void age() {
+        this.total = 0L;
+        for (int i = 0; i < NornReplyStatistics.BUCKETS; i++) {
+            this.counts[i] >>= 1;
+            this.total += this.counts[i];
+        }
+    }
+
+    private long percentileNanos(final double percentile) {
+        final long rank = (long) Math.ceil(percentile * this.total);
+        long seen = 0L;
+        for (int i = 0; i < NornReplyStatistics.BUCKETS; i++) {
+            seen += this.counts[i];
+            if (seen >= rank && seen > 0L) {
+                return NornReplyStatistics.UPPER_BOUNDS[i];
+            }
+        }
+        return NornReplyStatistics.UPPER_BOUNDS[NornReplyStatistics.BUCKETS - 1];
+    }
+}
@@ -0,0 +1,1070 @@
+/**
+ * Copyright 2012 - 2013 Markus Geiss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.mgeiss.norn;
+
+import com.github.mgeiss.norn.util.NornConfiguration;
+import com.github.mgeiss.norn.util.NornThreadFactory;
+
+import java.io.IOException;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.ResourceBundle;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <code>NornResponder</code> answers the pings of clients for all nodes of this JVM. Every multicast group is
+ * joined once by a non-blocking <code>DatagramChannel</code>, a ping is answered with the replies of all local
+ * nodes of that group. The groups are spread over a small pool of selector threads, each thread serving its groups
+ * without allocation in steady state. This only holds without a <code>SecurityManager</code>, with one the JDK checks
+ * the sender and the target of every datagram and allocates in each check.
+ * <p/>
+ * A single group is always served by one thread. Binding several sockets to the same multicast port duplicates every
+ * ping instead of spreading them, so additional threads only help if more than one group is served.
+ * <p/>
+ * A group may be protected against ping storms by a <code>NornPingGuard</code>. Pings of clients accepting group
+ * replies may be coalesced, all of them are answered by a single reply to the multicast group at the end of the
+ * coalesce window.
+ * <p/>
+ * In announce mode the replies of all local nodes are multicast to the group periodically, each interval varied by
+ * a random jitter so nodes started together do not announce in lockstep. A node leaving the group multicasts a leave
+ * packet, so listening clients may drop it at once.
+ * <p/>
+ * A group with a local master node keeps a table of all nodes it hears announcements from, and answers pings of
+ * clients accepting table packets with the whole table. Announcing nodes that recently heard a master announce stay
+ * quiet on these pings, so the number of replies does not grow with the number of nodes.
+ * <p/>
+ * The table is versioned by an epoch, raised by every change of a node. A node is versioned with the epoch of its
+ * last change, a removed node is remembered for a while as a tombstone. Clients requesting a delta since an epoch are
+ * answered with the nodes changed and removed after it, or with all nodes if the epoch is unknown. Loads are only
+ * considered a change if they moved by more than a tolerance, so a steady cluster produces empty deltas.
+ * <p/>
+ * A ping may carry a filter, it is only answered for the nodes matching it. Filtered pings are never coalesced.
+ * <p/>
+ * The ping guard, coalesce, announce and membership settings are kept per group, a node whose settings differ from
+ * the nodes already serving its group is rejected. A failure while serving a group is counted in its statistics, a
+ * failed selector is reopened.
+ *
+ * @author Markus Geiss
+ * @version 2.2.0
+ * @see com.github.mgeiss.norn.NornNodeReply
+ */
+final class NornResponder {
+
+    private static final ResourceBundle messages = ResourceBundle.getBundle("norn-messages");
+    private static final NornResponder INSTANCE = new NornResponder();
+    private static final long REOPEN_INTERVAL = 100L;
+    private static final int MAX_PINGS_PER_SELECT = 64;
+    private static final double ANNOUNCE_JITTER = 0.25D;
+    private static final int MISSED_ANNOUNCEMENTS = 3;
+    private static final long TABLE_MAX_AGE = TimeUnit.SECONDS.toNanos(1L);
+    private static final double LOAD_TOLERANCE = 0.1D;
+
+    private final ThreadFactory threadFactory = new NornThreadFactory("norn-responder");
+    private final List<Worker> workers = new ArrayList<>();
+    private final Map<String, Group> groups = new HashMap<>();
+
+    /**
+     * Private constructor to disable public construction.
+     */
+    private NornResponder() {
+        super();
+    }
+
+    /**
+     * Returns the responder shared by all nodes of this JVM.
+     *
+     * @return the shared responder
+     */
+    static NornResponder getInstance() {
+        return NornResponder.INSTANCE;
+    }
+
+    /**
+     * Starts answering pings on the multicast group of the given node. The group is joined if no other local node
+     * is a member already.
+     *
+     * @param nodeReply         the replies of the node
+     * @param nornConfiguration the configuration of the node
+     * @return the statistics of the multicast group
+     * @throws java.io.IOException if the multicast group could not be joined
+     * @throws java.lang.IllegalArgumentException if the group settings differ from the nodes already serving it
+     */
+    synchronized NornResponderStatistics register(final NornNodeReply nodeReply,
+                                                  final NornConfiguration nornConfiguration)
+            throws IOException {
+        final String groupKey = NornResponder.groupKey(nodeReply.getNodeInfo());
+        Group group = this.groups.get(groupKey);
+        if (group != null && !group.hasSettings(nornConfiguration)) {
+            throw new IllegalArgumentException(MessageFormat.format(
+                    NornResponder.messages.getString("message.illegal.argument.group.settings"),
+                    nornConfiguration.getMulticastAddress(), String.valueOf(nornConfiguration.getMulticastPort())));
+        }
+
+        while (this.workers.size() < nornConfiguration.getResponderThreads()) {
+            final Worker worker = new Worker(Selector.open());
+            this.threadFactory.newThread(worker).start();
+            this.workers.add(worker);
+        }
+
+        if (group == null) {
+            Worker worker = this.workers.get(0);
+            for (final Worker candidate : this.workers) {
+                if (candidate.groupCount < worker.groupCount) {
+                    worker = candidate;
+                }
+            }
+
+            group = new Group(NornResponder.openChannel(nodeReply.getNodeInfo().getMulticastAddress(),
+                    nodeReply.getNodeInfo().getMulticastPort()), worker, nornConfiguration);
+            this.groups.put(groupKey, group);
+            worker.groupCount++;
+            worker.addGroup(group);
+        }
+
+        group.nodeCount++;
+        group.worker.addReply(group, nodeReply);
+
+        return group.statistics;
+    }
+
+    /**
+     * Encodes the replies of the given node again, e.g. because its bound names changed.
+     *
+     * @param nodeInfo the information of the node
+     */
+    synchronized void update(final NornNodeInfo nodeInfo) {
+        final Group group = this.groups.get(NornResponder.groupKey(nodeInfo));
+        if (group != null) {
+            group.worker.updateReply(group, nodeInfo);
+        }
+    }
+
+    /**
+     * Stops answering pings for the given node and multicasts its leave packet. The group is left if no other local
+     * node is a member.
+     *
+     * @param nodeInfo the information of the node
+     */
+    synchronized void unregister(final NornNodeInfo nodeInfo) {
+        final String groupKey = NornResponder.groupKey(nodeInfo);
+        final Group group = this.groups.get(groupKey);
+        if (group == null) {
+            return;
+        }
+
+        group.worker.removeReply(group, nodeInfo);
+
+        group.nodeCount--;
+        if (group.nodeCount == 0) {
+            this.groups.remove(groupKey);
+            group.worker.groupCount--;
+            group.worker.removeGroup(group);
+        }
+    }
+
+    private static String groupKey(final NornNodeInfo nodeInfo) {
+        return nodeInfo.getMulticastAddress() + ':' + nodeInfo.getMulticastPort();
+    }
+
+    /**
+     * Opens a non-blocking channel bound to the multicast port, joining the group on every interface capable of
+     * multicast.
+     *
+     * @param multicastAddress address of the multicast group
+     * @param multicastPort    port of the multicast group
+     * @return the new channel
+     * @throws java.io.IOException if the channel could not be bound or the group could not be joined at all
+     */
+    static DatagramChannel openChannel(final String multicastAddress, final int multicastPort)
+            throws IOException {
+        final InetAddress groupAddress = InetAddress.getByName(multicastAddress);
+        final ProtocolFamily protocolFamily = groupAddress instanceof Inet6Address
+                ? StandardProtocolFamily.INET6 : StandardProtocolFamily.INET;
+
+        final DatagramChannel channel = DatagramChannel.open(protocolFamily);
+        try {
+            channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            channel.bind(new InetSocketAddress(multicastPort));
+            channel.configureBlocking(false);
+
+            IOException joinException = null;
+            int joined = 0;
+            for (final NetworkInterface networkInterface
+                    : Collections.list(NetworkInterface.getNetworkInterfaces())) {
+                if (!networkInterface.isUp() || !networkInterface.supportsMulticast()) {
+                    continue;
+                }
+                try {
+                    channel.join(groupAddress, networkInterface);
+                    joined++;
+                } catch (IOException ioex) {
+                    joinException = ioex;
+                }
+            }
+
+            if (joined == 0) {
+                throw joinException != null ? joinException
+                        : new IOException("No interface to join " + multicastAddress + ':' + multicastPort);
+            }
+
+            return channel;
+        } catch (IOException ioex) {
+            channel.close();
+            throw ioex;
+        }
+    }
+
+    /**
+     * <code>Group</code> is a joined multicast group and the replies of all local nodes within.
+     */
+    private static final class Group {
+
+        private final DatagramChannel channel;
+        private final Worker worker;
+        private final NornConfiguration nornConfiguration;
+        private final InetSocketAddress groupAddress;
+        private final NornPingGuard pingGuard;
+        private final long replyCoalesceWindow;
+        private final long announceInterval;
+        private final long memberTtl;
+        private final NornResponderStatistics statistics = new NornResponderStatistics();
+        private final List<NornNodeReply> nodeReplies = new ArrayList<>();
+        private final Map<String, Member> members = new HashMap<>();
+        private final Map<String, Member> tombstones = new HashMap<>();
+        private final List<ByteBuffer> tablePackets = new ArrayList<>();
+        private SelectionKey selectionKey;
+        private int nodeCount;
+        private boolean groupReplyPending;
+        private boolean groupReplyTable;
+        private long groupReplyDeadline;
+        private long nextAnnouncement;
+        private boolean masterPresent;
+        private long masterSeenAt;
+        private int tablePacketCount;
+        private boolean tableDirty = true;
+        private long tableBuiltAt;
+        private long epoch = System.currentTimeMillis() * 1000L;
+        private long floorEpoch = this.epoch;
+
+        private Group(final DatagramChannel channel, final Worker worker, final NornConfiguration nornConfiguration)
+                throws IOException {
+            super();
+            this.channel = channel;
+            this.worker = worker;
+            this.nornConfiguration = nornConfiguration;
+            this.groupAddress = new InetSocketAddress(InetAddress.getByName(nornConfiguration.getMulticastAddress()),
+                    nornConfiguration.getMulticastPort());
+            this.pingGuard = new NornPingGuard(nornConfiguration.getPingRateLimit(),
+                    nornConfiguration.getDuplicatePingWindow());
+            this.replyCoalesceWindow = TimeUnit.MILLISECONDS.toNanos(nornConfiguration.getReplyCoalesceWindow());
+            this.announceInterval = TimeUnit.MILLISECONDS.toNanos(nornConfiguration.getAnnounceInterval());
+            this.memberTtl = this.announceInterval > 0L ? this.announceInterval * NornResponder.MISSED_ANNOUNCEMENTS
+                    : TimeUnit.MILLISECONDS.toNanos(nornConfiguration.getMembershipTtl());
+        }
+
+        /**
+         * Returns true if the given configuration has the same group settings as the node this group has been
+         * created for.
+         *
+         * @param other the configuration of another node
+         * @return true if the group settings match
+         */
+        private boolean hasSettings(final NornConfiguration other) {
+            return this.nornConfiguration.getPingRateLimit() == other.getPingRateLimit()
+                    && this.nornConfiguration.getDuplicatePingWindow() == other.getDuplicatePingWindow()
+                    && this.nornConfiguration.getReplyCoalesceWindow() == other.getReplyCoalesceWindow()
+                    && this.nornConfiguration.getAnnounceInterval() == other.getAnnounceInterval()
+                    && (this.announceInterval > 0L
+                    || this.nornConfiguration.getMembershipTtl() == other.getMembershipTtl());
+        }
+
+        /**
+         * Returns true if a local node of this group is a master node.
+         *
+         * @return true if a local master exists
+         */
+        private boolean hasLocalMaster() {
+            for (int i = 0; i < this.nodeReplies.size(); i++) {
+                if (this.nodeReplies.get(i).getNodeInfo().isMaster()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Returns true if the given node is a local node of this group.
+         *
+         * @param nodeId the identifier of a node
+         * @return true if the node is local
+         */
+        private boolean isLocal(final String nodeId) {
+            for (int i = 0; i < this.nodeReplies.size(); i++) {
+                if (this.nodeReplies.get(i).getNodeInfo().getNodeId().equals(nodeId)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Returns true if the local nodes leave pings of clients accepting table packets to a master node. Only
+         * announcing nodes stay quiet, since a master only knows nodes it heard announce.
+         *
+         * @param now the current value of <code>System.nanoTime()</code>
+         * @return true if pings accepting table packets are not answered
+         */
+        private boolean isQuiet(final long now) {
+            return this.announceInterval > 0L && this.masterPresent && now - this.masterSeenAt < this.memberTtl
+                    && !this.hasLocalMaster();
+        }
+
+        /**
+         * Adds the given node to the table or refreshes its entry. The node gets a new version if it is new, changed
+         * its master flag or its bound names, or its load moved by more than the tolerance.
+         *
+         * @param nodeInfo  the node information
+         * @param expiresAt the value of <code>System.nanoTime()</code> the entry expires at
+         */
+        private void upsert(final NornNodeInfo nodeInfo, final long expiresAt) {
+            final String nodeId = nodeInfo.getNodeId();
+            Member member = this.members.get(nodeId);
+            if (member == null) {
+                member = new Member(nodeInfo, expiresAt);
+                this.members.put(nodeId, member);
+                this.tombstones.remove(nodeId);
+                this.publish(member);
+            } else {
+                member.nodeInfo = nodeInfo;
+                member.expiresAt = expiresAt;
+                if (member.master != nodeInfo.isMaster()
+                        || !Objects.equals(member.boundNames, nodeInfo.getBoundNames())
+                        || Math.abs(member.load - nodeInfo.getLoad()) > NornResponder.LOAD_TOLERANCE) {
+                    this.publish(member);
+                }
+            }
+            nodeInfo.setVersion(member.version);
+        }
+
+        /**
+         * Removes the given node from the table, remembering it as a tombstone.
+         *
+         * @param nodeId the identifier of a node
+         * @param now    the current value of <code>System.nanoTime()</code>
+         */
+        private void remove(final String nodeId, final long now) {
+            final Member member = this.members.remove(nodeId);
+            if (member != null) {
+                this.bury(member, now);
+            }
+        }
+
+        /**
+         * Turns all expired entries of the table into tombstones and drops all expired tombstones. Clients that
+         * missed a dropped tombstone can not be answered with a delta anymore.
+         *
+         * @param now the current value of <code>System.nanoTime()</code>
+         */
+        private void expire(final long now) {
+            final Iterator<Member> members = this.members.values().iterator();
+            while (members.hasNext()) {
+                final Member member = members.next();
+                if (now - member.expiresAt >= 0L) {
+                    members.remove();
+                    this.bury(member, now);
+                }
+            }
+
+            final Iterator<Member> tombstones = this.tombstones.values().iterator();
+            while (tombstones.hasNext()) {
+                final Member tombstone = tombstones.next();
+                if (now - tombstone.expiresAt >= 0L) {
+                    tombstones.remove();
+                    this.floorEpoch = Math.max(this.floorEpoch, tombstone.version);
+                }
+            }
+        }
+
+        private void publish(final Member member) {
+            member.version = ++this.epoch;
+            member.master = member.nodeInfo.isMaster();
+            member.load = member.nodeInfo.getLoad();
+            member.boundNames = member.nodeInfo.getBoundNames();
+            this.tableDirty = true;
+        }
+
+        private void bury(final Member member, final long now) {
+            member.version = ++this.epoch;
+            member.expiresAt = now + this.memberTtl;
+            this.tombstones.put(member.nodeInfo.getNodeId(), member);
+            this.tableDirty = true;
+        }
+    }
+
+    /**
+     * <code>Member</code> is an entry of the table a group with a local master keeps.
+     */
+    private static final class Member {
+
+        private NornNodeInfo nodeInfo;
+        private long expiresAt;
+        private long version;
+        private boolean master;
+        private double load;
+        private NornBoundNames boundNames;
+
+        private Member(final NornNodeInfo nodeInfo, final long expiresAt) {
+            super();
+            this.nodeInfo = nodeInfo;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * <code>Worker</code> is a selector thread serving a number of groups. All changes are handed over as tasks, so
+     * groups and replies are only touched by the worker itself.
+     */
+    private static final class Worker
+            implements Runnable {
+
+        private volatile Selector selector;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private final List<Group> groups = new ArrayList<>();
+        private final ByteBuffer message = ByteBuffer.allocateDirect(NornNodeInfoCodec.MAX_PACKET_SIZE);
+        private final List<NornNodeInfo> table = new ArrayList<>();
+        private final List<NornNodeInfo> removed = new ArrayList<>();
+        private final ByteBuffer packet = ByteBuffer.allocateDirect(NornNodeInfoCodec.MAX_PACKET_SIZE);
+        private int groupCount;
+
+        private Worker(final Selector selector) {
+            super();
+            this.selector = selector;
+        }
+
+        private void addGroup(final Group group) {
+            this.execute(group, new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        group.selectionKey = group.channel.register(Worker.this.selector, SelectionKey.OP_READ);
+                        Worker.this.groups.add(group);
+                    } catch (IOException ioex) {
+                        group.statistics.failed();
+                    }
+                }
+            });
+        }
+
+        private void removeGroup(final Group group) {
+            this.execute(group, new Runnable() {
+
+                @Override
+                public void run() {
+                    Worker.this.groups.remove(group);
+                    Worker.close(group);
+                }
+            });
+        }
+
+        private void addReply(final Group group, final NornNodeReply nodeReply) {
+            this.execute(group, new Runnable() {
+
+                @Override
+                public void run() {
+                    group.nodeReplies.add(nodeReply);
+                    group.nextAnnouncement = System.nanoTime();
+                    group.tableDirty = true;
+                }
+            });
+        }
+
+        private void updateReply(final Group group, final NornNodeInfo nodeInfo) {
+            this.execute(group, new Runnable() {
+
+                @Override
+                public void run() {
+                    for (int i = 0; i < group.nodeReplies.size(); i++) {
+                        final NornNodeReply nodeReply = group.nodeReplies.get(i);
+                        if (nodeReply.getNodeInfo() == nodeInfo) {
+                            nodeReply.invalidate();
+                            group.tableDirty = true;
+                            break;
+                        }
+                    }
+                }
+            });
+        }
+
+        private void removeReply(final Group group, final NornNodeInfo nodeInfo) {
+            this.execute(group, new Runnable() {
+
+                @Override
+                public void run() {
+                    for (int i = 0; i < group.nodeReplies.size(); i++) {
+                        final NornNodeReply nodeReply = group.nodeReplies.get(i);
+                        if (nodeReply.getNodeInfo() == nodeInfo) {
+                            group.nodeReplies.remove(i);
+                            group.remove(nodeInfo.getNodeId(), System.nanoTime());
+                            group.tableDirty = true;
+                            try {
+                                group.channel.send(nodeReply.getLeave(), group.groupAddress);
+                                group.statistics.leaveSent();
+                            } catch (IOException ioex) {
+                                // intentionally left blank, clients drop the node when it expires
+                            }
+                            break;
+                        }
+                    }
+                }
+            });
+        }
+
+        /**
+         * Hands the given task over to the worker. A task failing with an unexpected exception is counted as a
+         * failure of its group, the worker goes on with the next task.
+         *
+         * @param group the group the task changes
+         * @param task  the task
+         */
+        private void execute(final Group group, final Runnable task) {
+            this.tasks.add(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        task.run();
+                    } catch (RuntimeException rex) {
+                        group.statistics.failed();
+                    }
+                }
+            });
+            this.selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    try {
+                        this.serve();
+                    } catch (IOException | ClosedSelectorException ex) {
+                        this.reopen();
+                    }
+                }
+            } finally {
+                for (final Group group : this.groups) {
+                    Worker.close(group);
+                }
+                try {
+                    this.selector.close();
+                } catch (IOException ioex) {
+                    // intentionally left blank, just ignore only closing failed
+                }
+            }
+        }
+
+        /**
+         * Waits for pings or the next timed reply, runs all pending tasks and answers all pending pings. A group
+         * failing with an unexpected exception is counted as failed, all other groups are served further.
+         *
+         * @throws java.io.IOException if the selector failed
+         */
+        private void serve()
+                throws IOException {
+            final long wait = Worker.earliest(this.sendGroupReplies(), this.sendAnnouncements());
+            if (wait > 0L) {
+                this.selector.select(Math.max(1L, TimeUnit.NANOSECONDS.toMillis(wait)));
+            } else {
+                this.selector.select();
+            }
+
+            Runnable task;
+            while ((task = this.tasks.poll()) != null) {
+                task.run();
+            }
+
+            final Set<SelectionKey> selectedKeys = this.selector.selectedKeys();
+            for (int i = 0; i < this.groups.size(); i++) {
+                final Group group = this.groups.get(i);
+                if (selectedKeys.contains(group.selectionKey)) {
+                    try {
+                        this.answer(group);
+                    } catch (RuntimeException rex) {
+                        group.statistics.failed();
+                    }
+                }
+            }
+            selectedKeys.clear();
+        }
+
+        /**
+         * Replaces a failed selector and registers all groups with the new one, retrying until it succeeds or the
+         * worker is interrupted. Every group counts the failure.
+         */
+        private void reopen() {
+            try {
+                this.selector.close();
+            } catch (IOException ioex) {
+                // intentionally left blank, just ignore only closing failed
+            }
+
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    final Selector reopened = Selector.open();
+                    for (final Group group : this.groups) {
+                        group.statistics.failed();
+                        try {
+                            group.selectionKey = group.channel.register(reopened, SelectionKey.OP_READ);
+                        } catch (IOException ioex) {
+                            // intentionally left blank, the group stays silent
+                        }
+                    }
+                    this.selector = reopened;
+                    return;
+                } catch (IOException ioex) {
+                    try {
+                        Thread.sleep(NornResponder.REOPEN_INTERVAL);
+                    } catch (InterruptedException iex) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        }
+
+        /**
+         * Answers all pending pings of the given group with the replies of all its local nodes.
+         *
+         * @param group the group with pending pings
+         */
+        private void answer(final Group group) {
+            try {
+                for (int pings = 0; pings < NornResponder.MAX_PINGS_PER_SELECT; pings++) {
+                    this.message.clear();
+                    final SocketAddress client = group.channel.receive(this.message);
+                    if (client == null) {
+                        break;
+                    }
+                    this.message.flip();
+
+                    final int version = NornNodeInfoCodec.pingVersion(this.message);
+                    if (version < 0) {
+                        this.observe(group);
+                        continue;
+                    }
+                    group.statistics.pingReceived();
+
+                    if (group.pingGuard.isEnabled()) {
+                        final int verdict = group.pingGuard.check((InetSocketAddress) client, System.nanoTime());
+                        if (verdict == NornPingGuard.RATE_LIMITED) {
+                            group.statistics.pingRateLimited();
+                            continue;
+                        }
+                        if (verdict == NornPingGuard.DUPLICATE) {
+                            group.statistics.pingDuplicated();
+                            continue;
+                        }
+                    }
+
+                    final byte flags = version > 0 ? NornNodeInfoCodec.pingFlags(this.message) : 0;
+                    final boolean table = (flags & NornNodeInfoCodec.PING_FLAG_TABLE) != 0;
+                    if (table && group.isQuiet(System.nanoTime())) {
+                        group.statistics.pingSuppressed();
+                        continue;
+                    }
+
+                    final NornNodeFilter filter = NornNodeInfoCodec.pingFilter(this.message);
+                    final long since = table ? NornNodeInfoCodec.pingSince(this.message) : -1L;
+                    if (since >= 0L && group.hasLocalMaster()) {
+                        if (this.sendDelta(group, client, since, filter)) {
+                            group.statistics.unicastReplySent();
+                        }
+                        continue;
+                    }
+
+                    if (group.replyCoalesceWindow > 0L && filter == null
+                            && (flags & NornNodeInfoCodec.PING_FLAG_GROUP_REPLY) != 0) {
+                        if (group.groupReplyPending) {
+                            group.groupReplyTable &= table;
+                            group.statistics.pingCoalesced();
+                        } else {
+                            group.groupReplyPending = true;
+                            group.groupReplyTable = table;
+                            group.groupReplyDeadline = System.nanoTime() + group.replyCoalesceWindow;
+                        }
+                        continue;
+                    }
+
+                    if (this.reply(group, client, version, table, filter)) {
+                        group.statistics.unicastReplySent();
+                    }
+                }
+            } catch (IOException ioex) {
+                // intentionally left blank, just ignore only receiving failed
+            }
+        }
+
+        /**
+         * Sends all group replies whose coalesce window elapsed.
+         *
+         * @return nanoseconds until the next pending group reply is due, 0 if none is pending
+         */
+        private long sendGroupReplies() {
+            final long now = System.nanoTime();
+            long wait = 0L;
+            for (int i = 0; i < this.groups.size(); i++) {
+                final Group group = this.groups.get(i);
+                if (!group.groupReplyPending) {
+                    continue;
+                }
+
+                final long remaining = group.groupReplyDeadline - now;
+                if (remaining <= 0L) {
+                    group.groupReplyPending = false;
+                    try {
+                        if (this.reply(group, group.groupAddress, NornNodeInfoCodec.VERSION, group.groupReplyTable,
+                                null)) {
+                            group.statistics.groupReplySent();
+                        }
+                    } catch (RuntimeException rex) {
+                        group.statistics.failed();
+                    }
+                } else if (wait == 0L || remaining < wait) {
+                    wait = remaining;
+                }
+            }
+            return wait;
+        }
+
+        /**
+         * Multicasts the announcements of all groups whose announce interval elapsed.
+         *
+         * @return nanoseconds until the next announcement is due, 0 if no group announces
+         */
+        private long sendAnnouncements() {
+            final long now = System.nanoTime();
+            long wait = 0L;
+            for (int i = 0; i < this.groups.size(); i++) {
+                final Group group = this.groups.get(i);
+                if (group.announceInterval == 0L) {
+                    continue;
+                }
+
+                if (group.nextAnnouncement - now <= 0L) {
+                    for (int j = 0; j < group.nodeReplies.size(); j++) {
+                        final NornNodeReply nodeReply = group.nodeReplies.get(j);
+                        try {
+                            nodeReply.update();
+                            group.channel.send(nodeReply.getAnnouncement(), group.groupAddress);
+                            group.statistics.announcementSent();
+                        } catch (IOException ioex) {
+                            // intentionally left blank, the next announcement may succeed
+                        } catch (RuntimeException rex) {
+                            group.statistics.failed();
+                        }
+                    }
+
+                    final double jitter = 1.0D + NornResponder.ANNOUNCE_JITTER
+                            * (2.0D * ThreadLocalRandom.current().nextDouble() - 1.0D);
+                    group.nextAnnouncement = now + (long) (group.announceInterval * jitter);
+                }
+                wait = Worker.earliest(wait, group.nextAnnouncement - now);
+            }
+            return wait;
+        }
+
+        /**
+         * Returns the lesser of two waits, a wait of 0 meaning nothing is due.
+         *
+         * @param wait1 a wait in nanoseconds or 0
+         * @param wait2 a wait in nanoseconds or 0
+         * @return the earlier wait
+         */
+        private static long earliest(final long wait1, final long wait2) {
+            if (wait1 == 0L) {
+                return wait2;
+            }
+            if (wait2 == 0L) {
+                return wait1;
+            }
+            return Math.min(wait1, wait2);
+        }
+
+        /**
+         * Tracks a received packet that is no ping. A group with a local master merges announcements, replies and
+         * leave packets of other nodes into its table, all other groups only track whether a master announces.
+         *
+         * @param group the group the packet has been received on
+         */
+        private void observe(final Group group) {
+            final int type = NornNodeInfoCodec.packetType(this.message);
+            if (type != NornNodeInfoCodec.TYPE_NODE_INFO && type != NornNodeInfoCodec.TYPE_ANNOUNCE
+                    && type != NornNodeInfoCodec.TYPE_LEAVE) {
+                return;
+            }
+
+            final long now = System.nanoTime();
+            if (!group.hasLocalMaster()) {
+                if (type != NornNodeInfoCodec.TYPE_NODE_INFO && NornNodeInfoCodec.isMaster(this.message)) {
+                    group.masterPresent = type == NornNodeInfoCodec.TYPE_ANNOUNCE;
+                    group.masterSeenAt = now;
+                }
+                return;
+            }
+
+            final NornNodeInfo nodeInfo;
+            try {
+                nodeInfo = NornNodeInfoCodec.decode(this.message);
+            } catch (IOException ioex) {
+                // intentionally left blank, ignore packets that are no node information
+                return;
+            }
+
+            final String nodeId = nodeInfo.getNodeId();
+            if (group.isLocal(nodeId)) {
+                return;
+            }
+
+            if (type == NornNodeInfoCodec.TYPE_LEAVE) {
+                group.remove(nodeId, now);
+            } else {
+                group.upsert(nodeInfo, now + group.memberTtl);
+            }
+        }
+
+        /**
+         * Brings the table of the given group up to date if it changed or became too old, encoding the table packets
+         * again.
+         *
+         * @param group the group, having a local master
+         * @param now   the current value of <code>System.nanoTime()</code>
+         */
+        private void refreshTable(final Group group, final long now) {
+            if (!group.tableDirty && now - group.tableBuiltAt < NornResponder.TABLE_MAX_AGE) {
+                return;
+            }
+
+            for (int i = 0; i < group.nodeReplies.size(); i++) {
+                final NornNodeReply nodeReply = group.nodeReplies.get(i);
+                nodeReply.update();
+                group.upsert(nodeReply.getNodeInfo(), now + group.memberTtl);
+            }
+            group.expire(now);
+
+            this.table.clear();
+            for (final Member member : group.members.values()) {
+                this.table.add(member.nodeInfo);
+            }
+
+            int index = 0;
+            int packets = 0;
+            while (index < this.table.size()) {
+                if (packets == group.tablePackets.size()) {
+                    group.tablePackets.add(ByteBuffer.allocateDirect(NornNodeInfoCodec.MAX_PACKET_SIZE));
+                }
+                final ByteBuffer tablePacket = group.tablePackets.get(packets++);
+                tablePacket.clear();
+                index = NornNodeInfoCodec.encodeTable(this.table, index, tablePacket);
+                tablePacket.flip();
+            }
+            this.table.clear();
+
+            group.tablePacketCount = packets;
+            group.tableDirty = false;
+            group.tableBuiltAt = now;
+        }
+
+        /**
+         * Sends the table of the given group, holding all local nodes and all other nodes that did not expire. The
+         * table is only encoded again if it changed or became too old. A filtered table is encoded for every ping.
+         *
+         * @param group  the group, having a local master
+         * @param target the address of the client or the group
+         * @param filter the filter of the ping, null if the ping carries none
+         * @return true if at least one table packet has been sent
+         */
+        private boolean sendTable(final Group group, final SocketAddress target, final NornNodeFilter filter) {
+            this.refreshTable(group, System.nanoTime());
+
+            if (filter != null) {
+                return this.sendFilteredTable(group, target, filter);
+            }
+
+            boolean sent = false;
+            for (int i = 0; i < group.tablePacketCount; i++) {
+                final ByteBuffer tablePacket = group.tablePackets.get(i);
+                try {
+                    tablePacket.rewind();
+                    group.channel.send(tablePacket, target);
+                    sent = true;
+                } catch (IOException ioex) {
+                    // intentionally left blank, just ignore only sending failed
+                }
+            }
+            return sent;
+        }
+
+        private boolean sendFilteredTable(final Group group, final SocketAddress target, final NornNodeFilter filter) {
+            for (final Member member : group.members.values()) {
+                if (filter.matches(member.nodeInfo)) {
+                    this.table.add(member.nodeInfo);
+                }
+            }
+
+            boolean sent = false;
+            int index = 0;
+            while (index < this.table.size()) {
+                this.packet.clear();
+                index = NornNodeInfoCodec.encodeTable(this.table, index, this.packet);
+                this.packet.flip();
+                try {
+                    group.channel.send(this.packet, target);
+                    sent = true;
+                } catch (IOException ioex) {
+                    // intentionally left blank, just ignore only sending failed
+                }
+            }
+            this.table.clear();
+            return sent;
+        }
+
+        /**
+         * Sends the changes of the table of the given group since the given epoch. All nodes are sent if the epoch is
+         * unknown, either because tombstones it relies on have been dropped or because it stems from another master.
+         * A delta without changes is sent as well, telling the client its epoch is still current. Changed nodes not
+         * matching the filter are reported as removed.
+         *
+         * @param group  the group, having a local master
+         * @param target the address of the client
+         * @param since  the epoch the client requested the changes for, 0 for all nodes
+         * @param filter the filter of the ping, null if the ping carries none
+         * @return true if at least one delta packet has been sent
+         */
+        private boolean sendDelta(final Group group, final SocketAddress target, final long since,
+                                  final NornNodeFilter filter) {
+            this.refreshTable(group, System.nanoTime());
+
+            final boolean full = since < group.floorEpoch || since > group.epoch;
+            for (final Member member : group.members.values()) {
+                if (full || member.version > since) {
+                    if (filter == null || filter.matches(member.nodeInfo)) {
+                        this.table.add(member.nodeInfo);
+                    } else if (!full) {
+                        this.removed.add(member.nodeInfo);
+                    }
+                }
+            }
+            if (!full) {
+                for (final Member tombstone : group.tombstones.values()) {
+                    if (tombstone.version > since) {
+                        tombstone.nodeInfo.setVersion(tombstone.version);
+                        this.removed.add(tombstone.nodeInfo);
+                    }
+                }
+            }
+
+            boolean sent = false;
+            final int size = this.table.size() + this.removed.size();
+            int index = 0;
+            do {
+                this.packet.clear();
+                index = NornNodeInfoCodec.encodeDelta(group.epoch, full ? 0L : since, this.table, this.removed,
+                        index, this.packet);
+                this.packet.flip();
+                try {
+                    group.channel.send(this.packet, target);
+                    sent = true;
+                } catch (IOException ioex) {
+                    // intentionally left blank, just ignore only sending failed
+                }
+            } while (index < size);
+
+            this.table.clear();
+            this.removed.clear();
+            return sent;
+        }
+
+        /**
+         * Sends the replies of all local nodes of the given group matching the filter, or the table of the group if it
+         * has a local master and the client accepts table packets.
+         *
+         * @param group   the group
+         * @param target  the address of the client or the group
+         * @param version the version announced by the client
+         * @param table   true if the client accepts table packets
+         * @param filter  the filter of the ping, null if the ping carries none
+         * @return true if at least one reply has been sent
+         */
+        private boolean reply(final Group group, final SocketAddress target, final int version,
+                              final boolean table, final NornNodeFilter filter) {
+            if (table && group.hasLocalMaster()) {
+                return this.sendTable(group, target, filter);
+            }
+
+            boolean sent = false;
+            for (int i = 0; i < group.nodeReplies.size(); i++) {
+                final NornNodeReply nodeReply = group.nodeReplies.get(i);
+                if (filter != null && !filter.matches(nodeReply.getNodeInfo())) {
+                    continue;
+                }
+                try {
+                    nodeReply.update();
+                    group.channel.send(version == 0
+                            ? nodeReply.getSerializedReply() : nodeReply.getBinaryReply(), target);
+                    sent = true;
+                } catch (IOException ioex) {
+                    // intentionally left blank, just ignore only sending failed
+                }
+            }
+            return sent;
+        }
+
+        private static void close(final Group group) {
+            if (group.selectionKey != null) {
+                group.selectionKey.cancel();
+            }
+            try {
+                group.channel.close();
+            } catch (IOException ioex) {
+                // intentionally left blank, just ignore only closing failed
+            }
+        }
+    }
+}
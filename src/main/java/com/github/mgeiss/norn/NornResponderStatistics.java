@@ -0,0 +1,202 @@
+/**
+ * Copyright 2012 - 2013 Markus Geiss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.mgeiss.norn;
+
+/**
+ * <code>NornResponderStatistics</code> counts the pings and announcements of one multicast group, shared by all local
+ * nodes of the group. The counters are only written by the responder thread serving the group and may be read by any
+ * thread.
+ *
+ * @author Markus Geiss
+ * @version 2.2.0
+ * @see com.github.mgeiss.norn.NornNode#getResponderStatistics()
+ */
+public final class NornResponderStatistics {
+
+    private volatile long receivedPings;
+    private volatile long rateLimitedPings;
+    private volatile long duplicatePings;
+    private volatile long coalescedPings;
+    private volatile long suppressedPings;
+    private volatile long unicastReplies;
+    private volatile long groupReplies;
+    private volatile long announcements;
+    private volatile long leaves;
+    private volatile long failures;
+
+    /**
+     * Package private constructor.
+     */
+    NornResponderStatistics() {
+        super();
+    }
+
+    /**
+     * Returns the number of received pings, including dropped and coalesced ones.
+     *
+     * @return number of pings
+     */
+    public long getReceivedPings() {
+        return this.receivedPings;
+    }
+
+    /**
+     * Returns the number of pings dropped because their source exceeded the ping rate limit.
+     *
+     * @return number of pings
+     */
+    public long getRateLimitedPings() {
+        return this.rateLimitedPings;
+    }
+
+    /**
+     * Returns the number of pings dropped because they repeated a ping within the duplicate ping window.
+     *
+     * @return number of pings
+     */
+    public long getDuplicatePings() {
+        return this.duplicatePings;
+    }
+
+    /**
+     * Returns the number of all dropped pings.
+     *
+     * @return number of pings
+     */
+    public long getDroppedPings() {
+        return this.rateLimitedPings + this.duplicatePings;
+    }
+
+    /**
+     * Returns the number of pings answered by a pending reply to the multicast group, without a reply of their own.
+     *
+     * @return number of pings
+     */
+    public long getCoalescedPings() {
+        return this.coalescedPings;
+    }
+
+    /**
+     * Returns the number of pings left unanswered because a master node answers them with its table.
+     *
+     * @return number of pings
+     */
+    public long getSuppressedPings() {
+        return this.suppressedPings;
+    }
+
+    /**
+     * Returns the number of replies sent to a single client.
+     *
+     * @return number of replies
+     */
+    public long getUnicastReplies() {
+        return this.unicastReplies;
+    }
+
+    /**
+     * Returns the number of replies sent to the multicast group.
+     *
+     * @return number of replies
+     */
+    public long getGroupReplies() {
+        return this.groupReplies;
+    }
+
+    /**
+     * Returns the number of announcements sent to the multicast group.
+     *
+     * @return number of announcements
+     */
+    public long getAnnouncements() {
+        return this.announcements;
+    }
+
+    /**
+     * Returns the number of leave packets sent to the multicast group.
+     *
+     * @return number of leave packets
+     */
+    public long getLeaves() {
+        return this.leaves;
+    }
+
+    /**
+     * Returns the number of unexpected failures while serving the multicast group, e.g. a failed selector that had
+     * to be reopened. The group is served further after a failure.
+     *
+     * @return number of failures
+     */
+    public long getFailures() {
+        return this.failures;
+    }
+
+    void pingReceived() {
+        this.receivedPings++;
+    }
+
+    void pingRateLimited() {
+        this.rateLimitedPings++;
+    }
+
+    void pingDuplicated() {
+        this.duplicatePings++;
+    }
+
+    void pingCoalesced() {
+        this.coalescedPings++;
+    }
+
+    void pingSuppressed() {
+        this.suppressedPings++;
+    }
+
+    void unicastReplySent() {
+        this.unicastReplies++;
+    }
+
+    void groupReplySent() {
+        this.groupReplies++;
+    }
+
+    void announcementSent() {
+        this.announcements++;
+    }
+
+    void leaveSent() {
+        this.leaves++;
+    }
+
+    void failed() {
+        this.failures++;
+    }
+
+    @Override
+    public String toString() {
+        return "NornResponderStatistics{"
+                + "receivedPings=" + this.receivedPings
+                + ", rateLimitedPings=" + this.rateLimitedPings
+                + ", duplicatePings=" + this.duplicatePings
+                + ", coalescedPings=" + this.coalescedPings
+                + ", suppressedPings=" + this.suppressedPings
+                + ", unicastReplies=" + this.unicastReplies
+                + ", groupReplies=" + this.groupReplies
+                + ", announcements=" + this.announcements
+                + ", leaves=" + this.leaves
+                + ", failures=" + this.failures
+                + '}';
+    }
+}
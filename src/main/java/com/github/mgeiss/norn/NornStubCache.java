@@ -0,0 +1,349 @@
+/**
+ * Copyright 2012 - 2013 Markus Geiss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.mgeiss.norn;
+
+import java.io.Serializable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.rmi.NoSuchObjectException;
+import java.rmi.NotBoundException;
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.RemoteObjectInvocationHandler;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <code>NornStubCache</code> keeps the registry stub of every node and the remote stubs looked up on it, so a
+ * repeated <code>lookup</code> of the same name does not cost a remote call. A looked up stub is kept for the
+ * configured time to live.
+ * <p/>
+ * All entries of a node are invalidated if a lookup on it fails, if a call to it failed and the node has been
+ * evicted, or if the node left the cached membership. A name is invalidated once its cached stub throws a
+ * <code>NoSuchObjectException</code>, e.g. because the remote object has been rebound, so the next lookup calls the
+ * registry again. To notice this, dynamic stubs are handed out wrapped in a proxy implementing the same interfaces,
+ * which is serialized as the stub it wraps.
+ *
+ * @author Markus Geiss
+ * @version 2.2.0
+ * @see com.github.mgeiss.norn.LocateNorn#getStubCache(com.github.mgeiss.norn.util.NornConfiguration)
+ * @see com.github.mgeiss.norn.util.NornConfiguration.Builder#stubCacheTtl(int)
+ */
+public final class NornStubCache {
+
+    private final long ttl;
+    private final ConcurrentMap<String, Node> nodes = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    /**
+     * Package private constructor.
+     *
+     * @param ttl the time to live of a looked up stub in milliseconds
+     */
+    NornStubCache(final int ttl) {
+        super();
+        this.ttl = TimeUnit.MILLISECONDS.toNanos(ttl);
+    }
+
+    /**
+     * Returns the registry stub of the given node.
+     *
+     * @param nodeInfo a node
+     * @return a registry stub
+     * @throws java.rmi.RemoteException if the stub could not be created
+     */
+    Registry getRegistry(final NornNodeInfo nodeInfo)
+            throws RemoteException {
+        return this.getNode(nodeInfo, null).registry;
+    }
+
+    /**
+     * Returns the remote stub bound to the given name on the given node, looking it up if it is not cached or
+     * expired. All entries of the node are invalidated if the lookup fails.
+     *
+     * @param nodeInfo a node
+     * @param registry the registry of the node, <code>null</code> to use the cached one
+     * @param name     the name to look up
+     * @return a remote stub
+     * @throws java.rmi.RemoteException
+     * @throws java.rmi.NotBoundException
+     */
+    Remote lookup(final NornNodeInfo nodeInfo, final Registry registry, final String name)
+            throws RemoteException, NotBoundException {
+        final Node node = this.getNode(nodeInfo, registry);
+        final long now = System.nanoTime();
+
+        final Stub cached = node.stubs.get(name);
+        if (cached != null && now - cached.expiresAt < 0L) {
+            this.hits.incrementAndGet();
+            return cached.stub;
+        }
+        this.misses.incrementAndGet();
+
+        final Remote stub;
+        try {
+            stub = this.wrap(nodeInfo.getNodeId(), name, node.registry.lookup(name));
+        } catch (RemoteException rex) {
+            this.invalidate(nodeInfo.getNodeId());
+            throw rex;
+        }
+        node.stubs.put(name, new Stub(stub, now + this.ttl));
+        return stub;
+    }
+
+    /**
+     * Caches the given remote stubs, bound to their names on the given node and looked up together by the caller.
+     *
+     * @param nodeInfo a node
+     * @param registry the registry of the node, <code>null</code> to use the cached one
+     * @param stubs    the names and the remote stubs looked up, replaced by the stubs to hand out
+     * @throws java.rmi.RemoteException if the registry stub could not be created
+     */
+    void putAll(final NornNodeInfo nodeInfo, final Registry registry, final Map<String, Remote> stubs)
+            throws RemoteException {
+        final Node node = this.getNode(nodeInfo, registry);
+        final long expiresAt = System.nanoTime() + this.ttl;
+
+        for (final Map.Entry<String, Remote> entry : stubs.entrySet()) {
+            final Remote stub = this.wrap(nodeInfo.getNodeId(), entry.getKey(), entry.getValue());
+            node.stubs.put(entry.getKey(), new Stub(stub, expiresAt));
+            entry.setValue(stub);
+        }
+    }
+
+    /**
+     * Invalidates all entries of the given node.
+     *
+     * @param nodeId the identifier of a node
+     */
+    public void invalidate(final String nodeId) {
+        if (this.nodes.remove(nodeId) != null) {
+            this.invalidations.incrementAndGet();
+        }
+    }
+
+    /**
+     * Invalidates the stub bound to the given name on the given node.
+     *
+     * @param nodeId the identifier of a node
+     * @param name   the name the stub is bound to
+     */
+    public void invalidate(final String nodeId, final String name) {
+        final Node node = this.nodes.get(nodeId);
+        if (node != null && node.stubs.remove(name) != null) {
+            this.invalidations.incrementAndGet();
+        }
+    }
+
+    /**
+     * Invalidates the stub bound to the given name on the given node, if it still is the given stub.
+     *
+     * @param nodeId the identifier of a node
+     * @param name   the name the stub is bound to
+     * @param stale  the stub that does not exist anymore
+     */
+    private void invalidate(final String nodeId, final String name, final Remote stale) {
+        final Node node = this.nodes.get(nodeId);
+        if (node == null) {
+            return;
+        }
+
+        final Stub cached = node.stubs.get(name);
+        if (cached != null && cached.stub == stale && node.stubs.remove(name, cached)) {
+            this.invalidations.incrementAndGet();
+        }
+    }
+
+    /**
+     * Invalidates all entries.
+     */
+    public void clear() {
+        this.nodes.clear();
+    }
+
+    /**
+     * Returns the number of lookups answered from this cache.
+     *
+     * @return number of lookups
+     */
+    public long getHits() {
+        return this.hits.get();
+    }
+
+    /**
+     * Returns the number of lookups that had to call the registry.
+     *
+     * @return number of lookups
+     */
+    public long getMisses() {
+        return this.misses.get();
+    }
+
+    /**
+     * Returns the number of invalidated nodes and names.
+     *
+     * @return number of invalidations
+     */
+    public long getInvalidations() {
+        return this.invalidations.get();
+    }
+
+    @Override
+    public String toString() {
+        return "NornStubCache{nodes=" + this.nodes.size()
+                + ", hits=" + this.hits
+                + ", misses=" + this.misses
+                + ", invalidations=" + this.invalidations
+                + '}';
+    }
+
+    /**
+     * Wraps a dynamic stub in a proxy invalidating the name once the stub throws a
+     * <code>NoSuchObjectException</code>. Other stubs and remote objects passed by value are returned as they are.
+     *
+     * @param nodeId the identifier of the node the stub has been looked up on
+     * @param name   the name the stub is bound to
+     * @param stub   the looked up stub
+     * @return the stub to cache
+     */
+    private Remote wrap(final String nodeId, final String name, final Remote stub) {
+        if (!Proxy.isProxyClass(stub.getClass())
+                || !(Proxy.getInvocationHandler(stub) instanceof RemoteObjectInvocationHandler)) {
+            return stub;
+        }
+
+        final Invalidating invalidating = new Invalidating(this, nodeId, name, stub);
+        final Remote proxy = (Remote) Proxy.newProxyInstance(stub.getClass().getClassLoader(),
+                stub.getClass().getInterfaces(), invalidating);
+        invalidating.proxy = proxy;
+        return proxy;
+    }
+
+    private Node getNode(final NornNodeInfo nodeInfo, final Registry registry)
+            throws RemoteException {
+        Node node = this.nodes.get(nodeInfo.getNodeId());
+        if (node == null) {
+            final Node newNode = new Node(registry != null ? registry
+                    : LocateRegistry.getRegistry(nodeInfo.getRegistryAddress(), nodeInfo.getRegistryPort()));
+            node = this.nodes.putIfAbsent(nodeInfo.getNodeId(), newNode);
+            if (node == null) {
+                node = newNode;
+            }
+        }
+        return node;
+    }
+
+    /**
+     * <code>Node</code> holds the registry stub of a node and all stubs looked up on it.
+     */
+    private static final class Node {
+
+        private final Registry registry;
+        private final ConcurrentMap<String, Stub> stubs = new ConcurrentHashMap<>();
+
+        private Node(final Registry registry) {
+            super();
+            this.registry = registry;
+        }
+    }
+
+    /**
+     * <code>Invalidating</code> forwards all invocations to a cached dynamic stub and invalidates its name once the
+     * stub throws a <code>NoSuchObjectException</code>. It is serialized as the invocation handler of the stub, so a
+     * cached stub passed to a remote call arrives as a plain stub.
+     */
+    private static final class Invalidating
+            implements InvocationHandler, Serializable {
+
+        private static final long serialVersionUID = 2748310962451837065L;
+        private final transient NornStubCache stubCache;
+        private final transient String nodeId;
+        private final transient String name;
+        private final transient Remote stub;
+        private transient volatile Remote proxy;
+
+        private Invalidating(final NornStubCache stubCache, final String nodeId, final String name,
+                             final Remote stub) {
+            super();
+            this.stubCache = stubCache;
+            this.nodeId = nodeId;
+            this.name = name;
+            this.stub = stub;
+        }
+
+        @Override
+        public Object invoke(final Object proxy, final Method method, final Object[] args)
+                throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                return this.invokeObjectMethod(method, args);
+            }
+
+            try {
+                return method.invoke(this.stub, args);
+            } catch (InvocationTargetException itex) {
+                final Throwable cause = itex.getCause();
+                if (cause instanceof NoSuchObjectException) {
+                    this.stubCache.invalidate(this.nodeId, this.name, this.proxy);
+                }
+                throw cause;
+            }
+        }
+
+        private Object invokeObjectMethod(final Method method, final Object[] args) {
+            switch (method.getName()) {
+                case "equals":
+                    Object other = args[0];
+                    if (other != null && Proxy.isProxyClass(other.getClass())
+                            && Proxy.getInvocationHandler(other) instanceof Invalidating) {
+                        other = ((Invalidating) Proxy.getInvocationHandler(other)).stub;
+                    }
+                    return this.stub.equals(other);
+                case "hashCode":
+                    return this.stub.hashCode();
+                default:
+                    return this.stub.toString();
+            }
+        }
+
+        private Object writeReplace() {
+            return Proxy.getInvocationHandler(this.stub);
+        }
+    }
+
+    /**
+     * <code>Stub</code> is a looked up remote stub and the time it expires.
+     */
+    private static final class Stub {
+
+        private final Remote stub;
+        private final long expiresAt;
+
+        private Stub(final Remote stub, final long expiresAt) {
+            super();
+            this.stub = stub;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -15,6 +15,9 @@
  */
 package com.github.mgeiss.norn.util;
 
+import java.nio.charset.Charset;
+import java.rmi.Remote;
+import java.text.MessageFormat;
 import java.util.ResourceBundle;
 import java.util.StringTokenizer;
 
@@ -23,11 +26,12 @@ import java.util.StringTokenizer;
  * correct arguments.
  * <p/>
  * @author Markus Geiss
- * @version 2.1.1
+ * @version 2.2.0
  */
 public final class NornConditions {
 
     private static final ResourceBundle messages = ResourceBundle.getBundle("norn-messages");
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
 
     /**
      * Sole constructor.
@@ -117,4 +121,307 @@ public final class NornConditions {
             throw new IllegalArgumentException(messages.getString("message.illegal.argument.socket.timeout"));
         }
     }
+
+    /**
+     * Ensures that <code>minWindow</code> and <code>maxWindow</code> consist of valid numbers in the range from 1 to
+     * 300000 (5 min) and <code>minWindow</code> does not exceed <code>maxWindow</code>.
+     *
+     * @param minWindow the lower bound of a discovery window
+     * @param maxWindow the upper bound of a discovery window
+     * @throws java.lang.IllegalArgumentException if the bounds are not within the expected range
+     */
+    public static void checkDiscoveryWindow(int minWindow, int maxWindow) {
+        if (minWindow < 1 || maxWindow > 300000 || minWindow > maxWindow) {
+            throw new IllegalArgumentException(messages.getString("message.illegal.argument.discovery.window"));
+        }
+    }
+
+    /**
+     * Ensures that <code>pingRetransmits</code> consists of a valid number in the range from 0 through 10.
+     *
+     * @param pingRetransmits number of additional pings sent within the socket timeout
+     * @throws java.lang.IllegalArgumentException if <code>pingRetransmits</code> does not consists of a number within
+     * the expected range
+     */
+    public static void checkPingRetransmits(int pingRetransmits) {
+        if (pingRetransmits < 0 || pingRetransmits > 10) {
+            throw new IllegalArgumentException(messages.getString("message.illegal.argument.ping.retransmits"));
+        }
+    }
+
+    /**
+     * Ensures that <code>replyCount</code> is greater than 0.
+     *
+     * @param replyCount a number of replies
+     * @throws java.lang.IllegalArgumentException if <code>replyCount</code> is lesser than 1
+     */
+    public static void checkReplyCount(int replyCount) {
+        if (replyCount < 1) {
+            throw new IllegalArgumentException(messages.getString("message.illegal.argument.reply.count"));
+        }
+    }
+
+    /**
+     * Ensures that <code>quietPeriod</code> consists of a valid number in the range from 1 (1 ms) to 300000 (5 min).
+     *
+     * @param quietPeriod a quiet period
+     * @throws java.lang.IllegalArgumentException if <code>quietPeriod</code> does not consists of a number within
+     * the expected range
+     */
+    public static void checkQuietPeriod(int quietPeriod) {
+        if (quietPeriod < 1 || quietPeriod > 300000) {
+            throw new IllegalArgumentException(messages.getString("message.illegal.argument.quiet.period"));
+        }
+    }
+
+    /**
+     * Ensures that <code>membershipInterval</code> consists of a valid number in the range from 100 (100 ms) to
+     * 3600000 (1 h).
+     *
+     * @param membershipInterval a time to live or refresh interval of a membership
+     * @throws java.lang.IllegalArgumentException if <code>membershipInterval</code> does not consists of a number
+     * within the expected range
+     */
+    public static void checkMembershipInterval(int membershipInterval) {
+        if (membershipInterval < 100 || membershipInterval > 3600000) {
+            throw new IllegalArgumentException(messages.getString("message.illegal.argument.membership.interval"));
+        }
+    }
+
+    /**
+     * Ensures that <code>loadSampleInterval</code> consists of a valid number in the range from 10 (10 ms) to 60000
+     * (1 min).
+     *
+     * @param loadSampleInterval a load sample interval
+     * @throws java.lang.IllegalArgumentException if <code>loadSampleInterval</code> does not consists of a number
+     * within the expected range
+     */
+    public static void checkLoadSampleInterval(int loadSampleInterval) {
+        if (loadSampleInterval < 10 || loadSampleInterval > 60000) {
+            throw new IllegalArgumentException(messages.getString("message.illegal.argument.load.sample.interval"));
+        }
+    }
+
+    /**
+     * Ensures that <code>loadSmoothing</code> is a number greater than 0 and not greater than 1.
+     *
+     * @param loadSmoothing the weight of a new load sample
+     * @throws java.lang.IllegalArgumentException if <code>loadSmoothing</code> is not within the expected range
+     */
+    public static void checkLoadSmoothing(double loadSmoothing) {
+        if (!(loadSmoothing > 0.0D) || loadSmoothing > 1.0D) {
+            throw new IllegalArgumentException(messages.getString("message.illegal.argument.load.smoothing"));
+        }
+    }
+
+    /**
+     * Ensures that <code>responderThreads</code> consists of a valid number in the range from 1 to 64.
+     *
+     * @param responderThreads a number of threads
+     * @throws java.lang.IllegalArgumentException if <code>responderThreads</code> does not consists of a number
+     * within the expected range
+     */
+    public static void checkResponderThreads(int responderThreads) {
+        if (responderThreads < 1 || responderThreads > 64) {
+            throw new IllegalArgumentException(messages.getString("message.illegal.argument.responder.threads"));
+        }
+    }
+
+    /**
+     * Ensures that <code>pingRateLimit</code> consists of a valid number in the range from 0 (unlimited) to 100000.
+     *
+     * @param pingRateLimit a number of pings per second
+     * @throws java.lang.IllegalArgumentException if <code>pingRateLimit</code> does not consists of a number
+     * within the expected range
+     */
+    public static void checkPingRateLimit(int pingRateLimit) {
+        if (pingRateLimit < 0 || pingRateLimit > 100000) {
+            throw new IllegalArgumentException(messages.getString("message.illegal.argument.ping.rate.limit"));
+        }
+    }
+
+    /**
+     * Ensures that <code>duplicatePingWindow</code> consists of a valid number in the range from 0 (disabled) to
+     * 60000 (1 min).
+     *
+     * @param duplicatePingWindow a window in milliseconds
+     * @throws java.lang.IllegalArgumentException if <code>duplicatePingWindow</code> does not consists of a number
+     * within the expected range
+     */
+    public static void checkDuplicatePingWindow(int duplicatePingWindow) {
+        if (duplicatePingWindow < 0 || duplicatePingWindow > 60000) {
+            throw new IllegalArgumentException(messages.getString("message.illegal.argument.duplicate.ping.window"));
+        }
+    }
+
+    /**
+     * Ensures that <code>replyCoalesceWindow</code> consists of a valid number in the range from 0 (disabled) to
+     * 1000 (1 sec).
+     *
+     * @param replyCoalesceWindow a window in milliseconds
+     * @throws java.lang.IllegalArgumentException if <code>replyCoalesceWindow</code> does not consists of a number
+     * within the expected range
+     */
+    public static void checkReplyCoalesceWindow(int replyCoalesceWindow) {
+        if (replyCoalesceWindow < 0 || replyCoalesceWindow > 1000) {
+            throw new IllegalArgumentException(messages.getString("message.illegal.argument.reply.coalesce.window"));
+        }
+    }
+
+    /**
+     * Ensures that <code>announceInterval</code> is either 0 (disabled) or consists of a valid number in the range
+     * from 100 (100 ms) to 3600000 (1 h).
+     *
+     * @param announceInterval an interval in milliseconds
+     * @throws java.lang.IllegalArgumentException if <code>announceInterval</code> does not consists of a number
+     * within the expected range
+     */
+    public static void checkAnnounceInterval(int announceInterval) {
+        if (announceInterval != 0 && (announceInterval < 100 || announceInterval > 3600000)) {
+            throw new IllegalArgumentException(messages.getString("message.illegal.argument.announce.interval"));
+        }
+    }
+
+    /**
+     * Ensures that <code>stubCacheTtl</code> is either 0 (disabled) or consists of a valid number in the range from
+     * 100 (100 ms) to 3600000 (1 h).
+     *
+     * @param stubCacheTtl a time to live in milliseconds
+     * @throws java.lang.IllegalArgumentException if <code>stubCacheTtl</code> does not consists of a number within
+     * the expected range
+     */
+    public static void checkStubCacheTtl(int stubCacheTtl) {
+        if (stubCacheTtl != 0 && (stubCacheTtl < 100 || stubCacheTtl > 3600000)) {
+            throw new IllegalArgumentException(messages.getString("message.illegal.argument.stub.cache.ttl"));
+        }
+    }
+
+    /**
+     * Ensures that <code>watchTimeout</code> consists of a valid number in the range from 0 (return immediately) to
+     * 300000 (5 min).
+     *
+     * @param watchTimeout a timeout in milliseconds
+     * @throws java.lang.IllegalArgumentException if <code>watchTimeout</code> does not consists of a number within
+     * the expected range
+     */
+    public static void checkWatchTimeout(int watchTimeout) {
+        if (watchTimeout < 0 || watchTimeout > 300000) {
+            throw new IllegalArgumentException(messages.getString("message.illegal.argument.watch.timeout"));
+        }
+    }
+
+    /**
+     * Ensures that <code>nodeCount</code> is greater than 0.
+     *
+     * @param nodeCount a number of nodes
+     * @throws java.lang.IllegalArgumentException if <code>nodeCount</code> is lesser than 1
+     */
+    public static void checkNodeCount(int nodeCount) {
+        if (nodeCount < 1) {
+            throw new IllegalArgumentException(messages.getString("message.illegal.argument.node.count"));
+        }
+    }
+
+    /**
+     * Ensures that <code>type</code> is an interface extending <code>java.rmi.Remote</code>.
+     *
+     * @param type a type
+     * @throws java.lang.IllegalArgumentException if <code>type</code> is not a remote interface
+     */
+    public static void checkRemoteInterface(Class<?> type) {
+        if (type == null || !type.isInterface() || !Remote.class.isAssignableFrom(type)) {
+            throw new IllegalArgumentException(messages.getString("message.illegal.argument.remote.interface"));
+        }
+    }
+
+    /**
+     * Ensures that <code>capacity</code> is greater than 0.
+     *
+     * @param capacity a capacity
+     * @throws java.lang.IllegalArgumentException if <code>capacity</code> is lesser than 1
+     */
+    public static void checkCapacity(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException(messages.getString("message.illegal.argument.capacity"));
+        }
+    }
+
+    /**
+     * Ensures that <code>weight</code> is a finite number greater than 0.
+     *
+     * @param weight a weight
+     * @throws java.lang.IllegalArgumentException if <code>weight</code> is not a finite number greater than 0
+     */
+    public static void checkWeight(double weight) {
+        if (!(weight > 0.0D) || Double.isInfinite(weight)) {
+            throw new IllegalArgumentException(messages.getString("message.illegal.argument.weight"));
+        }
+    }
+
+    /**
+     * Ensures that the tag <code>name</code> consists of 1 through 32 bytes and its <code>value</code> of at most 64
+     * bytes, both encoded as UTF-8.
+     *
+     * @param name  the name of a tag
+     * @param value the value of a tag
+     * @throws java.lang.IllegalArgumentException if <code>name</code> or <code>value</code> is null or too long
+     */
+    public static void checkTag(String name, String value) {
+        if (name == null || value == null || name.isEmpty()
+                || name.getBytes(NornConditions.UTF_8).length > 32
+                || value.getBytes(NornConditions.UTF_8).length > 64) {
+            throw new IllegalArgumentException(messages.getString("message.illegal.argument.tag"));
+        }
+    }
+
+    /**
+     * Ensures that <code>tagCount</code> is not greater than 8.
+     *
+     * @param tagCount a number of tags
+     * @throws java.lang.IllegalArgumentException if <code>tagCount</code> is greater than 8
+     */
+    public static void checkTagCount(int tagCount) {
+        if (tagCount > 8) {
+            throw new IllegalArgumentException(messages.getString("message.illegal.argument.tag.count"));
+        }
+    }
+
+    /**
+     * Ensures that <code>virtualNodes</code> consists of a valid number in the range from 1 through 1024.
+     *
+     * @param virtualNodes number of virtual points per node on a hash ring
+     * @throws java.lang.IllegalArgumentException if <code>virtualNodes</code> does not consists of a number within
+     * the expected range
+     */
+    public static void checkVirtualNodes(int virtualNodes) {
+        if (virtualNodes < 1 || virtualNodes > 1024) {
+            throw new IllegalArgumentException(messages.getString("message.illegal.argument.virtual.nodes"));
+        }
+    }
+
+    /**
+     * Ensures that <code>loadBound</code> is a finite number not lesser than 1.
+     *
+     * @param loadBound a factor of the average load
+     * @throws java.lang.IllegalArgumentException if <code>loadBound</code> is not a finite number not lesser than 1
+     */
+    public static void checkLoadBound(double loadBound) {
+        if (!(loadBound >= 1.0D) || Double.isInfinite(loadBound)) {
+            throw new IllegalArgumentException(messages.getString("message.illegal.argument.load.bound"));
+        }
+    }
+
+    /**
+     * Ensures that <code>object</code> is not null.
+     *
+     * @param object an object
+     * @param name   the name of the argument used within the message
+     * @throws java.lang.IllegalArgumentException if <code>object</code> is null
+     */
+    public static void checkNotNull(Object object, String name) {
+        if (object == null) {
+            throw new IllegalArgumentException(
+                    MessageFormat.format(messages.getString("message.illegal.argument.null"), name));
+        }
+    }
 }
@@ -15,13 +15,22 @@
  */
 package com.github.mgeiss.norn.util;
 
+import com.github.mgeiss.norn.NornDiscoveryPolicies;
+import com.github.mgeiss.norn.NornDiscoveryPolicy;
+import com.github.mgeiss.norn.NornNodeFilter;
+import com.github.mgeiss.norn.NornNodeSelectionStrategies;
+import com.github.mgeiss.norn.NornNodeSelectionStrategy;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Objects;
 
 /**
  * <code>NornConfiguration</code> is used to programmatically configure a <code>NornNode</code>.
  *
  * @author Markus Geiss
- * @version 2.1.0
+ * @version 2.2.0
  */
 public final class NornConfiguration {
 
@@ -45,6 +54,41 @@ public final class NornConfiguration {
      */
     public static final int DEFAULT_SOCKET_TIMEOUT = 5000;
 
+    /**
+     * Default number of pings retransmitted within the socket timeout.
+     */
+    public static final int DEFAULT_PING_RETRANSMITS = 2;
+
+    /**
+     * Default time to live of a cached membership entry.
+     */
+    public static final int DEFAULT_MEMBERSHIP_TTL = 30000;
+
+    /**
+     * Default interval a cached membership is refreshed.
+     */
+    public static final int DEFAULT_MEMBERSHIP_REFRESH_INTERVAL = 10000;
+
+    /**
+     * Default interval the load of a node is sampled.
+     */
+    public static final int DEFAULT_LOAD_SAMPLE_INTERVAL = 1000;
+
+    /**
+     * Default weight of a new load sample within the advertised moving average.
+     */
+    public static final double DEFAULT_LOAD_SMOOTHING = 0.3D;
+
+    /**
+     * Default number of threads answering pings.
+     */
+    public static final int DEFAULT_RESPONDER_THREADS = 1;
+
+    /**
+     * Default load an affinity node may carry before its sessions are moved to another node.
+     */
+    public static final double DEFAULT_AFFINITY_LOAD = 1.0D;
+
     /**
      * <code>Builder</code> realizes the builder pattern for a <code>NornConfiguration</code>.
      *
@@ -57,6 +101,28 @@ public final class NornConfiguration {
         private int rmiRegistryPort = NornConfiguration.DEFAULT_RMI_REGISTRY_PORT;
         private int socketTimeout = NornConfiguration.DEFAULT_SOCKET_TIMEOUT;
         private boolean master;
+        private int pingRetransmits = NornConfiguration.DEFAULT_PING_RETRANSMITS;
+        private int minDiscoveryWindow;
+        private int maxDiscoveryWindow;
+        private NornDiscoveryPolicy discoveryPolicy = NornDiscoveryPolicies.quietPeriod();
+        private boolean cacheMembership;
+        private int membershipTtl = NornConfiguration.DEFAULT_MEMBERSHIP_TTL;
+        private int membershipRefreshInterval = NornConfiguration.DEFAULT_MEMBERSHIP_REFRESH_INTERVAL;
+        private int loadSampleInterval = NornConfiguration.DEFAULT_LOAD_SAMPLE_INTERVAL;
+        private double loadSmoothing = NornConfiguration.DEFAULT_LOAD_SMOOTHING;
+        private final Map<NornLoadProvider, Double> loadProviders = new LinkedHashMap<>();
+        private int responderThreads = NornConfiguration.DEFAULT_RESPONDER_THREADS;
+        private int pingRateLimit;
+        private int duplicatePingWindow;
+        private int replyCoalesceWindow;
+        private boolean groupReplies;
+        private NornNodeSelectionStrategy nodeSelectionStrategy = NornNodeSelectionStrategies.masterPreferred();
+        private int announceInterval;
+        private boolean passiveMembership;
+        private final Map<String, String> tags = new LinkedHashMap<>();
+        private NornNodeFilter nodeFilter = NornNodeFilter.all();
+        private double affinityLoad = NornConfiguration.DEFAULT_AFFINITY_LOAD;
+        private int stubCacheTtl;
 
         /**
          * Sole constructor.
@@ -126,15 +192,362 @@ public final class NornConfiguration {
         }
 
         /**
-         * Indicates that a node acts as a master node in a master/slave scenario.
+         * Indicates that a node acts as a master node in a master/slave scenario. A master keeps a table of all nodes
+         * it hears announce and answers discoveries on behalf of all of them, while announcing nodes stay quiet.
          *
          * @return this builder instance
+         * @see #announceInterval(int)
          */
         public Builder master() {
             this.master = true;
             return this;
         }
 
+        /**
+         * The number of pings a client retransmits within the socket timeout, so a single lost datagram does not
+         * cost a whole discovery.
+         *
+         * @param pingRetransmits number of additional pings
+         * @return this builder instance
+         * @throws java.lang.IllegalArgumentException if <code>pingRetransmits</code> is not valid
+         * @see com.github.mgeiss.norn.util.NornConditions#checkPingRetransmits(int)
+         */
+        public Builder pingRetransmits(final int pingRetransmits) {
+            NornConditions.checkPingRetransmits(pingRetransmits);
+
+            this.pingRetransmits = pingRetransmits;
+            return this;
+        }
+
+        /**
+         * Lets a discovery collect replies for a window learned from the reply times observed for the multicast
+         * group, the 99th percentile plus a margin, instead of the whole socket timeout. The window is kept within
+         * the given bounds and never exceeds the socket timeout, as long as too few replies have been observed the
+         * upper bound is used.
+         *
+         * @param minWindow the lower bound in milliseconds
+         * @param maxWindow the upper bound in milliseconds
+         * @return this builder instance
+         * @throws java.lang.IllegalArgumentException if the bounds are not valid
+         * @see com.github.mgeiss.norn.NornReplyStatistics
+         * @see com.github.mgeiss.norn.util.NornConditions#checkDiscoveryWindow(int, int)
+         */
+        public Builder adaptiveDiscoveryWindow(final int minWindow, final int maxWindow) {
+            NornConditions.checkDiscoveryWindow(minWindow, maxWindow);
+
+            this.minDiscoveryWindow = minWindow;
+            this.maxDiscoveryWindow = maxWindow;
+            return this;
+        }
+
+        /**
+         * The policy a client uses to decide when to stop waiting for further replies.
+         *
+         * @param discoveryPolicy a discovery policy
+         * @return this builder instance
+         * @throws java.lang.IllegalArgumentException if <code>discoveryPolicy</code> is null
+         * @see com.github.mgeiss.norn.NornDiscoveryPolicies
+         */
+        public Builder discoveryPolicy(final NornDiscoveryPolicy discoveryPolicy) {
+            NornConditions.checkNotNull(discoveryPolicy, "discoveryPolicy");
+
+            this.discoveryPolicy = discoveryPolicy;
+            return this;
+        }
+
+        /**
+         * Indicates that a client keeps a long-lived membership of all nodes, refreshed in the background, and
+         * answers <code>getNode</code> from memory.
+         *
+         * @return this builder instance
+         * @see com.github.mgeiss.norn.NornMembership
+         */
+        public Builder cacheMembership() {
+            this.cacheMembership = true;
+            return this;
+        }
+
+        /**
+         * The time to live of a cached membership entry.
+         *
+         * @param membershipTtl a time to live in milliseconds
+         * @return this builder instance
+         * @throws java.lang.IllegalArgumentException if <code>membershipTtl</code> is not valid
+         * @see com.github.mgeiss.norn.util.NornConditions#checkMembershipInterval(int)
+         */
+        public Builder membershipTtl(final int membershipTtl) {
+            NornConditions.checkMembershipInterval(membershipTtl);
+
+            this.membershipTtl = membershipTtl;
+            return this;
+        }
+
+        /**
+         * The interval a cached membership is refreshed, should be lesser than the time to live.
+         *
+         * @param membershipRefreshInterval an interval in milliseconds
+         * @return this builder instance
+         * @throws java.lang.IllegalArgumentException if <code>membershipRefreshInterval</code> is not valid
+         * @see com.github.mgeiss.norn.util.NornConditions#checkMembershipInterval(int)
+         */
+        public Builder membershipRefreshInterval(final int membershipRefreshInterval) {
+            NornConditions.checkMembershipInterval(membershipRefreshInterval);
+
+            this.membershipRefreshInterval = membershipRefreshInterval;
+            return this;
+        }
+
+        /**
+         * The interval a node samples its load, pings are answered with the last sample.
+         *
+         * @param loadSampleInterval an interval in milliseconds
+         * @return this builder instance
+         * @throws java.lang.IllegalArgumentException if <code>loadSampleInterval</code> is not valid
+         * @see com.github.mgeiss.norn.util.NornConditions#checkLoadSampleInterval(int)
+         */
+        public Builder loadSampleInterval(final int loadSampleInterval) {
+            NornConditions.checkLoadSampleInterval(loadSampleInterval);
+
+            this.loadSampleInterval = loadSampleInterval;
+            return this;
+        }
+
+        /**
+         * The weight of a new load sample within the moving average a node advertises, 1 advertises every sample
+         * as is. A lower weight keeps short bursts from moving all clients to another node at once.
+         *
+         * @param loadSmoothing a weight greater than 0 and not greater than 1
+         * @return this builder instance
+         * @throws java.lang.IllegalArgumentException if <code>loadSmoothing</code> is not valid
+         * @see com.github.mgeiss.norn.util.NornConditions#checkLoadSmoothing(double)
+         */
+        public Builder loadSmoothing(final double loadSmoothing) {
+            NornConditions.checkLoadSmoothing(loadSmoothing);
+
+            this.loadSmoothing = loadSmoothing;
+            return this;
+        }
+
+        /**
+         * Registers a provider of the load advertised by a node. If more than one provider is registered the load
+         * is the weighted sum of all providers, if no provider is registered the default provider is used. Every
+         * node created with the configuration gets its own instance of a built-in provider, all other providers are
+         * shared by these nodes.
+         *
+         * @param loadProvider a load provider
+         * @param weight       the weight of the provider
+         * @return this builder instance
+         * @throws java.lang.IllegalArgumentException if <code>loadProvider</code> or <code>weight</code> is not valid
+         * @see com.github.mgeiss.norn.util.NornLoadProviders
+         * @see com.github.mgeiss.norn.util.NornConditions#checkWeight(double)
+         */
+        public Builder loadProvider(final NornLoadProvider loadProvider, final double weight) {
+            NornConditions.checkNotNull(loadProvider, "loadProvider");
+            NornConditions.checkWeight(weight);
+
+            this.loadProviders.put(loadProvider, weight);
+            return this;
+        }
+
+        /**
+         * The number of threads answering pings. All nodes of a JVM share one responder, the multicast groups are
+         * spread over its threads. The responder grows to the highest number of threads any node requested.
+         *
+         * @param responderThreads number of threads
+         * @return this builder instance
+         * @throws java.lang.IllegalArgumentException if <code>responderThreads</code> is not valid
+         * @see com.github.mgeiss.norn.util.NornConditions#checkResponderThreads(int)
+         */
+        public Builder responderThreads(final int responderThreads) {
+            NornConditions.checkResponderThreads(responderThreads);
+
+            this.responderThreads = responderThreads;
+            return this;
+        }
+
+        /**
+         * The number of pings per second a node answers for a single client host, further pings are dropped. A host
+         * may send a burst of up to one second worth of pings. A rate limit of 0 disables rate limiting.
+         * <p/>
+         * All local nodes of a multicast group use the settings of the node joining the group first.
+         *
+         * @param pingRateLimit pings per second
+         * @return this builder instance
+         * @throws java.lang.IllegalArgumentException if <code>pingRateLimit</code> is not valid
+         * @see com.github.mgeiss.norn.util.NornConditions#checkPingRateLimit(int)
+         */
+        public Builder pingRateLimit(final int pingRateLimit) {
+            NornConditions.checkPingRateLimit(pingRateLimit);
+
+            this.pingRateLimit = pingRateLimit;
+            return this;
+        }
+
+        /**
+         * The window a node drops a ping sent from the same client socket as the previous ping of that host. A window
+         * of 0 answers every ping. The window should be shorter than the retransmit interval of the clients.
+         *
+         * @param duplicatePingWindow a window in milliseconds
+         * @return this builder instance
+         * @throws java.lang.IllegalArgumentException if <code>duplicatePingWindow</code> is not valid
+         * @see com.github.mgeiss.norn.util.NornConditions#checkDuplicatePingWindow(int)
+         */
+        public Builder duplicatePingWindow(final int duplicatePingWindow) {
+            NornConditions.checkDuplicatePingWindow(duplicatePingWindow);
+
+            this.duplicatePingWindow = duplicatePingWindow;
+            return this;
+        }
+
+        /**
+         * The window a node collects pings of clients accepting group replies before it answers all of them with a
+         * single reply to the multicast group. A window of 0 answers every client on its own.
+         *
+         * @param replyCoalesceWindow a window in milliseconds
+         * @return this builder instance
+         * @throws java.lang.IllegalArgumentException if <code>replyCoalesceWindow</code> is not valid
+         * @see #groupReplies()
+         * @see com.github.mgeiss.norn.util.NornConditions#checkReplyCoalesceWindow(int)
+         */
+        public Builder replyCoalesceWindow(final int replyCoalesceWindow) {
+            NornConditions.checkReplyCoalesceWindow(replyCoalesceWindow);
+
+            this.replyCoalesceWindow = replyCoalesceWindow;
+            return this;
+        }
+
+        /**
+         * A client listening on the multicast port for replies sent to the group, so nodes may answer clients
+         * discovering at the same moment with a single reply. Should not be used on a host running a node of the
+         * same multicast group, since both share the multicast port.
+         *
+         * @return this builder instance
+         * @see #replyCoalesceWindow(int)
+         */
+        public Builder groupReplies() {
+            this.groupReplies = true;
+            return this;
+        }
+
+        /**
+         * The strategy a client uses to choose among all discovered nodes.
+         *
+         * @param nodeSelectionStrategy a node selection strategy
+         * @return this builder instance
+         * @throws java.lang.IllegalArgumentException if <code>nodeSelectionStrategy</code> is null
+         * @see com.github.mgeiss.norn.NornNodeSelectionStrategies
+         */
+        public Builder nodeSelectionStrategy(final NornNodeSelectionStrategy nodeSelectionStrategy) {
+            NornConditions.checkNotNull(nodeSelectionStrategy, "nodeSelectionStrategy");
+
+            this.nodeSelectionStrategy = nodeSelectionStrategy;
+            return this;
+        }
+
+        /**
+         * The interval a node multicasts its node information to the group, varied by a random jitter of up to 25
+         * percent. An interval of 0 disables announcements, the node only answers pings.
+         *
+         * @param announceInterval an interval in milliseconds
+         * @return this builder instance
+         * @throws java.lang.IllegalArgumentException if <code>announceInterval</code> is not valid
+         * @see #passiveMembership()
+         * @see com.github.mgeiss.norn.util.NornConditions#checkAnnounceInterval(int)
+         */
+        public Builder announceInterval(final int announceInterval) {
+            NornConditions.checkAnnounceInterval(announceInterval);
+
+            this.announceInterval = announceInterval;
+            return this;
+        }
+
+        /**
+         * Indicates that a client keeps a long-lived membership built from the announcements of the nodes instead of
+         * pinging the group. Nodes leaving the group are dropped at once. Only if no node is known a discovery is
+         * done. Implies <code>cacheMembership</code>, the time to live should be greater than the announce interval
+         * of the nodes.
+         *
+         * @return this builder instance
+         * @see #announceInterval(int)
+         * @see com.github.mgeiss.norn.NornMembership
+         */
+        public Builder passiveMembership() {
+            this.cacheMembership = true;
+            this.passiveMembership = true;
+            return this;
+        }
+
+        /**
+         * A tag a node carries, e.g. its role, zone or application version. Clients may restrict a discovery to
+         * nodes carrying certain tags.
+         *
+         * @param name  the name of the tag
+         * @param value the value of the tag
+         * @return this builder instance
+         * @throws java.lang.IllegalArgumentException if the tag is not valid or the node carries too many tags
+         * @see #nodeFilter(com.github.mgeiss.norn.NornNodeFilter)
+         * @see com.github.mgeiss.norn.util.NornConditions#checkTag(String, String)
+         * @see com.github.mgeiss.norn.util.NornConditions#checkTagCount(int)
+         */
+        public Builder tag(final String name, final String value) {
+            NornConditions.checkTag(name, value);
+            NornConditions.checkTagCount(this.tags.size() + (this.tags.containsKey(name) ? 0 : 1));
+
+            this.tags.put(name, value);
+            return this;
+        }
+
+        /**
+         * The filter a client sends within its pings, only nodes matching the filter reply.
+         *
+         * @param nodeFilter a node filter
+         * @return this builder instance
+         * @throws java.lang.IllegalArgumentException if <code>nodeFilter</code> is null
+         * @see #tag(String, String)
+         */
+        public Builder nodeFilter(final NornNodeFilter nodeFilter) {
+            NornConditions.checkNotNull(nodeFilter, "nodeFilter");
+
+            this.nodeFilter = nodeFilter;
+            return this;
+        }
+
+        /**
+         * The load an affinity node may carry before its sessions are moved to another node.
+         *
+         * @param affinityLoad a load
+         * @return this builder instance
+         * @throws java.lang.IllegalArgumentException if <code>affinityLoad</code> is not valid
+         * @see com.github.mgeiss.norn.NornMembership#getAffinityNode(String)
+         * @see com.github.mgeiss.norn.util.NornConditions#checkWeight(double)
+         */
+        public Builder affinityLoad(final double affinityLoad) {
+            NornConditions.checkWeight(affinityLoad);
+
+            this.affinityLoad = affinityLoad;
+            return this;
+        }
+
+        /**
+         * The time a client caches a remote stub it looked up on a node, so repeated lookups of the same name do not
+         * call the registry of the node. A time to live of 0 disables the cache.
+         * <p/>
+         * The cache is shared by all clients using an equal configuration. The entries of a node are invalidated once
+         * a call to it fails or it leaves a cached membership.
+         *
+         * @param stubCacheTtl a time to live in milliseconds
+         * @return this builder instance
+         * @throws java.lang.IllegalArgumentException if <code>stubCacheTtl</code> is not valid
+         * @see com.github.mgeiss.norn.LocateNorn#getStubCache(NornConfiguration)
+         * @see com.github.mgeiss.norn.util.NornConditions#checkStubCacheTtl(int)
+         */
+        public Builder stubCacheTtl(final int stubCacheTtl) {
+            NornConditions.checkStubCacheTtl(stubCacheTtl);
+
+            this.stubCacheTtl = stubCacheTtl;
+            return this;
+        }
+
         /**
          * Creates a new <code>NornConfiguration</code> instance, using this builder.
          * <p/>
@@ -143,7 +556,28 @@ public final class NornConfiguration {
          * <code>multicastPort</code> is <tt>42000</tt><br/>
          * <code>rmiRegistryPort</code> is <tt>1099</tt><br/>
          * <code>socketTimeout</code> is <tt>5 seconds</tt><br/>
-         * <code>master</code> is <tt>false</tt>
+         * <code>master</code> is <tt>false</tt><br/>
+         * <code>pingRetransmits</code> is <tt>2</tt><br/>
+         * <code>adaptiveDiscoveryWindow</code> is <tt>off</tt>, collecting replies for the socket timeout<br/>
+         * <code>discoveryPolicy</code> is a quiet period of <tt>50 ms</tt><br/>
+         * <code>cacheMembership</code> is <tt>false</tt><br/>
+         * <code>membershipTtl</code> is <tt>30 seconds</tt><br/>
+         * <code>membershipRefreshInterval</code> is <tt>10 seconds</tt><br/>
+         * <code>loadSampleInterval</code> is <tt>1 second</tt><br/>
+         * <code>loadSmoothing</code> is <tt>0.3</tt><br/>
+         * <code>loadProvider</code> is <tt>heap * 3 + cpu + gc</tt><br/>
+         * <code>responderThreads</code> is <tt>1</tt><br/>
+         * <code>pingRateLimit</code> is <tt>0</tt>, unlimited<br/>
+         * <code>duplicatePingWindow</code> is <tt>0</tt>, answering all pings<br/>
+         * <code>replyCoalesceWindow</code> is <tt>0</tt>, answering every client on its own<br/>
+         * <code>groupReplies</code> is <tt>false</tt><br/>
+         * <code>nodeSelectionStrategy</code> is <tt>master preferred</tt><br/>
+         * <code>announceInterval</code> is <tt>0</tt>, no announcements<br/>
+         * <code>passiveMembership</code> is <tt>false</tt><br/>
+         * <code>tags</code> are <tt>empty</tt><br/>
+         * <code>nodeFilter</code> matches <tt>all</tt> nodes<br/>
+         * <code>affinityLoad</code> is <tt>1.0</tt><br/>
+         * <code>stubCacheTtl</code> is <tt>0</tt>, no stubs are cached
          *
          * @return a new created <code>NornConfiguration</code>
          */
@@ -157,6 +591,28 @@ public final class NornConfiguration {
     private final int rmiRegistryPort;
     private final int socketTimeout;
     private final boolean master;
+    private final int pingRetransmits;
+    private final int minDiscoveryWindow;
+    private final int maxDiscoveryWindow;
+    private final NornDiscoveryPolicy discoveryPolicy;
+    private final boolean cacheMembership;
+    private final int membershipTtl;
+    private final int membershipRefreshInterval;
+    private final int loadSampleInterval;
+    private final double loadSmoothing;
+    private final Map<NornLoadProvider, Double> loadProviders;
+    private final int responderThreads;
+    private final int pingRateLimit;
+    private final int duplicatePingWindow;
+    private final int replyCoalesceWindow;
+    private final boolean groupReplies;
+    private final NornNodeSelectionStrategy nodeSelectionStrategy;
+    private final int announceInterval;
+    private final boolean passiveMembership;
+    private final Map<String, String> tags;
+    private final NornNodeFilter nodeFilter;
+    private final double affinityLoad;
+    private final int stubCacheTtl;
 
     /**
      * Private constructor to restrict creation.
@@ -170,6 +626,28 @@ public final class NornConfiguration {
         this.rmiRegistryPort = builder.rmiRegistryPort;
         this.socketTimeout = builder.socketTimeout;
         this.master = builder.master;
+        this.pingRetransmits = builder.pingRetransmits;
+        this.minDiscoveryWindow = builder.minDiscoveryWindow;
+        this.maxDiscoveryWindow = builder.maxDiscoveryWindow;
+        this.discoveryPolicy = builder.discoveryPolicy;
+        this.cacheMembership = builder.cacheMembership;
+        this.membershipTtl = builder.membershipTtl;
+        this.membershipRefreshInterval = builder.membershipRefreshInterval;
+        this.loadSampleInterval = builder.loadSampleInterval;
+        this.loadSmoothing = builder.loadSmoothing;
+        this.loadProviders = Collections.unmodifiableMap(new LinkedHashMap<>(builder.loadProviders));
+        this.responderThreads = builder.responderThreads;
+        this.pingRateLimit = builder.pingRateLimit;
+        this.duplicatePingWindow = builder.duplicatePingWindow;
+        this.replyCoalesceWindow = builder.replyCoalesceWindow;
+        this.groupReplies = builder.groupReplies;
+        this.nodeSelectionStrategy = builder.nodeSelectionStrategy;
+        this.announceInterval = builder.announceInterval;
+        this.passiveMembership = builder.passiveMembership;
+        this.tags = Collections.unmodifiableMap(new LinkedHashMap<>(builder.tags));
+        this.nodeFilter = builder.nodeFilter;
+        this.affinityLoad = builder.affinityLoad;
+        this.stubCacheTtl = builder.stubCacheTtl;
     }
 
     /**
@@ -217,6 +695,222 @@ public final class NornConfiguration {
         return this.master;
     }
 
+    /**
+     * Returns the number of retransmitted pings.
+     *
+     * @return a valid number of retransmits
+     */
+    public int getPingRetransmits() {
+        return this.pingRetransmits;
+    }
+
+    /**
+     * Returns the lower bound of an adaptive discovery window.
+     *
+     * @return the lower bound in milliseconds, 0 if the discovery window is not adaptive
+     */
+    public int getMinDiscoveryWindow() {
+        return this.minDiscoveryWindow;
+    }
+
+    /**
+     * Returns the upper bound of an adaptive discovery window.
+     *
+     * @return the upper bound in milliseconds, 0 if the discovery window is not adaptive
+     */
+    public int getMaxDiscoveryWindow() {
+        return this.maxDiscoveryWindow;
+    }
+
+    /**
+     * Returns the discovery policy.
+     *
+     * @return the discovery policy, never null
+     */
+    public NornDiscoveryPolicy getDiscoveryPolicy() {
+        return this.discoveryPolicy;
+    }
+
+    /**
+     * Returns the cache membership flag.
+     *
+     * @return true if set, else false
+     */
+    public boolean isCacheMembership() {
+        return this.cacheMembership;
+    }
+
+    /**
+     * Returns the time to live of a cached membership entry.
+     *
+     * @return a valid time to live
+     */
+    public int getMembershipTtl() {
+        return this.membershipTtl;
+    }
+
+    /**
+     * Returns the interval a cached membership is refreshed.
+     *
+     * @return a valid interval
+     */
+    public int getMembershipRefreshInterval() {
+        return this.membershipRefreshInterval;
+    }
+
+    /**
+     * Returns the interval the load of a node is sampled.
+     *
+     * @return a valid interval
+     */
+    public int getLoadSampleInterval() {
+        return this.loadSampleInterval;
+    }
+
+    /**
+     * Returns the weight of a new load sample within the advertised moving average.
+     *
+     * @return a valid weight
+     */
+    public double getLoadSmoothing() {
+        return this.loadSmoothing;
+    }
+
+    /**
+     * Returns all registered load providers and their weights.
+     *
+     * @return an unmodifiable map, empty if no provider has been registered
+     */
+    public Map<NornLoadProvider, Double> getLoadProviders() {
+        return this.loadProviders;
+    }
+
+    /**
+     * Returns the load provider of a node, combining all registered load providers. Built-in providers keeping state
+     * between calls are created anew, so nodes sharing this configuration do not share their state.
+     *
+     * @return a new load provider
+     */
+    public NornLoadProvider createLoadProvider() {
+        if (this.loadProviders.isEmpty()) {
+            return NornLoadProviders.defaultProvider();
+        }
+
+        final Map<NornLoadProvider, Double> loadProviders = new LinkedHashMap<>();
+        for (final Map.Entry<NornLoadProvider, Double> loadProvider : this.loadProviders.entrySet()) {
+            loadProviders.put(NornLoadProviders.newInstance(loadProvider.getKey()), loadProvider.getValue());
+        }
+        return NornLoadProviders.weighted(loadProviders);
+    }
+
+    /**
+     * Returns the number of threads answering pings.
+     *
+     * @return a valid number of threads
+     */
+    public int getResponderThreads() {
+        return this.responderThreads;
+    }
+
+    /**
+     * Returns the number of pings per second a node answers for a single client host.
+     *
+     * @return pings per second, 0 if unlimited
+     */
+    public int getPingRateLimit() {
+        return this.pingRateLimit;
+    }
+
+    /**
+     * Returns the window duplicate pings are dropped.
+     *
+     * @return a window in milliseconds, 0 if no ping is dropped
+     */
+    public int getDuplicatePingWindow() {
+        return this.duplicatePingWindow;
+    }
+
+    /**
+     * Returns the window pings of clients accepting group replies are collected.
+     *
+     * @return a window in milliseconds, 0 if pings are not coalesced
+     */
+    public int getReplyCoalesceWindow() {
+        return this.replyCoalesceWindow;
+    }
+
+    /**
+     * Returns true if a client accepts replies sent to the multicast group.
+     *
+     * @return true if group replies are accepted
+     */
+    public boolean isGroupReplies() {
+        return this.groupReplies;
+    }
+
+    /**
+     * Returns the strategy a client uses to choose among all discovered nodes.
+     *
+     * @return the node selection strategy, never null
+     */
+    public NornNodeSelectionStrategy getNodeSelectionStrategy() {
+        return this.nodeSelectionStrategy;
+    }
+
+    /**
+     * Returns the interval a node multicasts its node information.
+     *
+     * @return an interval in milliseconds, 0 if no announcements are sent
+     */
+    public int getAnnounceInterval() {
+        return this.announceInterval;
+    }
+
+    /**
+     * Returns true if a cached membership is built from announcements instead of pings.
+     *
+     * @return true if the membership is passive
+     */
+    public boolean isPassiveMembership() {
+        return this.passiveMembership;
+    }
+
+    /**
+     * Returns the tags a node carries.
+     *
+     * @return an unmodifiable map of tag names to values, may be empty
+     */
+    public Map<String, String> getTags() {
+        return this.tags;
+    }
+
+    /**
+     * Returns the filter a client sends within its pings.
+     *
+     * @return the node filter, never null
+     */
+    public NornNodeFilter getNodeFilter() {
+        return this.nodeFilter;
+    }
+
+    /**
+     * Returns the load an affinity node may carry before its sessions are moved to another node.
+     *
+     * @return a valid load
+     */
+    public double getAffinityLoad() {
+        return this.affinityLoad;
+    }
+
+    /**
+     * Returns the time a looked up remote stub is cached.
+     *
+     * @return a time to live in milliseconds, 0 if no stubs are cached
+     */
+    public int getStubCacheTtl() {
+        return this.stubCacheTtl;
+    }
+
     @Override
     public boolean equals(Object other) {
         if (this == other) {
@@ -248,6 +942,72 @@ public final class NornConfiguration {
         if (this.master != that.master) {
             return false;
         }
+        if (this.pingRetransmits != that.pingRetransmits) {
+            return false;
+        }
+        if (this.minDiscoveryWindow != that.minDiscoveryWindow) {
+            return false;
+        }
+        if (this.maxDiscoveryWindow != that.maxDiscoveryWindow) {
+            return false;
+        }
+        if (!Objects.equals(this.discoveryPolicy, that.discoveryPolicy)) {
+            return false;
+        }
+        if (this.cacheMembership != that.cacheMembership) {
+            return false;
+        }
+        if (this.membershipTtl != that.membershipTtl) {
+            return false;
+        }
+        if (this.membershipRefreshInterval != that.membershipRefreshInterval) {
+            return false;
+        }
+        if (this.loadSampleInterval != that.loadSampleInterval) {
+            return false;
+        }
+        if (Double.compare(this.loadSmoothing, that.loadSmoothing) != 0) {
+            return false;
+        }
+        if (!Objects.equals(this.loadProviders, that.loadProviders)) {
+            return false;
+        }
+        if (this.responderThreads != that.responderThreads) {
+            return false;
+        }
+        if (this.pingRateLimit != that.pingRateLimit) {
+            return false;
+        }
+        if (this.duplicatePingWindow != that.duplicatePingWindow) {
+            return false;
+        }
+        if (this.replyCoalesceWindow != that.replyCoalesceWindow) {
+            return false;
+        }
+        if (this.groupReplies != that.groupReplies) {
+            return false;
+        }
+        if (!Objects.equals(this.nodeSelectionStrategy, that.nodeSelectionStrategy)) {
+            return false;
+        }
+        if (this.announceInterval != that.announceInterval) {
+            return false;
+        }
+        if (this.passiveMembership != that.passiveMembership) {
+            return false;
+        }
+        if (!this.tags.equals(that.tags)) {
+            return false;
+        }
+        if (!this.nodeFilter.equals(that.nodeFilter)) {
+            return false;
+        }
+        if (Double.compare(this.affinityLoad, that.affinityLoad) != 0) {
+            return false;
+        }
+        if (this.stubCacheTtl != that.stubCacheTtl) {
+            return false;
+        }
 
         return true;
     }
@@ -258,6 +1018,8 @@ public final class NornConfiguration {
         result = 31 * result + this.multicastPort;
         result = 31 * result + this.rmiRegistryPort;
         result = 31 * result + (this.master ? 1 : 0);
+        result = 31 * result + this.pingRetransmits;
+        result = 31 * result + (this.cacheMembership ? 1 : 0);
         return result;
     }
 }
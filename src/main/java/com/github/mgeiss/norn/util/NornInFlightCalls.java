@@ -0,0 +1,81 @@
+/**
+ * Copyright 2012 - 2013 Markus Geiss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.mgeiss.norn.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <code>NornInFlightCalls</code> counts the remote calls currently executed by a node. Remote objects call
+ * <code>enter</code> when a call starts and <code>exit</code> when it finishes, the load is the number of calls in
+ * flight divided by the configured capacity.
+ * <p/>
+ * <pre>
+ *     inFlightCalls.enter();
+ *     try {
+ *         ...
+ *     } finally {
+ *         inFlightCalls.exit();
+ *     }
+ * </pre>
+ *
+ * @author Markus Geiss
+ * @version 2.2.0
+ * @see com.github.mgeiss.norn.util.NornLoadProviders#inFlightCalls(int)
+ */
+public final class NornInFlightCalls
+        implements NornLoadProvider {
+
+    private final int capacity;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /**
+     * Package private constructor.
+     *
+     * @param capacity number of calls that saturate the node
+     */
+    NornInFlightCalls(final int capacity) {
+        super();
+        this.capacity = capacity;
+    }
+
+    /**
+     * Marks the start of a call.
+     */
+    public void enter() {
+        this.inFlight.incrementAndGet();
+    }
+
+    /**
+     * Marks the end of a call.
+     */
+    public void exit() {
+        this.inFlight.decrementAndGet();
+    }
+
+    /**
+     * Returns the number of calls currently in flight.
+     *
+     * @return number of calls in flight
+     */
+    public int getInFlight() {
+        return this.inFlight.get();
+    }
+
+    @Override
+    public double getLoad() {
+        return (double) Math.max(0, this.inFlight.get()) / (double) this.capacity;
+    }
+}
@@ -0,0 +1,41 @@
+/**
+ * Copyright 2012 - 2013 Markus Geiss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.mgeiss.norn.util;
+
+/**
+ * <code>NornLoadProvider</code> provides a single load signal of a node, e.g. the heap usage or the depth of an
+ * application request queue. Providers are registered using <code>NornConfiguration.Builder.loadProvider</code>,
+ * the load advertised by a node is the weighted sum of all registered providers.
+ * <p/>
+ * A provider is called by the <code>NornLoadSampler</code> thread of a node in the configured sample interval. A
+ * provider registered in a configuration used for several nodes is called by all their samplers and has to be
+ * thread safe, the built-in providers are created anew for every node. A provider should return a value near
+ * <tt>1.0</tt> if the resource it observes is saturated.
+ *
+ * @author Markus Geiss
+ * @version 2.2.0
+ * @see com.github.mgeiss.norn.util.NornLoadProviders
+ * @see com.github.mgeiss.norn.util.NornLoadSampler
+ */
+public interface NornLoadProvider {
+
+    /**
+     * Returns the current load signal.
+     *
+     * @return the current load
+     */
+    double getLoad();
+}
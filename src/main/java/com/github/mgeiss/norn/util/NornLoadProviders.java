@@ -0,0 +1,304 @@
+/**
+ * Copyright 2012 - 2013 Markus Geiss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.mgeiss.norn.util;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <code>NornLoadProviders</code> provides the built-in <code>NornLoadProvider</code> implementations. All of them
+ * only use cheap signals, none of them takes a safepoint.
+ *
+ * @author Markus Geiss
+ * @version 2.2.0
+ * @see com.github.mgeiss.norn.util.NornLoadProvider
+ */
+public final class NornLoadProviders {
+
+    /**
+     * Private constructor to disable public construction.
+     */
+    private NornLoadProviders() {
+        super();
+    }
+
+    /**
+     * Returns the provider used if no provider has been registered, the weighted sum of <tt>heap * 3 + cpu + gc</tt>.
+     *
+     * @return a new default provider
+     */
+    public static NornLoadProvider defaultProvider() {
+        final Map<NornLoadProvider, Double> loadProviders = new LinkedHashMap<>();
+        loadProviders.put(NornLoadProviders.heap(), 3.0D);
+        loadProviders.put(NornLoadProviders.cpu(), 1.0D);
+        loadProviders.put(NornLoadProviders.gc(), 1.0D);
+        return NornLoadProviders.weighted(loadProviders);
+    }
+
+    /**
+     * Returns a provider for the processor usage. The system load average (run queue) is used if available, else
+     * the CPU time of this process since the last call. Both are normalized by the number of available processors.
+     *
+     * @return a new processor usage provider
+     */
+    public static NornLoadProvider cpu() {
+        return new ProcessorLoadProvider();
+    }
+
+    /**
+     * Returns a provider for the ratio of used heap after the last garbage collection to the maximum heap. Before the
+     * first collection the current heap usage is used.
+     *
+     * @return a new heap usage provider
+     */
+    public static NornLoadProvider heap() {
+        return new HeapLoadProvider();
+    }
+
+    /**
+     * Returns a provider for the ratio of time spent in garbage collection since the last call.
+     *
+     * @return a new garbage collection provider
+     */
+    public static NornLoadProvider gc() {
+        return new GcLoadProvider();
+    }
+
+    /**
+     * Returns a provider counting the remote calls in flight.
+     *
+     * @param capacity number of calls that saturate the node
+     * @return a new in-flight calls provider
+     * @throws java.lang.IllegalArgumentException if <code>capacity</code> is not valid
+     * @see com.github.mgeiss.norn.util.NornConditions#checkCapacity(int)
+     */
+    public static NornInFlightCalls inFlightCalls(final int capacity) {
+        NornConditions.checkCapacity(capacity);
+
+        return new NornInFlightCalls(capacity);
+    }
+
+    /**
+     * Returns a provider combining all given providers, using the weighted sum of their loads.
+     *
+     * @param loadProviders providers and their weights
+     * @return a new weighted provider
+     * @throws java.lang.IllegalArgumentException if <code>loadProviders</code>, one of its providers or weights is
+     *                                            null, or a weight is not valid
+     * @see com.github.mgeiss.norn.util.NornConditions#checkWeight(double)
+     */
+    public static NornLoadProvider weighted(final Map<NornLoadProvider, Double> loadProviders) {
+        NornConditions.checkNotNull(loadProviders, "loadProviders");
+
+        final NornLoadProvider[] providers = new NornLoadProvider[loadProviders.size()];
+        final double[] weights = new double[providers.length];
+        int index = 0;
+        for (final Map.Entry<NornLoadProvider, Double> loadProvider : loadProviders.entrySet()) {
+            NornConditions.checkNotNull(loadProvider.getKey(), "loadProvider");
+            NornConditions.checkNotNull(loadProvider.getValue(), "weight");
+            NornConditions.checkWeight(loadProvider.getValue());
+
+            providers[index] = loadProvider.getKey();
+            weights[index] = loadProvider.getValue();
+            index++;
+        }
+
+        return new NornLoadProvider() {
+
+            @Override
+            public double getLoad() {
+                double load = 0.0D;
+                for (int i = 0; i < providers.length; i++) {
+                    load += weights[i] * providers[i].getLoad();
+                }
+                return load;
+            }
+        };
+    }
+
+    /**
+     * Returns a new instance of the given provider if it is a built-in provider keeping state between calls, else
+     * the given provider itself.
+     *
+     * @param loadProvider a load provider
+     * @return a provider for a single node
+     * @see com.github.mgeiss.norn.util.NornConfiguration#createLoadProvider()
+     */
+    static NornLoadProvider newInstance(final NornLoadProvider loadProvider) {
+        if (loadProvider instanceof ProcessorLoadProvider) {
+            return new ProcessorLoadProvider();
+        }
+        if (loadProvider instanceof GcLoadProvider) {
+            return new GcLoadProvider();
+        }
+        return loadProvider;
+    }
+
+    /**
+     * <code>ProcessorLoadProvider</code> provides the processor usage. All instances are equal, they measure the same
+     * signal, but each keeps the CPU time of its last call. A configuration hands a new instance to every node.
+     */
+    private static final class ProcessorLoadProvider
+            implements NornLoadProvider {
+
+        private final int processors = Runtime.getRuntime().availableProcessors();
+        private final OperatingSystemMXBean operatingSystemMXBean = ManagementFactory.getOperatingSystemMXBean();
+        private long lastTime;
+        private long lastCpuTime = -1L;
+
+        @Override
+        public double getLoad() {
+            final double loadAverage = this.operatingSystemMXBean.getSystemLoadAverage();
+            if (loadAverage >= 0.0D) {
+                return loadAverage / this.processors;
+            }
+
+            double processorUsage = 0.0D;
+            if (this.operatingSystemMXBean instanceof com.sun.management.OperatingSystemMXBean) {
+                final long now = System.nanoTime();
+                final long cpuTime =
+                        ((com.sun.management.OperatingSystemMXBean) this.operatingSystemMXBean).getProcessCpuTime();
+                if (this.lastCpuTime >= 0L && cpuTime >= 0L && now - this.lastTime > 0L) {
+                    processorUsage = (double) (cpuTime - this.lastCpuTime)
+                            / ((double) (now - this.lastTime) * this.processors);
+                }
+                this.lastTime = now;
+                this.lastCpuTime = cpuTime;
+            }
+            return processorUsage;
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            return this == other || other != null && this.getClass() == other.getClass();
+        }
+
+        @Override
+        public int hashCode() {
+            return this.getClass().hashCode();
+        }
+    }
+
+    /**
+     * <code>HeapLoadProvider</code> provides the heap usage after the last garbage collection. All instances are
+     * equal.
+     */
+    private static final class HeapLoadProvider
+            implements NornLoadProvider {
+
+        private final List<MemoryPoolMXBean> memoryPoolMXBeans = ManagementFactory.getMemoryPoolMXBeans();
+        private final List<GarbageCollectorMXBean> garbageCollectorMXBeans =
+                ManagementFactory.getGarbageCollectorMXBeans();
+
+        @Override
+        public double getLoad() {
+            boolean collected = false;
+            for (final GarbageCollectorMXBean garbageCollectorMXBean : this.garbageCollectorMXBeans) {
+                if (garbageCollectorMXBean.getCollectionCount() > 0L) {
+                    collected = true;
+                    break;
+                }
+            }
+
+            long used = 0L;
+            long max = 0L;
+            if (collected) {
+                for (final MemoryPoolMXBean memoryPoolMXBean : this.memoryPoolMXBeans) {
+                    if (memoryPoolMXBean.getType() != MemoryType.HEAP) {
+                        continue;
+                    }
+
+                    final MemoryUsage usage = memoryPoolMXBean.getUsage();
+                    final MemoryUsage collectionUsage = memoryPoolMXBean.getCollectionUsage();
+                    used += collectionUsage != null ? collectionUsage.getUsed() : usage.getUsed();
+                    max += usage.getMax() >= 0L ? usage.getMax() : usage.getCommitted();
+                }
+            } else {
+                final Runtime runtime = Runtime.getRuntime();
+                used = runtime.totalMemory() - runtime.freeMemory();
+                max = runtime.maxMemory();
+            }
+
+            return max > 0L ? (double) used / (double) max : 0.0D;
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            return this == other || other != null && this.getClass() == other.getClass();
+        }
+
+        @Override
+        public int hashCode() {
+            return this.getClass().hashCode();
+        }
+    }
+
+    /**
+     * <code>GcLoadProvider</code> provides the ratio of time spent in garbage collection. All instances are equal, but
+     * each keeps the collection time of its last call. A configuration hands a new instance to every node.
+     */
+    private static final class GcLoadProvider
+            implements NornLoadProvider {
+
+        private final List<GarbageCollectorMXBean> garbageCollectorMXBeans =
+                ManagementFactory.getGarbageCollectorMXBeans();
+        private long lastTime;
+        private long lastCollectionTime = -1L;
+
+        @Override
+        public double getLoad() {
+            final long now = System.nanoTime();
+
+            long collectionTime = 0L;
+            for (final GarbageCollectorMXBean garbageCollectorMXBean : this.garbageCollectorMXBeans) {
+                final long time = garbageCollectorMXBean.getCollectionTime();
+                if (time > 0L) {
+                    collectionTime += time;
+                }
+            }
+
+            double gcRatio = 0.0D;
+            if (this.lastCollectionTime >= 0L) {
+                final long elapsed = TimeUnit.NANOSECONDS.toMillis(now - this.lastTime);
+                if (elapsed > 0L) {
+                    gcRatio = Math.min(1.0D, (double) (collectionTime - this.lastCollectionTime) / (double) elapsed);
+                }
+            }
+            this.lastTime = now;
+            this.lastCollectionTime = collectionTime;
+
+            return gcRatio;
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            return this == other || other != null && this.getClass() == other.getClass();
+        }
+
+        @Override
+        public int hashCode() {
+            return this.getClass().hashCode();
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/**
+ * Copyright 2012 - 2013 Markus Geiss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.mgeiss.norn.util;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <code>NornLoadSampler</code> measures the load of a node in a fixed interval, so a node answers pings with the last
+ * sample instead of calculating the load for every ping.
+ * <p/>
+ * The load is provided by a <code>NornLoadProvider</code>, by default the weighted sum of the heap usage after the
+ * last garbage collection, the processor usage and the ratio of time spent in garbage collection.
+ * <p/>
+ * The advertised load is an exponentially weighted moving average of all samples, so clients discovering during a
+ * short burst do not all move to the same node at once. Its trend, the change per second, is averaged alike.
+ * <p/>
+ * The time spent sampling is recorded, so the cost of sampling can be observed.
+ *
+ * @author Markus Geiss
+ * @version 2.2.0
+ * @see com.github.mgeiss.norn.util.NornLoadProvider
+ */
+public final class NornLoadSampler
+        implements Runnable {
+
+    private final int sampleInterval;
+    private final NornLoadProvider loadProvider;
+    private final double loadSmoothing;
+
+    private volatile double load = -1.0D;
+    private volatile double loadTrend;
+    private volatile double lastSample = -1.0D;
+    private volatile long sampleCount;
+    private volatile long lastSampleNanos;
+    private volatile long totalSampleNanos;
+
+    /**
+     * Creates a new <code>NornLoadSampler</code> using the default load provider.
+     *
+     * @param sampleInterval the interval in milliseconds
+     * @throws java.lang.IllegalArgumentException if <code>sampleInterval</code> is not valid
+     * @see com.github.mgeiss.norn.util.NornConditions#checkLoadSampleInterval(int)
+     * @see com.github.mgeiss.norn.util.NornLoadProviders#defaultProvider()
+     */
+    public NornLoadSampler(final int sampleInterval) {
+        this(sampleInterval, NornLoadProviders.defaultProvider());
+    }
+
+    /**
+     * Creates a new <code>NornLoadSampler</code>.
+     *
+     * @param sampleInterval the interval in milliseconds
+     * @param loadProvider   the provider of the load
+     * @throws java.lang.IllegalArgumentException if <code>sampleInterval</code> or <code>loadProvider</code> is not
+     * valid
+     * @see com.github.mgeiss.norn.util.NornConditions#checkLoadSampleInterval(int)
+     */
+    public NornLoadSampler(final int sampleInterval, final NornLoadProvider loadProvider) {
+        this(sampleInterval, loadProvider, 1.0D);
+    }
+
+    /**
+     * Creates a new <code>NornLoadSampler</code> advertising a moving average of all samples.
+     *
+     * @param sampleInterval the interval in milliseconds
+     * @param loadProvider   the provider of the load
+     * @param loadSmoothing  the weight of a new sample within the average, 1 advertises every sample as is
+     * @throws java.lang.IllegalArgumentException if an argument is not valid
+     * @see com.github.mgeiss.norn.util.NornConditions#checkLoadSampleInterval(int)
+     * @see com.github.mgeiss.norn.util.NornConditions#checkLoadSmoothing(double)
+     */
+    public NornLoadSampler(final int sampleInterval, final NornLoadProvider loadProvider,
+                           final double loadSmoothing) {
+        super();
+        NornConditions.checkLoadSampleInterval(sampleInterval);
+        NornConditions.checkNotNull(loadProvider, "loadProvider");
+        NornConditions.checkLoadSmoothing(loadSmoothing);
+
+        this.sampleInterval = sampleInterval;
+        this.loadProvider = loadProvider;
+        this.loadSmoothing = loadSmoothing;
+    }
+
+    /**
+     * Takes a first sample and schedules all further samples on the given <code>executor</code>.
+     *
+     * @param executor the executor used to run this sampler
+     */
+    public void start(final ScheduledExecutorService executor) {
+        this.run();
+        executor.scheduleAtFixedRate(this, this.sampleInterval, this.sampleInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Takes a sample. Must not be called concurrently. If the load provider fails the last sample is kept.
+     */
+    @Override
+    public void run() {
+        final long start = System.nanoTime();
+
+        try {
+            final double sample = this.loadProvider.getLoad();
+            final double previous = this.load;
+            this.lastSample = sample;
+            if (previous < 0.0D) {
+                this.load = sample;
+            } else {
+                final double smoothed = previous + this.loadSmoothing * (sample - previous);
+                final double trend = (smoothed - previous) * 1000.0D / this.sampleInterval;
+                this.load = smoothed;
+                this.loadTrend += this.loadSmoothing * (trend - this.loadTrend);
+            }
+        } catch (RuntimeException rex) {
+            // intentionally left blank, keep the last sample and do not cancel further samples
+        }
+
+        final long sampleNanos = System.nanoTime() - start;
+        this.lastSampleNanos = sampleNanos;
+        this.totalSampleNanos += sampleNanos;
+        this.sampleCount++;
+    }
+
+    /**
+     * Returns the moving average of all samples, the load a node advertises.
+     *
+     * @return the average load, or -1.0 if no sample has been taken yet
+     */
+    public double getLoad() {
+        return this.load;
+    }
+
+    /**
+     * Returns the moving average of the change of the load per second, positive if the load rises.
+     *
+     * @return the load trend per second
+     */
+    public double getLoadTrend() {
+        return this.loadTrend;
+    }
+
+    /**
+     * Returns the load of the last sample.
+     *
+     * @return the load of the last sample, or -1.0 if no sample has been taken yet
+     */
+    public double getLastSample() {
+        return this.lastSample;
+    }
+
+    /**
+     * Returns the sample interval.
+     *
+     * @return the sample interval in milliseconds
+     */
+    public int getSampleInterval() {
+        return this.sampleInterval;
+    }
+
+    /**
+     * Returns the number of samples taken.
+     *
+     * @return number of samples
+     */
+    public long getSampleCount() {
+        return this.sampleCount;
+    }
+
+    /**
+     * Returns the time the last sample took.
+     *
+     * @return time in nanoseconds
+     */
+    public long getLastSampleNanos() {
+        return this.lastSampleNanos;
+    }
+
+    /**
+     * Returns the time all samples took.
+     *
+     * @return time in nanoseconds
+     */
+    public long getTotalSampleNanos() {
+        return this.totalSampleNanos;
+    }
+}
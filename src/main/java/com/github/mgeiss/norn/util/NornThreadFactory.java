@@ -0,0 +1,50 @@
+/**
+ * Copyright 2012 - 2013 Markus Geiss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.mgeiss.norn.util;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <code>NornThreadFactory</code> creates named daemon threads, so background work of norn never prevents the JVM
+ * from shutting down.
+ *
+ * @author Markus Geiss
+ * @version 2.2.0
+ */
+public final class NornThreadFactory
+        implements ThreadFactory {
+
+    private final String name;
+    private final AtomicInteger counter = new AtomicInteger();
+
+    /**
+     * Creates a new <code>NornThreadFactory</code>.
+     *
+     * @param name prefix for the names of all created threads
+     */
+    public NornThreadFactory(final String name) {
+        super();
+        this.name = name;
+    }
+
+    @Override
+    public Thread newThread(final Runnable runnable) {
+        final Thread thread = new Thread(runnable, this.name + '-' + this.counter.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    }
+}
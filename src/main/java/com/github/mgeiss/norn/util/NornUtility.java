@@ -16,6 +16,7 @@
 package com.github.mgeiss.norn.util;
 
 import com.github.mgeiss.norn.NornNodeInfo;
+import com.github.mgeiss.norn.NornNodeSelectionStrategies;
 
 import java.io.*;
 import java.lang.management.ManagementFactory;
@@ -24,8 +25,10 @@ import java.lang.management.ThreadMXBean;
 import java.math.BigDecimal;
 import java.math.MathContext;
 import java.math.RoundingMode;
-import java.util.Collections;
-import java.util.Comparator;
+import java.rmi.ConnectException;
+import java.rmi.ConnectIOException;
+import java.rmi.RemoteException;
+import java.rmi.UnknownHostException;
 import java.util.List;
 
 /**
@@ -35,7 +38,7 @@ import java.util.List;
  * Also it provide a method to calculate the current JVM load.
  *
  * @author Markus Geiss
- * @version 2.1.0
+ * @version 2.2.0
  */
 public final class NornUtility {
 
@@ -66,7 +69,8 @@ public final class NornUtility {
     }
 
     /**
-     * <code>byteArray2NodeInfo</code> converts a byte array to a <code>NornNodeInfo</code>.
+     * <code>byteArray2NodeInfo</code> converts a byte array to a <code>NornNodeInfo</code>. Only the class
+     * <code>NornNodeInfo</code> will be resolved, any other class within the stream is rejected.
      *
      * @param data byte array to convert
      * @return an instance of <code>NornNodeInfo</code>
@@ -78,7 +82,7 @@ public final class NornUtility {
         NornNodeInfo nodeInfo;
 
         try (final ByteArrayInputStream bais = new ByteArrayInputStream(data);
-             final ObjectInputStream ois = new ObjectInputStream(bais)) {
+             final ObjectInputStream ois = new NodeInfoInputStream(bais)) {
 
             nodeInfo = (NornNodeInfo) ois.readObject();
         }
@@ -87,44 +91,18 @@ public final class NornUtility {
     }
 
     /**
-     * Returns the <code>NornNodeInfo</code> with the lowest load.
+     * Returns the <code>NornNodeInfo</code> with the lowest load, preferring master nodes. The given list is not
+     * modified.
      *
      * @param nodeInfos a list of <code>NornNodeInfo</code>
      * @return the <code>NornNodeInfo</code> with the lowest load
+     * @see com.github.mgeiss.norn.NornNodeSelectionStrategies#masterPreferred()
      */
     public static NornNodeInfo getRecentNodeInfo(final List<NornNodeInfo> nodeInfos) {
         NornNodeInfo nodeInfo = null;
 
         if (nodeInfos != null && nodeInfos.size() > 0) {
-            Collections.sort(nodeInfos, new Comparator<NornNodeInfo>() {
-
-                @Override
-                public int compare(NornNodeInfo nodeInfo1, NornNodeInfo nodeInfo2) {
-                    int order = 0;
-
-                    final double load1 = nodeInfo1.getLoad();
-                    final double load2 = nodeInfo2.getLoad();
-
-                    final boolean master1 = nodeInfo1.isMaster();
-                    final boolean master2 = nodeInfo2.isMaster();
-
-                    if (master1 && !master2) {
-                        order = -1;
-                    } else if (!master1 && master2) {
-                        order = 1;
-                    } else {
-                        if (load1 < load2) {
-                            order = -1;
-                        } else if (load1 > load2) {
-                            order = 1;
-                        }
-                    }
-
-                    return order;
-                }
-            });
-
-            nodeInfo = nodeInfos.get(0);
+            nodeInfo = NornNodeSelectionStrategies.masterPreferred().select(nodeInfos, 1).get(0);
         }
 
         return nodeInfo;
@@ -133,8 +111,12 @@ public final class NornUtility {
     /**
      * <code>calculateJVMLoad</code> uses a simple approach based on the load calculation used by linux to determine
      * the current JVM load.
+     * <p/>
+     * Note that this method dumps all threads, which is expensive on JVMs with many threads. Nodes use a
+     * <code>NornLoadSampler</code> instead.
      *
      * @return the load for this JVM
+     * @see com.github.mgeiss.norn.util.NornLoadSampler
      */
     public static double calculateJVMLoad() {
         double load;
@@ -166,4 +148,40 @@ public final class NornUtility {
 
         return load;
     }
+
+    /**
+     * Returns true if <code>remoteException</code> signals that the remote host could not be reached, e.g. because
+     * the node has been stopped. A <code>NoSuchObjectException</code> only signals that a single remote object has
+     * been unexported or rebound, the host itself is still reachable.
+     *
+     * @param remoteException the exception to check
+     * @return true if the remote host is unreachable
+     */
+    public static boolean isUnreachable(final RemoteException remoteException) {
+        return remoteException instanceof ConnectException
+                || remoteException instanceof ConnectIOException
+                || remoteException instanceof UnknownHostException;
+    }
+
+    /**
+     * <code>NodeInfoInputStream</code> only resolves the class <code>NornNodeInfo</code>, so received datagrams can
+     * not instantiate arbitrary classes.
+     */
+    private static final class NodeInfoInputStream
+            extends ObjectInputStream {
+
+        private NodeInfoInputStream(final InputStream inputStream)
+                throws IOException {
+            super(inputStream);
+        }
+
+        @Override
+        protected Class<?> resolveClass(final ObjectStreamClass desc)
+                throws IOException, ClassNotFoundException {
+            if (!NornNodeInfo.class.getName().equals(desc.getName())) {
+                throw new InvalidClassException(desc.getName(), "Unexpected class");
+            }
+            return super.resolveClass(desc);
+        }
+    }
 }
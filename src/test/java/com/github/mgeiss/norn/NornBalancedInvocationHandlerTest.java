@@ -0,0 +1,128 @@
+/**
+ * Copyright 2012 - 2013 Markus Geiss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.mgeiss.norn;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.Serializable;
+import java.rmi.RemoteException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class NornBalancedInvocationHandlerTest {
+
+    private static final int[] REGISTRY_PORTS = {53001, 53002};
+    private static final List<Registry> REGISTRIES = new ArrayList<>();
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
+    public NornBalancedInvocationHandlerTest() {
+        super();
+    }
+
+    @BeforeClass
+    public static void startRegistries()
+            throws RemoteException {
+        for (final int registryPort : NornBalancedInvocationHandlerTest.REGISTRY_PORTS) {
+            final Registry registry = LocateRegistry.createRegistry(registryPort);
+            registry.rebind(DeepThought.class.getSimpleName(), new NamedDeepThought("node" + registryPort));
+            NornBalancedInvocationHandlerTest.REGISTRIES.add(registry);
+        }
+    }
+
+    @Test
+    public void shouldSpreadInvocationsOverEquallyLoadedNodes()
+            throws Exception {
+        final int[] answers = NornBalancedInvocationHandlerTest.invoke(0.2D, 0.2D);
+
+        assertTrue(answers[0] > 250);
+        assertTrue(answers[1] > 250);
+    }
+
+    @Test
+    public void shouldPreferLightlyLoadedNode()
+            throws Exception {
+        final int[] answers = NornBalancedInvocationHandlerTest.invoke(0.1D, 5.0D);
+
+        assertTrue(answers[0] > 650);
+        assertEquals(1000, answers[0] + answers[1]);
+    }
+
+    @AfterClass
+    public static void stopRegistries() {
+        for (final Registry registry : NornBalancedInvocationHandlerTest.REGISTRIES) {
+            try {
+                UnicastRemoteObject.unexportObject(registry, true);
+            } catch (RemoteException rex) {
+                // intentionally left blank, registry already gone
+            }
+        }
+    }
+
+    private static int[] invoke(final double... loads)
+            throws Exception {
+        final List<NornNodeInfo> nodeInfos = new ArrayList<>(loads.length);
+        for (int i = 0; i < loads.length; i++) {
+            final NornNodeInfo nodeInfo = new NornNodeInfo();
+            nodeInfo.setRegistryAddress("localhost");
+            nodeInfo.setRegistryPort(NornBalancedInvocationHandlerTest.REGISTRY_PORTS[i]);
+            nodeInfo.setLoad(loads[i]);
+            nodeInfos.add(nodeInfo);
+        }
+
+        final NornNode nornNode = new NornNode(nodeInfos.get(0),
+                NornBalancedInvocationHandlerTest.REGISTRIES.get(0), nodeInfos);
+        final DeepThought deepThought = nornNode.lookupBalanced(DeepThought.class.getSimpleName(), DeepThought.class);
+
+        final int[] answers = new int[loads.length];
+        final long time = System.nanoTime();
+        for (int i = 0; i < 1000; i++) {
+            final String answer = deepThought.answerToTheUltimateQuestion();
+            answers[answer.equals("node" + NornBalancedInvocationHandlerTest.REGISTRY_PORTS[0]) ? 0 : 1]++;
+        }
+
+        System.out.println("<<< BALANCED PROXY >>>" + NornBalancedInvocationHandlerTest.LINE_SEPARATOR
+                + "Loads " + loads[0] + '/' + loads[1] + ", invocations " + answers[0] + '/' + answers[1]
+                + ", " + (System.nanoTime() - time) / 1000000L + " ms!");
+
+        return answers;
+    }
+
+    private static final class NamedDeepThought
+            implements DeepThought, Serializable {
+
+        private static final long serialVersionUID = 4231876390785631251L;
+        private final String name;
+
+        private NamedDeepThought(final String name) {
+            super();
+            this.name = name;
+        }
+
+        @Override
+        public String answerToTheUltimateQuestion()
+                throws RemoteException {
+            return this.name;
+        }
+    }
+}
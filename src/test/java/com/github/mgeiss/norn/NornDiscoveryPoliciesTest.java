@@ -0,0 +1,109 @@
+/**
+ * Copyright 2012 - 2013 Markus Geiss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.mgeiss.norn;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class NornDiscoveryPoliciesTest {
+
+    private static final List<NornNodeInfo> NONE = Collections.emptyList();
+
+    public NornDiscoveryPoliciesTest() {
+        super();
+    }
+
+    @Test
+    public void shouldWaitForSocketTimeoutWithAll() {
+        final NornDiscoveryPolicy policy = NornDiscoveryPolicies.all();
+
+        assertEquals(NornDiscoveryPolicy.UNBOUNDED, policy.remainingWait(NornDiscoveryPoliciesTest.NONE, 0L));
+        assertEquals(NornDiscoveryPolicy.UNBOUNDED, policy.remainingWait(NornDiscoveryPoliciesTest.createNodes(3),
+                10000L));
+    }
+
+    @Test
+    public void shouldStopOnFirstReply() {
+        final NornDiscoveryPolicy policy = NornDiscoveryPolicies.firstReply();
+
+        assertEquals(NornDiscoveryPolicy.UNBOUNDED, policy.remainingWait(NornDiscoveryPoliciesTest.NONE, 100L));
+        assertTrue(policy.remainingWait(NornDiscoveryPoliciesTest.createNodes(1), 0L) <= 0L);
+    }
+
+    @Test
+    public void shouldStopAfterFirstReplies() {
+        final NornDiscoveryPolicy policy = NornDiscoveryPolicies.firstReplies(3);
+
+        assertEquals(NornDiscoveryPolicy.UNBOUNDED, policy.remainingWait(NornDiscoveryPoliciesTest.NONE, 0L));
+        assertEquals(NornDiscoveryPolicy.UNBOUNDED, policy.remainingWait(NornDiscoveryPoliciesTest.createNodes(2),
+                1000L));
+        assertTrue(policy.remainingWait(NornDiscoveryPoliciesTest.createNodes(3), 0L) <= 0L);
+        assertTrue(policy.remainingWait(NornDiscoveryPoliciesTest.createNodes(4), 0L) <= 0L);
+    }
+
+    @Test
+    public void shouldFailFirstRepliesWithInvalidCount() {
+        try {
+            NornDiscoveryPolicies.firstReplies(0);
+            fail();
+        } catch (IllegalArgumentException iaex) {
+            // intentionally left blank, at least one reply is required
+        }
+    }
+
+    @Test
+    public void shouldStopAfterQuietPeriod() {
+        final NornDiscoveryPolicy policy = NornDiscoveryPolicies.quietPeriod(50);
+        final List<NornNodeInfo> nodeInfos = NornDiscoveryPoliciesTest.createNodes(1);
+
+        assertEquals(NornDiscoveryPolicy.UNBOUNDED, policy.remainingWait(NornDiscoveryPoliciesTest.NONE, 1000L));
+        assertEquals(50L, policy.remainingWait(nodeInfos, 0L));
+        assertEquals(20L, policy.remainingWait(nodeInfos, 30L));
+        assertTrue(policy.remainingWait(nodeInfos, 50L) <= 0L);
+        assertEquals((long) NornDiscoveryPolicies.DEFAULT_QUIET_PERIOD,
+                NornDiscoveryPolicies.quietPeriod().remainingWait(nodeInfos, 0L));
+    }
+
+    @Test
+    public void shouldStopOnMasterReply() {
+        final NornDiscoveryPolicy policy = NornDiscoveryPolicies.master();
+        final List<NornNodeInfo> nodeInfos = NornDiscoveryPoliciesTest.createNodes(2);
+
+        assertEquals(NornDiscoveryPolicy.UNBOUNDED, policy.remainingWait(NornDiscoveryPoliciesTest.NONE, 0L));
+        assertEquals(NornDiscoveryPolicy.UNBOUNDED, policy.remainingWait(nodeInfos, 1000L));
+
+        nodeInfos.get(1).setMaster(true);
+        assertTrue(policy.remainingWait(nodeInfos, 0L) <= 0L);
+    }
+
+    private static List<NornNodeInfo> createNodes(final int count) {
+        final List<NornNodeInfo> nodeInfos = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            final NornNodeInfo nodeInfo = new NornNodeInfo();
+            nodeInfo.setRegistryAddress("10.0.0." + i);
+            nodeInfo.setRegistryPort(1099);
+            nodeInfos.add(nodeInfo);
+        }
+        return nodeInfos;
+    }
+}
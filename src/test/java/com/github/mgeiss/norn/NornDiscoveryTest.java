@@ -0,0 +1,298 @@
+/**
+ * Copyright 2012 - 2013 Markus Geiss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.mgeiss.norn;
+
+import com.github.mgeiss.norn.util.NornConfiguration;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.MulticastSocket;
+import java.net.SocketTimeoutException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class NornDiscoveryTest {
+
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+    private static final String MULTICAST_ADDRESS = "234.5.6.9";
+    private static final int MULTICAST_PORT = 52151;
+
+    public NornDiscoveryTest() {
+        super();
+    }
+
+    @Test
+    public void shouldRetransmitPingsWithinSocketTimeout()
+            throws Exception {
+        final int multicastPort = NornDiscoveryTest.MULTICAST_PORT;
+        final NornConfiguration nornConfiguration = new NornConfiguration.Builder()
+                .multicastAddress(NornDiscoveryTest.MULTICAST_ADDRESS)
+                .multicastPort(multicastPort)
+                .socketTimeout(300)
+                .pingRetransmits(2)
+                .discoveryPolicy(NornDiscoveryPolicies.all())
+                .build();
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (final MulticastSocket groupSocket = new MulticastSocket(multicastPort)) {
+            groupSocket.joinGroup(InetAddress.getByName(NornDiscoveryTest.MULTICAST_ADDRESS));
+            groupSocket.setSoTimeout(500);
+
+            final long start = System.nanoTime();
+            final Future<List<NornNodeInfo>> discovery = executor.submit(new Callable<List<NornNodeInfo>>() {
+
+                @Override
+                public List<NornNodeInfo> call()
+                        throws Exception {
+                    return NornDiscovery.discover(nornConfiguration);
+                }
+            });
+
+            final byte[] buffer = new byte[NornNodeInfoCodec.MAX_PACKET_SIZE];
+            final DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+            int pings = 0;
+            try {
+                while (pings < 4) {
+                    packet.setLength(buffer.length);
+                    groupSocket.receive(packet);
+                    if (NornNodeInfoCodec.packetType(buffer, packet.getOffset(), packet.getLength())
+                            == NornNodeInfoCodec.TYPE_PING) {
+                        pings++;
+                    }
+                }
+            } catch (SocketTimeoutException stex) {
+                // intentionally left blank, no further ping sent
+            }
+
+            assertTrue(discovery.get(1L, TimeUnit.SECONDS).isEmpty());
+            assertEquals(3, pings);
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 300L);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void shouldEndDiscoveryOnInterrupt()
+            throws Exception {
+        final NornConfiguration nornConfiguration = NornDiscoveryTest.createConfiguration(
+                NornDiscoveryTest.MULTICAST_PORT + 1, 5000);
+
+        final List<NornNodeInfo> nodeInfos = new CopyOnWriteArrayList<>();
+        final Thread discoverer = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    nodeInfos.addAll(NornDiscovery.discover(nornConfiguration));
+                } catch (IOException ioex) {
+                    fail(ioex.getMessage());
+                }
+            }
+        });
+
+        final long start = System.nanoTime();
+        discoverer.start();
+        Thread.sleep(100L);
+        discoverer.interrupt();
+        discoverer.join(2000L);
+
+        assertFalse(discoverer.isAlive());
+        assertTrue(nodeInfos.isEmpty());
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000L);
+    }
+
+    @Test
+    public void shouldReportNodesOfAsynchronousDiscovery()
+            throws Exception {
+        final int multicastPort = NornDiscoveryTest.MULTICAST_PORT + 2;
+        final NornNode node = NornDiscoveryTest.startNode(multicastPort, 1115);
+        final NornConfiguration clientConfiguration = new NornConfiguration.Builder()
+                .multicastAddress(NornDiscoveryTest.MULTICAST_ADDRESS)
+                .multicastPort(multicastPort)
+                .socketTimeout(1000)
+                .discoveryPolicy(NornDiscoveryPolicies.firstReply())
+                .build();
+
+        try {
+            final List<NornNodeInfo> discovered = new CopyOnWriteArrayList<>();
+            final List<NornNodeInfo> completed = new CopyOnWriteArrayList<>();
+            final Future<List<NornNodeInfo>> future = LocateNorn.discoverAsync(clientConfiguration,
+                    new NornDiscoveryListener() {
+
+                        @Override
+                        public void nodeDiscovered(final NornNodeInfo nodeInfo) {
+                            discovered.add(nodeInfo);
+                        }
+
+                        @Override
+                        public void discoveryCompleted(final List<NornNodeInfo> nodeInfos) {
+                            assertEquals(discovered, nodeInfos);
+                            completed.addAll(nodeInfos);
+                        }
+
+                        @Override
+                        public void discoveryFailed(final IOException cause) {
+                            fail(cause.getMessage());
+                        }
+                    });
+
+            final List<NornNodeInfo> nodeInfos = future.get(2L, TimeUnit.SECONDS);
+            assertEquals(1, nodeInfos.size());
+            assertEquals(node.getNodeInfo().getNodeId(), nodeInfos.get(0).getNodeId());
+            assertEquals(nodeInfos, discovered);
+            assertEquals(nodeInfos, completed);
+            assertEquals(node.getNodeInfo().getNodeId(),
+                    LocateNorn.getNode(nodeInfos.get(0)).getNodeInfo().getNodeId());
+        } finally {
+            node.stop();
+        }
+    }
+
+    @Test
+    public void shouldRunManyAsynchronousDiscoveriesOnOneThread()
+            throws Exception {
+        final int discoveries = 10;
+        final NornConfiguration nornConfiguration = NornDiscoveryTest.createConfiguration(
+                NornDiscoveryTest.MULTICAST_PORT + 3, 300);
+        final int threads = Thread.activeCount();
+
+        final long start = System.nanoTime();
+        final Future<?>[] futures = new Future<?>[discoveries];
+        for (int i = 0; i < discoveries; i++) {
+            futures[i] = LocateNorn.discoverAsync(nornConfiguration, null);
+        }
+        assertTrue(Thread.activeCount() <= threads + 1);
+
+        for (final Future<?> future : futures) {
+            assertTrue(((List<?>) future.get(2L, TimeUnit.SECONDS)).isEmpty());
+        }
+        System.out.println("<<< ASYNC DISCOVERY >>>" + NornDiscoveryTest.LINE_SEPARATOR
+                + discoveries + " concurrent discoveries took " + (System.nanoTime() - start) / 1000000L + " ms!");
+    }
+
+    @Test
+    public void shouldEndAsynchronousDiscoveryOnCancel()
+            throws Exception {
+        final NornConfiguration nornConfiguration = NornDiscoveryTest.createConfiguration(
+                NornDiscoveryTest.MULTICAST_PORT + 4, 5000);
+        final CountDownLatch completed = new CountDownLatch(1);
+
+        final long start = System.nanoTime();
+        final Future<List<NornNodeInfo>> future = LocateNorn.discoverAsync(nornConfiguration,
+                new NornDiscoveryListener() {
+
+                    @Override
+                    public void nodeDiscovered(final NornNodeInfo nodeInfo) {
+                        fail("No node expected");
+                    }
+
+                    @Override
+                    public void discoveryCompleted(final List<NornNodeInfo> nodeInfos) {
+                        assertTrue(nodeInfos.isEmpty());
+                        completed.countDown();
+                    }
+
+                    @Override
+                    public void discoveryFailed(final IOException cause) {
+                        fail(cause.getMessage());
+                    }
+                });
+        Thread.sleep(100L);
+
+        assertTrue(future.cancel(true));
+        assertTrue(future.isCancelled());
+        assertTrue(future.isDone());
+        assertTrue(completed.await(1L, TimeUnit.SECONDS));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000L);
+        assertFalse(future.cancel(true));
+    }
+
+    @Test
+    public void shouldReportFailureOfAsynchronousDiscovery()
+            throws Exception {
+        final NornConfiguration nornConfiguration = NornDiscoveryTest.createConfiguration(
+                NornDiscoveryTest.MULTICAST_PORT + 5, 5000);
+        final NornAsyncDiscovery asyncDiscovery = new NornAsyncDiscovery();
+        final List<IOException> failures = new CopyOnWriteArrayList<>();
+
+        final Future<List<NornNodeInfo>> future = asyncDiscovery.submit(nornConfiguration,
+                new NornDiscoveryListener() {
+
+                    @Override
+                    public void nodeDiscovered(final NornNodeInfo nodeInfo) {
+                        fail("No node expected");
+                    }
+
+                    @Override
+                    public void discoveryCompleted(final List<NornNodeInfo> nodeInfos) {
+                        fail("Discovery must not complete");
+                    }
+
+                    @Override
+                    public void discoveryFailed(final IOException cause) {
+                        failures.add(cause);
+                    }
+                });
+        Thread.sleep(100L);
+        asyncDiscovery.stop();
+
+        try {
+            future.get(1L, TimeUnit.SECONDS);
+            fail("ExecutionException expected");
+        } catch (ExecutionException eex) {
+            assertTrue(eex.getCause() instanceof IOException);
+            assertEquals(1, failures.size());
+            assertEquals(eex.getCause(), failures.get(0));
+        }
+
+        assertTrue(asyncDiscovery.submit(NornDiscoveryTest.createConfiguration(
+                NornDiscoveryTest.MULTICAST_PORT + 5, 100), null).get(1L, TimeUnit.SECONDS).isEmpty());
+        asyncDiscovery.stop();
+    }
+
+    private static NornConfiguration createConfiguration(final int multicastPort, final int socketTimeout) {
+        return new NornConfiguration.Builder()
+                .multicastAddress(NornDiscoveryTest.MULTICAST_ADDRESS)
+                .multicastPort(multicastPort)
+                .socketTimeout(socketTimeout)
+                .discoveryPolicy(NornDiscoveryPolicies.all())
+                .build();
+    }
+
+    private static NornNode startNode(final int multicastPort, final int registryPort)
+            throws Exception {
+        final NornConfiguration nornConfiguration = new NornConfiguration.Builder()
+                .multicastAddress(NornDiscoveryTest.MULTICAST_ADDRESS)
+                .multicastPort(multicastPort)
+                .build();
+        return NornTestNodes.startNode(nornConfiguration, registryPort);
+    }
+}
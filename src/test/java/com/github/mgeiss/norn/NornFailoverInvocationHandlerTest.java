@@ -0,0 +1,185 @@
+/**
+ * Copyright 2012 - 2013 Markus Geiss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.mgeiss.norn;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.rmi.NoSuchObjectException;
+import java.rmi.RemoteException;
+import java.rmi.ServerException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class NornFailoverInvocationHandlerTest {
+
+    private static final int[] REGISTRY_PORTS = {53011, 53012};
+    private static final List<Registry> REGISTRIES = new ArrayList<>();
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
+    private final List<FailingDeepThought> deepThoughts = new ArrayList<>();
+    private final List<NornNodeInfo> nodeInfos = new ArrayList<>();
+
+    public NornFailoverInvocationHandlerTest() {
+        super();
+    }
+
+    @BeforeClass
+    public static void startRegistries()
+            throws RemoteException {
+        for (final int registryPort : NornFailoverInvocationHandlerTest.REGISTRY_PORTS) {
+            NornFailoverInvocationHandlerTest.REGISTRIES.add(LocateRegistry.createRegistry(registryPort));
+        }
+    }
+
+    @Before
+    public void bindDeepThoughts()
+            throws RemoteException {
+        for (int i = 0; i < NornFailoverInvocationHandlerTest.REGISTRY_PORTS.length; i++) {
+            final int registryPort = NornFailoverInvocationHandlerTest.REGISTRY_PORTS[i];
+            final FailingDeepThought deepThought = new FailingDeepThought("node" + registryPort);
+            NornFailoverInvocationHandlerTest.REGISTRIES.get(i).rebind(DeepThought.class.getSimpleName(),
+                    UnicastRemoteObject.exportObject(deepThought, 0));
+            this.deepThoughts.add(deepThought);
+
+            final NornNodeInfo nodeInfo = new NornNodeInfo();
+            nodeInfo.setRegistryAddress("localhost");
+            nodeInfo.setRegistryPort(registryPort);
+            this.nodeInfos.add(nodeInfo);
+        }
+    }
+
+    @Test
+    public void shouldFailoverToNextNode()
+            throws Exception {
+        final NornNode nornNode = new NornNode(this.nodeInfos.get(0),
+                NornFailoverInvocationHandlerTest.REGISTRIES.get(0), this.nodeInfos);
+        final DeepThought deepThought = nornNode.lookupFailover(DeepThought.class.getSimpleName(), DeepThought.class);
+
+        assertEquals("node" + NornFailoverInvocationHandlerTest.REGISTRY_PORTS[0],
+                deepThought.answerToTheUltimateQuestion());
+
+        UnicastRemoteObject.unexportObject(this.deepThoughts.get(0), true);
+
+        final long time = System.nanoTime();
+        assertEquals("node" + NornFailoverInvocationHandlerTest.REGISTRY_PORTS[1],
+                deepThought.answerToTheUltimateQuestion());
+        System.out.println("<<< FAILOVER PROXY >>>" + NornFailoverInvocationHandlerTest.LINE_SEPARATOR
+                + "Failed over in " + (System.nanoTime() - time) / 1000L + " us!");
+
+        assertEquals("node" + NornFailoverInvocationHandlerTest.REGISTRY_PORTS[1],
+                deepThought.answerToTheUltimateQuestion());
+
+        UnicastRemoteObject.unexportObject(this.deepThoughts.get(1), true);
+        try {
+            deepThought.answerToTheUltimateQuestion();
+            fail("NoSuchObjectException expected");
+        } catch (NoSuchObjectException nsoex) {
+            // intentionally left blank, no node left
+        }
+    }
+
+    @Test
+    public void shouldLookUpReboundObjectOnSameNode()
+            throws Exception {
+        final NornNode nornNode = new NornNode(this.nodeInfos.get(0),
+                NornFailoverInvocationHandlerTest.REGISTRIES.get(0), this.nodeInfos);
+        final DeepThought deepThought = nornNode.lookupFailover(DeepThought.class.getSimpleName(), DeepThought.class);
+
+        assertEquals("node" + NornFailoverInvocationHandlerTest.REGISTRY_PORTS[0],
+                deepThought.answerToTheUltimateQuestion());
+
+        final FailingDeepThought rebound = new FailingDeepThought("rebound");
+        NornFailoverInvocationHandlerTest.REGISTRIES.get(0).rebind(DeepThought.class.getSimpleName(),
+                UnicastRemoteObject.exportObject(rebound, 0));
+        this.deepThoughts.add(rebound);
+        UnicastRemoteObject.unexportObject(this.deepThoughts.get(0), true);
+
+        assertEquals("rebound", deepThought.answerToTheUltimateQuestion());
+    }
+
+    @Test
+    public void shouldNotRetryFailuresOfRemoteObject()
+            throws Exception {
+        final NornNode nornNode = new NornNode(this.nodeInfos.get(0),
+                NornFailoverInvocationHandlerTest.REGISTRIES.get(0), this.nodeInfos);
+        final DeepThought deepThought = nornNode.lookupFailover(DeepThought.class.getSimpleName(), DeepThought.class);
+
+        this.deepThoughts.get(0).failing = true;
+        try {
+            deepThought.answerToTheUltimateQuestion();
+            fail("ServerException expected");
+        } catch (ServerException sex) {
+            // intentionally left blank, the remote object failed
+        }
+
+        this.deepThoughts.get(0).failing = false;
+        assertEquals("node" + NornFailoverInvocationHandlerTest.REGISTRY_PORTS[0],
+                deepThought.answerToTheUltimateQuestion());
+    }
+
+    @After
+    public void unexportDeepThoughts() {
+        for (final FailingDeepThought deepThought : this.deepThoughts) {
+            try {
+                UnicastRemoteObject.unexportObject(deepThought, true);
+            } catch (RemoteException rex) {
+                // intentionally left blank, object already unexported
+            }
+        }
+    }
+
+    @AfterClass
+    public static void stopRegistries() {
+        for (final Registry registry : NornFailoverInvocationHandlerTest.REGISTRIES) {
+            try {
+                UnicastRemoteObject.unexportObject(registry, true);
+            } catch (RemoteException rex) {
+                // intentionally left blank, registry already gone
+            }
+        }
+    }
+
+    private static final class FailingDeepThought
+            implements DeepThought {
+
+        private final String name;
+        private volatile boolean failing;
+
+        private FailingDeepThought(final String name) {
+            super();
+            this.name = name;
+        }
+
+        @Override
+        public String answerToTheUltimateQuestion()
+                throws RemoteException {
+            if (this.failing) {
+                throw new RemoteException("Failing on purpose");
+            }
+            return this.name;
+        }
+    }
+}
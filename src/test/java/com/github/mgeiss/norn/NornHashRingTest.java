@@ -0,0 +1,148 @@
+/**
+ * Copyright 2012 - 2013 Markus Geiss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.mgeiss.norn;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class NornHashRingTest {
+
+    private static final int KEYS = 10000;
+
+    public NornHashRingTest() {
+        super();
+    }
+
+    @Test
+    public void shouldSpreadKeysEvenly() {
+        final List<NornNodeInfo> nodeInfos = NornHashRingTest.createNodeInfos(11);
+        final NornHashRing ring = NornHashRing.create(nodeInfos.subList(0, 10));
+
+        final Map<NornNodeInfo, Integer> counts = new HashMap<>();
+        final Map<String, NornNodeInfo> placement = new HashMap<>();
+        for (int i = 0; i < NornHashRingTest.KEYS; i++) {
+            final NornNodeInfo nodeInfo = ring.getNode("key-" + i);
+            placement.put("key-" + i, nodeInfo);
+            counts.put(nodeInfo, counts.containsKey(nodeInfo) ? counts.get(nodeInfo) + 1 : 1);
+        }
+
+        assertEquals(10, counts.size());
+        for (final int count : counts.values()) {
+            assertTrue(count > NornHashRingTest.KEYS / 10 / 2 && count < NornHashRingTest.KEYS / 10 * 3 / 2);
+        }
+
+        final NornHashRing grown = NornHashRing.create(nodeInfos);
+        int moved = 0;
+        for (final Map.Entry<String, NornNodeInfo> entry : placement.entrySet()) {
+            final NornNodeInfo nodeInfo = grown.getNode(entry.getKey());
+            if (nodeInfo != entry.getValue()) {
+                assertSame(nodeInfos.get(10), nodeInfo);
+                moved++;
+            }
+        }
+        System.out.println("<<< HASH RING >>>");
+        System.out.println("Keys per node " + counts.values() + ", " + moved + " keys moved to added node!");
+        assertTrue(moved < NornHashRingTest.KEYS * 15 / 100);
+    }
+
+    @Test
+    public void shouldMoveKeysOffOverloadedNode() {
+        final List<NornNodeInfo> nodeInfos = NornHashRingTest.createNodeInfos(4);
+        final NornHashRing balanced = NornHashRing.create(nodeInfos);
+        nodeInfos.get(2).setLoad(2.0D);
+        final NornHashRing ring = NornHashRing.create(nodeInfos);
+
+        int balancedKeys = 0;
+        int overloadedKeys = 0;
+        for (int i = 0; i < NornHashRingTest.KEYS; i++) {
+            final List<NornNodeInfo> nodes = ring.getNodes("key-" + i, 4);
+            assertEquals(4, new HashSet<>(nodes).size());
+            if (balanced.getNode("key-" + i) == nodeInfos.get(2)) {
+                balancedKeys++;
+            }
+            if (nodes.get(0) == nodeInfos.get(2)) {
+                assertSame(nodeInfos.get(2), balanced.getNode("key-" + i));
+                overloadedKeys++;
+            }
+        }
+
+        // the bound is 1.25 times the average load of 0.875, so the node keeps about 70 of its 128 points
+        assertTrue(overloadedKeys > 0);
+        assertTrue(overloadedKeys < balancedKeys * 3 / 4);
+
+        assertNull(NornHashRing.create(new ArrayList<NornNodeInfo>()).getNode("key"));
+        assertTrue(ring.isCurrent(new ArrayList<>(nodeInfos), Long.MAX_VALUE));
+        assertTrue(!ring.isCurrent(nodeInfos.subList(0, 3), Long.MAX_VALUE));
+    }
+
+    @Test
+    public void shouldMoveFewKeysWhileLoadOscillates() {
+        final List<NornNodeInfo> nodeInfos = NornHashRingTest.createNodeInfos(4);
+        final NornHashRing balanced = NornHashRing.create(nodeInfos);
+
+        final Map<String, NornNodeInfo> placement = new HashMap<>();
+        for (int i = 0; i < NornHashRingTest.KEYS; i++) {
+            placement.put("key-" + i, balanced.getNode("key-" + i));
+        }
+
+        int maxMoved = 0;
+        for (int round = 0; round < 10; round++) {
+            nodeInfos.get(2).setLoad(round % 2 == 0 ? 0.9D : 0.5D);
+            final NornHashRing ring = NornHashRing.create(nodeInfos);
+
+            int moved = 0;
+            for (final Map.Entry<String, NornNodeInfo> entry : placement.entrySet()) {
+                final NornNodeInfo nodeInfo = ring.getNode(entry.getKey());
+                if (nodeInfo != entry.getValue()) {
+                    assertSame(nodeInfos.get(2), entry.getValue());
+                    moved++;
+                }
+            }
+            if (round % 2 == 1) {
+                assertEquals(0, moved);
+            }
+            maxMoved = Math.max(maxMoved, moved);
+        }
+
+        // skipping the node entirely would move all its keys, about a quarter of all keys
+        System.out.println("<<< HASH RING >>>");
+        System.out.println(maxMoved + " keys moved while the load of a node oscillated!");
+        assertTrue(maxMoved > 0);
+        assertTrue(maxMoved < NornHashRingTest.KEYS / 10);
+    }
+
+    private static List<NornNodeInfo> createNodeInfos(final int count) {
+        final List<NornNodeInfo> nodeInfos = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final NornNodeInfo nodeInfo = new NornNodeInfo();
+            nodeInfo.setRegistryAddress("192.168.178." + (i + 1));
+            nodeInfo.setRegistryPort(1099);
+            nodeInfo.setLoad(0.5D);
+            nodeInfos.add(nodeInfo);
+        }
+        return nodeInfos;
+    }
+}
@@ -0,0 +1,267 @@
+/**
+ * Copyright 2012 - 2013 Markus Geiss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.mgeiss.norn;
+
+import com.github.mgeiss.norn.util.NornConfiguration;
+import com.github.mgeiss.norn.util.NornLoadProvider;
+import com.github.mgeiss.norn.util.NornLoadProviders;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class NornMembershipTest {
+
+    private static final String MULTICAST_ADDRESS = "234.5.6.10";
+    private static final int MULTICAST_PORT = 52161;
+    private static final int SESSIONS = 40;
+
+    public NornMembershipTest() {
+        super();
+    }
+
+    @Test
+    public void shouldShareMembershipOfEqualConfigurations() {
+        final NornConfiguration nornConfiguration = NornMembershipTest.createConfiguration(60000);
+        final NornConfiguration equalConfiguration = NornMembershipTest.createConfiguration(60000);
+
+        final NornMembership membership = LocateNorn.getMembership(nornConfiguration);
+        try {
+            assertSame(membership, LocateNorn.getMembership(equalConfiguration));
+            assertSame(LocateNorn.getStubCache(nornConfiguration), LocateNorn.getStubCache(equalConfiguration));
+        } finally {
+            membership.stop();
+        }
+
+        final NornMembership newMembership = LocateNorn.getMembership(equalConfiguration);
+        try {
+            assertNotSame(membership, newMembership);
+        } finally {
+            newMembership.stop();
+        }
+    }
+
+    @Test
+    public void shouldStopIdleMembership()
+            throws Exception {
+        final NornConfiguration nornConfiguration = NornMembershipTest.createConfiguration(100);
+        final NornMembership membership = LocateNorn.getMembership(nornConfiguration);
+        try {
+            assertFalse(membership.stopIfIdle(System.nanoTime()));
+            assertTrue(membership.stopIfIdle(System.nanoTime() + TimeUnit.SECONDS.toNanos(1L)));
+            assertNotSame(membership, LocateNorn.getMembership(nornConfiguration));
+        } finally {
+            LocateNorn.getMembership(nornConfiguration).stop();
+        }
+    }
+
+    @Test
+    public void shouldKeepSessionsOnTheirNode()
+            throws Exception {
+        final int multicastPort = NornMembershipTest.MULTICAST_PORT + 1;
+        final NornNode first = NornMembershipTest.startNode(multicastPort, 1113, new FixedLoadProvider(0.1D));
+        final NornNode second = NornMembershipTest.startNode(multicastPort, 1114, new FixedLoadProvider(0.1D));
+        final NornMembership membership = new NornMembership(
+                NornMembershipTest.createAffinityConfiguration(multicastPort, 60000, 1000.0D));
+
+        try {
+            NornMembershipTest.awaitMembers(membership, 2);
+
+            final Set<String> firstSessions = NornMembershipTest.getSessions(membership, first);
+            assertFalse(firstSessions.isEmpty());
+            assertTrue(firstSessions.size() < NornMembershipTest.SESSIONS);
+
+            membership.evict(first.getNodeInfo());
+            NornMembershipTest.assertSessions(membership, second, NornMembershipTest.SESSIONS);
+
+            NornMembershipTest.awaitMembers(membership, 2);
+            for (final String sessionKey : firstSessions) {
+                assertEquals(second.getNodeInfo().getNodeId(),
+                        membership.getAffinityNode(sessionKey).getNodeInfo().getNodeId());
+            }
+        } finally {
+            second.stop();
+            first.stop();
+        }
+    }
+
+    @Test
+    public void shouldRebindSessionsOfOverloadedNode()
+            throws Exception {
+        final int multicastPort = NornMembershipTest.MULTICAST_PORT + 2;
+        final FixedLoadProvider firstLoad = new FixedLoadProvider(0.1D);
+        final NornNode first = NornMembershipTest.startNode(multicastPort, 1120, firstLoad);
+        final NornNode second = NornMembershipTest.startNode(multicastPort, 1121, new FixedLoadProvider(0.1D));
+        final NornMembership membership = new NornMembership(
+                NornMembershipTest.createAffinityConfiguration(multicastPort, 60000, 0.5D));
+
+        try {
+            NornMembershipTest.awaitMembers(membership, 2);
+            final Set<String> firstSessions = NornMembershipTest.getSessions(membership, first);
+            assertFalse(firstSessions.isEmpty());
+            assertTrue(firstSessions.size() < NornMembershipTest.SESSIONS);
+
+            firstLoad.load = 0.9D;
+            NornMembershipTest.awaitLoad(membership, first, 0.9D);
+            NornMembershipTest.assertSessions(membership, second, NornMembershipTest.SESSIONS);
+
+            // rebound sessions stay on their new node once the load dropped again, only new sessions are spread
+            firstLoad.load = 0.1D;
+            NornMembershipTest.awaitLoad(membership, first, 0.1D);
+            NornMembershipTest.assertSessions(membership, second, NornMembershipTest.SESSIONS);
+            boolean spread = false;
+            for (int i = 0; i < NornMembershipTest.SESSIONS; i++) {
+                spread |= first.getNodeInfo().getNodeId().equals(
+                        membership.getAffinityNode("new-session-" + i).getNodeInfo().getNodeId());
+            }
+            assertTrue(spread);
+        } finally {
+            second.stop();
+            first.stop();
+        }
+    }
+
+    @Test
+    public void shouldRebindSessionsOfDepartedNode()
+            throws Exception {
+        final int multicastPort = NornMembershipTest.MULTICAST_PORT + 3;
+        final NornNode first = NornMembershipTest.startNode(multicastPort, 1122, new FixedLoadProvider(0.1D));
+        final NornNode second = NornMembershipTest.startNode(multicastPort, 1123, new FixedLoadProvider(0.1D));
+        final NornMembership membership = new NornMembership(
+                NornMembershipTest.createAffinityConfiguration(multicastPort, 300, 0.5D));
+
+        try {
+            NornMembershipTest.awaitMembers(membership, 2);
+            final Set<String> firstSessions = NornMembershipTest.getSessions(membership, first);
+            assertFalse(firstSessions.isEmpty());
+            assertTrue(firstSessions.size() < NornMembershipTest.SESSIONS);
+
+            first.stop();
+            for (int i = 0; i < 20 && membership.getNodeInfos().size() > 1; i++) {
+                membership.refresh();
+            }
+            assertEquals(1, membership.getNodeInfos().size());
+            NornMembershipTest.assertSessions(membership, second, NornMembershipTest.SESSIONS);
+        } finally {
+            second.stop();
+            first.stop();
+        }
+    }
+
+    private static NornNode startNode(final int multicastPort, final int registryPort,
+                                      final NornLoadProvider loadProvider)
+            throws Exception {
+        final NornConfiguration nornConfiguration = new NornConfiguration.Builder()
+                .multicastAddress(NornMembershipTest.MULTICAST_ADDRESS)
+                .multicastPort(multicastPort)
+                .build();
+        return NornTestNodes.startNode(nornConfiguration, registryPort, loadProvider);
+    }
+
+    private static void awaitMembers(final NornMembership membership, final int members)
+            throws Exception {
+        for (int i = 0; i < 20 && membership.getNodeInfos().size() < members; i++) {
+            membership.refresh();
+        }
+        assertEquals(members, membership.getNodeInfos().size());
+    }
+
+    private static void awaitLoad(final NornMembership membership, final NornNode node, final double load)
+            throws Exception {
+        for (int i = 0; i < 20; i++) {
+            membership.refresh();
+            for (final NornNodeInfo nodeInfo : membership.getNodeInfos()) {
+                if (nodeInfo.getNodeId().equals(node.getNodeInfo().getNodeId()) && nodeInfo.getLoad() == load) {
+                    return;
+                }
+            }
+        }
+        fail("Load " + load + " not advertised!");
+    }
+
+    private static Set<String> getSessions(final NornMembership membership, final NornNode node)
+            throws Exception {
+        final Set<String> sessions = new HashSet<>();
+        for (int i = 0; i < NornMembershipTest.SESSIONS; i++) {
+            final String nodeId = membership.getAffinityNode("session-" + i).getNodeInfo().getNodeId();
+            assertEquals(nodeId, membership.getAffinityNode("session-" + i).getNodeInfo().getNodeId());
+            if (nodeId.equals(node.getNodeInfo().getNodeId())) {
+                sessions.add("session-" + i);
+            }
+        }
+        return sessions;
+    }
+
+    private static void assertSessions(final NornMembership membership, final NornNode node, final int sessions)
+            throws Exception {
+        for (int i = 0; i < sessions; i++) {
+            assertEquals(node.getNodeInfo().getNodeId(),
+                    membership.getAffinityNode("session-" + i).getNodeInfo().getNodeId());
+        }
+    }
+
+    private static NornConfiguration createAffinityConfiguration(final int multicastPort, final int membershipTtl,
+                                                                 final double affinityLoad) {
+        return new NornConfiguration.Builder()
+                .multicastAddress(NornMembershipTest.MULTICAST_ADDRESS)
+                .multicastPort(multicastPort)
+                .socketTimeout(200)
+                .membershipTtl(membershipTtl)
+                .affinityLoad(affinityLoad)
+                .build();
+    }
+
+    private static NornConfiguration createConfiguration(final int membershipTtl) {
+        return new NornConfiguration.Builder()
+                .multicastAddress(NornMembershipTest.MULTICAST_ADDRESS)
+                .multicastPort(NornMembershipTest.MULTICAST_PORT)
+                .socketTimeout(100)
+                .membershipTtl(membershipTtl)
+                .membershipRefreshInterval(100)
+                .stubCacheTtl(60000)
+                .discoveryPolicy(NornDiscoveryPolicies.firstReplies(2))
+                .nodeSelectionStrategy(NornNodeSelectionStrategies.latencyAware(1.0D, 0.5D))
+                .loadProvider(NornLoadProviders.cpu(), 1.0D)
+                .build();
+    }
+
+    /**
+     * <code>FixedLoadProvider</code> provides a load set by the test.
+     */
+    private static final class FixedLoadProvider
+            implements NornLoadProvider {
+
+        private volatile double load;
+
+        private FixedLoadProvider(final double load) {
+            super();
+            this.load = load;
+        }
+
+        @Override
+        public double getLoad() {
+            return this.load;
+        }
+    }
+}
@@ -0,0 +1,264 @@
+/**
+ * Copyright 2012 - 2013 Markus Geiss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.mgeiss.norn;
+
+import com.github.mgeiss.norn.util.NornUtility;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class NornNodeInfoCodecTest {
+
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+    private static final int WARM_UP = 20000;
+    private static final int ITERATIONS = 100000;
+
+    public NornNodeInfoCodecTest() {
+        super();
+    }
+
+    @Test
+    public void shouldEncodeAndDecodeNodeInfo()
+            throws IOException {
+        final NornNodeInfo nodeInfo = NornNodeInfoCodecTest.createNodeInfo();
+        nodeInfo.setLoadTrend(0.05D);
+
+        final byte[] data = NornNodeInfoCodec.encode(nodeInfo);
+        final NornNodeInfo decoded = NornNodeInfoCodec.decode(data, 0, data.length);
+
+        assertEquals(nodeInfo.toString(), decoded.toString());
+        assertEquals(0.05D, decoded.getLoadTrend(), 0.0D);
+    }
+
+    @Test
+    public void shouldDecodeSerializedNodeInfo()
+            throws IOException {
+        final NornNodeInfo nodeInfo = NornNodeInfoCodecTest.createNodeInfo();
+
+        final byte[] data = NornUtility.nodeInfo2ByteArray(nodeInfo);
+        final NornNodeInfo decoded = NornNodeInfoCodec.decode(data, 0, data.length);
+
+        assertEquals(nodeInfo.toString(), decoded.toString());
+    }
+
+    @Test
+    public void shouldNegotiatePingVersion() {
+        final ByteBuffer buffer = ByteBuffer.allocate(NornNodeInfoCodec.HEADER_SIZE);
+        final int length = NornNodeInfoCodec.encodePing(buffer);
+
+        assertEquals(NornNodeInfoCodec.VERSION, NornNodeInfoCodec.pingVersion(buffer.array(), 0, length));
+        assertEquals(0, NornNodeInfoCodec.pingVersion(new byte[0], 0, 0));
+        assertEquals(-1, NornNodeInfoCodec.pingVersion(new byte[]{1, 2, 3, 4, 5}, 0, 5));
+    }
+
+    @Test
+    public void shouldSplitTableIntoPackets()
+            throws IOException {
+        final List<NornNodeInfo> nodeInfos = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            final NornNodeInfo nodeInfo = NornNodeInfoCodecTest.createNodeInfo();
+            nodeInfo.setRegistryPort(1100 + i);
+            nodeInfos.add(nodeInfo);
+        }
+
+        final List<NornNodeInfo> decoded = new ArrayList<>();
+        final ByteBuffer buffer = ByteBuffer.allocate(NornNodeInfoCodec.MAX_PACKET_SIZE);
+        int packets = 0;
+        int index = 0;
+        while (index < nodeInfos.size()) {
+            buffer.clear();
+            index = NornNodeInfoCodec.encodeTable(nodeInfos, index, buffer);
+            packets++;
+
+            assertEquals(NornNodeInfoCodec.TYPE_TABLE, NornNodeInfoCodec.packetType(buffer.array(), 0,
+                    buffer.position()));
+            decoded.addAll(NornNodeInfoCodec.decodeTable(buffer.array(), 0, buffer.position()));
+        }
+
+        assertTrue(packets > 1);
+        assertEquals(nodeInfos.size(), decoded.size());
+        for (int i = 0; i < nodeInfos.size(); i++) {
+            assertEquals(nodeInfos.get(i).getNodeId(), decoded.get(i).getNodeId());
+            assertEquals(nodeInfos.get(i).getLoad(), decoded.get(i).getLoad(), 0.0D);
+        }
+    }
+
+    @Test
+    public void shouldRoundTripDelta()
+            throws IOException {
+        final List<NornNodeInfo> changed = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            final NornNodeInfo nodeInfo = NornNodeInfoCodecTest.createNodeInfo();
+            nodeInfo.setRegistryPort(1100 + i);
+            nodeInfo.setVersion(100L + i);
+            changed.add(nodeInfo);
+        }
+        final NornNodeInfo removedNodeInfo = NornNodeInfoCodecTest.createNodeInfo();
+        removedNodeInfo.setVersion(200L);
+        final List<NornNodeInfo> removed = Collections.singletonList(removedNodeInfo);
+
+        final ByteBuffer ping = ByteBuffer.allocate(NornNodeInfoCodec.MAX_PACKET_SIZE);
+        NornNodeInfoCodec.encodeDeltaPing(ping, (byte) 0, 99L);
+        ping.flip();
+        assertEquals(99L, NornNodeInfoCodec.pingSince(ping));
+
+        final NornDelta delta = new NornDelta(99L);
+        final ByteBuffer buffer = ByteBuffer.allocate(NornNodeInfoCodec.MAX_PACKET_SIZE);
+        int packets = 0;
+        int index = 0;
+        while (index < changed.size() + removed.size()) {
+            buffer.clear();
+            index = NornNodeInfoCodec.encodeDelta(200L, 99L, changed, removed, index, buffer);
+            packets++;
+
+            assertEquals(NornNodeInfoCodec.TYPE_DELTA, NornNodeInfoCodec.packetType(buffer.array(), 0,
+                    buffer.position()));
+            NornNodeInfoCodec.decodeDelta(buffer.array(), 0, buffer.position(), delta);
+        }
+
+        assertTrue(packets > 1);
+        assertEquals(200L, delta.getEpoch());
+        assertFalse(delta.isFull());
+        assertEquals(changed.size(), delta.getChanged().size());
+        for (int i = 0; i < changed.size(); i++) {
+            assertEquals(changed.get(i).getNodeId(), delta.getChanged().get(i).getNodeId());
+            assertEquals(changed.get(i).getVersion(), delta.getChanged().get(i).getVersion());
+        }
+        assertEquals(1, delta.getRemoved().size());
+        assertEquals(removedNodeInfo.getNodeId(), delta.getRemoved().get(0).getNodeId());
+        assertEquals(200L, delta.getRemoved().get(0).getVersion());
+    }
+
+    @Test
+    public void shouldEncodeTagsBoundNamesAndPingFilter()
+            throws IOException {
+        final NornNodeInfo nodeInfo = NornNodeInfoCodecTest.createNodeInfo();
+        final Map<String, String> tags = new LinkedHashMap<>();
+        tags.put("zone", "eu-west-1");
+        tags.put("version", "2.2.0");
+        nodeInfo.setTags(tags);
+        nodeInfo.setBoundNames(NornBoundNames.of(new String[]{"DeepThought"}));
+
+        final byte[] data = NornNodeInfoCodec.encode(nodeInfo);
+        final NornNodeInfo decoded = NornNodeInfoCodec.decode(data, 0, data.length);
+        assertEquals(tags, decoded.getTags());
+        assertTrue(decoded.mayHost("DeepThought"));
+        assertFalse(decoded.mayHost("ShallowThought"));
+
+        final NornNodeFilter filter = new NornNodeFilter.Builder().tag("zone", "eu-west-1").build();
+        final ByteBuffer ping = ByteBuffer.allocate(NornNodeInfoCodec.MAX_PACKET_SIZE);
+        NornNodeInfoCodec.encodePing(ping, NornNodeInfoCodec.PING_FLAG_DELTA, 42L, filter);
+        ping.flip();
+        assertEquals(42L, NornNodeInfoCodec.pingSince(ping));
+        assertEquals(filter, NornNodeInfoCodec.pingFilter(ping));
+        assertTrue(filter.matches(nodeInfo));
+        assertFalse(new NornNodeFilter.Builder().tag("zone", "us-east-1").build().matches(nodeInfo));
+
+        ping.clear();
+        NornNodeInfoCodec.encodePing(ping, NornNodeInfoCodec.PING_FLAG_TABLE, 0L, NornNodeFilter.all());
+        ping.flip();
+        assertNull(NornNodeInfoCodec.pingFilter(ping));
+    }
+
+    @Test
+    public void shouldRejectTruncatedPacket() {
+        final byte[] data = NornNodeInfoCodec.encode(NornNodeInfoCodecTest.createNodeInfo());
+        try {
+            NornNodeInfoCodec.decode(data, 0, data.length - 3);
+            fail();
+        } catch (IOException ioex) {
+            // expected
+        }
+    }
+
+    @Test
+    public void shouldBeSmallerAndFasterThanSerialization()
+            throws Exception {
+        final NornNodeInfo nodeInfo = NornNodeInfoCodecTest.createNodeInfo();
+
+        final byte[] binary = NornNodeInfoCodec.encode(nodeInfo);
+        final byte[] serialized = NornUtility.nodeInfo2ByteArray(nodeInfo);
+
+        final ByteBuffer buffer = ByteBuffer.allocate(NornNodeInfoCodec.MAX_PACKET_SIZE);
+        for (int i = 0; i < NornNodeInfoCodecTest.WARM_UP; i++) {
+            buffer.clear();
+            NornNodeInfoCodec.encode(nodeInfo, NornNodeInfoCodec.VERSION, buffer);
+            NornNodeInfoCodec.decode(binary, 0, binary.length);
+            NornUtility.byteArray2NodeInfo(NornUtility.nodeInfo2ByteArray(nodeInfo));
+        }
+
+        long time = System.nanoTime();
+        for (int i = 0; i < NornNodeInfoCodecTest.ITERATIONS; i++) {
+            buffer.clear();
+            NornNodeInfoCodec.encode(nodeInfo, NornNodeInfoCodec.VERSION, buffer);
+        }
+        final long binaryEncode = (System.nanoTime() - time) / NornNodeInfoCodecTest.ITERATIONS;
+
+        time = System.nanoTime();
+        for (int i = 0; i < NornNodeInfoCodecTest.ITERATIONS; i++) {
+            NornNodeInfoCodec.decode(binary, 0, binary.length);
+        }
+        final long binaryDecode = (System.nanoTime() - time) / NornNodeInfoCodecTest.ITERATIONS;
+
+        time = System.nanoTime();
+        for (int i = 0; i < NornNodeInfoCodecTest.ITERATIONS; i++) {
+            NornUtility.nodeInfo2ByteArray(nodeInfo);
+        }
+        final long serializedEncode = (System.nanoTime() - time) / NornNodeInfoCodecTest.ITERATIONS;
+
+        time = System.nanoTime();
+        for (int i = 0; i < NornNodeInfoCodecTest.ITERATIONS; i++) {
+            NornUtility.byteArray2NodeInfo(serialized);
+        }
+        final long serializedDecode = (System.nanoTime() - time) / NornNodeInfoCodecTest.ITERATIONS;
+
+        final StringBuilder telemetry = new StringBuilder("<<< CODEC >>>" + NornNodeInfoCodecTest.LINE_SEPARATOR);
+        telemetry.append("Binary packet size ").append(binary.length).append(" bytes, encode ")
+                .append(binaryEncode).append(" ns, decode ").append(binaryDecode).append(" ns!")
+                .append(NornNodeInfoCodecTest.LINE_SEPARATOR);
+        telemetry.append("Serialized packet size ").append(serialized.length).append(" bytes, encode ")
+                .append(serializedEncode).append(" ns, decode ").append(serializedDecode).append(" ns!")
+                .append(NornNodeInfoCodecTest.LINE_SEPARATOR);
+        telemetry.append("<<< CODEC >>>");
+        System.out.println(telemetry);
+
+        assertTrue(binary.length < serialized.length);
+        assertTrue(binaryDecode < serializedDecode);
+    }
+
+    private static NornNodeInfo createNodeInfo() {
+        final NornNodeInfo nodeInfo = new NornNodeInfo();
+        nodeInfo.setMulticastAddress("234.5.6.7");
+        nodeInfo.setMulticastPort(52000);
+        nodeInfo.setRegistryAddress("192.168.178.42");
+        nodeInfo.setRegistryPort(1099);
+        nodeInfo.setLoad(1.37D);
+        nodeInfo.setMaster(true);
+        return nodeInfo;
+    }
+}
@@ -0,0 +1,142 @@
+/**
+ * Copyright 2012 - 2013 Markus Geiss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.mgeiss.norn;
+
+import com.github.mgeiss.norn.util.NornUtility;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class NornNodeSelectionStrategiesTest {
+
+    public NornNodeSelectionStrategiesTest() {
+        super();
+    }
+
+    @Test
+    public void shouldSelectLeastLoadedNodes() {
+        final List<NornNodeInfo> nodeInfos = NornNodeSelectionStrategiesTest.createNodeInfos(0.7D, 0.2D, 0.9D, 0.4D);
+        final List<NornNodeInfo> arrival = new ArrayList<>(nodeInfos);
+
+        final List<NornNodeInfo> selected = NornNodeSelectionStrategies.leastLoad().select(nodeInfos, 3);
+
+        assertEquals(Arrays.asList(nodeInfos.get(1), nodeInfos.get(3), nodeInfos.get(0)), selected);
+        assertEquals(arrival, nodeInfos);
+        assertSame(nodeInfos.get(1), NornNodeSelectionStrategies.leastLoad().select(nodeInfos, 1).get(0));
+        assertTrue(NornNodeSelectionStrategies.leastLoad().select(new ArrayList<NornNodeInfo>(), 1).isEmpty());
+    }
+
+    @Test
+    public void shouldPreferMasterUntilSpillover() {
+        final List<NornNodeInfo> nodeInfos = NornNodeSelectionStrategiesTest.createNodeInfos(0.2D, 1.5D, 0.4D);
+        nodeInfos.get(1).setMaster(true);
+        final List<NornNodeInfo> arrival = new ArrayList<>(nodeInfos);
+
+        assertSame(nodeInfos.get(1), NornNodeSelectionStrategies.masterPreferred().select(nodeInfos, 1).get(0));
+        assertSame(nodeInfos.get(1), NornUtility.getRecentNodeInfo(nodeInfos));
+        assertEquals(arrival, nodeInfos);
+
+        final List<NornNodeInfo> spillover = NornNodeSelectionStrategies.masterPreferred(1.0D).select(nodeInfos, 2);
+        assertEquals(Arrays.asList(nodeInfos.get(0), nodeInfos.get(2)), spillover);
+    }
+
+    @Test
+    public void shouldAvoidMostLoadedNodeWithPowerOfTwoChoices() {
+        final List<NornNodeInfo> nodeInfos = NornNodeSelectionStrategiesTest.createNodeInfos(0.1D, 0.2D, 0.3D, 5.0D);
+
+        final HashSet<NornNodeInfo> chosen = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            final NornNodeInfo nodeInfo = NornNodeSelectionStrategies.powerOfTwoChoices().select(nodeInfos, 1).get(0);
+            assertNotSame(nodeInfos.get(3), nodeInfo);
+            chosen.add(nodeInfo);
+        }
+        assertEquals(3, chosen.size());
+
+        final List<NornNodeInfo> all = NornNodeSelectionStrategies.powerOfTwoChoices().select(nodeInfos, 10);
+        assertEquals(new HashSet<>(nodeInfos), new HashSet<>(all));
+    }
+
+    @Test
+    public void shouldChooseRandomlyWithinToleranceBand() {
+        final List<NornNodeInfo> nodeInfos = NornNodeSelectionStrategiesTest.createNodeInfos(0.21D, 0.2D, 0.5D, 0.2D);
+        nodeInfos.get(3).setLoadTrend(0.2D);
+
+        final HashSet<NornNodeInfo> chosen = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            chosen.add(NornNodeSelectionStrategies.leastLoad(0.05D).select(nodeInfos, 1).get(0));
+        }
+        assertEquals(new HashSet<>(nodeInfos.subList(0, 2)), chosen);
+
+        final List<NornNodeInfo> all = NornNodeSelectionStrategies.leastLoad(0.05D).select(nodeInfos, 4);
+        assertEquals(new HashSet<>(nodeInfos.subList(0, 2)), new HashSet<>(all.subList(0, 2)));
+        assertEquals(Arrays.asList(nodeInfos.get(3), nodeInfos.get(2)), all.subList(2, 4));
+    }
+
+    @Test
+    public void shouldWeightRandomSelectionByInverseLoad() {
+        final List<NornNodeInfo> nodeInfos = NornNodeSelectionStrategiesTest.createNodeInfos(0.1D, 0.9D);
+
+        int lightlyLoaded = 0;
+        for (int i = 0; i < 1000; i++) {
+            if (NornNodeSelectionStrategies.weightedRandom().select(nodeInfos, 1).get(0) == nodeInfos.get(0)) {
+                lightlyLoaded++;
+            }
+        }
+        assertTrue(lightlyLoaded > 800);
+
+        final List<NornNodeInfo> all = NornNodeSelectionStrategies.weightedRandom().select(nodeInfos, 2);
+        assertEquals(new HashSet<>(nodeInfos), new HashSet<>(all));
+    }
+
+    @Test
+    public void shouldPreferNearbyNodeOverSlightlyLessLoadedOne() {
+        final List<NornNodeInfo> nodeInfos = NornNodeSelectionStrategiesTest.createNodeInfos(0.2D, 0.3D, 0.25D);
+        for (final NornNodeInfo nodeInfo : nodeInfos) {
+            nodeInfo.setRegistryPort(1199);
+        }
+        final NornLatencies latencies = NornLatencies.getInstance();
+        latencies.recordRoundTrip(nodeInfos.get(0).getNodeId(), TimeUnit.MILLISECONDS.toNanos(40L));
+        latencies.recordCall(nodeInfos.get(0).getNodeId(), TimeUnit.MILLISECONDS.toNanos(20L));
+        latencies.recordRoundTrip(nodeInfos.get(1).getNodeId(), TimeUnit.MILLISECONDS.toNanos(1L));
+
+        assertEquals(20.0D, latencies.getMillis(nodeInfos.get(0).getNodeId()), 0.001D);
+        assertSame(nodeInfos.get(0), NornNodeSelectionStrategies.leastLoad().select(nodeInfos, 1).get(0));
+
+        final List<NornNodeInfo> selected = NornNodeSelectionStrategies.latencyAware(1.0D, 0.1D).select(nodeInfos, 3);
+        assertEquals(Arrays.asList(nodeInfos.get(1), nodeInfos.get(2), nodeInfos.get(0)), selected);
+    }
+
+    private static List<NornNodeInfo> createNodeInfos(final double... loads) {
+        final List<NornNodeInfo> nodeInfos = new ArrayList<>(loads.length);
+        for (int i = 0; i < loads.length; i++) {
+            final NornNodeInfo nodeInfo = new NornNodeInfo();
+            nodeInfo.setRegistryAddress("192.168.178." + (i + 1));
+            nodeInfo.setRegistryPort(1099);
+            nodeInfo.setLoad(loads[i]);
+            nodeInfos.add(nodeInfo);
+        }
+        return nodeInfos;
+    }
+}
@@ -0,0 +1,74 @@
+/**
+ * Copyright 2012 - 2013 Markus Geiss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.mgeiss.norn;
+
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class NornPingGuardTest {
+
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1L);
+
+    public NornPingGuardTest() {
+        super();
+    }
+
+    @Test
+    public void shouldAcceptEverythingIfDisabled() {
+        final NornPingGuard pingGuard = new NornPingGuard(0, 0);
+        final InetSocketAddress source = new InetSocketAddress("192.168.178.42", 50000);
+
+        assertFalse(pingGuard.isEnabled());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(NornPingGuard.ACCEPTED, pingGuard.check(source, 0L));
+        }
+    }
+
+    @Test
+    public void shouldLimitPingsPerSourceHost() {
+        final NornPingGuard pingGuard = new NornPingGuard(10, 0);
+        final InetSocketAddress source = new InetSocketAddress("192.168.178.42", 50000);
+        final InetSocketAddress otherSource = new InetSocketAddress("192.168.178.43", 50000);
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(NornPingGuard.ACCEPTED,
+                    pingGuard.check(new InetSocketAddress("192.168.178.42", 50000 + i), 0L));
+        }
+        assertEquals(NornPingGuard.RATE_LIMITED, pingGuard.check(source, 0L));
+        assertEquals(NornPingGuard.ACCEPTED, pingGuard.check(otherSource, 0L));
+
+        assertEquals(NornPingGuard.RATE_LIMITED, pingGuard.check(source, 50L * NornPingGuardTest.MILLIS));
+        assertEquals(NornPingGuard.ACCEPTED, pingGuard.check(source, 100L * NornPingGuardTest.MILLIS));
+        assertEquals(2, pingGuard.getSourceCount());
+    }
+
+    @Test
+    public void shouldSuppressDuplicatePings() {
+        final NornPingGuard pingGuard = new NornPingGuard(0, 100);
+        final InetSocketAddress source = new InetSocketAddress("192.168.178.42", 50000);
+        final InetSocketAddress otherSocket = new InetSocketAddress("192.168.178.42", 50001);
+
+        assertEquals(NornPingGuard.ACCEPTED, pingGuard.check(source, 0L));
+        assertEquals(NornPingGuard.DUPLICATE, pingGuard.check(source, 10L * NornPingGuardTest.MILLIS));
+        assertEquals(NornPingGuard.ACCEPTED, pingGuard.check(otherSocket, 20L * NornPingGuardTest.MILLIS));
+        assertEquals(NornPingGuard.ACCEPTED, pingGuard.check(otherSocket, 200L * NornPingGuardTest.MILLIS));
+    }
+}
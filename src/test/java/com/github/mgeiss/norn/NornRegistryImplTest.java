@@ -0,0 +1,281 @@
+/**
+ * Copyright 2012 - 2013 Markus Geiss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.mgeiss.norn;
+
+import com.github.mgeiss.norn.util.NornConfiguration;
+import com.github.mgeiss.norn.util.NornLoadSampler;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.rmi.AlreadyBoundException;
+import java.rmi.NotBoundException;
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class NornRegistryImplTest {
+
+    private static final int REGISTRY_PORT = 53041;
+    private static final String MULTICAST_ADDRESS = "234.5.6.11";
+    private static final int MULTICAST_PORT = 52171;
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
+    private static Registry mirror;
+    private NornRegistryImpl nornRegistry;
+
+    public NornRegistryImplTest() {
+        super();
+    }
+
+    @BeforeClass
+    public static void createMirror()
+            throws RemoteException {
+        NornRegistryImplTest.mirror = LocateRegistry.createRegistry(NornRegistryImplTest.REGISTRY_PORT);
+    }
+
+    @Before
+    public void createRegistry() {
+        this.nornRegistry = new NornRegistryImpl(NornRegistryImplTest.mirror);
+    }
+
+    @Test
+    public void shouldKeepMetadataAndMirrorBindings()
+            throws Exception {
+        final String name = DeepThought.class.getSimpleName();
+        final DeepThought deepThought = new DeepThoughtImpl();
+        final Map<String, String> tags = Collections.singletonMap("version", "2");
+
+        this.nornRegistry.bind(name, deepThought, 2.0D, tags);
+        try {
+            this.nornRegistry.bind(name, deepThought);
+            fail("AlreadyBoundException expected");
+        } catch (AlreadyBoundException abex) {
+            // intentionally left blank, the name is already bound
+        }
+
+        final NornBinding binding = this.nornRegistry.getBinding(name);
+        assertSame(deepThought, binding.getStub());
+        assertEquals(2.0D, binding.getWeight(), 0.0D);
+        assertEquals(tags, binding.getTags());
+        assertSame(deepThought, this.nornRegistry.lookup(name));
+        assertSame(deepThought, NornRegistryImplTest.mirror.lookup(name));
+        assertEquals(Collections.singleton(name), new HashSet<>(Arrays.asList(this.nornRegistry.list())));
+
+        this.nornRegistry.rebind(name, deepThought);
+        assertTrue(this.nornRegistry.getBinding(name).getVersion() > binding.getVersion());
+        assertEquals(NornBinding.DEFAULT_WEIGHT, this.nornRegistry.getBinding(name).getWeight(), 0.0D);
+
+        this.nornRegistry.unbind(name);
+        try {
+            NornRegistryImplTest.mirror.lookup(name);
+            fail("NotBoundException expected");
+        } catch (NotBoundException nbex) {
+            // intentionally left blank, the mirrored binding has been removed
+        }
+    }
+
+    @Test
+    public void shouldReturnChangesSinceVersion()
+            throws Exception {
+        final NornRegistryChanges initial = this.nornRegistry.watch(0L, 0);
+        assertTrue(initial.isFull());
+        assertTrue(initial.getEvents().isEmpty());
+
+        this.nornRegistry.bind("first", new DeepThoughtImpl());
+        this.nornRegistry.bind("second", new DeepThoughtImpl());
+        this.nornRegistry.unbind("first");
+
+        final NornRegistryChanges changes = this.nornRegistry.watch(initial.getVersion(), 0);
+        assertFalse(changes.isFull());
+        assertEquals(3, changes.getEvents().size());
+        assertEquals("first", changes.getEvents().get(2).getName());
+        assertTrue(changes.getEvents().get(2).isUnbound());
+        assertNull(changes.getEvents().get(2).getBinding());
+        assertEquals(changes.getVersion(), changes.getEvents().get(2).getVersion());
+
+        assertTrue(this.nornRegistry.watch(changes.getVersion(), 0).getEvents().isEmpty());
+
+        final NornRegistryChanges unknown = this.nornRegistry.watch(changes.getVersion() + 1L, 0);
+        assertTrue(unknown.isFull());
+        assertEquals(1, unknown.getEvents().size());
+        assertEquals("second", unknown.getEvents().get(0).getName());
+    }
+
+    @Test
+    public void shouldWakeUpWatcherOnChange()
+            throws Exception {
+        final NornRegistry stub = (NornRegistry) UnicastRemoteObject.exportObject(this.nornRegistry,
+                NornRegistryImplTest.REGISTRY_PORT);
+        final long version = stub.watch(0L, 0).getVersion();
+
+        final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        try {
+            executor.schedule(new Callable<Void>() {
+
+                @Override
+                public Void call()
+                        throws Exception {
+                    NornRegistryImplTest.this.nornRegistry.rebind("late", new DeepThoughtImpl());
+                    return null;
+                }
+            }, 200L, TimeUnit.MILLISECONDS);
+
+            final long time = System.nanoTime();
+            final NornRegistryChanges changes = stub.watch(version, 5000);
+            final long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - time);
+            System.out.println("<<< REGISTRY WATCH >>>" + NornRegistryImplTest.LINE_SEPARATOR
+                    + "Change received after " + elapsed + " ms!");
+
+            assertEquals(1, changes.getEvents().size());
+            assertEquals("late", changes.getEvents().get(0).getName());
+            assertTrue(elapsed < 5000L);
+        } finally {
+            executor.shutdownNow();
+            UnicastRemoteObject.unexportObject(this.nornRegistry, true);
+        }
+    }
+
+    @Test
+    public void shouldBindAllOrNone()
+            throws Exception {
+        final Map<String, DeepThought> bindings = new LinkedHashMap<>();
+        for (int i = 0; i < 30; i++) {
+            bindings.put("service-" + i, new DeepThoughtImpl());
+        }
+        this.nornRegistry.bindAll(bindings);
+
+        final Map<String, Remote> stubs = this.nornRegistry.lookupAll("service-2", "service-1");
+        assertEquals(Arrays.asList("service-2", "service-1"), new ArrayList<>(stubs.keySet()));
+        assertSame(bindings.get("service-1"), stubs.get("service-1"));
+        assertEquals(bindings, this.nornRegistry.snapshot());
+
+        try {
+            this.nornRegistry.lookupAll("service-1", "unknown");
+            fail("NotBoundException expected");
+        } catch (NotBoundException nbex) {
+            // intentionally left blank, one name is not bound
+        }
+
+        final Map<String, DeepThought> conflicting = new LinkedHashMap<>();
+        conflicting.put("service-30", new DeepThoughtImpl());
+        conflicting.put("service-0", new DeepThoughtImpl());
+        try {
+            this.nornRegistry.bindAll(conflicting);
+            fail("AlreadyBoundException expected");
+        } catch (AlreadyBoundException abex) {
+            // intentionally left blank, one name is already bound
+        }
+        assertEquals(30, this.nornRegistry.list().length);
+        assertSame(bindings.get("service-0"), this.nornRegistry.lookup("service-0"));
+    }
+
+    @Test
+    public void shouldFallBackToPlainRegistry()
+            throws Exception {
+        final NornNodeInfo nodeInfo = new NornNodeInfo();
+        nodeInfo.setRegistryAddress("localhost");
+        nodeInfo.setRegistryPort(NornRegistryImplTest.REGISTRY_PORT);
+        final NornNode nornNode = new NornNode(nodeInfo, NornRegistryImplTest.mirror);
+
+        final Map<String, DeepThought> bindings = new LinkedHashMap<>();
+        bindings.put("first", new DeepThoughtImpl());
+        bindings.put("second", new DeepThoughtImpl());
+        nornNode.bindAll(bindings);
+
+        assertEquals(bindings, nornNode.lookupAll("first", "second"));
+        assertEquals(bindings, nornNode.snapshot());
+    }
+
+    @Test
+    public void shouldPublishBoundNamesOnEveryChange()
+            throws Exception {
+        final NornConfiguration nornConfiguration = new NornConfiguration.Builder()
+                .multicastAddress(NornRegistryImplTest.MULTICAST_ADDRESS)
+                .multicastPort(NornRegistryImplTest.MULTICAST_PORT)
+                .build();
+        final NornNodeInfo nodeInfo = new NornNodeInfo();
+        nodeInfo.setMulticastAddress(NornRegistryImplTest.MULTICAST_ADDRESS);
+        nodeInfo.setMulticastPort(NornRegistryImplTest.MULTICAST_PORT);
+        nodeInfo.setRegistryAddress("127.0.0.1");
+        nodeInfo.setRegistryPort(NornRegistryImplTest.REGISTRY_PORT);
+        final NornNode nornNode = new NornNode(nodeInfo, this.nornRegistry, new NornLoadSampler(10),
+                nornConfiguration);
+        nornNode.start();
+
+        try {
+            this.nornRegistry.bind("first", new DeepThoughtImpl());
+            assertTrue(nodeInfo.getBoundNames().mightContain("first"));
+
+            final Map<String, DeepThought> bindings = new LinkedHashMap<>();
+            bindings.put("second", new DeepThoughtImpl());
+            bindings.put("third", new DeepThoughtImpl());
+            this.nornRegistry.bindAll(bindings);
+            assertTrue(nodeInfo.getBoundNames().mightContain("second"));
+            assertTrue(nodeInfo.getBoundNames().mightContain("third"));
+
+            this.nornRegistry.unbind("first");
+            assertFalse(nodeInfo.getBoundNames().mightContain("first"));
+
+            final DeepThought fourth = new DeepThoughtImpl();
+            NornRegistryImplTest.mirror.bind("fourth", fourth);
+            NornRegistryImplTest.mirror.unbind("second");
+            this.nornRegistry.reconcile();
+            assertSame(fourth, this.nornRegistry.lookup("fourth"));
+            assertEquals(new HashSet<>(Arrays.asList("third", "fourth")),
+                    new HashSet<>(Arrays.asList(this.nornRegistry.list())));
+            assertTrue(nodeInfo.getBoundNames().mightContain("fourth"));
+            assertFalse(nodeInfo.getBoundNames().mightContain("second"));
+        } finally {
+            nornNode.stop();
+        }
+    }
+
+    @After
+    public void clearMirror()
+            throws Exception {
+        for (final String name : NornRegistryImplTest.mirror.list()) {
+            NornRegistryImplTest.mirror.unbind(name);
+        }
+    }
+
+    @AfterClass
+    public static void unexportMirror()
+            throws RemoteException {
+        UnicastRemoteObject.unexportObject(NornRegistryImplTest.mirror, true);
+    }
+}
@@ -0,0 +1,85 @@
+/**
+ * Copyright 2012 - 2013 Markus Geiss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.mgeiss.norn;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class NornReplyStatisticsTest {
+
+    public NornReplyStatisticsTest() {
+        super();
+    }
+
+    @Test
+    public void shouldLearnWindowFromReplyTimes() {
+        final NornReplyStatistics statistics = new NornReplyStatistics();
+        assertEquals(-1L, statistics.getLearnedWindow());
+        assertEquals(5000L, statistics.getWindow(30, 5000));
+
+        for (int i = 0; i < 99; i++) {
+            statistics.record(TimeUnit.MICROSECONDS.toNanos(1500L));
+        }
+        statistics.record(TimeUnit.MILLISECONDS.toNanos(40L));
+
+        final double p99 = statistics.getPercentile(0.99D);
+        assertTrue(p99 >= 1.5D && p99 < 1.5D * 1.25D);
+        assertTrue(statistics.getPercentile(1.0D) >= 40.0D);
+        assertEquals(11L, statistics.getLearnedWindow());
+        assertEquals(30L, statistics.getWindow(30, 5000));
+
+        for (int i = 0; i < NornReplyStatistics.MAX_SAMPLES; i++) {
+            statistics.record(TimeUnit.MILLISECONDS.toNanos(200L));
+        }
+        assertTrue(statistics.getSampleCount() < NornReplyStatistics.MAX_SAMPLES);
+        assertTrue(statistics.getLearnedWindow() >= 300L);
+        assertEquals(250L, statistics.getWindow(30, 250));
+
+        System.out.println("<<< REPLY STATISTICS >>>");
+        System.out.println(statistics);
+    }
+
+    @Test
+    public void shouldRecoverFromLatencyIncrease() {
+        final NornReplyStatistics statistics = new NornReplyStatistics();
+        for (int i = 0; i < NornReplyStatistics.MAX_SAMPLES - 1; i++) {
+            statistics.record(TimeUnit.MILLISECONDS.toNanos(2L));
+        }
+        assertTrue(statistics.getWindow(10, 1000) < 20L);
+
+        final long replyMillis = 80L;
+        int discoveries = 0;
+        while (statistics.getLearnedWindow() < replyMillis && discoveries < 20) {
+            discoveries++;
+            if (statistics.getWindow(10, 1000) < replyMillis) {
+                statistics.recordMiss();
+            } else {
+                for (int node = 0; node < 4; node++) {
+                    statistics.record(TimeUnit.MILLISECONDS.toNanos(replyMillis));
+                }
+            }
+        }
+
+        System.out.println("<<< REPLY STATISTICS >>>" + System.getProperty("line.separator")
+                + "Window recovered from a latency increase after " + discoveries + " discoveries!");
+        assertTrue(statistics.getWindow(10, 1000) >= replyMillis);
+        assertTrue(discoveries < 20);
+    }
+}
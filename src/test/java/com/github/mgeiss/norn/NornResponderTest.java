@@ -0,0 +1,577 @@
+/**
+ * Copyright 2012 - 2013 Markus Geiss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.mgeiss.norn;
+
+import com.github.mgeiss.norn.util.NornConfiguration;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.MulticastSocket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class NornResponderTest {
+
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+    private static final String MULTICAST_ADDRESS = "234.5.6.8";
+    private static final int MULTICAST_PORT = 52123;
+    private static final int WARM_UP = 2000;
+    private static final int PINGS = 5000;
+    private static final long MAX_BYTES_PER_PING = 64L;
+
+    public NornResponderTest() {
+        super();
+    }
+
+    @Test
+    public void shouldAnswerPingsWithoutAllocation()
+            throws Exception {
+        final java.lang.management.ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threadMXBean instanceof com.sun.management.ThreadMXBean);
+        final com.sun.management.ThreadMXBean allocationMXBean = (com.sun.management.ThreadMXBean) threadMXBean;
+        Assume.assumeTrue(allocationMXBean.isThreadAllocatedMemorySupported());
+        allocationMXBean.setThreadAllocatedMemoryEnabled(true);
+        // with a security manager the JDK checks the sender and the target of every datagram of an unconnected
+        // channel, allocating in each check, so answering pings is only free of allocation without one. Every test
+        // class runs in its own JVM, LocateNorn.createNode installing a security manager does not reach this test.
+        Assume.assumeTrue(System.getSecurityManager() == null);
+
+        final NornNode node = NornResponderTest.startNode(NornResponderTest.MULTICAST_PORT, 1099,
+                new NornConfiguration.Builder());
+
+        try (final MulticastSocket clientSocket = new MulticastSocket()) {
+            final DatagramPacket ping = NornResponderTest.createPing(NornResponderTest.MULTICAST_PORT);
+            final byte[] replyBuffer = new byte[NornNodeInfoCodec.MAX_PACKET_SIZE];
+            final DatagramPacket reply = new DatagramPacket(replyBuffer, replyBuffer.length);
+
+            NornResponderTest.pingUntilAnswered(clientSocket, ping, reply);
+            NornResponderTest.ping(clientSocket, ping, reply, NornResponderTest.WARM_UP);
+            final long responderBefore = NornResponderTest.responderAllocatedBytes(allocationMXBean);
+            NornResponderTest.ping(clientSocket, ping, reply, NornResponderTest.PINGS);
+            final long responderBytesPerPing = (NornResponderTest.responderAllocatedBytes(allocationMXBean)
+                    - responderBefore) / NornResponderTest.PINGS;
+            System.out.println("<<< RESPONDER >>>" + NornResponderTest.LINE_SEPARATOR
+                    + "Responder allocated " + responderBytesPerPing + " bytes per ping!"
+                    + NornResponderTest.LINE_SEPARATOR + "<<< RESPONDER >>>");
+
+            final NornNodeInfo decoded = NornNodeInfoCodec.decode(replyBuffer, 0, reply.getLength());
+            assertEquals(node.getNodeInfo().getNodeId(), decoded.getNodeId());
+            // receiving and answering a ping, a few bytes of slack cover timers and rounding
+            assertTrue(responderBytesPerPing <= NornResponderTest.MAX_BYTES_PER_PING);
+        } finally {
+            node.stop();
+        }
+    }
+
+    @Test
+    public void shouldAnswerForAllNodesOfAGroup()
+            throws Exception {
+        final int multicastPort = NornResponderTest.MULTICAST_PORT + 1;
+        final NornNode firstNode = NornResponderTest.startNode(multicastPort, 1100, new NornConfiguration.Builder());
+        final NornNode secondNode = NornResponderTest.startNode(multicastPort, 1101, new NornConfiguration.Builder());
+        final NornNode otherGroupNode = NornResponderTest.startNode(multicastPort + 1, 1102,
+                new NornConfiguration.Builder());
+
+        try (final MulticastSocket clientSocket = new MulticastSocket()) {
+            final DatagramPacket ping = NornResponderTest.createPing(multicastPort);
+            final byte[] replyBuffer = new byte[NornNodeInfoCodec.MAX_PACKET_SIZE];
+            final DatagramPacket reply = new DatagramPacket(replyBuffer, replyBuffer.length);
+
+            final Set<String> nodeIds = new HashSet<>();
+            clientSocket.setSoTimeout(200);
+            for (int i = 0; i < 20 && nodeIds.size() < 2; i++) {
+                clientSocket.send(ping);
+                try {
+                    while (true) {
+                        reply.setLength(replyBuffer.length);
+                        clientSocket.receive(reply);
+                        nodeIds.add(NornNodeInfoCodec.decode(replyBuffer, 0, reply.getLength()).getNodeId());
+                    }
+                } catch (SocketTimeoutException stex) {
+                    // all replies received
+                }
+            }
+
+            assertEquals(2, nodeIds.size());
+            assertTrue(nodeIds.contains(firstNode.getNodeInfo().getNodeId()));
+            assertTrue(nodeIds.contains(secondNode.getNodeInfo().getNodeId()));
+        } finally {
+            firstNode.stop();
+            secondNode.stop();
+            otherGroupNode.stop();
+        }
+    }
+
+    @Test
+    public void shouldDropPingsExceedingTheRateLimit()
+            throws Exception {
+        final int multicastPort = NornResponderTest.MULTICAST_PORT + 3;
+        final NornNode node = NornResponderTest.startNode(multicastPort, 1103,
+                new NornConfiguration.Builder().pingRateLimit(5));
+
+        try (final MulticastSocket clientSocket = new MulticastSocket()) {
+            final DatagramPacket ping = NornResponderTest.createPing(multicastPort);
+            for (int i = 0; i < 20; i++) {
+                clientSocket.send(ping);
+            }
+
+            final NornResponderStatistics statistics = node.getResponderStatistics();
+            NornResponderTest.awaitReceivedPings(statistics, 20L);
+
+            assertTrue(statistics.getRateLimitedPings() >= 10L);
+            assertEquals(statistics.getRateLimitedPings(), statistics.getDroppedPings());
+            assertEquals(statistics.getReceivedPings() - statistics.getDroppedPings(),
+                    statistics.getUnicastReplies());
+        } finally {
+            node.stop();
+        }
+    }
+
+    @Test
+    public void shouldCoalescePingsIntoOneGroupReply()
+            throws Exception {
+        final int multicastPort = NornResponderTest.MULTICAST_PORT + 4;
+        final NornNode node = NornResponderTest.startNode(multicastPort, 1104,
+                new NornConfiguration.Builder().replyCoalesceWindow(200));
+
+        try (final MulticastSocket clientSocket = new MulticastSocket(multicastPort)) {
+            clientSocket.joinGroup(InetAddress.getByName(NornResponderTest.MULTICAST_ADDRESS));
+
+            final ByteBuffer pingBuffer = ByteBuffer.allocate(NornNodeInfoCodec.HEADER_SIZE + 1);
+            NornNodeInfoCodec.encodePing(pingBuffer, NornNodeInfoCodec.PING_FLAG_GROUP_REPLY);
+            final DatagramPacket ping = new DatagramPacket(pingBuffer.array(), pingBuffer.position(),
+                    InetAddress.getByName(NornResponderTest.MULTICAST_ADDRESS), multicastPort);
+            for (int i = 0; i < 5; i++) {
+                clientSocket.send(ping);
+            }
+
+            final byte[] replyBuffer = new byte[NornNodeInfoCodec.MAX_PACKET_SIZE];
+            final DatagramPacket reply = new DatagramPacket(replyBuffer, replyBuffer.length);
+            clientSocket.setSoTimeout(2000);
+            NornNodeInfo nodeInfo = null;
+            while (nodeInfo == null) {
+                reply.setLength(replyBuffer.length);
+                clientSocket.receive(reply);
+                if (NornNodeInfoCodec.pingVersion(replyBuffer, 0, reply.getLength()) < 0) {
+                    nodeInfo = NornNodeInfoCodec.decode(replyBuffer, 0, reply.getLength());
+                }
+            }
+
+            final NornResponderStatistics statistics = node.getResponderStatistics();
+            for (int i = 0; i < 100 && statistics.getGroupReplies() == 0L; i++) {
+                Thread.sleep(20L);
+            }
+
+            assertEquals(node.getNodeInfo().getNodeId(), nodeInfo.getNodeId());
+            assertEquals(1L, statistics.getGroupReplies());
+            assertEquals(4L, statistics.getCoalescedPings());
+            assertEquals(0L, statistics.getUnicastReplies());
+        } finally {
+            node.stop();
+        }
+    }
+
+    @Test
+    public void shouldKeepPassiveMembershipFromAnnouncements()
+            throws Exception {
+        final int multicastPort = NornResponderTest.MULTICAST_PORT + 5;
+        final NornMembership membership = new NornMembership(new NornConfiguration.Builder()
+                .multicastAddress(NornResponderTest.MULTICAST_ADDRESS)
+                .multicastPort(multicastPort)
+                .passiveMembership()
+                .build());
+        membership.start();
+
+        final NornNode node = NornResponderTest.startNode(multicastPort, 1105,
+                new NornConfiguration.Builder().announceInterval(100));
+        try {
+            final long time = System.nanoTime();
+            for (int i = 0; i < 100 && membership.getNodeInfos().isEmpty(); i++) {
+                Thread.sleep(20L);
+            }
+            final long joined = System.nanoTime();
+            assertEquals(1, membership.getNodeInfos().size());
+            assertEquals(node.getNodeInfo().getNodeId(), membership.getNodeInfos().get(0).getNodeId());
+
+            final NornResponderStatistics statistics = node.getResponderStatistics();
+            node.stop();
+            for (int i = 0; i < 50 && !membership.getNodeInfos().isEmpty(); i++) {
+                Thread.sleep(20L);
+            }
+            System.out.println("<<< ANNOUNCE >>>" + NornResponderTest.LINE_SEPARATOR
+                    + "Node joined passive membership in " + (joined - time) / 1000000L + " ms, left in "
+                    + (System.nanoTime() - joined) / 1000000L + " ms!");
+
+            // the leave is counted once sent, which may be after the membership received it
+            for (int i = 0; i < 50 && statistics.getLeaves() == 0L; i++) {
+                Thread.sleep(20L);
+            }
+
+            assertTrue(membership.getNodeInfos().isEmpty());
+            assertTrue(statistics.getAnnouncements() > 0L);
+            assertEquals(1L, statistics.getLeaves());
+            assertEquals(0L, statistics.getReceivedPings());
+        } finally {
+            node.stop();
+            membership.stop();
+        }
+    }
+
+    @Test
+    public void shouldAnswerWithTableOfMaster()
+            throws Exception {
+        final int multicastPort = NornResponderTest.MULTICAST_PORT + 6;
+        final NornNode master = NornResponderTest.startNode(multicastPort, 1106,
+                new NornConfiguration.Builder().announceInterval(100).master());
+        final NornNode node = NornResponderTest.startNode(multicastPort, 1107,
+                new NornConfiguration.Builder().announceInterval(100));
+
+        try (final MulticastSocket clientSocket = new MulticastSocket()) {
+            final ByteBuffer pingBuffer = ByteBuffer.allocate(NornNodeInfoCodec.HEADER_SIZE + 1);
+            NornNodeInfoCodec.encodePing(pingBuffer, NornNodeInfoCodec.PING_FLAG_TABLE);
+            final DatagramPacket ping = new DatagramPacket(pingBuffer.array(), pingBuffer.position(),
+                    InetAddress.getByName(NornResponderTest.MULTICAST_ADDRESS), multicastPort);
+
+            final byte[] replyBuffer = new byte[NornNodeInfoCodec.MAX_PACKET_SIZE];
+            final DatagramPacket reply = new DatagramPacket(replyBuffer, replyBuffer.length);
+            clientSocket.setSoTimeout(200);
+
+            final Set<String> nodeIds = new HashSet<>();
+            int replies = 0;
+            for (int i = 0; i < 20 && (nodeIds.size() < 2 || replies > 1); i++) {
+                Thread.sleep(100L);
+                nodeIds.clear();
+                replies = 0;
+                clientSocket.send(ping);
+                try {
+                    while (true) {
+                        reply.setLength(replyBuffer.length);
+                        clientSocket.receive(reply);
+                        replies++;
+                        if (NornNodeInfoCodec.packetType(replyBuffer, 0, reply.getLength())
+                                == NornNodeInfoCodec.TYPE_TABLE) {
+                            for (final NornNodeInfo nodeInfo
+                                    : NornNodeInfoCodec.decodeTable(replyBuffer, 0, reply.getLength())) {
+                                nodeIds.add(nodeInfo.getNodeId());
+                            }
+                        } else {
+                            nodeIds.add(NornNodeInfoCodec.decode(replyBuffer, 0, reply.getLength()).getNodeId());
+                        }
+                    }
+                } catch (SocketTimeoutException stex) {
+                    // intentionally left blank, all replies received
+                }
+            }
+
+            assertEquals(1, replies);
+            assertTrue(nodeIds.contains(master.getNodeInfo().getNodeId()));
+            assertTrue(nodeIds.contains(node.getNodeInfo().getNodeId()));
+        } finally {
+            node.stop();
+            master.stop();
+        }
+    }
+
+    @Test
+    public void shouldAnswerWithDeltaOfMaster()
+            throws Exception {
+        final int multicastPort = NornResponderTest.MULTICAST_PORT + 8;
+        final NornNode master = NornResponderTest.startNode(multicastPort, 1109,
+                new NornConfiguration.Builder().announceInterval(100).master());
+        final NornNode node = NornResponderTest.startNode(multicastPort, 1110,
+                new NornConfiguration.Builder().announceInterval(100));
+        final NornConfiguration clientConfiguration = new NornConfiguration.Builder()
+                .multicastAddress(NornResponderTest.MULTICAST_ADDRESS)
+                .multicastPort(multicastPort)
+                .socketTimeout(500)
+                .build();
+
+        try {
+            NornDelta full = new NornDelta(0L);
+            for (int i = 0; i < 20 && full.getChanged().size() < 2; i++) {
+                Thread.sleep(100L);
+                full = new NornDelta(0L);
+                NornDiscovery.discover(clientConfiguration, full);
+            }
+            assertTrue(full.isFull());
+            assertEquals(2, full.getChanged().size());
+
+            final NornDelta unchanged = new NornDelta(full.getEpoch());
+            NornDiscovery.discover(clientConfiguration, unchanged);
+            assertTrue(unchanged.isAnswered());
+            assertFalse(unchanged.isFull());
+            assertTrue(unchanged.getRemoved().isEmpty());
+
+            node.stop();
+            Thread.sleep(100L);
+
+            final NornDelta left = new NornDelta(unchanged.getEpoch());
+            NornDiscovery.discover(clientConfiguration, left);
+            assertFalse(left.isFull());
+            assertEquals(1, left.getRemoved().size());
+            assertEquals(node.getNodeInfo().getNodeId(), left.getRemoved().get(0).getNodeId());
+            System.out.println("<<< DELTA >>>" + NornResponderTest.LINE_SEPARATOR
+                    + "Epoch " + full.getEpoch() + " -> " + left.getEpoch() + ", " + unchanged.getChanged().size()
+                    + " changed while steady!");
+        } finally {
+            node.stop();
+            master.stop();
+        }
+    }
+
+    @Test
+    public void shouldAnswerOnlyForNodesMatchingFilter()
+            throws Exception {
+        final int multicastPort = NornResponderTest.MULTICAST_PORT + 9;
+        final NornNode west = NornResponderTest.startNode(multicastPort, 1111,
+                new NornConfiguration.Builder().tag("zone", "west"));
+        final NornNode east = NornResponderTest.startNode(multicastPort, 1112,
+                new NornConfiguration.Builder().tag("zone", "east"));
+
+        try (final MulticastSocket clientSocket = new MulticastSocket()) {
+            final ByteBuffer pingBuffer = ByteBuffer.allocate(NornNodeInfoCodec.MAX_PACKET_SIZE);
+            NornNodeInfoCodec.encodePing(pingBuffer, (byte) 0, 0L,
+                    new NornNodeFilter.Builder().tag("zone", "east").build());
+            final DatagramPacket ping = new DatagramPacket(pingBuffer.array(), pingBuffer.position(),
+                    InetAddress.getByName(NornResponderTest.MULTICAST_ADDRESS), multicastPort);
+
+            final byte[] replyBuffer = new byte[NornNodeInfoCodec.MAX_PACKET_SIZE];
+            final DatagramPacket reply = new DatagramPacket(replyBuffer, replyBuffer.length);
+            NornResponderTest.pingUntilAnswered(clientSocket, ping, reply);
+            final NornNodeInfo nodeInfo = NornNodeInfoCodec.decode(replyBuffer, 0, reply.getLength());
+            assertEquals(east.getNodeInfo().getNodeId(), nodeInfo.getNodeId());
+            assertEquals("east", nodeInfo.getTag("zone"));
+
+            clientSocket.setSoTimeout(200);
+            int replies = -1;
+            for (int i = 0; i < 2; i++) {
+                if (i > 0) {
+                    replies = 0;
+                    clientSocket.send(ping);
+                }
+                try {
+                    while (true) {
+                        reply.setLength(replyBuffer.length);
+                        clientSocket.receive(reply);
+                        assertEquals(east.getNodeInfo().getNodeId(),
+                                NornNodeInfoCodec.decode(replyBuffer, 0, reply.getLength()).getNodeId());
+                        replies++;
+                    }
+                } catch (SocketTimeoutException stex) {
+                    // intentionally left blank, all replies received
+                }
+            }
+            assertEquals(1, replies);
+        } finally {
+            east.stop();
+            west.stop();
+        }
+    }
+
+    @Test
+    public void shouldChooseOnlyNodesHostingName()
+            throws Exception {
+        final int multicastPort = NornResponderTest.MULTICAST_PORT + 10;
+        final Registry hostingRegistry = LocateRegistry.createRegistry(53021);
+        final Registry otherRegistry = LocateRegistry.createRegistry(53022);
+        final NornNode hosting = NornResponderTest.startNode(multicastPort, 53021, hostingRegistry,
+                new NornConfiguration.Builder());
+        final NornNode other = NornResponderTest.startNode(multicastPort, 53022, otherRegistry,
+                new NornConfiguration.Builder());
+        final NornConfiguration clientConfiguration = new NornConfiguration.Builder()
+                .multicastAddress(NornResponderTest.MULTICAST_ADDRESS)
+                .multicastPort(multicastPort)
+                .socketTimeout(500)
+                .build();
+        final String name = DeepThought.class.getSimpleName();
+
+        try {
+            hosting.bind(name, new DeepThoughtImpl());
+
+            List<NornNode> nodes = LocateNorn.getNodes(clientConfiguration, name, 2);
+            for (int i = 0; i < 20 && nodes.size() > 1; i++) {
+                Thread.sleep(50L);
+                nodes = LocateNorn.getNodes(clientConfiguration, name, 2);
+            }
+            assertEquals(1, nodes.size());
+            assertEquals(hosting.getNodeInfo().getNodeId(), nodes.get(0).getNodeInfo().getNodeId());
+            assertTrue(nodes.get(0).getNodeInfo().mayHost(name));
+            assertEquals(2, LocateNorn.getNodes(clientConfiguration, 2).size());
+        } finally {
+            other.stop();
+            hosting.stop();
+            UnicastRemoteObject.unexportObject(otherRegistry, true);
+            UnicastRemoteObject.unexportObject(hostingRegistry, true);
+        }
+    }
+
+    @Test
+    public void shouldStayQuietWhileMasterAnnounces()
+            throws Exception {
+        final int multicastPort = NornResponderTest.MULTICAST_PORT + 7;
+        final NornNode node = NornResponderTest.startNode(multicastPort, 1108,
+                new NornConfiguration.Builder().announceInterval(100));
+
+        try (final MulticastSocket clientSocket = new MulticastSocket()) {
+            final NornNodeInfo masterInfo = new NornNodeInfo();
+            masterInfo.setMulticastAddress(NornResponderTest.MULTICAST_ADDRESS);
+            masterInfo.setMulticastPort(multicastPort);
+            masterInfo.setRegistryAddress("192.168.178.42");
+            masterInfo.setRegistryPort(1099);
+            masterInfo.setMaster(true);
+            final ByteBuffer announceBuffer = ByteBuffer.allocate(NornNodeInfoCodec.MAX_PACKET_SIZE);
+            NornNodeInfoCodec.encode(masterInfo, NornNodeInfoCodec.VERSION, NornNodeInfoCodec.TYPE_ANNOUNCE,
+                    announceBuffer);
+            clientSocket.send(new DatagramPacket(announceBuffer.array(), announceBuffer.position(),
+                    InetAddress.getByName(NornResponderTest.MULTICAST_ADDRESS), multicastPort));
+
+            final ByteBuffer pingBuffer = ByteBuffer.allocate(NornNodeInfoCodec.HEADER_SIZE + 1);
+            NornNodeInfoCodec.encodePing(pingBuffer, NornNodeInfoCodec.PING_FLAG_TABLE);
+            final DatagramPacket tablePing = new DatagramPacket(pingBuffer.array(), pingBuffer.position(),
+                    InetAddress.getByName(NornResponderTest.MULTICAST_ADDRESS), multicastPort);
+            for (int i = 0; i < 5; i++) {
+                clientSocket.send(tablePing);
+            }
+            clientSocket.send(NornResponderTest.createPing(multicastPort));
+
+            final NornResponderStatistics statistics = node.getResponderStatistics();
+            NornResponderTest.awaitReceivedPings(statistics, 6L);
+
+            assertEquals(5L, statistics.getSuppressedPings());
+            assertEquals(1L, statistics.getUnicastReplies());
+        } finally {
+            node.stop();
+        }
+    }
+
+    @Test
+    public void shouldRejectConflictingGroupSettings()
+            throws Exception {
+        final int multicastPort = NornResponderTest.MULTICAST_PORT + 12;
+        final NornNode first = NornResponderTest.startNode(multicastPort, 1116, new NornConfiguration.Builder());
+
+        try {
+            try {
+                NornResponderTest.startNode(multicastPort, 1117, new NornConfiguration.Builder().pingRateLimit(100));
+                fail("Conflicting group settings must be rejected!");
+            } catch (IllegalArgumentException iaex) {
+                // expected
+            }
+
+            final NornNode second = NornResponderTest.startNode(multicastPort, 1118, new NornConfiguration.Builder());
+            try {
+                assertSame(first.getResponderStatistics(), second.getResponderStatistics());
+                assertEquals(0L, second.getResponderStatistics().getFailures());
+            } finally {
+                second.stop();
+            }
+        } finally {
+            first.stop();
+        }
+    }
+
+    private static NornNode startNode(final int multicastPort, final int registryPort,
+                                      final NornConfiguration.Builder builder)
+            throws Exception {
+        return NornTestNodes.startNode(NornResponderTest.createConfiguration(multicastPort, builder), registryPort);
+    }
+
+    private static NornNode startNode(final int multicastPort, final int registryPort, final Registry registry,
+                                      final NornConfiguration.Builder builder)
+            throws Exception {
+        return NornTestNodes.startNode(NornResponderTest.createConfiguration(multicastPort, builder), registryPort,
+                registry);
+    }
+
+    private static NornConfiguration createConfiguration(final int multicastPort,
+                                                         final NornConfiguration.Builder builder) {
+        return builder
+                .multicastAddress(NornResponderTest.MULTICAST_ADDRESS)
+                .multicastPort(multicastPort)
+                .build();
+    }
+
+    private static DatagramPacket createPing(final int multicastPort)
+            throws Exception {
+        final ByteBuffer pingBuffer = ByteBuffer.allocate(NornNodeInfoCodec.HEADER_SIZE);
+        NornNodeInfoCodec.encodePing(pingBuffer);
+        return new DatagramPacket(pingBuffer.array(), pingBuffer.position(),
+                InetAddress.getByName(NornResponderTest.MULTICAST_ADDRESS), multicastPort);
+    }
+
+    private static void awaitReceivedPings(final NornResponderStatistics statistics, final long pings)
+            throws InterruptedException {
+        for (int i = 0; i < 100 && (statistics.getReceivedPings() < pings || statistics.getReceivedPings()
+                != statistics.getDroppedPings() + statistics.getSuppressedPings() + statistics.getUnicastReplies());
+             i++) {
+            Thread.sleep(20L);
+        }
+        assertEquals(pings, statistics.getReceivedPings());
+    }
+
+    private static long responderAllocatedBytes(final com.sun.management.ThreadMXBean allocationMXBean) {
+        long allocated = 0L;
+        for (final Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith("norn-responder-")) {
+                allocated += allocationMXBean.getThreadAllocatedBytes(thread.getId());
+            }
+        }
+        return allocated;
+    }
+
+    private static void pingUntilAnswered(final MulticastSocket clientSocket, final DatagramPacket ping,
+                                          final DatagramPacket reply)
+            throws Exception {
+        clientSocket.setSoTimeout(50);
+        for (int i = 0; i < 100; i++) {
+            clientSocket.send(ping);
+            try {
+                reply.setLength(NornNodeInfoCodec.MAX_PACKET_SIZE);
+                clientSocket.receive(reply);
+                break;
+            } catch (SocketTimeoutException stex) {
+                // node not listening yet
+            }
+        }
+        clientSocket.setSoTimeout(1000);
+    }
+
+    private static void ping(final MulticastSocket clientSocket, final DatagramPacket ping,
+                             final DatagramPacket reply, final int count)
+            throws Exception {
+        for (int i = 0; i < count; i++) {
+            clientSocket.send(ping);
+            reply.setLength(NornNodeInfoCodec.MAX_PACKET_SIZE);
+            clientSocket.receive(reply);
+        }
+    }
+}
@@ -0,0 +1,198 @@
+/**
+ * Copyright 2012 - 2013 Markus Geiss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.mgeiss.norn;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.rmi.ConnectException;
+import java.rmi.NoSuchObjectException;
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class NornStubCacheTest {
+
+    private static final int REGISTRY_PORT = 53031;
+    private static final int UNUSED_PORT = 53032;
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+    private static Registry registry;
+
+    public NornStubCacheTest() {
+        super();
+    }
+
+    @BeforeClass
+    public static void startRegistry()
+            throws RemoteException {
+        NornStubCacheTest.registry = LocateRegistry.createRegistry(NornStubCacheTest.REGISTRY_PORT);
+    }
+
+    @Test
+    public void shouldAnswerRepeatedLookupsFromCache()
+            throws Exception {
+        final NornStubCache stubCache = new NornStubCache(60000);
+        final NornNodeInfo nodeInfo = NornStubCacheTest.createNodeInfo(NornStubCacheTest.REGISTRY_PORT);
+        final NornNode nornNode = new NornNode(nodeInfo, NornStubCacheTest.registry,
+                Collections.singletonList(nodeInfo), stubCache);
+        final String name = DeepThought.class.getSimpleName();
+
+        nornNode.rebind(name, new DeepThoughtImpl());
+        final Remote stub = nornNode.lookup(name);
+        assertEquals(1L, stubCache.getMisses());
+
+        final int lookups = 1000;
+        final long time = System.nanoTime();
+        for (int i = 0; i < lookups; i++) {
+            assertSame(stub, nornNode.lookup(name));
+        }
+        System.out.println("<<< STUB CACHE >>>" + NornStubCacheTest.LINE_SEPARATOR
+                + "Looked up " + lookups + " cached stubs in " + (System.nanoTime() - time) / 1000L + " us!");
+        assertEquals(lookups, stubCache.getHits());
+        assertEquals(1L, stubCache.getMisses());
+
+        nornNode.rebind(name, new DeepThoughtImpl());
+        assertEquals(1L, stubCache.getInvalidations());
+        assertNotSame(stub, nornNode.lookup(name));
+        assertEquals(2L, stubCache.getMisses());
+
+        nornNode.invalidate(name);
+        nornNode.lookup(name);
+        assertEquals(3L, stubCache.getMisses());
+    }
+
+    @Test
+    public void shouldCacheStubsLookedUpTogether()
+            throws Exception {
+        final NornStubCache stubCache = new NornStubCache(60000);
+        final NornNodeInfo nodeInfo = NornStubCacheTest.createNodeInfo(NornStubCacheTest.REGISTRY_PORT);
+        final NornNode nornNode = new NornNode(nodeInfo, NornStubCacheTest.registry,
+                Collections.singletonList(nodeInfo), stubCache);
+
+        nornNode.rebind("first", new DeepThoughtImpl());
+        nornNode.rebind("second", new DeepThoughtImpl());
+        final Map<String, Remote> stubs = nornNode.lookupAll("first", "second");
+
+        assertSame(stubs.get("first"), nornNode.lookup("first"));
+        assertSame(stubs.get("second"), nornNode.lookup("second"));
+        assertEquals(2L, stubCache.getHits());
+        assertEquals(0L, stubCache.getMisses());
+    }
+
+    @Test
+    public void shouldExpireCachedStubs()
+            throws Exception {
+        final NornStubCache stubCache = new NornStubCache(100);
+        final NornNodeInfo nodeInfo = NornStubCacheTest.createNodeInfo(NornStubCacheTest.REGISTRY_PORT);
+        final String name = DeepThought.class.getSimpleName();
+
+        NornStubCacheTest.registry.rebind(name, new DeepThoughtImpl());
+        stubCache.lookup(nodeInfo, NornStubCacheTest.registry, name);
+        stubCache.lookup(nodeInfo, NornStubCacheTest.registry, name);
+        assertEquals(1L, stubCache.getHits());
+        assertEquals(1L, stubCache.getMisses());
+
+        Thread.sleep(150L);
+        stubCache.lookup(nodeInfo, NornStubCacheTest.registry, name);
+        assertEquals(1L, stubCache.getHits());
+        assertEquals(2L, stubCache.getMisses());
+    }
+
+    @Test
+    public void shouldInvalidateNodeNotReachable()
+            throws Exception {
+        final NornStubCache stubCache = new NornStubCache(60000);
+        final NornNodeInfo nodeInfo = NornStubCacheTest.createNodeInfo(NornStubCacheTest.UNUSED_PORT);
+
+        try {
+            stubCache.lookup(nodeInfo, null, DeepThought.class.getSimpleName());
+            fail("ConnectException expected");
+        } catch (ConnectException cex) {
+            // intentionally left blank, no registry listens on the port
+        }
+        assertEquals(1L, stubCache.getInvalidations());
+    }
+
+    @Test
+    public void shouldInvalidateStubOfUnexportedObject()
+            throws Exception {
+        final NornStubCache stubCache = new NornStubCache(60000);
+        final NornNodeInfo nodeInfo = NornStubCacheTest.createNodeInfo(NornStubCacheTest.REGISTRY_PORT);
+        final String name = DeepThought.class.getSimpleName();
+
+        final DeepThought unexported = new RemoteDeepThought("42");
+        NornStubCacheTest.registry.rebind(name, UnicastRemoteObject.exportObject(unexported, 0));
+        final DeepThought stub = (DeepThought) stubCache.lookup(nodeInfo, NornStubCacheTest.registry, name);
+        assertEquals("42", stub.answerToTheUltimateQuestion());
+        assertSame(stub, stubCache.lookup(nodeInfo, NornStubCacheTest.registry, name));
+
+        final DeepThought rebound = new RemoteDeepThought("43");
+        NornStubCacheTest.registry.rebind(name, UnicastRemoteObject.exportObject(rebound, 0));
+        UnicastRemoteObject.unexportObject(unexported, true);
+        try {
+            stub.answerToTheUltimateQuestion();
+            fail("NoSuchObjectException expected");
+        } catch (NoSuchObjectException nsoex) {
+            // intentionally left blank, the remote object has been unexported
+        }
+        assertEquals(1L, stubCache.getInvalidations());
+
+        final DeepThought renewed = (DeepThought) stubCache.lookup(nodeInfo, NornStubCacheTest.registry, name);
+        assertEquals("43", renewed.answerToTheUltimateQuestion());
+        assertEquals(2L, stubCache.getMisses());
+        UnicastRemoteObject.unexportObject(rebound, true);
+    }
+
+    @AfterClass
+    public static void stopRegistry()
+            throws RemoteException {
+        UnicastRemoteObject.unexportObject(NornStubCacheTest.registry, true);
+    }
+
+    private static NornNodeInfo createNodeInfo(final int registryPort) {
+        final NornNodeInfo nodeInfo = new NornNodeInfo();
+        nodeInfo.setRegistryAddress("localhost");
+        nodeInfo.setRegistryPort(registryPort);
+        return nodeInfo;
+    }
+
+    private static final class RemoteDeepThought
+            implements DeepThought {
+
+        private final String answer;
+
+        private RemoteDeepThought(final String answer) {
+            super();
+            this.answer = answer;
+        }
+
+        @Override
+        public String answerToTheUltimateQuestion()
+                throws RemoteException {
+            return this.answer;
+        }
+    }
+}
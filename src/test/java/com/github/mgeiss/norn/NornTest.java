@@ -15,15 +15,20 @@
  */
 package com.github.mgeiss.norn;
 
+import com.github.mgeiss.norn.util.NornConfiguration;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
 import java.rmi.NotBoundException;
+import java.rmi.Remote;
 import java.rmi.RemoteException;
 import java.rmi.server.UnicastRemoteObject;
+import java.util.Collections;
+import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 public class NornTest {
@@ -81,9 +86,80 @@ public class NornTest {
         }
     }
 
+    @Test
+    public void shouldLocateNodeFromCachedMembership() {
+        try {
+            final NornConfiguration nornConfiguration = new NornConfiguration.Builder()
+                    .socketTimeout(100)
+                    .cacheMembership()
+                    .build();
+
+            long time = System.currentTimeMillis();
+            final NornNode nornNode = LocateNorn.getNode(nornConfiguration);
+            NornTest.TELEMETRY.append("Node located and cached in ")
+                    .append(System.currentTimeMillis() - time).append(" ms!" + NornTest.LINE_SEPARATOR);
+
+            time = System.nanoTime();
+            final NornNode cachedNornNode = LocateNorn.getNode(nornConfiguration);
+            NornTest.TELEMETRY.append("Node located from cache in ")
+                    .append((System.nanoTime() - time) / 1000L).append(" us!" + NornTest.LINE_SEPARATOR);
+
+            assertEquals(nornNode.getNodeInfo().getNodeId(), cachedNornNode.getNodeInfo().getNodeId());
+
+            final DeepThought deepThoughtRef = (DeepThought) cachedNornNode.lookup(DeepThought.class.getSimpleName());
+            assertEquals("42", deepThoughtRef.answerToTheUltimateQuestion());
+
+            LocateNorn.getMembership(nornConfiguration).stop();
+        } catch (NotBoundException nbex) {
+            fail("NotBoundException: " + nbex.getMessage());
+        } catch (RemoteException rex) {
+            fail("RemoteException: " + rex.getMessage());
+        }
+    }
+
+    @Test
+    public void shouldWatchBindingsOfNode() {
+        final String name = DeepThought.class.getSimpleName();
+        try {
+            final NornNode nornNode = LocateNorn.getNode(100);
+            final NornRegistryChanges changes = nornNode.watch(0L, 0);
+            assertTrue(changes.isFull());
+            assertEquals(name, nornNode.getBinding(name).getName());
+
+            NornTest.serverNornNode.rebind(name, UnicastRemoteObject.toStub(NornTest.deepThought), 2.0D,
+                    Collections.singletonMap("answer", "42"));
+
+            long time = System.currentTimeMillis();
+            final NornRegistryChanges rebound = nornNode.watch(changes.getVersion(), 1000);
+            NornTest.TELEMETRY.append("Binding change watched in ")
+                    .append(System.currentTimeMillis() - time).append(" ms!" + NornTest.LINE_SEPARATOR);
+
+            assertEquals(name, rebound.getEvents().get(rebound.getEvents().size() - 1).getName());
+            assertEquals(2.0D, nornNode.getBinding(name).getWeight(), 0.0D);
+            assertEquals("42", nornNode.getBinding(name).getTags().get("answer"));
+
+            time = System.currentTimeMillis();
+            final Map<String, Remote> stubs = nornNode.snapshot();
+            NornTest.TELEMETRY.append("Snapshot of ").append(stubs.size()).append(" bindings taken in ")
+                    .append(System.currentTimeMillis() - time).append(" ms!" + NornTest.LINE_SEPARATOR);
+
+            assertEquals("42", ((DeepThought) stubs.get(name)).answerToTheUltimateQuestion());
+            assertEquals(stubs, nornNode.lookupAll(name));
+        } catch (NotBoundException nbex) {
+            fail("NotBoundException: " + nbex.getMessage());
+        } catch (RemoteException rex) {
+            fail("RemoteException: " + rex.getMessage());
+        }
+    }
+
     @AfterClass
     public static void stopNornNode() {
         if (NornTest.serverNornNode != null) {
+            NornTest.TELEMETRY.append("Load sampled ")
+                    .append(NornTest.serverNornNode.getLoadSampler().getSampleCount()).append(" times, last sample took ")
+                    .append(NornTest.serverNornNode.getLoadSampler().getLastSampleNanos() / 1000L)
+                    .append(" us!" + NornTest.LINE_SEPARATOR);
+
             long time = System.currentTimeMillis();
             NornTest.serverNornNode.stop();
             NornTest.TELEMETRY.append("Server node stopped in ")
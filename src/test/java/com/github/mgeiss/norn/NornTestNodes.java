@@ -0,0 +1,125 @@
+/**
+ * Copyright 2012 - 2013 Markus Geiss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.mgeiss.norn;
+
+import com.github.mgeiss.norn.util.NornConfiguration;
+import com.github.mgeiss.norn.util.NornLoadProvider;
+import com.github.mgeiss.norn.util.NornLoadProviders;
+import com.github.mgeiss.norn.util.NornLoadSampler;
+
+import java.rmi.AlreadyBoundException;
+import java.rmi.NotBoundException;
+import java.rmi.Remote;
+import java.rmi.registry.Registry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <code>NornTestNodes</code> starts nodes answering pings like <code>LocateNorn.createNode</code>, without exporting
+ * a registry unless the test passes one.
+ */
+final class NornTestNodes {
+
+    private static final int SAMPLE_INTERVAL = 10;
+
+    private NornTestNodes() {
+        super();
+    }
+
+    static NornNode startNode(final NornConfiguration nornConfiguration, final int registryPort)
+            throws Exception {
+        return NornTestNodes.startNode(nornConfiguration, registryPort, new LocalRegistry(),
+                NornLoadProviders.defaultProvider());
+    }
+
+    static NornNode startNode(final NornConfiguration nornConfiguration, final int registryPort,
+                              final Registry registry)
+            throws Exception {
+        return NornTestNodes.startNode(nornConfiguration, registryPort, registry, NornLoadProviders.defaultProvider());
+    }
+
+    static NornNode startNode(final NornConfiguration nornConfiguration, final int registryPort,
+                              final NornLoadProvider loadProvider)
+            throws Exception {
+        return NornTestNodes.startNode(nornConfiguration, registryPort, new LocalRegistry(), loadProvider);
+    }
+
+    private static NornNode startNode(final NornConfiguration nornConfiguration, final int registryPort,
+                                      final Registry registry, final NornLoadProvider loadProvider)
+            throws Exception {
+        final NornNodeInfo nodeInfo = new NornNodeInfo();
+        nodeInfo.setMulticastAddress(nornConfiguration.getMulticastAddress());
+        nodeInfo.setMulticastPort(nornConfiguration.getMulticastPort());
+        nodeInfo.setRegistryAddress("127.0.0.1");
+        nodeInfo.setRegistryPort(registryPort);
+        nodeInfo.setMaster(nornConfiguration.isMaster());
+        nodeInfo.setTags(nornConfiguration.getTags());
+
+        final NornNode node = new NornNode(nodeInfo, registry,
+                new NornLoadSampler(NornTestNodes.SAMPLE_INTERVAL, loadProvider), nornConfiguration);
+        node.start();
+        return node;
+    }
+
+    /**
+     * <code>LocalRegistry</code> keeps bindings in memory, it is never exported.
+     */
+    private static final class LocalRegistry
+            implements Registry {
+
+        private final ConcurrentMap<String, Remote> bindings = new ConcurrentHashMap<>();
+
+        private LocalRegistry() {
+            super();
+        }
+
+        @Override
+        public Remote lookup(final String name)
+                throws NotBoundException {
+            final Remote obj = this.bindings.get(name);
+            if (obj == null) {
+                throw new NotBoundException(name);
+            }
+            return obj;
+        }
+
+        @Override
+        public void bind(final String name, final Remote obj)
+                throws AlreadyBoundException {
+            if (this.bindings.putIfAbsent(name, obj) != null) {
+                throw new AlreadyBoundException(name);
+            }
+        }
+
+        @Override
+        public void unbind(final String name)
+                throws NotBoundException {
+            if (this.bindings.remove(name) == null) {
+                throw new NotBoundException(name);
+            }
+        }
+
+        @Override
+        public void rebind(final String name, final Remote obj) {
+            this.bindings.put(name, obj);
+        }
+
+        @Override
+        public String[] list() {
+            return this.bindings.keySet().toArray(new String[0]);
+        }
+    }
+}
@@ -127,4 +127,34 @@ public class NornConditionsTest {
             Assert.assertEquals(messages.getString("message.illegal.argument.socket.timeout"), iaex.getMessage());
         }
     }
+
+    @Test
+    public void shouldFailDiscoveryWindowCheckWithLowerBoundExceedingUpperBound() {
+        try {
+            NornConditions.checkDiscoveryWindow(500, 100);
+            Assert.fail();
+        } catch (IllegalArgumentException iaex) {
+            Assert.assertEquals(messages.getString("message.illegal.argument.discovery.window"), iaex.getMessage());
+        }
+    }
+
+    @Test
+    public void shouldSucceedStubCacheTtlCheck() {
+        try {
+            NornConditions.checkStubCacheTtl(0);
+            NornConditions.checkStubCacheTtl(5000);
+        } catch (IllegalArgumentException iaex) {
+            Assert.fail();
+        }
+    }
+
+    @Test
+    public void shouldFailStubCacheTtlCheck() {
+        try {
+            NornConditions.checkStubCacheTtl(50);
+            Assert.fail();
+        } catch (IllegalArgumentException iaex) {
+            Assert.assertEquals(messages.getString("message.illegal.argument.stub.cache.ttl"), iaex.getMessage());
+        }
+    }
 }
@@ -0,0 +1,98 @@
+/**
+ * Copyright 2012 - 2013 Markus Geiss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.mgeiss.norn.util;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class NornInFlightCallsTest {
+
+    public NornInFlightCallsTest() {
+        super();
+    }
+
+    @Test
+    public void shouldCountCallsInFlight() {
+        final NornInFlightCalls inFlightCalls = NornLoadProviders.inFlightCalls(4);
+        assertEquals(0.0D, inFlightCalls.getLoad(), 0.0D);
+
+        inFlightCalls.enter();
+        inFlightCalls.enter();
+        assertEquals(2, inFlightCalls.getInFlight());
+        assertEquals(0.5D, inFlightCalls.getLoad(), 0.0D);
+
+        inFlightCalls.exit();
+        inFlightCalls.exit();
+        inFlightCalls.exit();
+        assertEquals(-1, inFlightCalls.getInFlight());
+        assertEquals(0.0D, inFlightCalls.getLoad(), 0.0D);
+    }
+
+    @Test
+    public void shouldCountConcurrentCalls()
+            throws Exception {
+        final NornInFlightCalls inFlightCalls = NornLoadProviders.inFlightCalls(8);
+        final CountDownLatch entered = new CountDownLatch(8);
+        final CountDownLatch release = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        try {
+            for (int i = 0; i < 8; i++) {
+                executor.execute(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        inFlightCalls.enter();
+                        try {
+                            entered.countDown();
+                            release.await();
+                        } catch (InterruptedException iex) {
+                            Thread.currentThread().interrupt();
+                        } finally {
+                            inFlightCalls.exit();
+                        }
+                    }
+                });
+            }
+
+            assertTrue(entered.await(5L, TimeUnit.SECONDS));
+            assertEquals(1.0D, inFlightCalls.getLoad(), 0.0D);
+            release.countDown();
+        } finally {
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(5L, TimeUnit.SECONDS));
+        }
+        assertEquals(0, inFlightCalls.getInFlight());
+    }
+
+    @Test
+    public void shouldRejectInvalidCapacity() {
+        try {
+            NornLoadProviders.inFlightCalls(0);
+            fail("A capacity of 0 must be rejected!");
+        } catch (IllegalArgumentException iaex) {
+            // intentionally left blank, the capacity is not valid
+        }
+    }
+}
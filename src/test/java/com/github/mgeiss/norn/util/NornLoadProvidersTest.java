@@ -0,0 +1,125 @@
+/**
+ * Copyright 2012 - 2013 Markus Geiss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.mgeiss.norn.util;
+
+import org.junit.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.ResourceBundle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class NornLoadProvidersTest {
+
+    private static final ResourceBundle messages = ResourceBundle.getBundle("norn-messages");
+
+    public NornLoadProvidersTest() {
+        super();
+    }
+
+    @Test
+    public void shouldSumWeightedLoads() {
+        final Map<NornLoadProvider, Double> loadProviders = new LinkedHashMap<>();
+        loadProviders.put(NornLoadProvidersTest.fixed(0.5D), 2.0D);
+        loadProviders.put(NornLoadProvidersTest.fixed(0.25D), 1.0D);
+
+        assertEquals(1.25D, NornLoadProviders.weighted(loadProviders).getLoad(), 0.0D);
+        assertEquals(0.0D, NornLoadProviders.weighted(new LinkedHashMap<NornLoadProvider, Double>()).getLoad(), 0.0D);
+    }
+
+    @Test
+    public void shouldRejectInvalidWeights() {
+        for (final Double weight : new Double[]{null, 0.0D, -1.0D, Double.NaN, Double.POSITIVE_INFINITY}) {
+            final Map<NornLoadProvider, Double> loadProviders = new LinkedHashMap<>();
+            loadProviders.put(NornLoadProvidersTest.fixed(0.5D), weight);
+            try {
+                NornLoadProviders.weighted(loadProviders);
+                fail("Weight " + weight + " must be rejected!");
+            } catch (IllegalArgumentException iaex) {
+                if (weight != null) {
+                    assertEquals(NornLoadProvidersTest.messages.getString("message.illegal.argument.weight"),
+                            iaex.getMessage());
+                }
+            }
+        }
+
+        final Map<NornLoadProvider, Double> loadProviders = new LinkedHashMap<>();
+        loadProviders.put(null, 1.0D);
+        try {
+            NornLoadProviders.weighted(loadProviders);
+            fail("A null provider must be rejected!");
+        } catch (IllegalArgumentException iaex) {
+            // intentionally left blank, the provider is null
+        }
+    }
+
+    @Test
+    public void shouldProvideBuiltInLoads()
+            throws Exception {
+        final NornLoadProvider cpu = NornLoadProviders.cpu();
+        final NornLoadProvider heap = NornLoadProviders.heap();
+        final NornLoadProvider gc = NornLoadProviders.gc();
+
+        for (int i = 0; i < 3; i++) {
+            final byte[][] garbage = new byte[64][];
+            for (int j = 0; j < garbage.length; j++) {
+                garbage[j] = new byte[16 * 1024];
+            }
+            Thread.sleep(10L);
+
+            assertTrue(cpu.getLoad() >= 0.0D);
+            final double heapLoad = heap.getLoad();
+            assertTrue(heapLoad > 0.0D && heapLoad <= 1.0D);
+            final double gcLoad = gc.getLoad();
+            assertTrue(gcLoad >= 0.0D && gcLoad <= 1.0D);
+        }
+
+        assertEquals(NornLoadProviders.cpu(), cpu);
+        assertEquals(NornLoadProviders.heap().hashCode(), heap.hashCode());
+        assertTrue(!cpu.equals(heap) && !heap.equals(gc));
+        assertTrue(NornLoadProviders.defaultProvider().getLoad() >= 0.0D);
+    }
+
+    @Test
+    public void shouldCreateStatefulProvidersPerNode() {
+        final NornLoadProvider cpu = NornLoadProviders.cpu();
+        final NornLoadProvider gc = NornLoadProviders.gc();
+        final NornLoadProvider heap = NornLoadProviders.heap();
+        final NornInFlightCalls inFlightCalls = NornLoadProviders.inFlightCalls(10);
+
+        assertNotSame(cpu, NornLoadProviders.newInstance(cpu));
+        assertEquals(cpu, NornLoadProviders.newInstance(cpu));
+        assertNotSame(gc, NornLoadProviders.newInstance(gc));
+        assertEquals(gc, NornLoadProviders.newInstance(gc));
+        assertSame(heap, NornLoadProviders.newInstance(heap));
+        assertSame(inFlightCalls, NornLoadProviders.newInstance(inFlightCalls));
+    }
+
+    private static NornLoadProvider fixed(final double load) {
+        return new NornLoadProvider() {
+
+            @Override
+            public double getLoad() {
+                return load;
+            }
+        };
+    }
+}
@@ -0,0 +1,154 @@
+/**
+ * Copyright 2012 - 2013 Markus Geiss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.mgeiss.norn.util;
+
+import org.junit.Test;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class NornLoadSamplerTest {
+
+    public NornLoadSamplerTest() {
+        super();
+    }
+
+    @Test
+    public void shouldSmoothLoadAndTrend() {
+        final ScriptedLoadProvider loadProvider = new ScriptedLoadProvider(1.0D, 0.0D, 0.0D);
+        final NornLoadSampler loadSampler = new NornLoadSampler(100, loadProvider, 0.5D);
+        assertEquals(-1.0D, loadSampler.getLoad(), 0.0D);
+        assertEquals(-1.0D, loadSampler.getLastSample(), 0.0D);
+
+        loadSampler.run();
+        assertEquals(1.0D, loadSampler.getLoad(), 0.0D);
+        assertEquals(0.0D, loadSampler.getLoadTrend(), 0.0D);
+
+        // the average halves towards 0, a change of -0.5 within 100 milliseconds is a trend of -5 per second, of
+        // which the trend average takes over half
+        loadSampler.run();
+        assertEquals(0.5D, loadSampler.getLoad(), 0.0D);
+        assertEquals(0.0D, loadSampler.getLastSample(), 0.0D);
+        assertEquals(-2.5D, loadSampler.getLoadTrend(), 0.0D);
+
+        loadSampler.run();
+        assertEquals(0.25D, loadSampler.getLoad(), 0.0D);
+        assertEquals(-2.5D, loadSampler.getLoadTrend(), 0.0D);
+    }
+
+    @Test
+    public void shouldAdvertiseEverySampleWithoutSmoothing() {
+        final NornLoadSampler loadSampler = new NornLoadSampler(500, new ScriptedLoadProvider(0.25D, 0.75D));
+
+        loadSampler.run();
+        loadSampler.run();
+        assertEquals(0.75D, loadSampler.getLoad(), 0.0D);
+        assertEquals(0.75D, loadSampler.getLastSample(), 0.0D);
+        assertEquals(1.0D, loadSampler.getLoadTrend(), 0.0D);
+    }
+
+    @Test
+    public void shouldKeepLastSampleIfProviderFails() {
+        final ScriptedLoadProvider loadProvider = new ScriptedLoadProvider(0.5D, Double.NaN, 0.25D);
+        final NornLoadSampler loadSampler = new NornLoadSampler(100, loadProvider, 0.5D);
+
+        loadSampler.run();
+        loadSampler.run();
+        assertEquals(0.5D, loadSampler.getLoad(), 0.0D);
+        assertEquals(0.5D, loadSampler.getLastSample(), 0.0D);
+        assertEquals(0.0D, loadSampler.getLoadTrend(), 0.0D);
+        assertEquals(2L, loadSampler.getSampleCount());
+
+        loadSampler.run();
+        assertEquals(0.375D, loadSampler.getLoad(), 0.0D);
+        assertEquals(0.25D, loadSampler.getLastSample(), 0.0D);
+    }
+
+    @Test
+    public void shouldRecordSampleCountAndTime() {
+        final NornLoadSampler loadSampler = new NornLoadSampler(100, new NornLoadProvider() {
+
+            @Override
+            public double getLoad() {
+                final long start = System.nanoTime();
+                while (System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(1L)) {
+                    Thread.yield();
+                }
+                return 0.5D;
+            }
+        });
+        assertEquals(0L, loadSampler.getSampleCount());
+        assertEquals(0L, loadSampler.getTotalSampleNanos());
+
+        long lastTotal = 0L;
+        for (int i = 1; i <= 3; i++) {
+            loadSampler.run();
+            assertEquals(i, loadSampler.getSampleCount());
+            assertTrue(loadSampler.getLastSampleNanos() >= TimeUnit.MILLISECONDS.toNanos(1L));
+            assertEquals(lastTotal + loadSampler.getLastSampleNanos(), loadSampler.getTotalSampleNanos());
+            lastTotal = loadSampler.getTotalSampleNanos();
+        }
+    }
+
+    @Test
+    public void shouldSampleInInterval()
+            throws Exception {
+        final NornLoadSampler loadSampler = new NornLoadSampler(10, new ScriptedLoadProvider(0.5D));
+        final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+        try {
+            loadSampler.start(executor);
+            assertTrue(loadSampler.getSampleCount() >= 1L);
+            assertEquals(0.5D, loadSampler.getLoad(), 0.0D);
+
+            for (int i = 0; i < 100 && loadSampler.getSampleCount() < 5L; i++) {
+                Thread.sleep(10L);
+            }
+            assertTrue(loadSampler.getSampleCount() >= 5L);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * <code>ScriptedLoadProvider</code> provides the given loads in turn, repeating the last one. A load of
+     * <code>NaN</code> lets the provider fail.
+     */
+    private static final class ScriptedLoadProvider
+            implements NornLoadProvider {
+
+        private final double[] loads;
+        private int next;
+
+        private ScriptedLoadProvider(final double... loads) {
+            super();
+            this.loads = loads;
+        }
+
+        @Override
+        public double getLoad() {
+            final double load = this.loads[Math.min(this.next++, this.loads.length - 1)];
+            if (Double.isNaN(load)) {
+                throw new IllegalStateException("Load not available!");
+            }
+            return load;
+        }
+    }
+}